@@ -7,6 +7,10 @@
  */
 package ca.sciencestudio.vespers.data.converter;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import ca.sciencestudio.data.converter.AbstractModelConverter;
 import ca.sciencestudio.data.support.ConverterException;
 import ca.sciencestudio.vespers.data.converter.adapter.MapXYVespersAdapter;
@@ -20,14 +24,80 @@ public abstract class AbstractMapXYVespersConverter extends AbstractModelConvert
 
 	private MapXYVespersAdapter adapter = null;
 	
+	private List<MapXYRegionOfInterest> regionsOfInterest = Collections.emptyList();
+	private long[] regionOfInterestCounts = new long[0];
+	
+	private Executor executor = null;
+	private int maximumPendingRecords = MapXYRecordPipeline.DEFAULT_MAXIMUM_PENDING_RECORDS;
+	
 	public AbstractMapXYVespersConverter(String fromFormat, String toFormat, boolean forceUpdate) {
 		super(fromFormat, toFormat, forceUpdate);
 	}
 	
+	/**
+	 * @return a new record pipeline, which processes records sequentially if no executor is configured
+	 */
+	protected <R,P> MapXYRecordPipeline<R,P> createRecordPipeline() {
+		return new MapXYRecordPipeline<R,P>(executor, maximumPendingRecords);
+	}
+	
+	protected void initRegionsOfInterest() throws ConverterException {
+		regionOfInterestCounts = new long[regionsOfInterest.size()];
+		for(int idx = 0; idx < regionsOfInterest.size(); idx++) {
+			MapXYRegionOfInterest regionOfInterest = regionsOfInterest.get(idx);
+			getAdapter().initRegionOfInterest(idx, regionOfInterest.getName(), regionOfInterest.getDescription());
+		}
+	}
+	
+	protected void clearRegionsOfInterest() {
+		for(int idx = 0; idx < regionOfInterestCounts.length; idx++) {
+			regionOfInterestCounts[idx] = 0L;
+		}
+	}
+	
+	/**
+	 * Integrate the spectrum for each region of interest of the given detector element.
+	 */
+	protected void integrateRegionsOfInterest(int element, long[] spectrum) {
+		for(int idx = 0; idx < regionOfInterestCounts.length; idx++) {
+			MapXYRegionOfInterest regionOfInterest = regionsOfInterest.get(idx);
+			if(regionOfInterest.getElement() == element) {
+				regionOfInterestCounts[idx] += regionOfInterest.integrate(spectrum);
+			}
+		}
+	}
+	
+	protected void recRegionsOfInterest() throws ConverterException {
+		for(int idx = 0; idx < regionOfInterestCounts.length; idx++) {
+			getAdapter().recRegionOfInterest(idx, regionOfInterestCounts[idx]);
+		}
+	}
+	
 	public void setAdapter(MapXYVespersAdapter adapter) {
 		this.adapter = adapter;
 	}
 	public MapXYVespersAdapter getAdapter() throws ConverterException {
 		return adapter;
 	}
+	
+	public List<MapXYRegionOfInterest> getRegionsOfInterest() {
+		return regionsOfInterest;
+	}
+	public void setRegionsOfInterest(List<MapXYRegionOfInterest> regionsOfInterest) {
+		this.regionsOfInterest = regionsOfInterest;
+	}
+	
+	public Executor getExecutor() {
+		return executor;
+	}
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	public int getMaximumPendingRecords() {
+		return maximumPendingRecords;
+	}
+	public void setMaximumPendingRecords(int maximumPendingRecords) {
+		this.maximumPendingRecords = maximumPendingRecords;
+	}
 }
@@ -0,0 +1,204 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYRecordPipeline class.
+ *
+ */
+package ca.sciencestudio.vespers.data.converter;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import ca.sciencestudio.data.support.ConverterException;
+
+/**
+ * Pipeline of records which are read in order, processed (for example the
+ * spectra decoded) on an executor and then taken in the order they were read,
+ * so that they can be written to the (single threaded) adapter.
+ *
+ * The number of pending records is limited, the reader should take records
+ * while the pipeline is full. Without an executor each record is processed
+ * when submitted, which is equivalent to converting sequentially.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYRecordPipeline<R,P> {
+
+	public static final int DEFAULT_MAXIMUM_PENDING_RECORDS = 64 * Runtime.getRuntime().availableProcessors();
+
+	private Executor executor;
+	private int maximumPendingRecords;
+
+	private LinkedList<PendingRecord<R,P>> pendingRecords = new LinkedList<PendingRecord<R,P>>();
+
+	public MapXYRecordPipeline(Executor executor) {
+		this(executor, DEFAULT_MAXIMUM_PENDING_RECORDS);
+	}
+
+	public MapXYRecordPipeline(Executor executor, int maximumPendingRecords) {
+		this.executor = executor;
+		this.maximumPendingRecords = (executor != null) ? Math.max(maximumPendingRecords, 1) : 1;
+	}
+
+	/**
+	 * Submit the next record, the processor may be null if the record requires no processing.
+	 */
+	public void submit(R record, Callable<P> processor) {
+		ProcessorTask<P> task = null;
+		if(processor != null) {
+			task = new ProcessorTask<P>(processor);
+			if(executor != null) {
+				executor.execute(task);
+			}
+			else {
+				task.run();
+			}
+		}
+		pendingRecords.addLast(new PendingRecord<R,P>(record, task));
+	}
+
+	/**
+	 * Take the first pending record, waiting for it to be processed.
+	 */
+	public PendingRecord<R,P> take() throws ConverterException {
+		PendingRecord<R,P> pendingRecord = pendingRecords.removeFirst();
+		if(pendingRecord.task != null) {
+			try {
+				pendingRecord.result = pendingRecord.task.get();
+			}
+			catch(InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new ConverterException("Interrupted while waiting for record to be processed.", e);
+			}
+			catch(ExecutionException e) {
+				cancel();
+				if(e.getCause() instanceof ConverterException) {
+					throw (ConverterException)e.getCause();
+				}
+				throw new ConverterException("Exception while processing record.", e.getCause());
+			}
+		}
+		return pendingRecord;
+	}
+
+	/**
+	 * Cancel the records which have not yet been processed and wait for the records 
+	 * being processed, so the resources used by the processors can then be released.
+	 */
+	public void cancel() {
+		for(PendingRecord<R,P> pendingRecord : pendingRecords) {
+			if(pendingRecord.task != null) {
+				pendingRecord.task.cancel(false);
+			}
+		}
+		boolean interrupted = false;
+		for(PendingRecord<R,P> pendingRecord : pendingRecords) {
+			if(pendingRecord.task != null) {
+				interrupted |= pendingRecord.task.awaitFinished();
+			}
+		}
+		pendingRecords.clear();
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isFull() {
+		return pendingRecords.size() >= maximumPendingRecords;
+	}
+
+	public boolean isEmpty() {
+		return pendingRecords.isEmpty();
+	}
+
+	public int getMaximumPendingRecords() {
+		return maximumPendingRecords;
+	}
+
+	public static class PendingRecord<R,P> {
+
+		private R record;
+		private ProcessorTask<P> task;
+		private P result = null;
+
+		protected PendingRecord(R record, ProcessorTask<P> task) {
+			this.record = record;
+			this.task = task;
+		}
+
+		public R getRecord() {
+			return record;
+		}
+
+		/**
+		 * @return the result of processing the record or null if not processed
+		 */
+		public P getResult() {
+			return result;
+		}
+	}
+
+	/**
+	 * Task which processes a record, a task cancelled before it starts is never run
+	 * and, unlike FutureTask, it is possible to wait for a cancelled task which has started.
+	 */
+	protected static class ProcessorTask<P> extends FutureTask<P> {
+
+		private boolean started = false;
+		private boolean finished = false;
+		private boolean cancelled = false;
+
+		public ProcessorTask(Callable<P> processor) {
+			super(processor);
+		}
+
+		public void run() {
+			synchronized(this) {
+				if(cancelled) {
+					return;
+				}
+				started = true;
+			}
+			try {
+				super.run();
+			}
+			finally {
+				synchronized(this) {
+					finished = true;
+					notifyAll();
+				}
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized(this) {
+				cancelled = true;
+			}
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+		/**
+		 * Wait for the task to finish, if it has started.
+		 * 
+		 * @return true if the thread was interrupted while waiting
+		 */
+		protected synchronized boolean awaitFinished() {
+			boolean interrupted = false;
+			while(started && !finished) {
+				try {
+					wait();
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			return interrupted;
+		}
+	}
+}
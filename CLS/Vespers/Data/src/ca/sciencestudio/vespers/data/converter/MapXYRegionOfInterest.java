@@ -0,0 +1,89 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYRegionOfInterest class.
+ *
+ */
+package ca.sciencestudio.vespers.data.converter;
+
+/**
+ * Region of interest of an MCA spectrum, a window of channels (first to last
+ * inclusive) of the spectrum of a detector element or of the sum spectrum.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYRegionOfInterest {
+
+	/**
+	 * The single element spectrum, or the four element sum spectrum
+	 * (or sum of the element spectra if there is no sum spectrum).
+	 */
+	public static final int SUM_ELEMENT = -1;
+
+	private String name;
+	private String description;
+	private int element = SUM_ELEMENT;
+	private int firstChannel = 0;
+	private int lastChannel = 0;
+
+	public MapXYRegionOfInterest() {
+		super();
+	}
+
+	public MapXYRegionOfInterest(String name, int element, int firstChannel, int lastChannel) {
+		this.name = name;
+		this.element = element;
+		this.firstChannel = firstChannel;
+		this.lastChannel = lastChannel;
+	}
+
+	/**
+	 * @return the sum of the counts of the channels of the region, channels beyond the spectrum are ignored
+	 */
+	public long integrate(long[] spectrum) {
+		int first = Math.max(firstChannel, 0);
+		int last = Math.min(lastChannel, spectrum.length - 1);
+		long counts = 0L;
+		for(int channel = first; channel <= last; channel++) {
+			counts += spectrum[channel];
+		}
+		return counts;
+	}
+
+	public String getName() {
+		return name;
+	}
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public int getElement() {
+		return element;
+	}
+	public void setElement(int element) {
+		this.element = element;
+	}
+
+	public int getFirstChannel() {
+		return firstChannel;
+	}
+	public void setFirstChannel(int firstChannel) {
+		this.firstChannel = firstChannel;
+	}
+
+	public int getLastChannel() {
+		return lastChannel;
+	}
+	public void setLastChannel(int lastChannel) {
+		this.lastChannel = lastChannel;
+	}
+}
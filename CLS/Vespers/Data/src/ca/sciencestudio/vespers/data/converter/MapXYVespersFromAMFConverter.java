@@ -14,6 +14,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Date;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 
 import ca.sciencestudio.data.converter.ConverterMap;
 import ca.sciencestudio.data.support.ConverterException;
+import ca.sciencestudio.vespers.data.converter.MapXYRecordPipeline.PendingRecord;
 
 /**
  * 
@@ -93,6 +95,7 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 	//////////////////////////////////////////////////////////
 	
 	private int dataRecordIndex = -1;
+	private int readRecordIndex = -1;
 	
 	private BufferedReader amfDataFileReader;
 	private BufferedReader amfSpectraFileReader;
@@ -139,6 +142,8 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 			}
 		}
 
+		MapXYRecordPipeline<String[],long[][]> recordPipeline = createRecordPipeline();
+		
 		try {
 			if(getAdapter().openDestination()) {
 				return getResponse();
@@ -172,6 +177,8 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 				getAdapter().recSampleName(getSampleName());
 			}
 			
+			// Records are read on this thread, the spectra of data records are parsed 
+			// by the executor and the records are then processed in the order read. //
 			Matcher m;
 			String line;
 			
@@ -181,7 +188,7 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 					line = amfDataFileReader.readLine();
 				}
 				catch(IOException e) {
-					throw new ConverterException("Error reading data file at record index: " + dataRecordIndex + ". " + e.getMessage());
+					throw new ConverterException("Error reading data file at record index: " + readRecordIndex + ". " + e.getMessage());
 				}
 				
 				if(line == null) {
@@ -202,12 +209,27 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 				
 				m = AMF_DATA_FILE_RECORD_PATTERN.matcher(line);
 				if(m.matches()) {
-					dataRecordIndex++;
-					processDataRecord(m.group(1).split(AMF_DATA_SPLIT_RECORD_REGEX));
+					readRecordIndex++;
+					String[] dataRecord = m.group(1).split(AMF_DATA_SPLIT_RECORD_REGEX);
+					if(hasSingleElementDetector() || hasFourElementDetector()) {
+						initNChannels();
+						recordPipeline.submit(dataRecord, new SpectraParserTask(readSpectraLine(), readRecordIndex, sedNChannels, fedNChannels));
+					}
+					else {
+						recordPipeline.submit(dataRecord, null);
+					}
 				}
 				else {
-					throw new ConverterException("Error parsing data record at index: " + dataRecordIndex + ". No match to specified patern.");
+					throw new ConverterException("Error parsing data record at index: " + readRecordIndex + ". No match to specified patern.");
 				}
+				
+				while(recordPipeline.isFull()) {
+					processRecord(recordPipeline.take());
+				}
+			}
+			
+			while(!recordPipeline.isEmpty()) {
+				processRecord(recordPipeline.take());
 			}
 			
 			getAdapter().closeDestination();
@@ -216,11 +238,123 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 			getAdapter().deleteDestination();
 			throw e;
 		}
+		finally {
+			recordPipeline.cancel();
+		}
 		
 		return getResponse();
 	}
+	
+	private void processRecord(PendingRecord<String[],long[][]> pendingRecord) throws ConverterException {
+		dataRecordIndex++;
+		processDataRecord(pendingRecord.getRecord(), pendingRecord.getResult());
+	}
+	
+	/**
+	 * Determine the number of spectrum channels, which must be known before 
+	 * the spectra are parsed, so this is done as the records are read.
+	 */
+	private void initNChannels() {
+		if(hasSingleElementDetector()) {
+			if(sedNChannels < 0) {
+				sedNChannels = getSedDefaultNChannels();
+			}
+		}
+		else if(hasFourElementDetector()) {
+			if(fedNChannels < 0) {
+				fedNChannels = getFedDefaultNChannels();
+			}
+		}
+	}
+	
+	/**
+	 * Read the spectra record of the current data record, the spectra file is read 
+	 * on the reading thread so that the records remain in the order of the data file.
+	 */
+	private String readSpectraLine() throws ConverterException {
 		
-	private void processDataRecord(String[] dataRecord) throws ConverterException {
+		String line;
+		
+		while(true) {
+			
+			try {
+				line = amfSpectraFileReader.readLine();
+			}
+			catch(IOException e) {
+				throw new ConverterException("Error reading spectra file at index: " + readRecordIndex + ". " + e.getMessage());
+			}
+			
+			if(line == null) {
+				throw new ConverterException("Unexpected end-of-file while reading spectra file at data index: " + readRecordIndex);
+			}
+			
+			if(AMF_SPECTRA_FILE_BLANKLINE_PATTERN.matcher(line).matches()) {
+				// ignore lines containing only whitespace //
+				continue;
+			}
+			
+			if(AMF_SPECTRA_FILE_HEADER_PATTERN.matcher(line).matches()) {
+				// skip spectra file comments //
+				continue;
+			}
+			
+			return line;
+		}
+	}
+	
+	/**
+	 * Parse the spectra record of the data record, for the Single Element Detector the result 
+	 * is the spectrum, for the Four Element Detector the result is the sum spectrum 
+	 * (null if not available) followed by the element spectra.
+	 */
+	private long[][] parseSpectra(String line, int recordIndex, int sedNChannels, int fedNChannels) throws ConverterException {
+		
+		Matcher m = AMF_SPECTRA_FILE_RECORD_PATTERN.matcher(line);
+		if(!m.matches()) {
+			throw new ConverterException("Error parsing spectra record at index: " + recordIndex + ". No match to specified patern.");
+		}
+		
+		String[] spectrumRecord = m.group(1).split(AMF_SPECTRA_SPLIT_RECORD_REGEX);
+		
+		if(hasSingleElementDetector()) {
+			
+			if(spectrumRecord.length < sedNChannels) {
+				throw new ConverterException("Single element spectrum contains only " + spectrumRecord.length + " channels.");
+			}
+			
+			try {
+				return new long[][] { toLongArray(spectrumRecord, 0, sedNChannels) };
+			}
+			catch(NumberFormatException e) {
+				throw new ConverterException("Number format error while getting SED data from record at index: " + recordIndex + ". " + e.getMessage());
+			}
+		}
+		else if(hasFourElementDetector()) {
+			
+			if(spectrumRecord.length < (fedNChannels * 4)) {
+				throw new ConverterException("Four element spectrum contains only " + spectrumRecord.length + " channels.");
+			}
+			
+			try {
+				long[][] fedSpectra = new long[5][];
+				
+				if(spectrumRecord.length >= (fedNChannels * 5)) {
+					fedSpectra[0] = toLongArray(spectrumRecord, (fedNChannels * 4), fedNChannels);
+				}
+				
+				for(int i=0; i<4; i++) {
+					fedSpectra[i+1] = toLongArray(spectrumRecord, (fedNChannels * i), fedNChannels);
+				}
+				return fedSpectra;
+			}
+			catch(NumberFormatException e) {
+				throw new ConverterException("Number format error while getting FED data from record at index: " + recordIndex + ". " + e.getMessage());
+			}
+		}
+		return null;
+	}
+		
+	private void processDataRecord(String[] dataRecord, long[][] spectra) throws ConverterException {
 		
 		if(dataRecordIndex == 0) {
 			
@@ -309,10 +443,6 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 					getAdapter().initSedElapsedLiveTime(name, desc);
 				}
 			
-				if(sedNChannels < 0) {
-					sedNChannels = getSedDefaultNChannels();
-				}
-				
 				name = "spectrum";
 				desc = "Single Element Spectrum";
 				getAdapter().initSedSpectrum(sedNChannels, name, desc);
@@ -360,11 +490,6 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 					}
 				}
 							
-				if(fedNChannels < 0) {
-					fedNChannels = getFedDefaultNChannels();
-				}
-			
-
 				name = "sumspectrum";
 				desc = "Four Element Sum Spectrum";
 				getAdapter().initFedSumSpectrum(fedNChannels, name, desc);
@@ -377,7 +502,12 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 			}
 		}
 		
+		if(dataRecordIndex == 0) {
+			initRegionsOfInterest();
+		}
+		
 		getAdapter().openDataRecord(dataRecordIndex);
+		clearRegionsOfInterest();
 		
 		try {
 			if(dataRecordIndex == 0) {
@@ -522,50 +652,8 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 		
 		if(hasSingleElementDetector() || hasFourElementDetector()) {
 		
-			Matcher m;
-			String line;
-			String[] spectrumRecord;
-			
-			while(true) {
-				
-				try {
-					line = amfSpectraFileReader.readLine();
-				}
-				catch(IOException e) {
-					throw new ConverterException("Error reading spectra file at index: " + dataRecordIndex + ". " + e.getMessage());
-				}
-				
-				if(line == null) {
-					throw new ConverterException("Unexpected end-of-file while reading spectra file at data index: " + dataRecordIndex);
-				}
-				
-				if(AMF_SPECTRA_FILE_BLANKLINE_PATTERN.matcher(line).matches()) {
-					// ignore lines containing only whitespace //
-					continue;
-				}
-				
-				m = AMF_SPECTRA_FILE_HEADER_PATTERN.matcher(line);
-				if(m.matches()) {
-					// skip spectra file comments //
-					continue;
-				}
-				
-				m = AMF_SPECTRA_FILE_RECORD_PATTERN.matcher(line);
-				if(m.matches()) {
-					spectrumRecord = m.group(1).split(AMF_SPECTRA_SPLIT_RECORD_REGEX);
-					break;
-				}
-				else {
-					throw new ConverterException("Error parsing spectra record at index: " + dataRecordIndex + ". No match to specified patern.");
-				}
-			}
-		
 			if(hasSingleElementDetector()) {
 				
-				if(spectrumRecord.length < sedNChannels) {
-					throw new ConverterException("Single element spectrum contains only " + spectrumRecord.length + " channels.");
-				}
-				
 				try {
 					if(getSedFastCountIdx() >= 0) {
 						getAdapter().recSedFastCount(Double.valueOf(dataRecord[getSedFastCountIdx()]).longValue());
@@ -587,7 +675,10 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 						getAdapter().recSedElapsedLiveTime(Double.valueOf(dataRecord[getSedElpasedLiveTimeIdx()]));
 					}
 										
-					getAdapter().recSedSpectrum(toLongArray(spectrumRecord, 0, sedNChannels));
+					long[] sedSpectrum = spectra[0];
+					getAdapter().recSedSpectrum(sedSpectrum);
+					integrateRegionsOfInterest(MapXYRegionOfInterest.SUM_ELEMENT, sedSpectrum);
+					integrateRegionsOfInterest(0, sedSpectrum);
 				}
 				catch(NumberFormatException e) {
 					throw new ConverterException("Number format error while getting SED data from record at index: " + dataRecordIndex + ". " + e.getMessage());
@@ -595,14 +686,7 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 			}
 			else if(hasFourElementDetector()) {
 				
-				if(spectrumRecord.length < (fedNChannels * 4)) {
-					throw new ConverterException("Four element spectrum contains only " + spectrumRecord.length + " channels.");
-				}
-				
-				boolean hasSumSpectrum = true;
-				if(spectrumRecord.length < (fedNChannels * 5)) {
-					hasSumSpectrum = false;
-				}
+				boolean hasSumSpectrum = (spectra[0] != null);
 				
 				try {
 					if(allGreaterThanOrEqual(fedFastCountIdx, 0)) {
@@ -636,11 +720,18 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 					}
 				
 					if(hasSumSpectrum) {
-						getAdapter().recFedSumSpectrum(toLongArray(spectrumRecord, (fedNChannels * 4), fedNChannels));
+						long[] fedSumSpectrum = spectra[0];
+						getAdapter().recFedSumSpectrum(fedSumSpectrum);
+						integrateRegionsOfInterest(MapXYRegionOfInterest.SUM_ELEMENT, fedSumSpectrum);
 					}
 					
 					for(int i=0; i<4; i++) {
-						getAdapter().recFedSpectrum(i, toLongArray(spectrumRecord, (fedNChannels * i), fedNChannels));
+						long[] fedSpectrum = spectra[i+1];
+						getAdapter().recFedSpectrum(i, fedSpectrum);
+						integrateRegionsOfInterest(i, fedSpectrum);
+						if(!hasSumSpectrum) {
+							integrateRegionsOfInterest(MapXYRegionOfInterest.SUM_ELEMENT, fedSpectrum);
+						}
 					}
 				}
 				catch(NumberFormatException e) {
@@ -649,6 +740,7 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 			}
 		}
 		
+		recRegionsOfInterest();
 		getAdapter().closeDataRecord(dataRecordIndex);
 	}
 	
@@ -658,11 +750,11 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 		for(int idx=start; idx<end; idx++) {
 			try {
 				// Parsing an integer is fastest, so try it first. //
-				larray[idx] = Long.valueOf(sarray[idx]);
+				larray[idx - start] = Long.parseLong(sarray[idx]);
 			}
 			catch(NumberFormatException e) {
 				// Parse as floating point and convert to integer. //
-				larray[idx] = Double.valueOf(sarray[idx]).longValue();
+				larray[idx - start] = (long)Double.parseDouble(sarray[idx]);
 			}
 		}
 		return larray;
@@ -846,4 +938,23 @@ public class MapXYVespersFromAMFConverter extends AbstractMapXYVespersConverter
 	public void setFedDefaultNChannels(int fedDefaultNChannels) {
 		this.fedDefaultNChannels = fedDefaultNChannels;
 	}
+	
+	protected class SpectraParserTask implements Callable<long[][]> {
+		
+		private String line;
+		private int recordIndex;
+		private int sedNChannels;
+		private int fedNChannels;
+		
+		public SpectraParserTask(String line, int recordIndex, int sedNChannels, int fedNChannels) {
+			this.line = line;
+			this.recordIndex = recordIndex;
+			this.sedNChannels = sedNChannels;
+			this.fedNChannels = fedNChannels;
+		}
+		
+		public long[][] call() throws ConverterException {
+			return parseSpectra(line, recordIndex, sedNChannels, fedNChannels);
+		}
+	}
 }
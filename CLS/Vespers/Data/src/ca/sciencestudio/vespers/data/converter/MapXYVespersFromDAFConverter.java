@@ -10,8 +10,10 @@ package ca.sciencestudio.vespers.data.converter;
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -22,12 +24,14 @@ import ca.sciencestudio.data.daf.DAFElement;
 import ca.sciencestudio.data.daf.DAFEvent;
 import ca.sciencestudio.data.daf.DAFRecord;
 import ca.sciencestudio.data.daf.DAFRecordParser;
-import ca.sciencestudio.data.daf.DAFSpectrumParser;
-import ca.sciencestudio.data.daf.DAFSpectrumRecord;
+import ca.sciencestudio.data.daf.DAFMappedSpectrumParser;
+import ca.sciencestudio.data.daf.DAFSpectrumIndex;
+import ca.sciencestudio.data.daf.DAFTailReader;
 import ca.sciencestudio.data.standard.StdCategories;
 import ca.sciencestudio.data.support.ConverterException;
 import ca.sciencestudio.data.support.DataFormatException;
 import ca.sciencestudio.data.support.RecordFormatException;
+import ca.sciencestudio.vespers.data.converter.MapXYRecordPipeline.PendingRecord;
 
 /**
  * @author maxweld
@@ -91,13 +95,25 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 	private int fedDefaultNChannels = DEFAULT_FED_NCHANNELS;
 	
 	private Collection<DAFRecordParser> customRecordParsers = null;
+	
+	// Parameters for following the data files of a scan in progress. //
+	private boolean followIncompleteScan = false;
+	private long followPollInterval = DAFTailReader.DEFAULT_POLL_INTERVAL;
+	private long followIdleTimeout = DAFTailReader.DEFAULT_IDLE_TIMEOUT;
 	//////////////////////////////////////////////////////////
 	
 	private int dataRecordIndex = -1;
 	private int bkgdRecordIndex = -1;
 
 	private DAFDataParser dafDataParser;
-	private DAFSpectrumParser dafSpectraParser;
+	private DAFTailReader dafTailReader;
+	private DAFSpectrumIndex dafSpectrumIndex;
+	
+	// Spectra parsers are not thread safe, each worker uses its own. //
+	// The lists and the closed flag are guarded by the list of parsers. //
+	private List<DAFMappedSpectrumParser> dafSpectraParsers = new LinkedList<DAFMappedSpectrumParser>();
+	private LinkedList<DAFMappedSpectrumParser> idleSpectraParsers = new LinkedList<DAFMappedSpectrumParser>();
+	private boolean spectraParsersClosed = false;
 	
 	private int sizeX = 0, sizeY = 0;
 	private double stepX = 0.0, stepY = 0.0;
@@ -125,7 +141,13 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 		}
 
 		try {
-			dafDataParser = new DAFDataParser(getDafDataFile(), customRecordParsers);
+			if(isFollowScan()) {
+				dafTailReader = new DAFTailReader(getDafDataFile(), followPollInterval, followIdleTimeout);
+				dafDataParser = new DAFDataParser(dafTailReader, customRecordParsers);
+			}
+			else {
+				dafDataParser = new DAFDataParser(getDafDataFile(), customRecordParsers);
+			}
 		}
 		catch(Exception e) {
 			throw new ConverterException("Exception while creating data parser for file: " + getDafDataFile(), e);
@@ -147,13 +169,19 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 
 		if(hasSingleElementDetector() || hasFourElementDetector()) {
 			try {
-				dafSpectraParser = new DAFSpectrumParser(getDafSpectraFile());
+				// The index of a spectra file which is still growing would be incomplete. //
+				if(dafTailReader == null) {
+					dafSpectrumIndex = DAFSpectrumIndex.getIndex(getDafSpectraFile());
+				}
 			}
 			catch(Exception e) {
 				throw new ConverterException("Exception while creating spectra parser for file: " + getDafSpectraFile(), e);
 			}
+			releaseSpectraParser(acquireSpectraParser());
 		}
 
+		MapXYRecordPipeline<DAFRecord,long[][]> recordPipeline = createRecordPipeline();
+		
 		try {
 			if(getAdapter().openDestination()) {
 				return getResponse();
@@ -190,19 +218,65 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 				getAdapter().recSampleName(getSampleName());
 			}
 			
-			for (DAFRecord record : dafDataParser) {
-				if (record.getEvent().getId() == dataEventId) {
-					dataRecordIndex++;
-					processDataRecord(record);
-				}
-				else if (record.getEvent().getId() == bkgdEventId) {
-					bkgdRecordIndex++;
-					processBkgdRecord(record);
+			// Records are read on this thread, the spectra of data records are parsed 
+			// by the executor and the records are then processed in the order read. //
+			// The data file is not read in chunks while following, as chunks would
+			// wait for data to be written.
+			if(dafTailReader == null) {
+				dafDataParser.setExecutor(getExecutor());
+			}
+			
+			boolean following;
+			boolean spectraComplete = true;
+			do {
+				following = (dafTailReader != null) && dafTailReader.isFollowing();
+				
+				for (DAFRecord record : dafDataParser) {
+					if (record.getEvent().getId() == dataEventId) {
+						initNChannels(record);
+						if(hasSingleElementDetector() || hasFourElementDetector()) {
+							if(!awaitSpectra(record)) {
+								spectraComplete = false;
+								break;
+							}
+							recordPipeline.submit(record, new SpectraParserTask(record, sedNChannels, fedNChannels));
+						}
+						else {
+							recordPipeline.submit(record, null);
+						}
+					}
+					else if (record.getEvent().getId() == bkgdEventId) {
+						initNChannels(record);
+						recordPipeline.submit(record, null);
+					}
+					else {
+						// nothing to do, maybe log something //
+					}
+					
+					while(recordPipeline.isFull()) {
+						processRecord(recordPipeline.take());
+					}
 				}
-				else {
-					// nothing to do, maybe log something //
+				
+				if(following && spectraComplete) {
+					// Process and save the records read so far, while waiting for the scan to write more. //
+					while(!recordPipeline.isEmpty()) {
+						processRecord(recordPipeline.take());
+					}
+					getAdapter().flushDestination();
+					dafTailReader.awaitData();
 				}
 			}
+			while(following && spectraComplete);
+			
+			if(!spectraComplete) {
+				// The scan is converted up to the last record with complete spectra. //
+				log.warn("Spectra not written within the idle timeout, converting incomplete scan from file: " + getDafSpectraFile());
+			}
+			
+			while(!recordPipeline.isEmpty()) {
+				processRecord(recordPipeline.take());
+			}
 
 			padMissingPoints();
 			
@@ -212,11 +286,251 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 			getAdapter().deleteDestination();
 			throw e;
 		}
+		catch(IOException e) {
+			getAdapter().deleteDestination();
+			throw new ConverterException("Input error while reading data file: " + getDafDataFile(), e);
+		}
+		finally {
+			recordPipeline.cancel();
+			closeSpectraParsers();
+			if(dafTailReader != null) {
+				try {
+					dafTailReader.close();
+				}
+				catch(IOException e) {
+					log.warn("Exception while closing data file: " + getDafDataFile(), e);
+				}
+			}
+		}
 		
 		return getResponse();
 	}
 	
-	private void processDataRecord(DAFRecord record) throws ConverterException {
+	private void processRecord(PendingRecord<DAFRecord,long[][]> pendingRecord) throws ConverterException {
+		DAFRecord record = pendingRecord.getRecord();
+		if (record.getEvent().getId() == dataEventId) {
+			dataRecordIndex++;
+			processDataRecord(record, pendingRecord.getResult());
+		}
+		else {
+			bkgdRecordIndex++;
+			processBkgdRecord(record);
+		}
+	}
+	
+	/**
+	 * Determine the number of spectrum channels, which must be known before 
+	 * the spectra are parsed, so this is done as the records are read.
+	 */
+	private void initNChannels(DAFRecord record) {
+		
+		if (record.getEvent().getId() == bkgdEventId) {
+			if(hasSingleElementDetector()) {
+				if((sedNChannels < 0) && (getSedNChannelsIdx() >= 0)) {
+					try {
+						sedNChannels = record.getInt(getSedNChannelsIdx());
+					}
+					catch (RecordFormatException e) {
+						sedNChannels = getSedDefaultNChannels();
+					}
+				}
+			}
+			else if(hasFourElementDetector()) {
+				if((fedNChannels < 0) && (getFedNChannelsIdx() >= 0)) {
+					try {
+						fedNChannels = record.getInt(getFedNChannelsIdx());
+					}
+					catch (RecordFormatException e) {
+						fedNChannels = getFedDefaultNChannels();
+					}
+				}
+			}
+		}
+		else {
+			if(hasSingleElementDetector()) {
+				if(sedNChannels < 0) {
+					sedNChannels = getSedDefaultNChannels();
+				}
+			}
+			else if(hasFourElementDetector()) {
+				if(fedNChannels < 0) {
+					fedNChannels = getFedDefaultNChannels();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Parse the spectra of the data record, for the Single Element Detector the result 
+	 * is the spectrum, for the Four Element Detector the result is the sum spectrum 
+	 * followed by the element spectra (any of which may be null if not available).
+	 */
+	private long[][] parseSpectra(DAFRecord record, int sedNChannels, int fedNChannels, DAFMappedSpectrumParser spectraParser) throws ConverterException {
+		try {
+			if(hasSingleElementDetector()) {
+				long[] sedSpectrum = new long[sedNChannels];
+				spectraParser.parseRecord(record.getLong(getSedSpectrumIdx()), sedSpectrum);
+				return new long[][] { sedSpectrum };
+			}
+			else if(hasFourElementDetector()) {
+				long[][] fedSpectra = new long[getFedSpectrumIdx().length + 1][];
+				
+				if(getFedSumSpectrumIdx() >= 0) {
+					fedSpectra[0] = new long[fedNChannels];
+					spectraParser.parseRecord(record.getLong(getFedSumSpectrumIdx()), fedSpectra[0]);
+				}
+				
+				if(allGreaterThanOrEqual(getFedSpectrumIdx(), 0)) {
+					for(int i=0; i<getFedSpectrumIdx().length; i++) {
+						fedSpectra[i+1] = new long[fedNChannels];
+						spectraParser.parseRecord(record.getLong(getFedSpectrumIdx()[i]), fedSpectra[i+1]);
+					}
+				}
+				return fedSpectra;
+			}
+			return null;
+		}
+		catch(IOException e) {
+			throw new ConverterException("Input error while parsing record from spectra data file.", e);
+		}
+		catch(DataFormatException e) {
+			throw new ConverterException("Data format error while parsing record from spectra file.", e);
+		}
+		catch(RecordFormatException e) {
+			throw new ConverterException("Record exception while getting data from record.", e);
+		}
+	}
+	
+	/**
+	 * While following a scan, the spectra of a data record may not yet have been written when the 
+	 * record is read, so wait on the reading thread (rather than on the workers which parse the spectra)
+	 * for the spectra to be complete. The spectra file is written in order, so only the last is checked.
+	 * 
+	 * @return true if the spectra are complete, false if not written within the idle timeout
+	 */
+	private boolean awaitSpectra(DAFRecord record) throws ConverterException, IOException {
+		if(dafTailReader == null) {
+			return true;
+		}
+		
+		long offset = -1L;
+		try {
+			if(hasSingleElementDetector()) {
+				offset = record.getLong(getSedSpectrumIdx());
+			}
+			else if(hasFourElementDetector()) {
+				if(getFedSumSpectrumIdx() >= 0) {
+					offset = Math.max(offset, record.getLong(getFedSumSpectrumIdx()));
+				}
+				if(allGreaterThanOrEqual(getFedSpectrumIdx(), 0)) {
+					for(int i=0; i<getFedSpectrumIdx().length; i++) {
+						offset = Math.max(offset, record.getLong(getFedSpectrumIdx()[i]));
+					}
+				}
+			}
+		}
+		catch(RecordFormatException e) {
+			throw new ConverterException("Record exception while getting data from record.", e);
+		}
+		
+		if(offset < 0L) {
+			return true;
+		}
+		
+		DAFMappedSpectrumParser spectraParser = acquireSpectraParser();
+		try {
+			long waitStart = System.currentTimeMillis();
+			while(!spectraParser.isRecordComplete(offset)) {
+				if((System.currentTimeMillis() - waitStart) >= followIdleTimeout) {
+					return false;
+				}
+				try {
+					Thread.sleep(followPollInterval);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+		finally {
+			releaseSpectraParser(spectraParser);
+		}
+	}
+	
+	protected DAFMappedSpectrumParser createSpectraParser() throws DataFormatException, IOException {
+		DAFMappedSpectrumParser spectraParser = new DAFMappedSpectrumParser(getDafSpectraFile());
+		spectraParser.setSpectrumIndex(dafSpectrumIndex);
+		return spectraParser;
+	}
+	
+	/**
+	 * Acquire an idle spectra parser or create a new one, parsers can not be acquired once they are closed.
+	 */
+	private DAFMappedSpectrumParser acquireSpectraParser() throws ConverterException {
+		synchronized(dafSpectraParsers) {
+			if(spectraParsersClosed) {
+				throw new ConverterException("Spectra parsers for file closed: " + getDafSpectraFile());
+			}
+			if(!idleSpectraParsers.isEmpty()) {
+				return idleSpectraParsers.removeFirst();
+			}
+		}
+		
+		DAFMappedSpectrumParser spectraParser;
+		try {
+			spectraParser = createSpectraParser();
+		}
+		catch(Exception e) {
+			throw new ConverterException("Exception while creating spectra parser for file: " + getDafSpectraFile(), e);
+		}
+		
+		synchronized(dafSpectraParsers) {
+			if(!spectraParsersClosed) {
+				dafSpectraParsers.add(spectraParser);
+				return spectraParser;
+			}
+		}
+		closeSpectraParser(spectraParser);
+		throw new ConverterException("Spectra parsers for file closed: " + getDafSpectraFile());
+	}
+	
+	private void releaseSpectraParser(DAFMappedSpectrumParser spectraParser) {
+		synchronized(dafSpectraParsers) {
+			if(!spectraParsersClosed) {
+				idleSpectraParsers.addLast(spectraParser);
+			}
+		}
+	}
+	
+	/**
+	 * Close the spectra parsers, the record pipeline must first be cancelled so 
+	 * that the parsers are no longer used and no more parsers are acquired.
+	 */
+	private void closeSpectraParsers() {
+		List<DAFMappedSpectrumParser> spectraParsers;
+		synchronized(dafSpectraParsers) {
+			spectraParsersClosed = true;
+			spectraParsers = new LinkedList<DAFMappedSpectrumParser>(dafSpectraParsers);
+			dafSpectraParsers.clear();
+			idleSpectraParsers.clear();
+		}
+		for(DAFMappedSpectrumParser spectraParser : spectraParsers) {
+			closeSpectraParser(spectraParser);
+		}
+	}
+	
+	private void closeSpectraParser(DAFMappedSpectrumParser spectraParser) {
+		try {
+			spectraParser.close();
+		}
+		catch(IOException e) {
+			log.warn("Exception while closing spectra parser for file: " + getDafSpectraFile(), e);
+		}
+	}
+	
+	private void processDataRecord(DAFRecord record, long[][] spectra) throws ConverterException {
 		
 		if(dataRecordIndex == 0) {
 			
@@ -306,10 +620,6 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 					desc = dataEventElements.get(getSedElpasedLiveTimeIdx()).getDescription();
 					getAdapter().initSedElapsedLiveTime(name, desc);
 				}
-			
-				if(sedNChannels < 0) {
-					sedNChannels = getSedDefaultNChannels();
-				}
 				
 				name = dataEventElements.get(getSedSpectrumIdx()).getName();
 				desc = dataEventElements.get(getSedSpectrumIdx()).getDescription();
@@ -357,10 +667,6 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 						getAdapter().initFedElapsedLiveTime(i, name, desc);
 					}
 				}
-							
-				if(fedNChannels < 0) {
-					fedNChannels = getFedDefaultNChannels();
-				}
 			
 				if(getFedSumSpectrumIdx() >= 0) {
 					name = dataEventElements.get(getFedSumSpectrumIdx()).getName();
@@ -378,7 +684,12 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 			}
 		}
 		
+		if(dataRecordIndex == 0) {
+			initRegionsOfInterest();
+		}
+		
 		getAdapter().openDataRecord(dataRecordIndex);
+		clearRegionsOfInterest();
 		
 		try {
 			if(dataRecordIndex == 0) {
@@ -543,15 +854,10 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 					getAdapter().recSedElapsedLiveTime(record.getDouble(getSedElpasedLiveTimeIdx()));
 				}
 				
-				long sedSpectrumOffset = record.getLong(getSedSpectrumIdx());
-				DAFSpectrumRecord specRecord = dafSpectraParser.parseRecord(sedSpectrumOffset, sedNChannels);
-				getAdapter().recSedSpectrum(specRecord.getLongArray());
-			}
-			catch(IOException e) {
-				throw new ConverterException("Input error while parsing record from spectra data file.", e);
-			}
-			catch(DataFormatException e) {
-				throw new ConverterException("Data format error while parsing record from spectra file.", e);
+				long[] sedSpectrum = spectra[0];
+				getAdapter().recSedSpectrum(sedSpectrum);
+				integrateRegionsOfInterest(MapXYRegionOfInterest.SUM_ELEMENT, sedSpectrum);
+				integrateRegionsOfInterest(0, sedSpectrum);
 			}
 			catch(RecordFormatException e) {
 				throw new ConverterException("Record exception while getting data from record.", e);
@@ -589,34 +895,31 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 					}
 				}
 			
-				long fedSpecOffset;
-				DAFSpectrumRecord fedSpecRecord;
+				long[] fedSpectrum;
 			
 				if(getFedSumSpectrumIdx() >= 0) {
-					fedSpecOffset = record.getLong(getFedSumSpectrumIdx());
-					fedSpecRecord = dafSpectraParser.parseRecord(fedSpecOffset, fedNChannels);
-					getAdapter().recFedSumSpectrum(fedSpecRecord.getLongArray());
+					fedSpectrum = spectra[0];
+					getAdapter().recFedSumSpectrum(fedSpectrum);
+					integrateRegionsOfInterest(MapXYRegionOfInterest.SUM_ELEMENT, fedSpectrum);
 				}
 				
 				if(allGreaterThanOrEqual(getFedSpectrumIdx(), 0)) {
 					for(int i=0; i<getFedSpectrumIdx().length; i++) {
-						fedSpecOffset = record.getLong(getFedSpectrumIdx()[i]);
-						fedSpecRecord = dafSpectraParser.parseRecord(fedSpecOffset, fedNChannels);
-						getAdapter().recFedSpectrum(i, fedSpecRecord.getLongArray());
+						fedSpectrum = spectra[i+1];
+						getAdapter().recFedSpectrum(i, fedSpectrum);
+						integrateRegionsOfInterest(i, fedSpectrum);
+						if(getFedSumSpectrumIdx() < 0) {
+							integrateRegionsOfInterest(MapXYRegionOfInterest.SUM_ELEMENT, fedSpectrum);
+						}
 					}
 				}
 			}
-			catch(IOException e) {
-				throw new ConverterException("Input error while parsing record from spectra data file.", e);
-			}
-			catch(DataFormatException e) {
-				throw new ConverterException("Data format error while parsing record from spectra file.", e);
-			}
 			catch(RecordFormatException e) {
 				throw new ConverterException("Record exception while getting data from record.", e);
 			}
 		}
 	
+		recRegionsOfInterest();
 		getAdapter().closeDataRecord(dataRecordIndex);
 	}
 	
@@ -630,15 +933,6 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 			
 			if(hasSingleElementDetector()) {
 				
-				if((sedNChannels < 0) && (getSedNChannelsIdx() >= 0)) {
-					try {
-						sedNChannels = record.getInt(getSedNChannelsIdx());
-					}
-					catch (RecordFormatException e) {
-						sedNChannels = getSedDefaultNChannels();
-					}
-				}
-				
 				if(getSedMaxEnergyIdx() >= 0) {
 					try {
 						name = bkgdEventElements.get(getSedMaxEnergyIdx()).getName();
@@ -689,15 +983,6 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 			}
 			else if(hasFourElementDetector()) {
 				
-				if((fedNChannels < 0) && (getFedNChannelsIdx() >= 0)) {
-					try {
-						fedNChannels = record.getInt(getFedNChannelsIdx());
-					}
-					catch (RecordFormatException e) {
-						fedNChannels = getFedDefaultNChannels();
-					}
-				}
-				
 				if(getFedMaxEnergyIdx() >= 0) {
 					try {
 						name = bkgdEventElements.get(getFedMaxEnergyIdx()).getName();
@@ -775,6 +1060,13 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 		}
 	}
 	
+	/**
+	 * @return true if the scan is in progress and the data files should be followed as they are written
+	 */
+	protected boolean isFollowScan() {
+		return followIncompleteScan && (getScanEndDate() == null);
+	}
+	
 	protected boolean hasPositionXY() {
 		return (dafDataFile != null) && (dataEventId >= 0) 
 					&& (posXFeedbackIdx >= 0) && (posYFeedbackIdx >= 0);
@@ -1045,4 +1337,48 @@ public class MapXYVespersFromDAFConverter extends AbstractMapXYVespersConverter
 	public void setCustomRecordParsers(Collection<DAFRecordParser> customRecordParsers) {
 		this.customRecordParsers = customRecordParsers;
 	}
+	
+	public boolean isFollowIncompleteScan() {
+		return followIncompleteScan;
+	}
+	public void setFollowIncompleteScan(boolean followIncompleteScan) {
+		this.followIncompleteScan = followIncompleteScan;
+	}
+	
+	public long getFollowPollInterval() {
+		return followPollInterval;
+	}
+	public void setFollowPollInterval(long followPollInterval) {
+		this.followPollInterval = followPollInterval;
+	}
+	
+	public long getFollowIdleTimeout() {
+		return followIdleTimeout;
+	}
+	public void setFollowIdleTimeout(long followIdleTimeout) {
+		this.followIdleTimeout = followIdleTimeout;
+	}
+	
+	protected class SpectraParserTask implements Callable<long[][]> {
+		
+		private DAFRecord record;
+		private int sedNChannels;
+		private int fedNChannels;
+		
+		public SpectraParserTask(DAFRecord record, int sedNChannels, int fedNChannels) {
+			this.record = record;
+			this.sedNChannels = sedNChannels;
+			this.fedNChannels = fedNChannels;
+		}
+		
+		public long[][] call() throws ConverterException {
+			DAFMappedSpectrumParser spectraParser = acquireSpectraParser();
+			try {
+				return parseSpectra(record, sedNChannels, fedNChannels, spectraParser);
+			}
+			finally {
+				releaseSpectraParser(spectraParser);
+			}
+		}
+	}
 }
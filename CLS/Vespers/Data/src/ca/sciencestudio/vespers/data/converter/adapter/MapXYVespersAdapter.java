@@ -20,6 +20,7 @@ public interface MapXYVespersAdapter {
 
 	public boolean openDestination() throws ConverterException;
 	public void closeDestination() throws ConverterException;
+	public void flushDestination() throws ConverterException;
 	public void deleteDestination() throws ConverterException;
 	
 	// Scan //
@@ -149,4 +150,8 @@ public interface MapXYVespersAdapter {
 	public void recFedElapsedLiveTime(int index, double fedElapsedLiveTime) throws ConverterException; // second //
 	public void recFedSpectrum(int index, long fedSpectrum[]) throws ConverterException;               // count //
 	public void recFedSumSpectrum(long fedSpectrum[]) throws ConverterException;                       // count //
+	
+	// Regions of Interest //
+	public void initRegionOfInterest(int index, String name, String description) throws ConverterException;
+	public void recRegionOfInterest(int index, long counts) throws ConverterException;                 // count //
 }
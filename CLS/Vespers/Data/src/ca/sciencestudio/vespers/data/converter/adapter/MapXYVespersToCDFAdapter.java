@@ -14,17 +14,31 @@ import gsfc.nssdc.cdf.Entry;
 import gsfc.nssdc.cdf.Variable;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import ca.sciencestudio.data.cdf.CDFCompressionSelector;
 import ca.sciencestudio.data.cdf.CDFEvent;
+import ca.sciencestudio.data.cdf.CDFHandleCache;
 import ca.sciencestudio.data.cdf.CDFRecord;
+import ca.sciencestudio.data.cdf.CDFRecordBuffer;
 import ca.sciencestudio.data.cdf.CDFTypesUtility;
+import ca.sciencestudio.data.cdf.MapXYAxisMetadata;
+import ca.sciencestudio.data.cdf.MapXYMapPyramid;
+import ca.sciencestudio.data.cdf.MapXYROIMaps;
+import ca.sciencestudio.data.cdf.MapXYSpectrumStore;
+import ca.sciencestudio.data.cdf.MapXYSpectrumStoreWriter;
 import ca.sciencestudio.data.standard.StdCategories;
 import ca.sciencestudio.data.standard.StdUnits;
 import ca.sciencestudio.data.support.ConverterException;
@@ -39,6 +53,8 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 
 	public static final long DEFAULT_CDF_SPECTRUM_COMPRESSION_LEVEL = 6;
 	
+	public static final long DEFAULT_CDF_SNAPSHOT_INTERVAL = 5000L;
+	
 	private static final long[] EMPTY_LONG_ARRAY = new long[0];
 	
 	private static final long CDF_MAX_COMPRESSION_LEVEL = 9;
@@ -50,10 +66,19 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 	private File cdfDataFile = null;
 	private boolean forceUpdate = false;
 	private long[] cdfSpectrumCompressionLevel = new long[] { DEFAULT_CDF_SPECTRUM_COMPRESSION_LEVEL };
+	private int cdfMaximumBufferedRecords = CDFRecordBuffer.DEFAULT_MAXIMUM_RECORDS;
+	private boolean cdfSpectrumCompressionAdaptive = false;
+	private int cdfSpectrumCompressionSamples = CDFCompressionSelector.DEFAULT_NUMBER_OF_SAMPLES;
+	private Executor pyramidExecutor = null;
+	private CDFHandleCache cdfHandleCache = CDFHandleCache.getDefaultCache();
+	private long cdfSnapshotInterval = DEFAULT_CDF_SNAPSHOT_INTERVAL;
 	//////////////////////////////////////////////////////////
 	
 	private CDF cdf;
 	
+	private long cdfSnapshotTime = 0L;
+	private int cdfSnapshotNumberOfPoints = 0;
+	
 	private int catRegEntryId = 0;
 	private Attribute catRegAttribute = null;
 	
@@ -98,6 +123,27 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 	private Variable  mapXYPointY = null;
 	private Variable  mapXYPositionY = null;
 	
+	private int mapXYNumberOfPoints = 0;
+	private Set<Integer> mapXYIndexesI = new TreeSet<Integer>();
+	private Set<Integer> mapXYIndexesJ = new TreeSet<Integer>();
+	
+	private int mapXYCurrentI = 0;
+	private int mapXYCurrentJ = 0;
+	
+	private MapXYSpectrumStoreWriter spectrumStoreWriter = null;
+	private boolean spectrumStoreFailed = false;
+	private String storeSpectrumVarName = null;
+	private long[] storeSpectrum = null;
+	
+	private List<String> roiNames = new ArrayList<String>();
+	private long[] roiCounts = new long[0];
+	private int roiNumberOfPoints = 0;
+	private int[] roiPointsI = new int[0];
+	private int[] roiPointsJ = new int[0];
+	private long[][] roiValues = new long[0][];
+	
+	private volatile boolean destinationDeleted = false;
+	
 	private Attribute beamIName = null;
 	private Attribute beamIDesc = null;
 	private Attribute beamIUnit = null;
@@ -126,6 +172,8 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 	
 	//private CDFEvent cdfEvent = null;
 	private CDFRecord cdfRecord = null;
+	private CDFRecordBuffer cdfRecordBuffer = null;
+	private CDFCompressionSelector spectrumCompressionSelector = null;
 	
 	protected Log log = LogFactory.getLog(getClass());
 	
@@ -159,7 +207,9 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 			
 			if(cdfDelete) {
 				log.debug("Attempt to delete existing CDF data file.");
+				cdfHandleCache.beginWrite(cdfDataFile);
 				if (!cdfDataFile.delete()) {
+					cdfHandleCache.endWrite(cdfDataFile);
 					throw new ConverterException("Unable to remove existing CDF file.");
 				}
 			}
@@ -168,10 +218,13 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 			}
 		}
 		
+		// The CDF file is not opened for reading until the conversion is complete, only its snapshots. //
+		cdfHandleCache.beginWrite(cdfDataFile);
 		try {
 			cdf = CDF.create(cdfDataFile.getAbsolutePath());
 		}
 		catch(CDFException e) {
+			cdfHandleCache.endWrite(cdfDataFile);
 			throw new ConverterException("Exception while creating CDF file: " + cdfDataFile, e);
 		}
 		
@@ -205,14 +258,358 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 	public void closeDestination() throws ConverterException {
 		if(cdf != null) {
 			try {
-				cdf.close();
-				cdf = null;
+				try {
+					flushRecordBuffer();
+				}
+				finally {
+					closeCDF();
+				}
+				saveMapXYAxisMetadata(cdfDataFile);
+				MapXYROIMaps roiMaps = saveRegionOfInterestMaps();
+				closeSpectrumStore();
+				buildMapPyramid(roiMaps);
+			}
+			finally {
+				cdfHandleCache.endWrite(cdfDataFile);
+				deleteSnapshotMetadata();
+			}
+		}
+	}
+	
+	/**
+	 * Close the CDF file, also when the buffered records could not be written.
+	 */
+	protected void closeCDF() {
+		try {
+			cdf.close();
+		}
+		catch(CDFException e) {
+			log.warn("Error while closing CDF file.", e);
+		}
+		finally {
+			cdf = null;
+		}
+	}
+	
+	/**
+	 * Save the records recorded so far to the CDF file while the conversion continues (for example
+	 * while a scan is in progress), and publish a snapshot of it to be read until it is closed.
+	 */
+	@Override
+	public void flushDestination() throws ConverterException {
+		if(cdf != null) {
+			flushRecordBuffer();
+			try {
+				cdf.save();
+			}
+			catch(CDFException e) {
+				throw new ConverterException("Error while saving CDF file: " + cdfDataFile, e);
+			}
+			publishSnapshot();
+		}
+	}
+	
+	/**
+	 * Publish a snapshot of the saved CDF file, with its map axis metadata. A snapshot is published
+	 * only if points have been added, and at most once per snapshot interval as the file is copied.
+	 */
+	protected void publishSnapshot() {
+		long now = System.currentTimeMillis();
+		if((mapXYNumberOfPoints == cdfSnapshotNumberOfPoints) || ((now - cdfSnapshotTime) < cdfSnapshotInterval)) {
+			return;
+		}
+		
+		File snapshotFile;
+		try {
+			snapshotFile = cdfHandleCache.publishSnapshot(cdfDataFile);
+		}
+		catch(IOException e) {
+			log.warn("Error while publishing snapshot of CDF file: " + cdfDataFile, e);
+			return;
+		}
+		
+		cdfSnapshotTime = now;
+		cdfSnapshotNumberOfPoints = mapXYNumberOfPoints;
+		saveMapXYAxisMetadata(snapshotFile);
+	}
+	
+	protected void deleteSnapshotMetadata() {
+		File metadataFile = MapXYAxisMetadata.getMetadataFile(CDFHandleCache.getSnapshotFile(cdfDataFile));
+		if(metadataFile.exists() && !metadataFile.delete()) {
+			log.warn("Error while deleting snapshot map axis metadata file.");
+		}
+	}
+	
+	/**
+	 * Write the buffered data records to the CDF file.
+	 */
+	protected void flushRecordBuffer() throws ConverterException {
+		selectSpectrumCompression();
+		if(cdfRecordBuffer != null) {
+			try {
+				cdfRecordBuffer.flush();
 			}
 			catch(CDFException e) {
-				log.warn("Error while closing CDF file.", e);
+				throw new ConverterException("Error while adding data records to CDF file.", e);
 			}
 		}
 	}
+	
+	/**
+	 * Set the compression of the spectrum variable, if adaptive then compression is 
+	 * set when selected from the first spectra, before the first record is written.
+	 */
+	protected void initSpectrumCompression(Variable v) throws ConverterException {
+		if(cdfSpectrumCompressionAdaptive) {
+			if(spectrumCompressionSelector == null) {
+				spectrumCompressionSelector = new CDFCompressionSelector(cdfSpectrumCompressionSamples);
+			}
+		}
+		else {
+			setSpectrumCompression(v, cdfSpectrumCompressionLevel[0]);
+		}
+	}
+	
+	protected void setSpectrumCompression(Variable v, long level) throws ConverterException {
+		if(level > CDF_MIN_COMPRESSION_LEVEL) {
+			try {
+				v.setCompression(CDF.GZIP_COMPRESSION, new long[] { level });
+			}
+			catch(CDFException e) {
+				throw new ConverterException("CDF Set Variable Compression: Level: " + level, e);
+			}
+		}
+	}
+	
+	protected void sampleSpectrum(long[] spectrum) {
+		if(spectrumCompressionSelector != null) {
+			spectrumCompressionSelector.addSample(spectrum);
+		}
+	}
+	
+	/**
+	 * Select the compression level from the sampled spectra and set it for all spectrum variables.
+	 */
+	protected void selectSpectrumCompression() throws ConverterException {
+		if(spectrumCompressionSelector == null) {
+			return;
+		}
+		
+		CDFCompressionSelector selector = spectrumCompressionSelector;
+		spectrumCompressionSelector = null;
+		
+		long level = selector.selectLevel(cdfSpectrumCompressionLevel[0]);
+		if(log.isDebugEnabled()) {
+			log.debug("Spectrum compression level: " + level + ", selected from " + selector.getSamplesCount() + " spectra, sizes: " + 
+					Arrays.toString(selector.getCompressedSizes()) + " of " + selector.getSamplesLength() + " bytes.");
+		}
+		
+		for(Variable v : mcaSpectrum) {
+			if(v != null) {
+				setSpectrumCompression(v, level);
+			}
+		}
+		
+		if(mcaSumSpectrum != null) {
+			setSpectrumCompression(mcaSumSpectrum, level);
+		}
+	}
+	
+	/**
+	 * Write the spectrum of the current point to the spectrum store, the store is
+	 * created with the first spectrum and its blocks are always compressed, since
+	 * spectra are mostly zero counts and inflating one block is cheap. Failure to write the store is logged and the
+	 * store is discarded, the spectra remain available from the CDF file.
+	 */
+	protected void writeStoreSpectrum() {
+		if((storeSpectrum == null) || spectrumStoreFailed || (mapXYPointX == null) || (mapXYPointY == null)) {
+			return;
+		}
+		
+		try {
+			if(spectrumStoreWriter == null) {
+				File storeFile = MapXYSpectrumStore.getStoreFile(cdfDataFile);
+				// Always compressed, the store is created before any adaptive compression level is selected. //
+				spectrumStoreWriter = new MapXYSpectrumStoreWriter(storeFile, storeSpectrumVarName, storeSpectrum.length, true);
+			}
+			spectrumStoreWriter.writeSpectrum(mapXYCurrentI, mapXYCurrentJ, storeSpectrum);
+		}
+		catch(IOException e) {
+			log.warn("Error while writing spectrum store, spectrum store discarded.", e);
+			spectrumStoreFailed = true;
+			deleteSpectrumStore();
+		}
+		finally {
+			storeSpectrum = null;
+		}
+	}
+	
+	protected void closeSpectrumStore() {
+		if(spectrumStoreWriter != null) {
+			try {
+				spectrumStoreWriter.close(cdfDataFile);
+			}
+			catch(IOException e) {
+				log.warn("Error while closing spectrum store file: " + spectrumStoreWriter.getStoreFile(), e);
+			}
+			spectrumStoreWriter = null;
+		}
+	}
+	
+	protected void deleteSpectrumStore() {
+		if(spectrumStoreWriter != null) {
+			spectrumStoreWriter.delete();
+			spectrumStoreWriter = null;
+		}
+		File storeFile = MapXYSpectrumStore.getStoreFile(cdfDataFile);
+		if(storeFile.exists() && !storeFile.delete()) {
+			log.warn("Error while deleting spectrum store file.");
+		}
+	}
+	
+	/**
+	 * Save the map axis metadata collected from the data records, so that it
+	 * need not be built from the CDF file (or snapshot) when first requested.
+	 */
+	protected void saveMapXYAxisMetadata(File cdfFile) {
+		if((mapXYPointX == null) || (mapXYPointY == null)) {
+			return;
+		}
+		
+		MapXYAxisMetadata metadata = new MapXYAxisMetadata(cdfFile.length(), cdfFile.lastModified(),
+				mapXYNumberOfPoints, toIntArray(mapXYIndexesI), toIntArray(mapXYIndexesJ));
+		
+		File metadataFile = MapXYAxisMetadata.getMetadataFile(cdfFile);
+		try {
+			metadata.save(metadataFile);
+		}
+		catch(IOException e) {
+			log.warn("Error while saving map axis metadata file: " + metadataFile, e);
+		}
+	}
+	
+	/**
+	 * Save the region of interest maps, the integrated counts recorded for each point.
+	 * 
+	 * @return the maps or null if there are no regions of interest or the maps cannot be created
+	 */
+	protected MapXYROIMaps saveRegionOfInterestMaps() {
+		if(roiNames.isEmpty() || (roiNumberOfPoints == 0)) {
+			return null;
+		}
+		
+		String[] names = roiNames.toArray(new String[roiNames.size()]);
+		MapXYROIMaps roiMaps;
+		try {
+			roiMaps = MapXYROIMaps.create(cdfDataFile.length(), cdfDataFile.lastModified(),
+					names, roiPointsI, roiPointsJ, roiValues, roiNumberOfPoints);
+		}
+		catch(IOException e) {
+			log.warn("Error while creating ROI maps.", e);
+			return null;
+		}
+		
+		File mapsFile = MapXYROIMaps.getMapsFile(cdfDataFile);
+		try {
+			roiMaps.save(mapsFile);
+		}
+		catch(IOException e) {
+			log.warn("Error while saving ROI maps file: " + mapsFile, e);
+		}
+		return roiMaps;
+	}
+	
+	/**
+	 * Build the map pyramid (downsampled maps and tile spectra) from the spectrum
+	 * store, which must be closed, and the region of interest maps. With a pyramid
+	 * executor the pyramid is built in the background, so the conversion does not
+	 * wait for it, otherwise it is built before returning.
+	 */
+	protected void buildMapPyramid(final MapXYROIMaps roiMaps) {
+		if(pyramidExecutor != null) {
+			try {
+				pyramidExecutor.execute(new Runnable() {
+					public void run() {
+						buildMapPyramidNow(roiMaps);
+					}
+				});
+				return;
+			}
+			catch(RejectedExecutionException e) {
+				log.warn("Map pyramid build rejected by executor, building before conversion completes.", e);
+			}
+		}
+		buildMapPyramidNow(roiMaps);
+	}
+	
+	protected void buildMapPyramidNow(MapXYROIMaps roiMaps) {
+		if(destinationDeleted) {
+			return;
+		}
+		
+		MapXYSpectrumStore spectrumStore = MapXYSpectrumStore.open(cdfDataFile);
+		if(spectrumStore == null) {
+			return;
+		}
+		
+		try {
+			MapXYMapPyramid.build(cdfDataFile, spectrumStore, roiMaps, MapXYMapPyramid.DEFAULT_FACTORS);
+		}
+		catch(IOException e) {
+			log.warn("Error while building map pyramid file: " + MapXYMapPyramid.getPyramidFile(cdfDataFile), e);
+		}
+		finally {
+			spectrumStore.close();
+		}
+		
+		// The destination may have been deleted while the pyramid was built. //
+		if(destinationDeleted) {
+			deleteMapPyramid();
+		}
+	}
+	
+	protected void deleteMapPyramid() {
+		File pyramidFile = MapXYMapPyramid.getPyramidFile(cdfDataFile);
+		if(pyramidFile.exists() && !pyramidFile.delete()) {
+			log.warn("Error while deleting map pyramid file.");
+		}
+	}
+	
+	/**
+	 * Add the integrated counts of the current point, which are then cleared for the next point.
+	 */
+	protected void addRegionOfInterestPoint() {
+		if(roiNames.isEmpty() || (mapXYPointX == null) || (mapXYPointY == null)) {
+			return;
+		}
+		
+		if(roiNumberOfPoints == roiPointsI.length) {
+			int capacity = Math.max(roiNumberOfPoints * 2, 1024);
+			roiPointsI = Arrays.copyOf(roiPointsI, capacity);
+			roiPointsJ = Arrays.copyOf(roiPointsJ, capacity);
+			roiValues = Arrays.copyOf(roiValues, roiCounts.length);
+			for(int roi = 0; roi < roiCounts.length; roi++) {
+				roiValues[roi] = (roiValues[roi] == null) ? new long[capacity] : Arrays.copyOf(roiValues[roi], capacity);
+			}
+		}
+		
+		roiPointsI[roiNumberOfPoints] = mapXYCurrentI;
+		roiPointsJ[roiNumberOfPoints] = mapXYCurrentJ;
+		for(int roi = 0; roi < roiCounts.length; roi++) {
+			roiValues[roi][roiNumberOfPoints] = roiCounts[roi];
+			roiCounts[roi] = 0L;
+		}
+		roiNumberOfPoints++;
+	}
+	
+	protected int[] toIntArray(Set<Integer> values) {
+		int[] array = new int[values.size()];
+		int idx = 0;
+		for(int value : values) {
+			array[idx++] = value;
+		}
+		return array;
+	}
 
 	@Override
 	public void deleteDestination() throws ConverterException {
@@ -220,9 +617,22 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 			closeDestination();
 		}
 		finally {
+			destinationDeleted = true;
 			if(cdfDataFile.exists() && !cdfDataFile.delete()) {
 				log.warn("Error while deleting CDF file.");
 			}
+			File metadataFile = MapXYAxisMetadata.getMetadataFile(cdfDataFile);
+			if(metadataFile.exists() && !metadataFile.delete()) {
+				log.warn("Error while deleting map axis metadata file.");
+			}
+			deleteSpectrumStore();
+			File mapsFile = MapXYROIMaps.getMapsFile(cdfDataFile);
+			if(mapsFile.exists() && !mapsFile.delete()) {
+				log.warn("Error while deleting ROI maps file.");
+			}
+			deleteMapPyramid();
+			cdfHandleCache.endWrite(cdfDataFile);
+			deleteSnapshotMetadata();
 		}
 	}	
 	
@@ -456,13 +866,21 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 			}
 		
 			cdfRecord = new CDFRecord(new CDFEvent(cdfVariables));
+			cdfRecordBuffer = new CDFRecordBuffer(cdfRecord.getEvent(), cdfMaximumBufferedRecords);
 		}
 	}
 		
 	@Override
 	public void closeDataRecord(int dataRecordIndex) throws ConverterException {
 		try {
-			cdf.putRecord(dataRecordIndex, cdfRecord.getEvent().getVariableIDs(), cdfRecord.getCDFValues());
+			if((spectrumCompressionSelector != null) && (spectrumCompressionSelector.isComplete() ||
+					cdfRecordBuffer.isFlushRequired(dataRecordIndex))) {
+				selectSpectrumCompression();
+			}
+			cdfRecordBuffer.putRecord(dataRecordIndex, cdfRecord);
+			mapXYNumberOfPoints = Math.max(mapXYNumberOfPoints, dataRecordIndex + 1);
+			writeStoreSpectrum();
+			addRegionOfInterestPoint();
 		}
 		catch(CDFException e) {
 			throw new ConverterException("Error while adding data record to CDF file.", e);
@@ -570,6 +988,8 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 		if(mapXYPointX != null) {
 			try {
 				cdfRecord.setValueByName(MapXY11.I(), pointX);
+				mapXYIndexesI.add(pointX);
+				mapXYCurrentI = pointX;
 			}
 			catch(RecordFormatException e) {
 				throw new ConverterException(e);
@@ -687,6 +1107,8 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 		if(mapXYPointY != null) {
 			try {
 				cdfRecord.setValueByName(MapXY11.J(), pointY);
+				mapXYIndexesJ.add(pointY);
+				mapXYCurrentJ = pointY;
 			}
 			catch(RecordFormatException e) {
 				throw new ConverterException(e);
@@ -911,14 +1333,7 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 		if(mcaSpectrum[0] == null) {
 			Variable v = createCdfVariable(MCA10.Spectrum(0), CDF.CDF_UINT4, 1, 1, new long[] { nChannels });
 			createMCAVarAttributes();
-			if(cdfSpectrumCompressionLevel[0] > CDF_MIN_COMPRESSION_LEVEL) {
-				try {
-					v.setCompression(CDF.GZIP_COMPRESSION, cdfSpectrumCompressionLevel);
-				}
-				catch(CDFException e) {
-					throw new ConverterException("CDF Set Variable Compression: Level: " + cdfSpectrumCompressionLevel, e);
-				}
-			}
+			initSpectrumCompression(v);
 			if(name != null) {
 				createCdfEntry(mcaName, v, CDF.CDF_CHAR, name);
 			}
@@ -1000,6 +1415,11 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 				long tempSedSpectrum[] = new long[nChannels];
 				System.arraycopy(sedSpectrum, 0, tempSedSpectrum, 0, nChannels);
 				cdfRecord.setValueByName(MCA10.Spectrum(0), sedSpectrum);
+				sampleSpectrum(sedSpectrum);
+				if(mcaSumSpectrum == null) {
+					storeSpectrumVarName = MCA10.Spectrum(0);
+					storeSpectrum = tempSedSpectrum;
+				}
 			}
 			catch(RecordFormatException e) {
 				throw new ConverterException(e);
@@ -1103,14 +1523,7 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 		if(mcaSpectrum[index] == null) {
 			Variable v = createCdfVariable(MCA10.Spectrum(index), CDF.CDF_UINT4, 1, 1, new long[] { nChannels });
 			createMCAVarAttributes();
-			if(cdfSpectrumCompressionLevel[0] > CDF_MIN_COMPRESSION_LEVEL) {
-				try {
-					v.setCompression(CDF.GZIP_COMPRESSION, cdfSpectrumCompressionLevel);
-				}
-				catch(CDFException e) {
-					throw new ConverterException("CDF Set Variable Compression: Level: " + cdfSpectrumCompressionLevel, e);
-				}
-			}
+			initSpectrumCompression(v);
 			if(name != null) {
 				createCdfEntry(mcaName, v, CDF.CDF_CHAR, name);
 			}
@@ -1128,14 +1541,7 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 		if(mcaSumSpectrum == null) {
 			Variable v = createCdfVariable(MCA10.SumSpectrum(), CDF.CDF_UINT4, 1, 1, new long[] { nChannels });
 			createMCAVarAttributesWithCrts();
-			if(cdfSpectrumCompressionLevel[0] > CDF_MIN_COMPRESSION_LEVEL) {
-				try {
-					v.setCompression(CDF.GZIP_COMPRESSION, cdfSpectrumCompressionLevel);
-				}
-				catch(CDFException e) {
-					throw new ConverterException("CDF Set Variable Compression: Level: " + cdfSpectrumCompressionLevel, e);
-				}
-			}
+			initSpectrumCompression(v);
 			createCdfEntry(mcaCrts, v, CDF.CDF_CHAR, MCA10.DeadTimeCorrection);
 			if(name != null) {
 				createCdfEntry(mcaName, v, CDF.CDF_CHAR, name);
@@ -1218,6 +1624,7 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 				long tempFedSpectrum[] = new long[nChannels];
 				System.arraycopy(fedSpectrum, 0, tempFedSpectrum, 0, nChannels);
 				cdfRecord.setValueByName(MCA10.Spectrum(index), tempFedSpectrum);
+				sampleSpectrum(tempFedSpectrum);
 			}
 			catch(RecordFormatException e) {
 				throw new ConverterException(e);
@@ -1234,12 +1641,36 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 				long tempFedSpectrum[] = new long[nChannels];
 				System.arraycopy(fedSpectrum, 0, tempFedSpectrum, 0, nChannels);
 				cdfRecord.setValueByName(MCA10.SumSpectrum(), tempFedSpectrum);
+				sampleSpectrum(tempFedSpectrum);
+				storeSpectrumVarName = MCA10.SumSpectrum();
+				storeSpectrum = tempFedSpectrum;
 			}
 			catch(RecordFormatException e) {
 				throw new ConverterException(e);
 			}
 		}
 	}
+	
+	@Override
+	public void initRegionOfInterest(int index, String name, String description) throws ConverterException {
+		if(roiNumberOfPoints > 0) {
+			throw new ConverterException("Region of interest must be initialized before the first data record is closed.");
+		}
+		while(roiNames.size() <= index) {
+			roiNames.add("ROI" + roiNames.size());
+		}
+		if(name != null) {
+			roiNames.set(index, name);
+		}
+		roiCounts = Arrays.copyOf(roiCounts, roiNames.size());
+	}
+	
+	@Override
+	public void recRegionOfInterest(int index, long counts) throws ConverterException {
+		if(index < roiCounts.length) {
+			roiCounts[index] = counts;
+		}
+	}
 		
 	@Override
 	public void initSedMaxEnergy(String name, String description) throws ConverterException {
@@ -1484,4 +1915,46 @@ public class MapXYVespersToCDFAdapter implements MapXYVespersAdapter, StdCategor
 		this.cdfSpectrumCompressionLevel[0] = Math.min(Math.max(cdfSpectrumCompressionLevel, 
 												CDF_MIN_COMPRESSION_LEVEL), CDF_MAX_COMPRESSION_LEVEL);
 	}
+	
+	public int getCdfMaximumBufferedRecords() {
+		return cdfMaximumBufferedRecords;
+	}
+	public void setCdfMaximumBufferedRecords(int cdfMaximumBufferedRecords) {
+		this.cdfMaximumBufferedRecords = cdfMaximumBufferedRecords;
+	}
+	
+	public boolean isCdfSpectrumCompressionAdaptive() {
+		return cdfSpectrumCompressionAdaptive;
+	}
+	public void setCdfSpectrumCompressionAdaptive(boolean cdfSpectrumCompressionAdaptive) {
+		this.cdfSpectrumCompressionAdaptive = cdfSpectrumCompressionAdaptive;
+	}
+	
+	public int getCdfSpectrumCompressionSamples() {
+		return cdfSpectrumCompressionSamples;
+	}
+	public void setCdfSpectrumCompressionSamples(int cdfSpectrumCompressionSamples) {
+		this.cdfSpectrumCompressionSamples = cdfSpectrumCompressionSamples;
+	}
+	
+	public Executor getPyramidExecutor() {
+		return pyramidExecutor;
+	}
+	public void setPyramidExecutor(Executor pyramidExecutor) {
+		this.pyramidExecutor = pyramidExecutor;
+	}
+
+	public CDFHandleCache getCdfHandleCache() {
+		return cdfHandleCache;
+	}
+	public void setCdfHandleCache(CDFHandleCache cdfHandleCache) {
+		this.cdfHandleCache = cdfHandleCache;
+	}
+
+	public long getCdfSnapshotInterval() {
+		return cdfSnapshotInterval;
+	}
+	public void setCdfSnapshotInterval(long cdfSnapshotInterval) {
+		this.cdfSnapshotInterval = cdfSnapshotInterval;
+	}
 }
@@ -8,7 +8,10 @@
 package ca.sciencestudio.vespers.data.converter.adapter.factory;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 
+import ca.sciencestudio.data.cdf.CDFCompressionSelector;
+import ca.sciencestudio.data.cdf.CDFRecordBuffer;
 import ca.sciencestudio.data.converter.ConverterMap;
 import ca.sciencestudio.data.standard.StdConverter;
 import ca.sciencestudio.data.support.ConverterFactoryException;
@@ -28,6 +31,11 @@ public class MapXYVespersToCDFAdapterFactory implements MapXYVespersAdapterFacto
 //	private static final Pattern CDF_DATA_FILE_NAME_PATTERN = Pattern.compile(CDF_DATA_FILE_NAME_REGEX, Pattern.CASE_INSENSITIVE);
 	
 	private long cdfSpectrumCompressionLevel = MapXYVespersToCDFAdapter.DEFAULT_CDF_SPECTRUM_COMPRESSION_LEVEL;
+	private int cdfMaximumBufferedRecords = CDFRecordBuffer.DEFAULT_MAXIMUM_RECORDS;
+	private boolean cdfSpectrumCompressionAdaptive = false;
+	private int cdfSpectrumCompressionSamples = CDFCompressionSelector.DEFAULT_NUMBER_OF_SAMPLES;
+	private Executor pyramidExecutor = null;
+	private long cdfSnapshotInterval = MapXYVespersToCDFAdapter.DEFAULT_CDF_SNAPSHOT_INTERVAL;
 
 	@Override
 	public boolean supports(ConverterMap request) {
@@ -40,6 +48,11 @@ public class MapXYVespersToCDFAdapterFactory implements MapXYVespersAdapterFacto
 		MapXYVespersToCDFAdapter adapter = new MapXYVespersToCDFAdapter();
 		
 		adapter.setCdfSpectrumCompressionLevel(cdfSpectrumCompressionLevel);
+		adapter.setCdfMaximumBufferedRecords(cdfMaximumBufferedRecords);
+		adapter.setCdfSpectrumCompressionAdaptive(cdfSpectrumCompressionAdaptive);
+		adapter.setCdfSpectrumCompressionSamples(cdfSpectrumCompressionSamples);
+		adapter.setPyramidExecutor(pyramidExecutor);
+		adapter.setCdfSnapshotInterval(cdfSnapshotInterval);
 		adapter.setForceUpdate(request.isForceUpdate());
 		
 		// Output CDF Data File  //
@@ -76,4 +89,24 @@ public class MapXYVespersToCDFAdapterFactory implements MapXYVespersAdapterFacto
 	public void setCdfSpectrumCompressionLevel(long cdfSpectrumCompressionLevel) {
 		this.cdfSpectrumCompressionLevel = cdfSpectrumCompressionLevel;
 	}
+
+	public void setCdfMaximumBufferedRecords(int cdfMaximumBufferedRecords) {
+		this.cdfMaximumBufferedRecords = cdfMaximumBufferedRecords;
+	}
+
+	public void setCdfSpectrumCompressionAdaptive(boolean cdfSpectrumCompressionAdaptive) {
+		this.cdfSpectrumCompressionAdaptive = cdfSpectrumCompressionAdaptive;
+	}
+
+	public void setCdfSpectrumCompressionSamples(int cdfSpectrumCompressionSamples) {
+		this.cdfSpectrumCompressionSamples = cdfSpectrumCompressionSamples;
+	}
+
+	public void setPyramidExecutor(Executor pyramidExecutor) {
+		this.pyramidExecutor = pyramidExecutor;
+	}
+
+	public void setCdfSnapshotInterval(long cdfSnapshotInterval) {
+		this.cdfSnapshotInterval = cdfSnapshotInterval;
+	}
 }
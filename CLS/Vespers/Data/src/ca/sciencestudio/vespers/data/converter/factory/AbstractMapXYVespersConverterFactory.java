@@ -9,10 +9,14 @@ package ca.sciencestudio.vespers.data.converter.factory;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import ca.sciencestudio.data.converter.ConverterMap;
 import ca.sciencestudio.data.support.ConverterFactoryException;
 import ca.sciencestudio.vespers.data.converter.AbstractMapXYVespersConverter;
+import ca.sciencestudio.vespers.data.converter.MapXYRecordPipeline;
+import ca.sciencestudio.vespers.data.converter.MapXYRegionOfInterest;
 import ca.sciencestudio.vespers.data.converter.adapter.factory.MapXYVespersAdapterFactory;
 
 /**
@@ -22,6 +26,10 @@ import ca.sciencestudio.vespers.data.converter.adapter.factory.MapXYVespersAdapt
 public abstract class AbstractMapXYVespersConverterFactory extends AbstractMapVespersConverterFactory {
 
 	private Collection<MapXYVespersAdapterFactory> adapterFactories = Collections.emptyList();
+	private List<MapXYRegionOfInterest> regionsOfInterest = Collections.emptyList();
+	
+	private Executor executor = null;
+	private int maximumPendingRecords = MapXYRecordPipeline.DEFAULT_MAXIMUM_PENDING_RECORDS;
 
 	protected boolean adapterSupports(ConverterMap request) {
 		for(MapXYVespersAdapterFactory af : adapterFactories) {
@@ -33,6 +41,9 @@ public abstract class AbstractMapXYVespersConverterFactory extends AbstractMapVe
 	}
 	
 	protected void prepareAdapter(AbstractMapXYVespersConverter converter, ConverterMap request) throws ConverterFactoryException {
+		converter.setRegionsOfInterest(regionsOfInterest);
+		converter.setExecutor(executor);
+		converter.setMaximumPendingRecords(maximumPendingRecords);
 		for(MapXYVespersAdapterFactory af : adapterFactories) {
 			if(af.supports(request)) {
 				converter.setAdapter(af.getAdapter(request));
@@ -45,4 +56,16 @@ public abstract class AbstractMapXYVespersConverterFactory extends AbstractMapVe
 	public void setAdapterFactories(Collection<MapXYVespersAdapterFactory> adapterFactories) {
 		this.adapterFactories = adapterFactories;
 	}
+
+	public void setRegionsOfInterest(List<MapXYRegionOfInterest> regionsOfInterest) {
+		this.regionsOfInterest = regionsOfInterest;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public void setMaximumPendingRecords(int maximumPendingRecords) {
+		this.maximumPendingRecords = maximumPendingRecords;
+	}
 }
@@ -98,6 +98,10 @@ public class MapXYVespersFromAMFConverterFactory extends AbstractMapXYVespersCon
 		String fromFormat = request.getFromFormat();
 		String toFormat = request.getToFormat();
 		
+		// The AM data files of a scan in progress can not be followed. //
+		if(isIncompleteScan(request)) {
+			throw new ConverterFactoryException("Scan is incomplete, the AM data file can not be followed.");
+		}
 		
 		File amfDataFile = (File)request.get(REQUEST_KEY_DATA_FILE);
 		if(!amfDataFile.exists()) {
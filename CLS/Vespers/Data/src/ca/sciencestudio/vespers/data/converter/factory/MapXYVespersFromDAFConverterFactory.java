@@ -8,6 +8,7 @@
 package ca.sciencestudio.vespers.data.converter.factory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
 import java.util.Collection;
@@ -19,6 +20,7 @@ import ca.sciencestudio.data.daf.DAFDataParser;
 import ca.sciencestudio.data.daf.DAFEvent;
 import ca.sciencestudio.data.daf.DAFEventElementOptions;
 import ca.sciencestudio.data.daf.DAFRecordParser;
+import ca.sciencestudio.data.daf.DAFTailReader;
 import ca.sciencestudio.data.support.ConverterException;
 import ca.sciencestudio.data.support.ConverterFactoryException;
 import ca.sciencestudio.vespers.data.converter.MapXYVespersFromDAFConverter;
@@ -78,6 +80,11 @@ public class MapXYVespersFromDAFConverterFactory extends AbstractMapXYVespersCon
 	
 	private Collection<DAFRecordParser> customRecordParsers;
 	
+	// Parameters for following the data files of a scan in progress. //
+	private boolean followIncompleteScan = false;
+	private long followPollInterval = DAFTailReader.DEFAULT_POLL_INTERVAL;
+	private long followIdleTimeout = DAFTailReader.DEFAULT_IDLE_TIMEOUT;
+	
 	@Override
 	public Converter getConverter(ConverterMap request) throws ConverterFactoryException {
 		
@@ -97,13 +104,38 @@ public class MapXYVespersFromDAFConverterFactory extends AbstractMapXYVespersCon
 			throw new ConverterFactoryException("The required DAF spectra file not found here: " + dafSpectraFile);
 		}
 		
+		// Only scans which are complete are converted, unless the data files can be followed. //
+		boolean incompleteScan = isIncompleteScan(request);
+		if(incompleteScan && !followIncompleteScan) {
+			throw new ConverterFactoryException("Scan is incomplete, following the DAF data file is not enabled.");
+		}
+		
 		DAFDataParser dafDataParser;
+		DAFTailReader dafTailReader = null;
 		try {
-			dafDataParser = new DAFDataParser(dafDataFile, customRecordParsers);
+			if(incompleteScan) {
+				// The header of the data file may not yet be complete. //
+				dafTailReader = new DAFTailReader(dafDataFile, followPollInterval, followIdleTimeout);
+				dafDataParser = new DAFDataParser(dafTailReader, customRecordParsers);
+			}
+			else {
+				dafDataParser = new DAFDataParser(dafDataFile, customRecordParsers);
+			}
 		}
 		catch(Exception e) {
 			throw new ConverterFactoryException("Exception while creating data parser for file: " + dafDataFile, e);
 		}
+		finally {
+			// Only the events of the header are used. //
+			if(dafTailReader != null) {
+				try {
+					dafTailReader.close();
+				}
+				catch(IOException e) {
+					// ignore //
+				}
+			}
+		}
 		
 		MapXYDAFEventsHelper eventsHelper = new MapXYDAFEventsHelper(dafDataParser);
 		
@@ -134,8 +166,12 @@ public class MapXYVespersFromDAFConverterFactory extends AbstractMapXYVespersCon
 		}
 		
 		converter.setCustomRecordParsers(customRecordParsers);
+		converter.setFollowIncompleteScan(followIncompleteScan);
+		converter.setFollowPollInterval(followPollInterval);
+		converter.setFollowIdleTimeout(followIdleTimeout);
 		converter.setScanName((String)request.get(REQUEST_KEY_SCAN_NAME));
-		converter.setScanEndDate((Date)request.get(REQUEST_KEY_SCAN_END_DATE));
+		// The converter follows the data files of a scan without an end date. //
+		converter.setScanEndDate(incompleteScan ? null : (Date)request.get(REQUEST_KEY_SCAN_END_DATE));
 		converter.setScanStartDate((Date)request.get(REQUEST_KEY_SCAN_START_DATE));
 		converter.setScanParams((Parameters)request.get(REQUEST_KEY_SCAN_PARAMS));
 		converter.setSampleName((String)request.get(REQUEST_KEY_SAMPLE_NAME));
@@ -504,4 +540,16 @@ public class MapXYVespersFromDAFConverterFactory extends AbstractMapXYVespersCon
 	public void setCustomRecordParsers(Collection<DAFRecordParser> customRecordParsers) {
 		this.customRecordParsers = customRecordParsers;
 	}
+
+	public void setFollowIncompleteScan(boolean followIncompleteScan) {
+		this.followIncompleteScan = followIncompleteScan;
+	}
+
+	public void setFollowPollInterval(long followPollInterval) {
+		this.followPollInterval = followPollInterval;
+	}
+
+	public void setFollowIdleTimeout(long followIdleTimeout) {
+		this.followIdleTimeout = followIdleTimeout;
+	}
 }
@@ -0,0 +1,296 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestMapXYVespersFromDAFConverter class.
+ *
+ */
+package ca.sciencestudio.vespers.data.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.sciencestudio.data.daf.DAFMappedSpectrumParser;
+import ca.sciencestudio.data.support.ConverterException;
+import ca.sciencestudio.data.support.DataFormatException;
+import ca.sciencestudio.vespers.data.converter.adapter.MapXYVespersAdapter;
+
+public class TestMapXYVespersFromDAFConverter {
+
+	private static final int DATA_EVENT_ID = 1;
+	private static final int SIZE_X = 10;
+	private static final int NUMBER_OF_POINTS = 100;
+	private static final int N_CHANNELS = 3;
+
+	private static final int MAXIMUM_PENDING_RECORDS = 16;
+	private static final long PARSE_DELAY = 5L;
+
+	private File directory;
+	private File dataFile;
+	private File spectraFile;
+
+	private ExecutorService executor;
+
+	private AtomicInteger recordedSpectra = new AtomicInteger();
+	private AtomicInteger closedDestinations = new AtomicInteger();
+	private AtomicInteger deletedDestinations = new AtomicInteger();
+	private AtomicInteger parsedAfterClose = new AtomicInteger();
+	private List<TrackingSpectrumParser> spectraParsers = new CopyOnWriteArrayList<TrackingSpectrumParser>();
+
+	@Before
+	public void createFiles() throws IOException {
+		directory = File.createTempFile("converter", "");
+		directory.delete();
+		directory.mkdir();
+		dataFile = new File(directory, "scan.dat");
+		spectraFile = new File(directory, "scan_spectra.dat");
+
+		FileWriter dataWriter = new FileWriter(dataFile);
+		try {
+			dataWriter.write("# CLS Data Acquisition\n");
+			dataWriter.write("# Mon Jan 3 10:00:00 2011\n");
+			dataWriter.write("#(" + DATA_EVENT_ID + ") Event-ID X:pos Y:pos dxp1:spectrum\n");
+			dataWriter.write("#(" + DATA_EVENT_ID + ") \"Event ID\" \"X Position\" \"Y Position\" \"Spectrum\"\n");
+		}
+		finally {
+			dataWriter.close();
+		}
+		new FileWriter(spectraFile).close();
+
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void deleteFiles() {
+		executor.shutdownNow();
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Append the given points to the data file and spectra file, the data records are written first.
+	 */
+	protected void writePoints(int firstPoint, int lastPoint) throws IOException {
+		long spectraOffset = spectraFile.length();
+		StringBuilder data = new StringBuilder();
+		StringBuilder spectra = new StringBuilder();
+		for(int point = firstPoint; point <= lastPoint; point++) {
+			data.append(DATA_EVENT_ID + "," + (point % SIZE_X) + ".0," + (point / SIZE_X) + ".0," + (spectraOffset + spectra.length()) + "\n");
+			spectra.append(point + ",1,2\n");
+		}
+		append(dataFile, data.toString());
+		append(spectraFile, spectra.toString());
+	}
+
+	protected void append(File file, String text) throws IOException {
+		FileWriter writer = new FileWriter(file, true);
+		try {
+			writer.write(text);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	protected MapXYVespersFromDAFConverter createConverter(int failedRecordIndex) throws ConverterException {
+		MapXYVespersFromDAFConverter converter = new TrackingConverter();
+		converter.setDafDataFile(dataFile);
+		converter.setDafSpectraFile(spectraFile);
+		converter.setDataEventId(DATA_EVENT_ID);
+		converter.setPosXSetpointIdx(1);
+		converter.setPosYSetpointIdx(2);
+		converter.setPosXFeedbackIdx(1);
+		converter.setPosYFeedbackIdx(2);
+		converter.setSedSpectrumIdx(3);
+		converter.setSedDefaultNChannels(N_CHANNELS);
+		converter.setExecutor(executor);
+		converter.setMaximumPendingRecords(MAXIMUM_PENDING_RECORDS);
+		converter.setAdapter(createAdapter(failedRecordIndex));
+		return converter;
+	}
+
+	/**
+	 * @param failedRecordIndex index of the data record for which the adapter fails, or -1
+	 */
+	protected MapXYVespersAdapter createAdapter(final int failedRecordIndex) {
+		InvocationHandler handler = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("openDataRecord") && (((Integer)args[0]).intValue() == failedRecordIndex)) {
+					throw new ConverterException("Adapter failed at record: " + failedRecordIndex);
+				}
+				if(method.getName().equals("recSedSpectrum")) {
+					recordedSpectra.incrementAndGet();
+				}
+				if(method.getName().equals("closeDestination")) {
+					closedDestinations.incrementAndGet();
+				}
+				if(method.getName().equals("deleteDestination")) {
+					deletedDestinations.incrementAndGet();
+				}
+				if(method.getReturnType() == Boolean.TYPE) {
+					return Boolean.FALSE;
+				}
+				return null;
+			}
+		};
+		return (MapXYVespersAdapter)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { MapXYVespersAdapter.class }, handler);
+	}
+
+	@Test
+	public void testConvert() throws ConverterException, IOException {
+		writePoints(0, NUMBER_OF_POINTS - 1);
+		createConverter(-1).convert();
+
+		assertEquals(NUMBER_OF_POINTS, recordedSpectra.get());
+		assertFalse(spectraParsers.isEmpty());
+		for(TrackingSpectrumParser spectraParser : spectraParsers) {
+			assertTrue(spectraParser.isClosed());
+		}
+		assertEquals(0, parsedAfterClose.get());
+	}
+
+	@Test
+	public void testCancelWaitsForSpectraParsers() throws IOException, InterruptedException {
+		writePoints(0, NUMBER_OF_POINTS - 1);
+		try {
+			createConverter(MAXIMUM_PENDING_RECORDS / 2).convert();
+			fail("Conversion should fail when the adapter fails.");
+		}
+		catch(ConverterException e) {
+			// expected //
+		}
+
+		// Any parsing still running after the conversion has failed would finish here. //
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10L, TimeUnit.SECONDS));
+
+		assertTrue(recordedSpectra.get() < NUMBER_OF_POINTS);
+		assertFalse(spectraParsers.isEmpty());
+		for(TrackingSpectrumParser spectraParser : spectraParsers) {
+			assertTrue(spectraParser.isClosed());
+		}
+		assertEquals(0, parsedAfterClose.get());
+	}
+
+	@Test
+	public void testFollowGrowingScan() throws ConverterException, IOException, InterruptedException {
+		final int pointsPerWrite = NUMBER_OF_POINTS / 5;
+		writePoints(0, pointsPerWrite - 1);
+
+		Thread scanThread = new Thread() {
+			public void run() {
+				try {
+					for(int point = pointsPerWrite; point < NUMBER_OF_POINTS; point += pointsPerWrite) {
+						Thread.sleep(50L);
+						writePoints(point, point + pointsPerWrite - 1);
+					}
+				}
+				catch(Exception e) {
+					// the conversion then ends early //
+				}
+			}
+		};
+		scanThread.start();
+
+		MapXYVespersFromDAFConverter converter = createConverter(-1);
+		converter.setFollowIncompleteScan(true);
+		converter.setFollowPollInterval(10L);
+		converter.setFollowIdleTimeout(1000L);
+		converter.convert();
+		scanThread.join();
+
+		assertEquals(NUMBER_OF_POINTS, recordedSpectra.get());
+		assertEquals(1, closedDestinations.get());
+		assertEquals(0, deletedDestinations.get());
+	}
+
+	@Test
+	public void testFollowIncompleteSpectra() throws ConverterException, IOException {
+		writePoints(0, 9);
+		// The data record of the next point is written, but its spectrum is not complete. //
+		append(dataFile, DATA_EVENT_ID + ",0.0,1.0," + spectraFile.length() + "\n");
+		append(spectraFile, "10,1");
+
+		MapXYVespersFromDAFConverter converter = createConverter(-1);
+		converter.setFollowIncompleteScan(true);
+		converter.setFollowPollInterval(10L);
+		converter.setFollowIdleTimeout(200L);
+		converter.convert();
+
+		// The conversion ends as a partial scan, with the points that have complete spectra. //
+		assertEquals(10, recordedSpectra.get());
+		assertEquals(1, closedDestinations.get());
+		assertEquals(0, deletedDestinations.get());
+		for(TrackingSpectrumParser spectraParser : spectraParsers) {
+			assertTrue(spectraParser.isClosed());
+		}
+	}
+
+	protected class TrackingConverter extends MapXYVespersFromDAFConverter {
+
+		public TrackingConverter() throws ConverterException {
+			super("DAF", "CDF", true);
+		}
+
+		protected DAFMappedSpectrumParser createSpectraParser() throws DataFormatException, IOException {
+			TrackingSpectrumParser spectraParser = new TrackingSpectrumParser(getDafSpectraFile());
+			spectraParsers.add(spectraParser);
+			return spectraParser;
+		}
+	}
+
+	/**
+	 * Spectrum parser which is slow to parse and counts the records parsed after it is closed.
+	 */
+	protected class TrackingSpectrumParser extends DAFMappedSpectrumParser {
+
+		private volatile boolean closed = false;
+
+		public TrackingSpectrumParser(File spectraFile) throws DataFormatException, IOException {
+			super(spectraFile);
+		}
+
+		public void parseRecord(long offset, long[] values) throws DataFormatException, IOException {
+			try {
+				Thread.sleep(PARSE_DELAY);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if(closed) {
+				parsedAfterClose.incrementAndGet();
+			}
+			super.parseRecord(offset, values);
+		}
+
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     Benchmark abstract class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.File;
+
+/**
+ * A benchmark operation measured by the BenchmarkRunner. The set up is done
+ * once for each scan size, the operation returns a value derived from the
+ * data read so that the work cannot be removed by the compiler.
+ *
+ * @author maxweld
+ *
+ */
+public abstract class Benchmark {
+
+	private File workingDirectory;
+	private ScanParameters scanParameters;
+
+	public abstract String getName();
+
+	public void setUp(File workingDirectory, ScanParameters scanParameters) throws Exception {
+		this.workingDirectory = workingDirectory;
+		this.scanParameters = scanParameters;
+	}
+
+	public abstract long run() throws Exception;
+
+	public void tearDown() throws Exception {
+		// nothing to do //
+	}
+
+	public File getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	public ScanParameters getScanParameters() {
+		return scanParameters;
+	}
+}
@@ -0,0 +1,175 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     BenchmarkRunner class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the data reader benchmarks for each combination of scan size,
+ *
+ *     BenchmarkRunner [points=100,10000] [channels=2048] [elements=1,4] [warmup=3] [iterations=10] [cdf=true] [dir=path]
+ *
+ * For each benchmark the synthetic files are generated once, then the
+ * operation is run for the warm up iterations, which are not measured,
+ * and for the measured iterations. The mean, minimum and standard deviation
+ * of the time per operation is printed. The CDF benchmarks are skipped
+ * when the native CDF library is not available.
+ *
+ * @author maxweld
+ *
+ */
+public class BenchmarkRunner {
+
+	private static final String DEFAULT_POINTS = "100,2500";
+	private static final String DEFAULT_CHANNELS = "2048";
+	private static final String DEFAULT_ELEMENTS = "1,4";
+	private static final String DEFAULT_WARMUP = "3";
+	private static final String DEFAULT_ITERATIONS = "10";
+	private static final String DEFAULT_CDF = "true";
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	// Results are accumulated so the benchmark operations are not removed. //
+	private static volatile long sink = 0L;
+
+	private int[] points;
+	private int[] channels;
+	private int[] elements;
+	private int warmup;
+	private int iterations;
+	private boolean cdf;
+	private File directory;
+
+	public BenchmarkRunner(String[] args) {
+		points = getIntArray(args, "points", DEFAULT_POINTS);
+		channels = getIntArray(args, "channels", DEFAULT_CHANNELS);
+		elements = getIntArray(args, "elements", DEFAULT_ELEMENTS);
+		warmup = getIntArray(args, "warmup", DEFAULT_WARMUP)[0];
+		iterations = Math.max(getIntArray(args, "iterations", DEFAULT_ITERATIONS)[0], 1);
+		cdf = Boolean.parseBoolean(getArg(args, "cdf", DEFAULT_CDF));
+		directory = new File(getArg(args, "dir", System.getProperty("java.io.tmpdir")));
+	}
+
+	public static void main(String[] args) throws Exception {
+		new BenchmarkRunner(args).run();
+	}
+
+	public void run() throws Exception {
+		System.out.println(String.format("%-42s %-42s %12s %12s %12s", "Benchmark", "Scan", "Mean (ms)", "Min (ms)", "StdDev (ms)"));
+		for(int p : points) {
+			for(int c : channels) {
+				for(int e : elements) {
+					run(new ScanParameters(p, c, e));
+				}
+			}
+		}
+		System.out.println("(" + sink + ")");
+	}
+
+	protected void run(ScanParameters scanParameters) throws Exception {
+
+		File workingDirectory = new File(directory, "ss-data-benchmark-" + System.nanoTime());
+		if(!workingDirectory.mkdirs()) {
+			throw new IOException("Cannot create working directory: " + workingDirectory);
+		}
+
+		try {
+			SyntheticScanGenerator generator = new SyntheticScanGenerator(scanParameters);
+			generator.generateDAF(workingDirectory);
+
+			List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+			benchmarks.add(new DAFDataParserBenchmark());
+			benchmarks.add(new DAFEventLookupBenchmark());
+			benchmarks.add(new DAFStandardRecordParserBenchmark());
+			benchmarks.add(new DAFSpectrumParserBenchmark(false));
+			benchmarks.add(new DAFSpectrumParserBenchmark(true));
+
+			if(cdf) {
+				try {
+					generator.generateCDF(workingDirectory);
+					benchmarks.add(new CDFQueryBenchmark(false));
+					benchmarks.add(new CDFQueryBenchmark(true));
+				}
+				catch(Throwable t) {
+					System.out.println(String.format("%-42s %-42s %s", "CDFQuery", scanParameters, "skipped: " + t));
+				}
+			}
+
+			for(Benchmark benchmark : benchmarks) {
+				run(benchmark, workingDirectory, scanParameters);
+			}
+		}
+		finally {
+			File[] files = workingDirectory.listFiles();
+			if(files != null) {
+				for(File file : files) {
+					file.delete();
+				}
+			}
+			workingDirectory.delete();
+		}
+	}
+
+	protected void run(Benchmark benchmark, File workingDirectory, ScanParameters scanParameters) throws Exception {
+
+		benchmark.setUp(workingDirectory, scanParameters);
+		try {
+			for(int iteration = 0; iteration < warmup; iteration++) {
+				sink += benchmark.run();
+			}
+
+			double[] times = new double[iterations];
+			for(int iteration = 0; iteration < iterations; iteration++) {
+				long start = System.nanoTime();
+				sink += benchmark.run();
+				times[iteration] = (System.nanoTime() - start) / NANOS_PER_MILLI;
+			}
+
+			double sum = 0.0;
+			double min = Double.MAX_VALUE;
+			for(double time : times) {
+				sum += time;
+				min = Math.min(min, time);
+			}
+			double mean = sum / iterations;
+
+			double variance = 0.0;
+			for(double time : times) {
+				variance += (time - mean) * (time - mean);
+			}
+			double stddev = Math.sqrt(variance / iterations);
+
+			System.out.println(String.format("%-42s %-42s %12.3f %12.3f %12.3f", benchmark.getName(), scanParameters, mean, min, stddev));
+		}
+		finally {
+			benchmark.tearDown();
+		}
+	}
+
+	protected static String getArg(String[] args, String name, String defaultValue) {
+		String prefix = name + "=";
+		for(String arg : args) {
+			if(arg.startsWith(prefix)) {
+				return arg.substring(prefix.length());
+			}
+		}
+		return defaultValue;
+	}
+
+	protected static int[] getIntArray(String[] args, String name, String defaultValue) {
+		String[] values = getArg(args, name, defaultValue).split(",");
+		int[] intValues = new int[values.length];
+		for(int idx = 0; idx < values.length; idx++) {
+			intValues[idx] = Integer.parseInt(values[idx].trim());
+		}
+		return intValues;
+	}
+}
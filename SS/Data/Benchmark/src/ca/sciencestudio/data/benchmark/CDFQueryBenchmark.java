@@ -0,0 +1,74 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFQueryBenchmark class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.File;
+import java.util.List;
+
+import ca.sciencestudio.data.cdf.CDFQuery;
+import ca.sciencestudio.data.cdf.CDFRecord;
+import ca.sciencestudio.data.cdf.selector.CDFSelector;
+import ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder;
+import ca.sciencestudio.data.standard.StdCategories;
+
+/**
+ * Query the synthetic CDF file, either all the map indexes (as for the map
+ * axes) or the sum spectrum of one point selected by index (as for an MCA
+ * spectrum request).
+ *
+ * @author maxweld
+ *
+ */
+public class CDFQueryBenchmark extends Benchmark implements StdCategories {
+
+	private boolean spectrum;
+	private CDFQuery cdfQuery;
+
+	public CDFQueryBenchmark(boolean spectrum) {
+		this.spectrum = spectrum;
+	}
+
+	@Override
+	public String getName() {
+		return spectrum ? "CDFQuery.queryRecords (point spectrum)" : "CDFQuery.queryRecords (map indexes)";
+	}
+
+	@Override
+	public void setUp(File workingDirectory, ScanParameters scanParameters) throws Exception {
+		super.setUp(workingDirectory, scanParameters);
+		cdfQuery = new CDFQuery(new File(workingDirectory, SyntheticScanGenerator.CDF_FILE_NAME));
+	}
+
+	@Override
+	public long run() throws Exception {
+		long result = 0L;
+		if(spectrum) {
+			int i = getScanParameters().getSizeX() / 2;
+			int j = getScanParameters().getSizeY() / 2;
+			CDFSelector cdfSelector = CDFSelectorBuilder.AND(CDFSelectorBuilder.EQ(MapXY10.I(), i), CDFSelectorBuilder.EQ(MapXY10.J(), j));
+			String[] cdfVarNames = new String[] { MapXY10.I(), MapXY10.J(), MCA10.SumSpectrum() };
+			List<CDFRecord> cdfRecords = cdfQuery.queryRecordsByNames(cdfVarNames, cdfSelector);
+			for(CDFRecord cdfRecord : cdfRecords) {
+				result += cdfRecord.getIntArray(2).length;
+			}
+		}
+		else {
+			List<CDFRecord> cdfRecords = cdfQuery.queryRecordsByNames(new String[] { MapXY10.I(), MapXY10.J() });
+			for(CDFRecord cdfRecord : cdfRecords) {
+				result += cdfRecord.getInt(0) + cdfRecord.getInt(1);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		cdfQuery.close();
+		cdfQuery = null;
+	}
+}
@@ -0,0 +1,55 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFDataParserBenchmark class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+
+import ca.sciencestudio.data.daf.DAFDataParser;
+import ca.sciencestudio.data.daf.DAFRecord;
+
+/**
+ * Parse the synthetic DAF data file and read a numeric value from each record.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFDataParserBenchmark extends Benchmark {
+
+	private File dataFile;
+
+	@Override
+	public String getName() {
+		return "DAFDataParser";
+	}
+
+	@Override
+	public void setUp(File workingDirectory, ScanParameters scanParameters) throws Exception {
+		super.setUp(workingDirectory, scanParameters);
+		dataFile = new File(workingDirectory, SyntheticScanGenerator.DATA_FILE_NAME);
+	}
+
+	@Override
+	public long run() throws Exception {
+		long result = 0L;
+		Reader reader = new FileReader(dataFile);
+		try {
+			DAFDataParser dafDataParser = new DAFDataParser(reader);
+			for(DAFRecord record : dafDataParser) {
+				if(record.getEvent().getId() == SyntheticScanGenerator.DATA_EVENT_ID) {
+					result += record.getLong(SyntheticScanGenerator.getSpectrumElementIndex(0));
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,72 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFEventLookupBenchmark class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.sciencestudio.data.daf.DAFDataParser;
+import ca.sciencestudio.data.daf.DAFElement;
+import ca.sciencestudio.data.daf.DAFEvent;
+
+/**
+ * Look up every element of the data event by name and by description, and
+ * the events by id, as the converters do for each configured element.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFEventLookupBenchmark extends Benchmark {
+
+	private static final int LOOKUPS_PER_RUN = 1000;
+
+	private DAFDataParser dafDataParser;
+	private List<String> names = new ArrayList<String>();
+	private List<String> descriptions = new ArrayList<String>();
+
+	@Override
+	public String getName() {
+		return "DAFEvent lookups (x" + LOOKUPS_PER_RUN + ")";
+	}
+
+	@Override
+	public void setUp(File workingDirectory, ScanParameters scanParameters) throws Exception {
+		super.setUp(workingDirectory, scanParameters);
+		Reader reader = new FileReader(new File(workingDirectory, SyntheticScanGenerator.DATA_FILE_NAME));
+		try {
+			dafDataParser = new DAFDataParser(reader);
+		}
+		finally {
+			reader.close();
+		}
+		names.clear();
+		descriptions.clear();
+		for(DAFElement element : dafDataParser.getEventById(SyntheticScanGenerator.DATA_EVENT_ID).getElements()) {
+			names.add(element.getName());
+			descriptions.add(element.getDescription());
+		}
+	}
+
+	@Override
+	public long run() throws Exception {
+		long result = 0L;
+		for(int lookup = 0; lookup < LOOKUPS_PER_RUN; lookup++) {
+			DAFEvent event = dafDataParser.getEventById(SyntheticScanGenerator.DATA_EVENT_ID);
+			for(String name : names) {
+				result += event.getElementIndexByName(name);
+			}
+			for(String description : descriptions) {
+				result += event.getElementIndexByDescription(description);
+			}
+		}
+		return result;
+	}
+}
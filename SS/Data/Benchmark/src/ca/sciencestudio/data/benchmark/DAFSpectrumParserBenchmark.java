@@ -0,0 +1,98 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFSpectrumParserBenchmark class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+
+import ca.sciencestudio.data.daf.DAFDataParser;
+import ca.sciencestudio.data.daf.DAFMappedSpectrumParser;
+import ca.sciencestudio.data.daf.DAFRecord;
+import ca.sciencestudio.data.daf.DAFSpectrumParser;
+
+/**
+ * Read every spectrum of the synthetic scan, at the offsets given in the
+ * data file, with either the DAFSpectrumParser or the DAFMappedSpectrumParser.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFSpectrumParserBenchmark extends Benchmark {
+
+	private boolean mapped;
+	private long[] offsets;
+	private File spectraFile;
+
+	public DAFSpectrumParserBenchmark(boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	@Override
+	public String getName() {
+		return mapped ? "DAFMappedSpectrumParser" : "DAFSpectrumParser";
+	}
+
+	@Override
+	public void setUp(File workingDirectory, ScanParameters scanParameters) throws Exception {
+		super.setUp(workingDirectory, scanParameters);
+
+		spectraFile = new File(workingDirectory, SyntheticScanGenerator.SPECTRA_FILE_NAME);
+
+		int elements = scanParameters.getElements();
+		offsets = new long[scanParameters.getPoints() * elements];
+
+		int idx = 0;
+		Reader reader = new FileReader(new File(workingDirectory, SyntheticScanGenerator.DATA_FILE_NAME));
+		try {
+			DAFDataParser dafDataParser = new DAFDataParser(reader);
+			for(DAFRecord record : dafDataParser) {
+				if(record.getEvent().getId() == SyntheticScanGenerator.DATA_EVENT_ID) {
+					for(int element = 0; element < elements; element++) {
+						offsets[idx++] = record.getLong(SyntheticScanGenerator.getSpectrumElementIndex(element));
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Override
+	public long run() throws Exception {
+		long result = 0L;
+		int channels = getScanParameters().getChannels();
+		if(mapped) {
+			long[] spectrum = new long[channels];
+			DAFMappedSpectrumParser spectrumParser = new DAFMappedSpectrumParser(spectraFile);
+			try {
+				for(long offset : offsets) {
+					spectrumParser.parseRecord(offset, spectrum);
+					result += spectrum[channels - 1];
+				}
+			}
+			finally {
+				spectrumParser.close();
+			}
+		}
+		else {
+			DAFSpectrumParser spectrumParser = new DAFSpectrumParser(spectraFile);
+			try {
+				for(long offset : offsets) {
+					long[] spectrum = spectrumParser.parseRecord(offset, channels).getLongArray();
+					result += spectrum[channels - 1];
+				}
+			}
+			finally {
+				spectrumParser.close();
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,84 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFStandardRecordParserBenchmark class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.util.Collection;
+
+import ca.sciencestudio.data.daf.DAFDataParser;
+import ca.sciencestudio.data.daf.DAFEvent;
+import ca.sciencestudio.data.daf.DAFRecord;
+import ca.sciencestudio.data.daf.DAFStandardRecordParser;
+import ca.sciencestudio.util.text.PeekableBufferedReader;
+
+/**
+ * Parse the data lines of the synthetic DAF file from memory, which
+ * measures the record parser without the file input or header parsing.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFStandardRecordParserBenchmark extends Benchmark {
+
+	private String dataLines;
+	private Collection<DAFEvent> events;
+	private DAFStandardRecordParser recordParser = new DAFStandardRecordParser();
+
+	@Override
+	public String getName() {
+		return "DAFStandardRecordParser";
+	}
+
+	@Override
+	public void setUp(File workingDirectory, ScanParameters scanParameters) throws Exception {
+		super.setUp(workingDirectory, scanParameters);
+
+		File dataFile = new File(workingDirectory, SyntheticScanGenerator.DATA_FILE_NAME);
+		BufferedReader reader = new BufferedReader(new FileReader(dataFile));
+		try {
+			events = new DAFDataParser(reader).getEventRegistry();
+		}
+		finally {
+			reader.close();
+		}
+
+		StringBuilder lines = new StringBuilder();
+		reader = new BufferedReader(new FileReader(dataFile));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(!line.startsWith("#")) {
+					lines.append(line).append('\n');
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		dataLines = lines.toString();
+	}
+
+	@Override
+	public long run() throws Exception {
+		long result = 0L;
+		PeekableBufferedReader reader = new PeekableBufferedReader(new StringReader(dataLines));
+		while(reader.peekLine() != null) {
+			DAFRecord record = recordParser.parseRecord(events, reader);
+			if(record != null) {
+				result += record.getNumberOfValues();
+			}
+			else {
+				reader.readLine();
+			}
+		}
+		return result;
+	}
+}
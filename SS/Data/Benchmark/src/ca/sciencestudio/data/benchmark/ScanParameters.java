@@ -0,0 +1,52 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     ScanParameters class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+/**
+ * Size of a synthetic map scan, the points are arranged on a square grid.
+ *
+ * @author maxweld
+ *
+ */
+public class ScanParameters {
+
+	private int points;
+	private int channels;
+	private int elements;
+
+	public ScanParameters(int points, int channels, int elements) {
+		this.points = points;
+		this.channels = channels;
+		this.elements = elements;
+	}
+
+	public int getSizeX() {
+		return (int)Math.ceil(Math.sqrt(points));
+	}
+
+	public int getSizeY() {
+		return (points + getSizeX() - 1) / getSizeX();
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public int getElements() {
+		return elements;
+	}
+
+	@Override
+	public String toString() {
+		return "points=" + points + ", channels=" + channels + ", elements=" + elements;
+	}
+}
@@ -0,0 +1,211 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     SyntheticScanGenerator class.
+ *
+ */
+package ca.sciencestudio.data.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+import gsfc.nssdc.cdf.Attribute;
+import gsfc.nssdc.cdf.CDF;
+import gsfc.nssdc.cdf.CDFException;
+import gsfc.nssdc.cdf.Entry;
+import gsfc.nssdc.cdf.Variable;
+
+import ca.sciencestudio.data.standard.StdCategories;
+import ca.sciencestudio.data.standard.StdConverter;
+
+/**
+ * Writes synthetic DAF data, DAF spectra and CDF files for a map scan, the
+ * values are pseudo random with a fixed seed so the files are repeatable.
+ *
+ * The DAF data event (id 1) has the elements,
+ *
+ *     Event-ID, X:pos, Y:pos, ring:cur, mcs1 ... mcs4, then for each detector element, dxpN:fast, dxpN:spectrum
+ *
+ * where the spectrum element is the offset of the spectrum in the spectra file.
+ *
+ * @author maxweld
+ *
+ */
+public class SyntheticScanGenerator implements StdCategories, StdConverter {
+
+	public static final int DATA_EVENT_ID = 1;
+	public static final int BKGD_EVENT_ID = 2;
+
+	public static final int NUMBER_OF_MCS_ELEMENTS = 4;
+
+	public static final String DATA_FILE_NAME = "synthetic" + FILE_NAME_SUFFIX_DAF_DATA;
+	public static final String SPECTRA_FILE_NAME = "synthetic" + FILE_NAME_SUFFIX_DAF_SPEC;
+	public static final String CDF_FILE_NAME = "synthetic" + FILE_NAME_SUFFIX_CDF;
+
+	private static final long RANDOM_SEED = 20110103L;
+	private static final int MAXIMUM_COUNTS = 5000;
+	private static final double STEP_SIZE = 0.005;
+
+	private ScanParameters scanParameters;
+
+	public SyntheticScanGenerator(ScanParameters scanParameters) {
+		this.scanParameters = scanParameters;
+	}
+
+	public static String getSpectrumElementName(int element) {
+		return "dxp" + (element + 1) + ":spectrum";
+	}
+
+	public static int getSpectrumElementIndex(int element) {
+		return 4 + NUMBER_OF_MCS_ELEMENTS + (2 * element) + 1;
+	}
+
+	/**
+	 * Write the DAF data and spectra files to the directory.
+	 */
+	public void generateDAF(File directory) throws IOException {
+
+		Random random = new Random(RANDOM_SEED);
+
+		int elements = scanParameters.getElements();
+		int channels = scanParameters.getChannels();
+
+		Writer dataWriter = new BufferedWriter(new FileWriter(new File(directory, DATA_FILE_NAME)));
+		Writer spectraWriter = new BufferedWriter(new FileWriter(new File(directory, SPECTRA_FILE_NAME)));
+		try {
+			StringBuilder names = new StringBuilder("#(" + DATA_EVENT_ID + ") Event-ID X:pos Y:pos ring:cur");
+			StringBuilder descriptions = new StringBuilder("#(" + DATA_EVENT_ID + ") \"Event ID\" \"X Position\" \"Y Position\" \"Ring Current\"");
+			for(int mcs = 1; mcs <= NUMBER_OF_MCS_ELEMENTS; mcs++) {
+				names.append(" mcs").append(mcs);
+				descriptions.append(" \"Scaler ").append(mcs).append("\"");
+			}
+			for(int element = 0; element < elements; element++) {
+				names.append(" dxp").append(element + 1).append(":fast ").append(getSpectrumElementName(element));
+				descriptions.append(" \"Fast Count ").append(element + 1).append("\" \"Spectrum ").append(element + 1).append("\"");
+			}
+
+			dataWriter.write("# CLS Data Acquisition\n");
+			dataWriter.write("# Mon Jan 3 10:00:00 2011\n");
+			dataWriter.write(names.append('\n').toString());
+			dataWriter.write("#(" + BKGD_EVENT_ID + ") Event-ID ring:cur\n");
+			dataWriter.write(descriptions.append('\n').toString());
+			dataWriter.write("#(" + BKGD_EVENT_ID + ") EID \"Ring Current\"\n");
+			dataWriter.write(BKGD_EVENT_ID + ",250.0\n");
+
+			long spectraOffset = 0L;
+			StringBuilder line = new StringBuilder();
+			int sizeX = scanParameters.getSizeX();
+
+			for(int point = 0; point < scanParameters.getPoints(); point++) {
+				line.setLength(0);
+				line.append(DATA_EVENT_ID);
+				line.append(',').append((point % sizeX) * STEP_SIZE);
+				line.append(',').append((point / sizeX) * STEP_SIZE);
+				line.append(',').append(250.0 - (random.nextDouble() * 0.1));
+				for(int mcs = 0; mcs < NUMBER_OF_MCS_ELEMENTS; mcs++) {
+					line.append(',').append(random.nextInt(MAXIMUM_COUNTS));
+				}
+				for(int element = 0; element < elements; element++) {
+					String spectrum = generateSpectrum(random, channels);
+					line.append(',').append(random.nextInt(MAXIMUM_COUNTS));
+					line.append(',').append(spectraOffset);
+					spectraWriter.write(spectrum);
+					spectraOffset += spectrum.length();
+				}
+				dataWriter.write(line.append('\n').toString());
+			}
+		}
+		finally {
+			dataWriter.close();
+			spectraWriter.close();
+		}
+	}
+
+	/**
+	 * Write a standard CDF file (MapXY10 and MCA10 categories) to the directory,
+	 * requires the native CDF library.
+	 */
+	public void generateCDF(File directory) throws CDFException {
+
+		File cdfFile = new File(directory, CDF_FILE_NAME);
+		if(cdfFile.exists()) {
+			cdfFile.delete();
+		}
+
+		Random random = new Random(RANDOM_SEED);
+
+		int elements = scanParameters.getElements();
+		int channels = scanParameters.getChannels();
+
+		CDF cdf = CDF.create(cdfFile.getAbsolutePath());
+		try {
+			Attribute categoryRegistry = Attribute.create(cdf, CATEGORY_REGISTRY, CDF.GLOBAL_SCOPE);
+			Entry.create(categoryRegistry, 0, CDF.CDF_CHAR, SS10.getIdentity());
+			Entry.create(categoryRegistry, 1, CDF.CDF_CHAR, MapXY10.getIdentity());
+			Entry.create(categoryRegistry, 2, CDF.CDF_CHAR, MCA10.getIdentity());
+
+			Variable varI = createVariable(cdf, MapXY10.I(), CDF.CDF_INT4, 0L);
+			Variable varJ = createVariable(cdf, MapXY10.J(), CDF.CDF_INT4, 0L);
+			Variable varX = createVariable(cdf, MapXY10.X(), CDF.CDF_DOUBLE, 0L);
+			Variable varY = createVariable(cdf, MapXY10.Y(), CDF.CDF_DOUBLE, 0L);
+
+			Variable[] varSpectrum = new Variable[elements];
+			for(int element = 0; element < elements; element++) {
+				varSpectrum[element] = createVariable(cdf, MCA10.Spectrum(element), CDF.CDF_INT4, channels);
+			}
+			Variable varSumSpectrum = createVariable(cdf, MCA10.SumSpectrum(), CDF.CDF_INT4, channels);
+
+			int sizeX = scanParameters.getSizeX();
+			int[] sumSpectrum = new int[channels];
+			for(int point = 0; point < scanParameters.getPoints(); point++) {
+				long record = point;
+				varI.putRecord(record, Integer.valueOf(point % sizeX));
+				varJ.putRecord(record, Integer.valueOf(point / sizeX));
+				varX.putRecord(record, Double.valueOf((point % sizeX) * STEP_SIZE));
+				varY.putRecord(record, Double.valueOf((point / sizeX) * STEP_SIZE));
+
+				Arrays.fill(sumSpectrum, 0);
+				for(int element = 0; element < elements; element++) {
+					int[] spectrum = new int[channels];
+					for(int channel = 0; channel < channels; channel++) {
+						spectrum[channel] = random.nextInt(MAXIMUM_COUNTS);
+						sumSpectrum[channel] += spectrum[channel];
+					}
+					varSpectrum[element].putRecord(record, spectrum);
+				}
+				varSumSpectrum.putRecord(record, sumSpectrum.clone());
+			}
+		}
+		finally {
+			cdf.close();
+		}
+	}
+
+	protected Variable createVariable(CDF cdf, String name, long dataType, long channels) throws CDFException {
+		if(channels > 0L) {
+			return Variable.create(cdf, name, dataType, 1L, 1L, new long[] { channels }, CDF.VARY, new long[] { CDF.VARY });
+		}
+		return Variable.create(cdf, name, dataType, 1L, 0L, new long[] { 1L }, CDF.VARY, new long[] { CDF.NOVARY });
+	}
+
+	protected String generateSpectrum(Random random, int channels) {
+		StringBuilder spectrum = new StringBuilder(channels * 4);
+		for(int channel = 0; channel < channels; channel++) {
+			if(channel > 0) {
+				spectrum.append(',');
+			}
+			spectrum.append(random.nextInt(MAXIMUM_COUNTS));
+		}
+		return spectrum.append('\n').toString();
+	}
+
+	public ScanParameters getScanParameters() {
+		return scanParameters;
+	}
+}
@@ -0,0 +1,182 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFCompressionSelector class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Selects the GZIP compression level of CDF variables from sample records.
+ *
+ * The samples are encoded as 4-byte unsigned integers (as CDF_UINT4) and
+ * compressed at each candidate level with Deflater, which is the algorithm
+ * used by CDF GZIP compression. The fastest level which compresses to within
+ * the size tolerance of the smallest size is selected, or no compression
+ * (level 0) if the smallest size does not save at least the minimum gain.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFCompressionSelector {
+
+	public static final int DEFAULT_NUMBER_OF_SAMPLES = 64;
+	public static final long[] DEFAULT_CANDIDATE_LEVELS = { 1L, 3L, 6L, 9L };
+
+	public static final double DEFAULT_SIZE_TOLERANCE = 0.05;
+	public static final double DEFAULT_MINIMUM_GAIN = 0.20;
+
+	private static final int BENCHMARK_REPEATS = 3;
+
+	private long[] candidateLevels = DEFAULT_CANDIDATE_LEVELS;
+	private int numberOfSamples = DEFAULT_NUMBER_OF_SAMPLES;
+	private double sizeTolerance = DEFAULT_SIZE_TOLERANCE;
+	private double minimumGain = DEFAULT_MINIMUM_GAIN;
+
+	private byte[] samples = new byte[0];
+	private int samplesLength = 0;
+	private int samplesCount = 0;
+
+	private long[] compressedSizes = new long[0];
+	private long[] compressionTimes = new long[0];
+
+	public CDFCompressionSelector() {
+		super();
+	}
+
+	public CDFCompressionSelector(int numberOfSamples) {
+		setNumberOfSamples(numberOfSamples);
+	}
+
+	/**
+	 * Add the sample values, which are ignored once enough samples have been added.
+	 */
+	public void addSample(long[] values) {
+		if(isComplete()) {
+			return;
+		}
+
+		int length = values.length * 4;
+		if((samplesLength + length) > samples.length) {
+			samples = Arrays.copyOf(samples, Math.max(samplesLength + length, samples.length * 2));
+		}
+
+		for(long value : values) {
+			samples[samplesLength++] = (byte)(value >>> 24);
+			samples[samplesLength++] = (byte)(value >>> 16);
+			samples[samplesLength++] = (byte)(value >>> 8);
+			samples[samplesLength++] = (byte)value;
+		}
+		samplesCount++;
+	}
+
+	public boolean isComplete() {
+		return samplesCount >= numberOfSamples;
+	}
+
+	/**
+	 * @return the selected compression level, or the default level if there are no samples
+	 */
+	public long selectLevel(long defaultLevel) {
+		if((samplesLength == 0) || (candidateLevels.length == 0)) {
+			return defaultLevel;
+		}
+
+		benchmark();
+
+		long minimumSize = Long.MAX_VALUE;
+		for(long compressedSize : compressedSizes) {
+			minimumSize = Math.min(minimumSize, compressedSize);
+		}
+
+		if(minimumSize > (samplesLength * (1.0 - minimumGain))) {
+			return 0L;
+		}
+
+		int selected = -1;
+		for(int idx = 0; idx < candidateLevels.length; idx++) {
+			if(compressedSizes[idx] <= (minimumSize * (1.0 + sizeTolerance))) {
+				if((selected < 0) || (compressionTimes[idx] < compressionTimes[selected])) {
+					selected = idx;
+				}
+			}
+		}
+		return candidateLevels[selected];
+	}
+
+	protected void benchmark() {
+		compressedSizes = new long[candidateLevels.length];
+		compressionTimes = new long[candidateLevels.length];
+
+		byte[] output = new byte[samplesLength + 1024];
+		for(int idx = 0; idx < candidateLevels.length; idx++) {
+			Deflater deflater = new Deflater((int)candidateLevels[idx]);
+			try {
+				compressionTimes[idx] = Long.MAX_VALUE;
+				for(int repeat = 0; repeat < BENCHMARK_REPEATS; repeat++) {
+					long start = System.nanoTime();
+					deflater.reset();
+					deflater.setInput(samples, 0, samplesLength);
+					deflater.finish();
+					long size = 0L;
+					while(!deflater.finished()) {
+						size += deflater.deflate(output);
+					}
+					compressionTimes[idx] = Math.min(compressionTimes[idx], System.nanoTime() - start);
+					compressedSizes[idx] = size;
+				}
+			}
+			finally {
+				deflater.end();
+			}
+		}
+	}
+
+	public int getSamplesCount() {
+		return samplesCount;
+	}
+
+	public int getSamplesLength() {
+		return samplesLength;
+	}
+
+	public long[] getCompressedSizes() {
+		return compressedSizes;
+	}
+
+	public long[] getCompressionTimes() {
+		return compressionTimes;
+	}
+
+	public long[] getCandidateLevels() {
+		return candidateLevels;
+	}
+	public void setCandidateLevels(long[] candidateLevels) {
+		this.candidateLevels = candidateLevels;
+	}
+
+	public int getNumberOfSamples() {
+		return numberOfSamples;
+	}
+	public void setNumberOfSamples(int numberOfSamples) {
+		this.numberOfSamples = Math.max(numberOfSamples, 1);
+	}
+
+	public double getSizeTolerance() {
+		return sizeTolerance;
+	}
+	public void setSizeTolerance(double sizeTolerance) {
+		this.sizeTolerance = sizeTolerance;
+	}
+
+	public double getMinimumGain() {
+		return minimumGain;
+	}
+	public void setMinimumGain(double minimumGain) {
+		this.minimumGain = minimumGain;
+	}
+}
@@ -0,0 +1,196 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFFileResolver class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ca.sciencestudio.data.standard.StdConverter;
+import ca.sciencestudio.data.standard.StdScanParams;
+import ca.sciencestudio.data.support.CDFQueryException;
+import ca.sciencestudio.model.session.Scan;
+import ca.sciencestudio.util.Parameters;
+
+/**
+ * Cache of the CDF file of each scan, keyed by scan GID.
+ *
+ * The CDF file is resolved from the data URL and the file parameters of the
+ * scan, an entry is resolved again if these change. Whether the CDF file exists
+ * is remembered: an existing file is assumed to exist until the entry is
+ * invalidated (for example when the scan is converted or the file cannot be
+ * opened) and a missing file is checked again after the recheck interval.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFFileResolver implements StdScanParams, StdConverter {
+
+	public static final int DEFAULT_MAXIMUM_ENTRIES = 1024;
+
+	public static final long DEFAULT_MISSING_RECHECK_INTERVAL = 5000L;
+
+	private static final CDFFileResolver DEFAULT_RESOLVER = new CDFFileResolver();
+
+	private int maximumEntries = DEFAULT_MAXIMUM_ENTRIES;
+	private volatile long missingRecheckInterval = DEFAULT_MISSING_RECHECK_INTERVAL;
+
+	// Access ordered, so iteration is from least to most recently used. //
+	private Map<String,ResolverEntry> entries = new LinkedHashMap<String,ResolverEntry>(16, 0.75f, true);
+
+	/**
+	 * @return the process-wide resolver
+	 */
+	public static CDFFileResolver getDefaultResolver() {
+		return DEFAULT_RESOLVER;
+	}
+
+	/**
+	 * @return the CDF file of the scan, which may not (yet) exist
+	 */
+	public File getCdfFile(Scan scan) throws CDFQueryException {
+		return getEntry(scan).cdfFile;
+	}
+
+	/**
+	 * @return true if the CDF file of the scan exists, the file system is only checked if not known
+	 */
+	public boolean exists(Scan scan) throws CDFQueryException {
+		ResolverEntry entry = getEntry(scan);
+		synchronized(entry) {
+			long now = System.currentTimeMillis();
+			if(!entry.exists && ((now - entry.existsChecked) >= missingRecheckInterval)) {
+				entry.exists = entry.cdfFile.isFile();
+				entry.existsChecked = now;
+			}
+			return entry.exists;
+		}
+	}
+
+	protected ResolverEntry getEntry(Scan scan) throws CDFQueryException {
+		String signature = getSignature(scan);
+
+		synchronized(this) {
+			ResolverEntry entry = entries.get(scan.getGid());
+			if((entry != null) && entry.signature.equals(signature)) {
+				return entry;
+			}
+		}
+
+		ResolverEntry entry = new ResolverEntry(signature, resolveCdfFile(scan));
+
+		synchronized(this) {
+			entries.put(scan.getGid(), entry);
+			evictEntries();
+		}
+		return entry;
+	}
+
+	/**
+	 * Remove the entry for the given scan, the CDF file is resolved again when next requested.
+	 */
+	public synchronized void invalidate(String scanGid) {
+		entries.remove(scanGid);
+	}
+
+	/**
+	 * Remove the entries of all scans with the given CDF file, compared by absolute path.
+	 */
+	public synchronized void invalidate(File cdfFile) {
+		File absoluteFile = cdfFile.getAbsoluteFile();
+		Iterator<ResolverEntry> iterator = entries.values().iterator();
+		while(iterator.hasNext()) {
+			if(iterator.next().cdfFile.getAbsoluteFile().equals(absoluteFile)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	protected void evictEntries() {
+		Iterator<ResolverEntry> iterator = entries.values().iterator();
+		while((entries.size() > maximumEntries) && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	protected String getSignature(Scan scan) {
+		Parameters scanParams = scan.getParameters();
+		StringBuffer signature = new StringBuffer();
+		signature.append(scan.getDataUrl()).append('\n');
+		signature.append(scanParams.get(PARAM_KEY_DATA_FILE_BASE)).append('\n');
+		signature.append(scanParams.get(PARAM_KEY_CDF_FILE_NAME)).append('\n');
+		signature.append(scanParams.get(PARAM_KEY_DAF_FILE_NAME));
+		return signature.toString();
+	}
+
+	@SuppressWarnings("deprecation")
+	protected static File resolveCdfFile(Scan scan) throws CDFQueryException {
+		Parameters scanParams = scan.getParameters();
+		String dataFileBase = scanParams.get(PARAM_KEY_DATA_FILE_BASE);
+
+		if(dataFileBase == null) {
+			dataFileBase = removeSuffix(scanParams.get(PARAM_KEY_CDF_FILE_NAME), FILE_NAME_SUFFIX_CDF);
+		}
+
+		if(dataFileBase == null) {
+			dataFileBase = removeSuffix(scanParams.get(PARAM_KEY_DAF_FILE_NAME), FILE_NAME_SUFFIX_DAF_DATA);
+		}
+
+		if(dataFileBase == null) {
+			throw new CDFQueryException("Cannot get CDF file base name from scan.");
+		}
+
+		return new File(scan.getDataUrl(), dataFileBase + FILE_NAME_SUFFIX_CDF);
+	}
+
+	protected static String removeSuffix(String fileName, String suffix) {
+		if((fileName != null) && fileName.endsWith(suffix)) {
+			return fileName.substring(0, fileName.length() - suffix.length());
+		}
+		return fileName;
+	}
+
+	public synchronized int getNumberOfEntries() {
+		return entries.size();
+	}
+
+	public synchronized int getMaximumEntries() {
+		return maximumEntries;
+	}
+	public synchronized void setMaximumEntries(int maximumEntries) {
+		this.maximumEntries = Math.max(maximumEntries, 0);
+		evictEntries();
+	}
+
+	public long getMissingRecheckInterval() {
+		return missingRecheckInterval;
+	}
+	public void setMissingRecheckInterval(long missingRecheckInterval) {
+		this.missingRecheckInterval = missingRecheckInterval;
+	}
+
+	protected static class ResolverEntry {
+
+		private String signature;
+		private File cdfFile;
+		private boolean exists = false;
+		private long existsChecked = 0L;
+
+		public ResolverEntry(String signature, File cdfFile) {
+			this.signature = signature;
+			this.cdfFile = cdfFile;
+		}
+	}
+}
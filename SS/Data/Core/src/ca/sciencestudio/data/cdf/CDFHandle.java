@@ -0,0 +1,87 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFHandle class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import gsfc.nssdc.cdf.CDF;
+
+import ca.sciencestudio.data.cdf.CDFHandleCache;
+import ca.sciencestudio.data.cdf.index.CDFIndexRegistry;
+
+/**
+ * Reference counted handle to a read-only CDF file opened by a CDFHandleCache.
+ *
+ * The CDF is shared by all holders of the handle, so access to the CDF should
+ * be synchronized on the handle. The handle must be released when no longer
+ * needed, the CDF is closed by the cache once the handle is unreferenced and
+ * either evicted or out of date.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFHandle {
+
+	private CDF cdf;
+	private String path;
+	private long lastModified;
+	private CDFHandleCache cache;
+
+	private int referenceCount = 0;
+	private boolean retired = false;
+
+	private CDFIndexRegistry indexRegistry = null;
+
+	protected CDFHandle(CDFHandleCache cache, String path, long lastModified, CDF cdf) {
+		this.cache = cache;
+		this.path = path;
+		this.lastModified = lastModified;
+		this.cdf = cdf;
+	}
+
+	/**
+	 * Release this reference to the handle, the handle must not be used after it is released.
+	 */
+	public void release() {
+		cache.release(this);
+	}
+
+	public CDF getCDF() {
+		return cdf;
+	}
+
+	/**
+	 * @return the indexes of the variables of the CDF, shared by all holders of the handle
+	 */
+	public synchronized CDFIndexRegistry getIndexRegistry() {
+		if(indexRegistry == null) {
+			indexRegistry = new CDFIndexRegistry(this);
+		}
+		return indexRegistry;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	protected int getReferenceCount() {
+		return referenceCount;
+	}
+	protected void setReferenceCount(int referenceCount) {
+		this.referenceCount = referenceCount;
+	}
+
+	protected boolean isRetired() {
+		return retired;
+	}
+	protected void setRetired(boolean retired) {
+		this.retired = retired;
+	}
+}
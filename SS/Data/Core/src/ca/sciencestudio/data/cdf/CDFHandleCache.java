@@ -0,0 +1,308 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFHandleCache class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gsfc.nssdc.cdf.CDF;
+import gsfc.nssdc.cdf.CDFException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ca.sciencestudio.data.cdf.CDFHandle;
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Cache of open read-only CDF files, keyed by path and modification time.
+ *
+ * Handles are reference counted, a handle which is no longer referenced is
+ * kept open for reuse until it is evicted (least recently used first) to
+ * keep the number of idle handles within the maximum. A handle for a file
+ * which has since been modified is retired, and is closed when released.
+ * A file which is being written (for example by a conversion which is still
+ * running) is not opened until writing ends. The writer can publish snapshots,
+ * consistent copies of the file saved so far, which are read instead.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFHandleCache {
+
+	public static final int DEFAULT_MAXIMUM_IDLE_HANDLES = 8;
+
+	public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot.cdf";
+
+	private static final String SNAPSHOT_FILE_DESCRIPTION = "CDF snapshot";
+
+	private static final CDFHandleCache DEFAULT_CACHE = new CDFHandleCache();
+
+	private int maximumIdleHandles = DEFAULT_MAXIMUM_IDLE_HANDLES;
+
+	// Access ordered, so iteration is from least to most recently used. //
+	private Map<String,CDFHandle> handles = new LinkedHashMap<String,CDFHandle>(16, 0.75f, true);
+	
+	// Paths of the files being written, which must not be opened, and the snapshot published (or null). //
+	private Map<String,File> writingPaths = new HashMap<String,File>();
+
+	protected Log log = LogFactory.getLog(getClass());
+
+	/**
+	 * @return the process-wide cache
+	 */
+	public static CDFHandleCache getDefaultCache() {
+		return DEFAULT_CACHE;
+	}
+
+	/**
+	 * Acquire a reference to a handle for the given file, the CDF is opened if
+	 * it is not already open or has been modified since it was opened.
+	 *
+	 * The CDF is opened without holding the cache lock, so a slow open does not
+	 * block other files. If another thread opens the same file concurrently the
+	 * first handle inserted is shared and the duplicate CDF is closed. A file
+	 * which is being written is not opened and an exception is thrown, acquire
+	 * the file returned by getReadableFile() to read its snapshot instead.
+	 */
+	public CDFHandle acquire(File cdfFile) throws CDFException {
+		String path = cdfFile.getAbsolutePath();
+		long lastModified = cdfFile.lastModified();
+
+		CDFHandle handle = acquireOpen(path, lastModified);
+		if(handle != null) {
+			return handle;
+		}
+
+		CDF cdf = CDF.open(path, CDF.READONLYon);
+
+		boolean writing;
+		synchronized(this) {
+			writing = writingPaths.containsKey(path);
+			if(!writing) {
+				handle = acquireOpen(path, lastModified);
+				if(handle == null) {
+					handle = new CDFHandle(this, path, lastModified, cdf);
+					handle.setReferenceCount(1);
+					handles.put(path, handle);
+					return handle;
+				}
+			}
+		}
+
+		// Opened concurrently by another thread, or writing began, so discard this CDF. //
+		try {
+			cdf.close();
+		}
+		catch(CDFException e) {
+			log.warn("Cannot close CDF file: " + path, e);
+		}
+		if(writing) {
+			throw new CDFException("CDF file is being written: " + path);
+		}
+		return handle;
+	}
+
+	/**
+	 * Acquire a reference to the cached handle for the given file, a handle which
+	 * is out of date is retired.
+	 *
+	 * @return the handle, or null if the file is not open
+	 * @throws CDFException if the file is being written
+	 */
+	protected synchronized CDFHandle acquireOpen(String path, long lastModified) throws CDFException {
+		if(writingPaths.containsKey(path)) {
+			throw new CDFException("CDF file is being written: " + path);
+		}
+		
+		CDFHandle handle = handles.get(path);
+		if(handle == null) {
+			return null;
+		}
+
+		if(handle.getLastModified() != lastModified) {
+			handles.remove(path);
+			retire(handle);
+			return null;
+		}
+
+		handle.setReferenceCount(handle.getReferenceCount() + 1);
+		return handle;
+	}
+
+	public synchronized void release(CDFHandle handle) {
+		int referenceCount = handle.getReferenceCount();
+		if(referenceCount <= 0) {
+			log.warn("CDF handle released more times than acquired: " + handle.getPath());
+			return;
+		}
+
+		handle.setReferenceCount(--referenceCount);
+		if(referenceCount == 0) {
+			if(handle.isRetired()) {
+				close(handle);
+			}
+			else {
+				evictIdleHandles();
+			}
+		}
+	}
+
+	/**
+	 * Retire the handle for the given file, it is closed once unreferenced.
+	 */
+	public synchronized void invalidate(File cdfFile) {
+		CDFHandle handle = handles.remove(cdfFile.getAbsolutePath());
+		if(handle != null) {
+			retire(handle);
+		}
+	}
+
+	public static File getSnapshotFile(File cdfFile) {
+		return new File(cdfFile.getPath() + SNAPSHOT_FILE_SUFFIX);
+	}
+
+	/**
+	 * Mark the given file as being written, the file is not opened until writing ends
+	 * and a handle already open is retired.
+	 */
+	public synchronized void beginWrite(File cdfFile) {
+		writingPaths.put(cdfFile.getAbsolutePath(), null);
+		invalidate(cdfFile);
+	}
+	
+	/**
+	 * Publish a snapshot of the given file which is being written, the file must be saved
+	 * (consistent) and not modified during the copy. The snapshot is read instead of the
+	 * file until writing ends, a handle to the previous snapshot is retired.
+	 *
+	 * @return the snapshot file
+	 */
+	public File publishSnapshot(File cdfFile) throws IOException {
+		if(!isWriting(cdfFile)) {
+			throw new IOException("CDF file is not being written: " + cdfFile.getAbsolutePath());
+		}
+
+		File snapshotFile = getSnapshotFile(cdfFile);
+		long lastModified = snapshotFile.lastModified();
+		SidecarFileUtility.copyFile(cdfFile, snapshotFile, SNAPSHOT_FILE_DESCRIPTION);
+
+		// Handles and query results are keyed by modification time, which must change with each snapshot. //
+		if((snapshotFile.lastModified() <= lastModified) && !snapshotFile.setLastModified(lastModified + 1000L)) {
+			throw new IOException("Cannot set modification time of CDF snapshot file: " + snapshotFile);
+		}
+
+		synchronized(this) {
+			invalidate(snapshotFile);
+			String path = cdfFile.getAbsolutePath();
+			if(writingPaths.containsKey(path)) {
+				writingPaths.put(path, snapshotFile);
+			}
+		}
+		return snapshotFile;
+	}
+	
+	/**
+	 * Mark the given file as no longer being written, so that it can be opened.
+	 * The snapshot published is retired and deleted.
+	 */
+	public void endWrite(File cdfFile) {
+		File snapshotFile;
+		synchronized(this) {
+			snapshotFile = writingPaths.remove(cdfFile.getAbsolutePath());
+			if(snapshotFile != null) {
+				invalidate(snapshotFile);
+			}
+		}
+		if((snapshotFile != null) && snapshotFile.exists() && !snapshotFile.delete()) {
+			log.warn("Cannot delete CDF snapshot file: " + snapshotFile);
+		}
+	}
+	
+	public synchronized boolean isWriting(File cdfFile) {
+		return writingPaths.containsKey(cdfFile.getAbsolutePath());
+	}
+	
+	/**
+	 * @return the file to read for the given file, the snapshot published if the file is being written
+	 */
+	public synchronized File getReadableFile(File cdfFile) {
+		File snapshotFile = writingPaths.get(cdfFile.getAbsolutePath());
+		if(snapshotFile != null) {
+			return snapshotFile;
+		}
+		return cdfFile;
+	}
+
+	/**
+	 * Retire all handles, each is closed once unreferenced.
+	 */
+	public synchronized void clear() {
+		List<CDFHandle> retiredHandles = new ArrayList<CDFHandle>(handles.values());
+		handles.clear();
+		for(CDFHandle handle : retiredHandles) {
+			retire(handle);
+		}
+	}
+
+	public synchronized int getNumberOfHandles() {
+		return handles.size();
+	}
+
+	public synchronized int getMaximumIdleHandles() {
+		return maximumIdleHandles;
+	}
+	public synchronized void setMaximumIdleHandles(int maximumIdleHandles) {
+		this.maximumIdleHandles = Math.max(maximumIdleHandles, 0);
+		evictIdleHandles();
+	}
+
+	protected void evictIdleHandles() {
+		int idleHandles = 0;
+		for(CDFHandle handle : handles.values()) {
+			if(handle.getReferenceCount() == 0) {
+				idleHandles++;
+			}
+		}
+
+		Iterator<CDFHandle> iterator = handles.values().iterator();
+		while((idleHandles > maximumIdleHandles) && iterator.hasNext()) {
+			CDFHandle handle = iterator.next();
+			if(handle.getReferenceCount() == 0) {
+				iterator.remove();
+				close(handle);
+				idleHandles--;
+			}
+		}
+	}
+
+	protected void retire(CDFHandle handle) {
+		handle.setRetired(true);
+		if(handle.getReferenceCount() == 0) {
+			close(handle);
+		}
+	}
+
+	protected void close(CDFHandle handle) {
+		// Synchronized so the CDF is not closed while being accessed. //
+		synchronized(handle) {
+			try {
+				handle.getCDF().close();
+			}
+			catch(CDFException e) {
+				log.warn("Cannot close CDF file: " + handle.getPath(), e);
+			}
+		}
+	}
+}
@@ -8,14 +8,15 @@
 package ca.sciencestudio.data.cdf;
 
 import java.io.File;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
-import java.util.regex.Pattern;
 
 import gsfc.nssdc.cdf.Attribute;
 import gsfc.nssdc.cdf.CDF;
@@ -23,69 +24,68 @@ import gsfc.nssdc.cdf.CDFException;
 import gsfc.nssdc.cdf.Entry;
 import gsfc.nssdc.cdf.Variable;
 
+import ca.sciencestudio.data.cdf.CDFHandle;
+import ca.sciencestudio.data.cdf.CDFHandleCache;
 import ca.sciencestudio.data.cdf.CDFRecord;
+import ca.sciencestudio.data.cdf.CDFVariableUtility;
+import ca.sciencestudio.data.cdf.plan.CDFQueryPlan;
+import ca.sciencestudio.data.cdf.plan.CDFQueryPlanner;
+import ca.sciencestudio.data.cdf.plan.CDFRecordSet;
 import ca.sciencestudio.data.cdf.selector.CDFSelector;
+import ca.sciencestudio.data.record.PrimitiveColumnTable;
+import ca.sciencestudio.data.record.PrimitiveColumnTable.ColumnType;
 import ca.sciencestudio.data.standard.StdCategories;
 import ca.sciencestudio.data.standard.StdConverter;
 import ca.sciencestudio.data.standard.StdScanParams;
 import ca.sciencestudio.data.standard.category.UniqueCategory;
 import ca.sciencestudio.data.support.CDFQueryException;
+import ca.sciencestudio.data.support.RecordFormatException;
 import ca.sciencestudio.data.util.CategoryUtils;
 import ca.sciencestudio.model.session.Scan;
-import ca.sciencestudio.util.Parameters;
 
 /**
+ * Query of a CDF file, the CDF is opened through a CDFHandleCache so the
+ * handle can be shared with other queries of the same file. Close the query
+ * when finished to release the handle. While the file is being written the
+ * last snapshot published is queried, getCdfFile() returns the file queried.
+ *
  * @author maxweld
  *
  */
 public class CDFQuery implements StdScanParams, StdConverter, StdCategories {
 
-	private CDF cdf;
+	private static final int COLUMN_READ_BLOCK_LENGTH = 65536;
+
+	private File cdfFile;
+	private volatile CDFHandle cdfHandle;
+	private CDFQueryCache cdfQueryCache = null;
 	private boolean standard;
 	private Collection<UniqueCategory<?>> categories;
 	
-	@SuppressWarnings("deprecation")
 	protected static File getCdfFileFromScan(Scan scan) throws CDFQueryException {
-		Parameters scanParams = scan.getParameters();
-		String dataFileBase = scanParams.get(PARAM_KEY_DATA_FILE_BASE);
-		
-		if(dataFileBase == null) {
-			String cdfFileName = scanParams.get(PARAM_KEY_CDF_FILE_NAME);
-			if(cdfFileName != null) {
-				String cdfSuffixRegex = Pattern.quote(FILE_NAME_SUFFIX_CDF) + "\\Z";
-				dataFileBase = cdfFileName.replaceAll(cdfSuffixRegex, ""); 
-			}
-		}
-		
-		if(dataFileBase == null) {
-			String dafFileName = scanParams.get(PARAM_KEY_DAF_FILE_NAME);
-			if(dafFileName != null) {
-				String dafSuffixRegex = Pattern.quote(FILE_NAME_SUFFIX_DAF_DATA) + "\\Z";
-				dataFileBase = dafFileName.replaceAll(dafSuffixRegex, "");
-			}
-		}
-		
-		if(dataFileBase == null) {
-			throw new CDFQueryException("Cannot get CDF file base name from scan.");
-		}
-		
-		return new File(scan.getDataUrl(), dataFileBase + FILE_NAME_SUFFIX_CDF);
+		return CDFFileResolver.getDefaultResolver().getCdfFile(scan);
 	}
 	
 	public CDFQuery(Scan scan) throws CDFQueryException {
 		this(getCdfFileFromScan(scan));
 	}
 	
+	public CDFQuery(String cdfFilePath) throws CDFQueryException {
+		this(new File(cdfFilePath));
+	}
+	
 	public CDFQuery(File cdfFile) throws CDFQueryException {
-		this(cdfFile.getAbsolutePath());
+		this(cdfFile, CDFHandleCache.getDefaultCache());
 	}
 	
-	public CDFQuery(String cdfFilePath) throws CDFQueryException {
+	public CDFQuery(File cdfFile, CDFHandleCache cdfHandleCache) throws CDFQueryException {
+		// The last snapshot is queried while the file is being written. //
+		this.cdfFile = cdfHandleCache.getReadableFile(cdfFile);
 		try {
-			cdf = CDF.open(cdfFilePath, CDF.READONLYon);
+			cdfHandle = cdfHandleCache.acquire(this.cdfFile);
 		}
 		catch(CDFException e) {
-			throw new CDFQueryException("Cannot open CDF file: " + cdfFilePath, e);
+			throw new CDFQueryException("Cannot open CDF file: " + this.cdfFile.getAbsolutePath(), e);
 		}
 		
 		try {
@@ -107,17 +107,44 @@ public class CDFQuery implements StdScanParams, StdConverter, StdCategories {
 		}
 	}
 	
+	/**
+	 * Release the CDF handle, the query must not be used after it is closed.
+	 */
+	public void close() {
+		CDFHandle cdfHandle;
+		synchronized(this) {
+			cdfHandle = this.cdfHandle;
+			this.cdfHandle = null;
+		}
+		if(cdfHandle != null) {
+			cdfHandle.release();
+		}
+	}
+	
 	@Override
 	protected void finalize() throws Throwable {
-		if(cdf != null) {
-			cdf.close();
-		}
+		close();
 		super.finalize();
 	}
 	
+	protected CDFHandle getCDFHandle() throws CDFQueryException {
+		CDFHandle cdfHandle = this.cdfHandle;
+		if(cdfHandle == null) {
+			throw new CDFQueryException("CDF query is closed.");
+		}
+		return cdfHandle;
+	}
+	
+	public File getCdfFile() {
+		return cdfFile;
+	}
+	
 	public Attribute getAttributeByName(String name) throws CDFQueryException {
+		CDFHandle cdfHandle = getCDFHandle();
 		try {
-			return cdf.getAttribute(name);
+			synchronized(cdfHandle) {
+				return cdfHandle.getCDF().getAttribute(name);
+			}
 		}
 		catch(CDFException e) {
 			throw new CDFQueryException("Cannot get attribute with name, " + name + ", in CDF file.", e);
@@ -125,8 +152,11 @@ public class CDFQuery implements StdScanParams, StdConverter, StdCategories {
 	}
 	
 	public Attribute getAttributeByID(long id) throws CDFQueryException {
+		CDFHandle cdfHandle = getCDFHandle();
 		try {
-			return cdf.getAttribute(id);
+			synchronized(cdfHandle) {
+				return cdfHandle.getCDF().getAttribute(id);
+			}
 		}
 		catch(CDFException e) {
 			throw new CDFQueryException("Cannot get attribute with ID, " + id + ", in CDF file.", e);
@@ -135,8 +165,11 @@ public class CDFQuery implements StdScanParams, StdConverter, StdCategories {
 	
 	
 	public Variable getVariableByName(String name) throws CDFQueryException {
+		CDFHandle cdfHandle = getCDFHandle();
 		try {
-			return cdf.getVariable(name);
+			synchronized(cdfHandle) {
+				return cdfHandle.getCDF().getVariable(name);
+			}
 		}
 		catch(CDFException e) {
 			throw new CDFQueryException("Cannot get variable with name, " + name + ", in CDF file.", e);
@@ -144,8 +177,11 @@ public class CDFQuery implements StdScanParams, StdConverter, StdCategories {
 	}
 	
 	public Variable getVariableByID(long id) throws CDFQueryException {
+		CDFHandle cdfHandle = getCDFHandle();
 		try {
-			return cdf.getVariable(id);
+			synchronized(cdfHandle) {
+				return cdfHandle.getCDF().getVariable(id);
+			}
 		}
 		catch(CDFException e) {
 			throw new CDFQueryException("Cannot get variable with ID, " + id + ", in CDF file.", e);
@@ -196,30 +232,277 @@ public class CDFQuery implements StdScanParams, StdConverter, StdCategories {
 		return queryRecords(getEventFromVariableIDs(cdfVarIDs), cdfSelector);
 	}
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Plan the query, the plan uses the indexes of the variables compared by the selector.
+	 */
+	public CDFQueryPlan planQuery(CDFEvent cdfEvent, CDFSelector cdfSelector) throws CDFQueryException {
+		CDFQueryPlanner cdfQueryPlanner = new CDFQueryPlanner(getCDFHandle().getIndexRegistry());
+		return cdfQueryPlanner.plan(cdfEvent.getVariableNames(), cdfSelector);
+	}
+	
+	/**
+	 * Query the records selected by the selector, only the records given by
+	 * the query plan are read and the residual selector is evaluated on each.
+	 * If the query has a cache then the result is taken from, or added to, the
+	 * cache and must not be modified.
+	 */
 	public List<CDFRecord> queryRecords(CDFEvent cdfEvent, CDFSelector cdfSelector) throws CDFQueryException {
-		try {
-			long numberOfRecords = cdfEvent.getMinimumNumberOfRecords();
+		String cacheKey = getCacheKey("records", cdfEvent, cdfSelector);
+		if(cacheKey != null) {
+			List<CDFRecord> cdfRecords = cdfQueryCache.getRecords(cacheKey);
+			if(cdfRecords != null) {
+				return cdfRecords;
+			}
+		}
 		
-			CDFRecord cdfRecord;
-			Vector<Object> cdfValues;
+		CDFQueryPlan cdfQueryPlan = planQuery(cdfEvent, cdfSelector);
+		
+		CDFEvent residualEvent = null;
+		if(cdfQueryPlan.getResidualVarNames() != null) {
+			residualEvent = getEventFromVariableNames(cdfQueryPlan.getResidualVarNames());
+		}
+		
+		CDFHandle cdfHandle = getCDFHandle();
+		try {
+			long numberOfRecords;
+			synchronized(cdfHandle) {
+				numberOfRecords = cdfEvent.getMinimumNumberOfRecords();
+			}
+			
 			List<CDFRecord> cdfRecords = new ArrayList<CDFRecord>();
 			
-			for(long i = 0L; i < numberOfRecords; i++) {
-				cdfValues = cdf.getRecord(i, cdfEvent.getVariableIDs());		
-				cdfRecord = new CDFRecord(cdfEvent, cdfValues);
-				if((cdfSelector == null) || cdfSelector.select(cdfRecord)) {
-					cdfRecords.add(cdfRecord);
+			CDFRecordSet cdfRecordSet = cdfQueryPlan.getRecordSet();
+			if(cdfRecordSet == null) {
+				for(long i = 0L; i < numberOfRecords; i++) {
+					queryRecord(cdfHandle, i, cdfEvent, cdfQueryPlan.getResidualSelector(), residualEvent, cdfRecords);
+				}
+			}
+			else {
+				for(int idx = 0; idx < cdfRecordSet.size(); idx++) {
+					long i = cdfRecordSet.getRecordNumber(idx);
+					if(i >= numberOfRecords) {
+						break;
+					}
+					queryRecord(cdfHandle, i, cdfEvent, cdfQueryPlan.getResidualSelector(), residualEvent, cdfRecords);
 				}
 			}
 			
+			if(cacheKey != null) {
+				return cdfQueryCache.putRecords(cacheKey, cdfRecords);
+			}
 			return cdfRecords;
 		}
 		catch(CDFException e) {
 			throw new CDFQueryException("Cannot get record for variables, " + cdfEvent.getVariableNames() + ", in CDF file.", e);
 		}
 	}
+	
+	/**
+	 * Read the record and add it to the list if selected, if the residual event
+	 * is given then it is read first to evaluate the selector.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void queryRecord(CDFHandle cdfHandle, long i, CDFEvent cdfEvent, CDFSelector cdfSelector, CDFEvent residualEvent, List<CDFRecord> cdfRecords) throws CDFException, CDFQueryException {
+		CDF cdf = cdfHandle.getCDF();
+		Vector<Object> cdfValues;
+		
+		if(residualEvent != null) {
+			synchronized(cdfHandle) {
+				cdfValues = cdf.getRecord(i, residualEvent.getVariableIDs());
+			}
+			if(!cdfSelector.select(new CDFRecord(residualEvent, cdfValues))) {
+				return;
+			}
+			cdfSelector = null;
+		}
+		
+		synchronized(cdfHandle) {
+			cdfValues = cdf.getRecord(i, cdfEvent.getVariableIDs());
+		}
+		
+		CDFRecord cdfRecord = new CDFRecord(cdfEvent, cdfValues);
+		if((cdfSelector == null) || cdfSelector.select(cdfRecord)) {
+			cdfRecords.add(cdfRecord);
+		}
+	}
 
+	public PrimitiveColumnTable queryColumnsByNames(String[] cdfVarNames) throws CDFQueryException {
+		return queryColumnsByNames(cdfVarNames, null);
+	}
+	
+	public PrimitiveColumnTable queryColumnsByNames(String[] cdfVarNames, CDFSelector cdfSelector) throws CDFQueryException {
+		return queryColumns(getEventFromVariableNames(cdfVarNames), cdfSelector);
+	}
+	
+	/**
+	 * Query the values of only the event variables (columns) for the selected
+	 * records. Scalar numeric variables are read in blocks of records into long
+	 * (integer types) or double (real types) columns, other variables are read
+	 * by record into object columns. If the query has a cache then the result
+	 * is taken from, or added to, the cache and is unmodifiable.
+	 */
+	public PrimitiveColumnTable queryColumns(CDFEvent cdfEvent, CDFSelector cdfSelector) throws CDFQueryException {
+		String cacheKey = getCacheKey("columns", cdfEvent, cdfSelector);
+		if(cacheKey != null) {
+			PrimitiveColumnTable columnTable = cdfQueryCache.getColumns(cacheKey);
+			if(columnTable != null) {
+				return columnTable;
+			}
+		}
+		
+		CDFQueryPlan cdfQueryPlan = planQuery(cdfEvent, cdfSelector);
+		
+		CDFHandle cdfHandle = getCDFHandle();
+		try {
+			long numberOfRecords;
+			synchronized(cdfHandle) {
+				numberOfRecords = cdfEvent.getMinimumNumberOfRecords();
+			}
+			
+			CDFRecordSet cdfRecordSet = selectRecordSet(cdfHandle, cdfEvent, cdfQueryPlan, numberOfRecords);
+			
+			int numberOfVariables = cdfEvent.getNumberOfVariables();
+			ColumnType[] columnTypes = new ColumnType[numberOfVariables];
+			for(int col = 0; col < numberOfVariables; col++) {
+				columnTypes[col] = getColumnType(cdfEvent.getVariable(col));
+			}
+			
+			PrimitiveColumnTable columnTable = new PrimitiveColumnTable(columnTypes, cdfRecordSet.size());
+			for(int idx = 0; idx < cdfRecordSet.size(); idx++) {
+				columnTable.addRow();
+			}
+			
+			for(int col = 0; col < numberOfVariables; col++) {
+				queryColumn(cdfHandle, cdfEvent.getVariable(col), cdfRecordSet, columnTable, col);
+			}
+			
+			if(cacheKey != null) {
+				return cdfQueryCache.putColumns(cacheKey, columnTable);
+			}
+			return columnTable;
+		}
+		catch(CDFException e) {
+			throw new CDFQueryException("Cannot get values for variables, " + Arrays.toString(cdfEvent.getVariableNames()) + ", in CDF file.", e);
+		}
+		catch(RecordFormatException e) {
+			throw new CDFQueryException("Cannot set values for variables, " + Arrays.toString(cdfEvent.getVariableNames()) + ", in column table.", e);
+		}
+	}
+	
+	/**
+	 * @return the records given by the query plan for which the residual selector is true
+	 */
+	@SuppressWarnings("unchecked")
+	protected CDFRecordSet selectRecordSet(CDFHandle cdfHandle, CDFEvent cdfEvent, CDFQueryPlan cdfQueryPlan, long numberOfRecords) throws CDFException, CDFQueryException {
+		CDFRecordSet allRecords = CDFRecordSet.range(0, (int)Math.min(numberOfRecords, Integer.MAX_VALUE));
+		
+		CDFRecordSet cdfRecordSet = cdfQueryPlan.getRecordSet();
+		if(cdfRecordSet == null) {
+			cdfRecordSet = allRecords;
+		}
+		else {
+			cdfRecordSet = cdfRecordSet.intersect(allRecords);
+		}
+		
+		CDFSelector residualSelector = cdfQueryPlan.getResidualSelector();
+		if(residualSelector == null) {
+			return cdfRecordSet;
+		}
+		
+		CDFEvent residualEvent = cdfEvent;
+		if(cdfQueryPlan.getResidualVarNames() != null) {
+			residualEvent = getEventFromVariableNames(cdfQueryPlan.getResidualVarNames());
+		}
+		long[] residualVarIDs = residualEvent.getVariableIDs();
+		
+		int numberOfSelected = 0;
+		int[] selected = new int[cdfRecordSet.size()];
+		for(int idx = 0; idx < cdfRecordSet.size(); idx++) {
+			int recordNumber = cdfRecordSet.getRecordNumber(idx);
+			Vector<Object> cdfValues;
+			synchronized(cdfHandle) {
+				cdfValues = cdfHandle.getCDF().getRecord(recordNumber, residualVarIDs);
+			}
+			if(residualSelector.select(new CDFRecord(residualEvent, cdfValues))) {
+				selected[numberOfSelected++] = recordNumber;
+			}
+		}
+		return CDFRecordSet.list(Arrays.copyOf(selected, numberOfSelected));
+	}
+	
+	/**
+	 * Read the values of the variable for the records into the column, values
+	 * of scalar numeric variables are read in blocks of neighbouring records.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void queryColumn(CDFHandle cdfHandle, Variable variable, CDFRecordSet cdfRecordSet, PrimitiveColumnTable columnTable, int col) throws CDFException, RecordFormatException {
+		ColumnType columnType = columnTable.getColumnType(col);
+		long[] cdfVarIDs = new long[] { variable.getID() };
+		
+		int idx = 0;
+		while(idx < cdfRecordSet.size()) {
+			int recordStart = cdfRecordSet.getRecordNumber(idx);
+			
+			Object values = null;
+			int lastIdx = idx;
+			if(columnType != ColumnType.OBJECT) {
+				while(((lastIdx + 1) < cdfRecordSet.size()) && ((cdfRecordSet.getRecordNumber(lastIdx + 1) - recordStart) < COLUMN_READ_BLOCK_LENGTH)) {
+					lastIdx++;
+				}
+				long recordCount = cdfRecordSet.getRecordNumber(lastIdx) - recordStart + 1L;
+				synchronized(cdfHandle) {
+					values = CDFVariableUtility.readScalarValues(variable, recordStart, recordCount);
+				}
+			}
+			
+			for(; idx <= lastIdx; idx++) {
+				int recordNumber = cdfRecordSet.getRecordNumber(idx);
+				if(values == null) {
+					Vector<Object> cdfValues;
+					synchronized(cdfHandle) {
+						cdfValues = cdfHandle.getCDF().getRecord(recordNumber, cdfVarIDs);
+					}
+					columnTable.setValue(idx, col, cdfValues.get(0));
+				}
+				else if(columnType == ColumnType.LONG) {
+					columnTable.setLong(idx, col, ((Number)Array.get(values, recordNumber - recordStart)).longValue());
+				}
+				else {
+					columnTable.setDouble(idx, col, ((Number)Array.get(values, recordNumber - recordStart)).doubleValue());
+				}
+			}
+		}
+	}
+	
+	protected static ColumnType getColumnType(Variable variable) {
+		if(CDFVariableUtility.isScalar(variable)) {
+			if(CDFVariableUtility.isIntDataType(variable.getDataType())) {
+				return ColumnType.LONG;
+			}
+			if(CDFVariableUtility.isRealDataType(variable.getDataType())) {
+				return ColumnType.DOUBLE;
+			}
+		}
+		return ColumnType.OBJECT;
+	}
+	
+	/**
+	 * @return the cache key for the query result or null if the result is not to be cached
+	 */
+	protected String getCacheKey(String resultType, CDFEvent cdfEvent, CDFSelector cdfSelector) throws CDFQueryException {
+		if(cdfQueryCache == null) {
+			return null;
+		}
+		return CDFQueryCache.getKey(getCDFHandle(), resultType, cdfEvent.getVariableNames(), cdfSelector);
+	}
+	
+	public CDFQueryCache getCdfQueryCache() {
+		return cdfQueryCache;
+	}
+	public void setCdfQueryCache(CDFQueryCache cdfQueryCache) {
+		this.cdfQueryCache = cdfQueryCache;
+	}
+	
 	public boolean isStandard() {
 		return standard;
 	}
@@ -0,0 +1,344 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFQueryCache class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sciencestudio.data.cdf.selector.CDFSelector;
+import ca.sciencestudio.data.cdf.selector.EqualIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.EqualStringCDFSelector;
+import ca.sciencestudio.data.cdf.selector.GreaterThanIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.GreaterThanOrEqualIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LessThanIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LessThanOrEqualIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LogicalAndCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LogicalOrCDFSelector;
+import ca.sciencestudio.data.record.PrimitiveColumnTable;
+import ca.sciencestudio.data.record.PrimitiveColumnTable.ColumnType;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+/**
+ * Cache of decoded CDF query results, keyed by CDF file (path and modification
+ * time), selector and projection (the variables queried).
+ *
+ * The cache is limited to a maximum number of bytes, estimated from the values
+ * of each result, and results are evicted least recently used first. Results
+ * for a selector which is not built by CDFSelectorBuilder are not cached.
+ * Cached results are shared between queries and are unmodifiable.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFQueryCache {
+
+	public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024L * 1024L;
+
+	private static final long OBJECT_BYTES = 16L;
+	private static final long REFERENCE_BYTES = 8L;
+
+	private static final CDFQueryCache DEFAULT_CACHE = new CDFQueryCache();
+
+	private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+	private long numberOfBytes = 0L;
+
+	private long numberOfHits = 0L;
+	private long numberOfMisses = 0L;
+
+	// Access ordered, so iteration is from least to most recently used. //
+	private Map<String,CacheEntry> entries = new LinkedHashMap<String,CacheEntry>(16, 0.75f, true);
+
+	/**
+	 * @return the process-wide cache
+	 */
+	public static CDFQueryCache getDefaultCache() {
+		return DEFAULT_CACHE;
+	}
+
+	/**
+	 * @return the cache key or null if the selector is not known and the result cannot be cached
+	 */
+	public static String getKey(CDFHandle cdfHandle, String resultType, String[] cdfVarNames, CDFSelector cdfSelector) {
+		StringBuffer key = new StringBuffer();
+		key.append(cdfHandle.getPath()).append('\n');
+		key.append(cdfHandle.getLastModified()).append('\n');
+		key.append(resultType).append('\n');
+		for(String cdfVarName : cdfVarNames) {
+			appendName(cdfVarName, key).append(',');
+		}
+		key.append('\n');
+		if((cdfSelector != null) && !appendSelectorKey(cdfSelector, key)) {
+			return null;
+		}
+		return key.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<CDFRecord> getRecords(String key) {
+		return (List<CDFRecord>)get(key);
+	}
+
+	/**
+	 * @return the records as cached, an unmodifiable list
+	 */
+	public List<CDFRecord> putRecords(String key, List<CDFRecord> cdfRecords) {
+		List<CDFRecord> cachedRecords = Collections.unmodifiableList(cdfRecords);
+		put(key, cachedRecords, getNumberOfBytes(cdfRecords));
+		return cachedRecords;
+	}
+
+	public PrimitiveColumnTable getColumns(String key) {
+		return (PrimitiveColumnTable)get(key);
+	}
+
+	/**
+	 * @return the table as cached, an unmodifiable view
+	 */
+	public PrimitiveColumnTable putColumns(String key, PrimitiveColumnTable columnTable) {
+		PrimitiveColumnTable cachedTable = PrimitiveColumnTable.unmodifiableTable(columnTable);
+		put(key, cachedTable, getNumberOfBytes(cachedTable));
+		return cachedTable;
+	}
+
+	protected synchronized Object get(String key) {
+		CacheEntry entry = entries.get(key);
+		if(entry == null) {
+			numberOfMisses++;
+			return null;
+		}
+		numberOfHits++;
+		return entry.result;
+	}
+
+	/**
+	 * Cache the result, a result larger than the cache is not cached.
+	 */
+	protected synchronized void put(String key, Object result, long bytes) {
+		CacheEntry entry = entries.remove(key);
+		if(entry != null) {
+			numberOfBytes -= entry.bytes;
+		}
+
+		if(bytes > maximumBytes) {
+			return;
+		}
+
+		entries.put(key, new CacheEntry(result, bytes));
+		numberOfBytes += bytes;
+		evictEntries();
+	}
+
+	/**
+	 * Remove all results for the given file.
+	 */
+	public synchronized void invalidate(File cdfFile) {
+		String prefix = cdfFile.getAbsolutePath() + '\n';
+		Iterator<Map.Entry<String,CacheEntry>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext()) {
+			Map.Entry<String,CacheEntry> entry = iterator.next();
+			if(entry.getKey().startsWith(prefix)) {
+				numberOfBytes -= entry.getValue().bytes;
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		numberOfBytes = 0L;
+	}
+
+	protected void evictEntries() {
+		Iterator<CacheEntry> iterator = entries.values().iterator();
+		while((numberOfBytes > maximumBytes) && iterator.hasNext()) {
+			numberOfBytes -= iterator.next().bytes;
+			iterator.remove();
+		}
+	}
+
+	public synchronized int getNumberOfEntries() {
+		return entries.size();
+	}
+
+	public synchronized long getNumberOfBytes() {
+		return numberOfBytes;
+	}
+
+	public synchronized long getNumberOfHits() {
+		return numberOfHits;
+	}
+
+	public synchronized long getNumberOfMisses() {
+		return numberOfMisses;
+	}
+
+	public synchronized long getMaximumBytes() {
+		return maximumBytes;
+	}
+	public synchronized void setMaximumBytes(long maximumBytes) {
+		this.maximumBytes = maximumBytes;
+		evictEntries();
+	}
+
+	/**
+	 * @return false if the selector is not known
+	 */
+	protected static boolean appendSelectorKey(CDFSelector cdfSelector, StringBuffer key) {
+		if(cdfSelector instanceof LogicalAndCDFSelector) {
+			LogicalAndCDFSelector selector = (LogicalAndCDFSelector)cdfSelector;
+			key.append("AND(");
+			if(!appendSelectorKey(selector.getCdfSelector1(), key)) {
+				return false;
+			}
+			key.append(',');
+			if(!appendSelectorKey(selector.getCdfSelector2(), key)) {
+				return false;
+			}
+			key.append(')');
+			return true;
+		}
+		if(cdfSelector instanceof LogicalOrCDFSelector) {
+			LogicalOrCDFSelector selector = (LogicalOrCDFSelector)cdfSelector;
+			key.append("OR(");
+			if(!appendSelectorKey(selector.getCdfSelector1(), key)) {
+				return false;
+			}
+			key.append(',');
+			if(!appendSelectorKey(selector.getCdfSelector2(), key)) {
+				return false;
+			}
+			key.append(')');
+			return true;
+		}
+		if(cdfSelector instanceof EqualIntCDFSelector) {
+			EqualIntCDFSelector selector = (EqualIntCDFSelector)cdfSelector;
+			appendName(selector.getCdfVarName(), key.append("EQ(")).append(',').append(selector.getValue()).append(')');
+			return true;
+		}
+		if(cdfSelector instanceof EqualStringCDFSelector) {
+			EqualStringCDFSelector selector = (EqualStringCDFSelector)cdfSelector;
+			String value = selector.getValue();
+			appendName(selector.getCdfVarName(), key.append("EQS(")).append(',');
+			if(value != null) {
+				key.append(value.length()).append(':').append(value);
+			}
+			key.append(')');
+			return true;
+		}
+		if(cdfSelector instanceof LessThanIntCDFSelector) {
+			LessThanIntCDFSelector selector = (LessThanIntCDFSelector)cdfSelector;
+			appendName(selector.getCdfVarName(), key.append("LT(")).append(',').append(selector.getValue()).append(')');
+			return true;
+		}
+		if(cdfSelector instanceof LessThanOrEqualIntCDFSelector) {
+			LessThanOrEqualIntCDFSelector selector = (LessThanOrEqualIntCDFSelector)cdfSelector;
+			appendName(selector.getCdfVarName(), key.append("LTE(")).append(',').append(selector.getValue()).append(')');
+			return true;
+		}
+		if(cdfSelector instanceof GreaterThanIntCDFSelector) {
+			GreaterThanIntCDFSelector selector = (GreaterThanIntCDFSelector)cdfSelector;
+			appendName(selector.getCdfVarName(), key.append("GT(")).append(',').append(selector.getValue()).append(')');
+			return true;
+		}
+		if(cdfSelector instanceof GreaterThanOrEqualIntCDFSelector) {
+			GreaterThanOrEqualIntCDFSelector selector = (GreaterThanOrEqualIntCDFSelector)cdfSelector;
+			appendName(selector.getCdfVarName(), key.append("GTE(")).append(',').append(selector.getValue()).append(')');
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Append the name with its length, so that names containing separators cannot make keys ambiguous.
+	 */
+	protected static StringBuffer appendName(String name, StringBuffer key) {
+		if(name == null) {
+			return key.append('-');
+		}
+		return key.append(name.length()).append(':').append(name);
+	}
+
+	protected static long getNumberOfBytes(List<CDFRecord> cdfRecords) {
+		long bytes = OBJECT_BYTES + (cdfRecords.size() * REFERENCE_BYTES);
+		for(CDFRecord cdfRecord : cdfRecords) {
+			bytes += OBJECT_BYTES;
+			for(Object value : cdfRecord.getValues()) {
+				bytes += getNumberOfBytes(value);
+			}
+		}
+		return bytes;
+	}
+
+	protected static long getNumberOfBytes(PrimitiveColumnTable columnTable) {
+		long bytes = OBJECT_BYTES;
+		int numberOfRows = columnTable.getNumberOfRows();
+		for(int col = 0; col < columnTable.getNumberOfColumns(); col++) {
+			if(columnTable.getColumnType(col) != ColumnType.OBJECT) {
+				bytes += numberOfRows * 8L;
+				continue;
+			}
+			try {
+				for(int row = 0; row < numberOfRows; row++) {
+					bytes += getNumberOfBytes(columnTable.getValue(row, col));
+				}
+			}
+			catch(RecordFormatException e) {
+				bytes += numberOfRows * OBJECT_BYTES;
+			}
+		}
+		return bytes;
+	}
+
+	protected static long getNumberOfBytes(Object value) {
+		if(value == null) {
+			return REFERENCE_BYTES;
+		}
+		if(value instanceof String) {
+			return REFERENCE_BYTES + OBJECT_BYTES + (2L * ((String)value).length());
+		}
+		Class<?> valueClass = value.getClass();
+		if(valueClass.isArray()) {
+			int length = Array.getLength(value);
+			Class<?> componentType = valueClass.getComponentType();
+			if((componentType == long.class) || (componentType == double.class)) {
+				return REFERENCE_BYTES + OBJECT_BYTES + (8L * length);
+			}
+			if((componentType == int.class) || (componentType == float.class)) {
+				return REFERENCE_BYTES + OBJECT_BYTES + (4L * length);
+			}
+			if((componentType == short.class) || (componentType == char.class)) {
+				return REFERENCE_BYTES + OBJECT_BYTES + (2L * length);
+			}
+			if((componentType == byte.class) || (componentType == boolean.class)) {
+				return REFERENCE_BYTES + OBJECT_BYTES + length;
+			}
+			long bytes = REFERENCE_BYTES + OBJECT_BYTES;
+			for(int idx = 0; idx < length; idx++) {
+				bytes += getNumberOfBytes(Array.get(value, idx));
+			}
+			return bytes;
+		}
+		return REFERENCE_BYTES + OBJECT_BYTES + 8L;
+	}
+
+	protected static class CacheEntry {
+
+		private Object result;
+		private long bytes;
+
+		public CacheEntry(Object result, long bytes) {
+			this.result = result;
+			this.bytes = bytes;
+		}
+	}
+}
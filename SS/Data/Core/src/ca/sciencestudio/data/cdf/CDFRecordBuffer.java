@@ -0,0 +1,190 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFRecordBuffer class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import gsfc.nssdc.cdf.CDFException;
+import gsfc.nssdc.cdf.Variable;
+
+import java.lang.reflect.Array;
+import java.util.Vector;
+
+import ca.sciencestudio.data.support.RecordFormatException;
+
+/**
+ * Buffer of consecutive records of a CDF event, which are written with one
+ * hyper put per variable rather than one put per record. The records are
+ * written when the buffer is full, when a record is not consecutive and when
+ * flushed, so the buffer must be flushed before the CDF file is saved or closed.
+ *
+ * The values are copied (converted to CDF values) when a record is put,
+ * so the record can be reused for the next record.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFRecordBuffer {
+
+	public static final int DEFAULT_MAXIMUM_RECORDS = 256;
+
+	private static final long[] SCALAR_DIM_INDICES = new long[] { 0L };
+	private static final long[] SCALAR_DIM_COUNTS = new long[] { 1L };
+	private static final long[] SCALAR_DIM_INTERVALS = new long[] { 1L };
+
+	private CDFEvent event;
+	private int maximumRecords;
+
+	private long firstRecord = 0L;
+	private int numberOfRecords = 0;
+	private Object[][] values;
+
+	public CDFRecordBuffer(CDFEvent event) {
+		this(event, DEFAULT_MAXIMUM_RECORDS);
+	}
+
+	public CDFRecordBuffer(CDFEvent event, int maximumRecords) {
+		this.event = event;
+		this.maximumRecords = Math.max(maximumRecords, 1);
+		this.values = new Object[event.getNumberOfVariables()][this.maximumRecords];
+	}
+
+	/**
+	 * Add the record with the given record number, the buffered records are written first if it is not consecutive.
+	 */
+	public void putRecord(long recordNumber, CDFRecord record) throws CDFException, RecordFormatException {
+		if((numberOfRecords > 0) && (recordNumber != (firstRecord + numberOfRecords))) {
+			flush();
+		}
+
+		if(numberOfRecords == 0) {
+			firstRecord = recordNumber;
+		}
+
+		for(int idx = 0; idx < values.length; idx++) {
+			values[idx][numberOfRecords] = record.getCDFValue(idx);
+		}
+		numberOfRecords++;
+
+		if(numberOfRecords == maximumRecords) {
+			flush();
+		}
+	}
+
+	/**
+	 * @return true if putting the record with the given record number would write records to the CDF file
+	 */
+	public boolean isFlushRequired(long recordNumber) {
+		if((numberOfRecords > 0) && (recordNumber != (firstRecord + numberOfRecords))) {
+			return true;
+		}
+		return (numberOfRecords + 1) >= maximumRecords;
+	}
+
+	/**
+	 * Write the buffered records to the CDF file.
+	 */
+	public void flush() throws CDFException {
+		if(numberOfRecords == 0) {
+			return;
+		}
+
+		try {
+			if(numberOfRecords == 1) {
+				putSingleRecord();
+				return;
+			}
+			
+			for(int idx = 0; idx < values.length; idx++) {
+				Variable variable = event.getVariable(idx);
+				if(variable.getNumDims() == 0) {
+					variable.putHyperData(firstRecord, numberOfRecords, 1L,
+							SCALAR_DIM_INDICES, SCALAR_DIM_COUNTS, SCALAR_DIM_INTERVALS, getHyperData(idx));
+				}
+				else {
+					int numDims = (int)variable.getNumDims();
+					long[] dimIndices = new long[numDims];
+					long[] dimIntervals = new long[numDims];
+					for(int dim = 0; dim < numDims; dim++) {
+						dimIndices[dim] = 0L;
+						dimIntervals[dim] = 1L;
+					}
+					variable.putHyperData(firstRecord, numberOfRecords, 1L,
+							dimIndices, variable.getDimSizes(), dimIntervals, getHyperData(idx));
+				}
+			}
+		}
+		finally {
+			for(int idx = 0; idx < values.length; idx++) {
+				for(int rec = 0; rec < numberOfRecords; rec++) {
+					values[idx][rec] = null;
+				}
+			}
+			numberOfRecords = 0;
+		}
+	}
+
+	/**
+	 * Write a single record with one put for all variables.
+	 */
+	protected void putSingleRecord() throws CDFException {
+		if(values.length == 0) {
+			return;
+		}
+		
+		Vector<Object> recordValues = new Vector<Object>(values.length);
+		for(int idx = 0; idx < values.length; idx++) {
+			recordValues.add(values[idx][0]);
+		}
+		event.getVariable(0).getMyCDF().putRecord(firstRecord, event.getVariableIDs(), recordValues);
+	}
+
+	/**
+	 * @return array of the buffered values of the variable, indexed by record, with primitive components for scalar values
+	 */
+	protected Object getHyperData(int idx) {
+		Class<?> valueType = getPrimitiveType(values[idx][0].getClass());
+		Object data = Array.newInstance(valueType, numberOfRecords);
+		for(int rec = 0; rec < numberOfRecords; rec++) {
+			Array.set(data, rec, values[idx][rec]);
+		}
+		return data;
+	}
+
+	protected static Class<?> getPrimitiveType(Class<?> type) {
+		if(Byte.class.equals(type)) {
+			return Byte.TYPE;
+		}
+		if(Short.class.equals(type)) {
+			return Short.TYPE;
+		}
+		if(Integer.class.equals(type)) {
+			return Integer.TYPE;
+		}
+		if(Long.class.equals(type)) {
+			return Long.TYPE;
+		}
+		if(Float.class.equals(type)) {
+			return Float.TYPE;
+		}
+		if(Double.class.equals(type)) {
+			return Double.TYPE;
+		}
+		return type;
+	}
+
+	public CDFEvent getEvent() {
+		return event;
+	}
+
+	public int getMaximumRecords() {
+		return maximumRecords;
+	}
+
+	public int getNumberOfRecords() {
+		return numberOfRecords;
+	}
+}
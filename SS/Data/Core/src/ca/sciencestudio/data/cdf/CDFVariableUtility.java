@@ -0,0 +1,64 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFVariableUtility abstract class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.lang.reflect.Array;
+
+import gsfc.nssdc.cdf.CDF;
+import gsfc.nssdc.cdf.CDFException;
+import gsfc.nssdc.cdf.Variable;
+
+/**
+ * Utilities for reading the values of scalar CDF variables in blocks of
+ * records, with a single call to the CDF library for each block.
+ *
+ * @author maxweld
+ *
+ */
+public abstract class CDFVariableUtility {
+
+	private static final long[] SCALAR_DIM_INDICES = new long[] { 0L };
+	private static final long[] SCALAR_DIM_COUNTS = new long[] { 1L };
+	private static final long[] SCALAR_DIM_INTERVALS = new long[] { 1L };
+
+	public static boolean isScalar(Variable variable) {
+		return (variable.getNumDims() == 0L);
+	}
+
+	public static boolean isIntDataType(long dataType) {
+		return (dataType == CDF.CDF_INT1) || (dataType == CDF.CDF_INT2) || (dataType == CDF.CDF_INT4) ||
+				(dataType == CDF.CDF_UINT1) || (dataType == CDF.CDF_UINT2) || (dataType == CDF.CDF_UINT4) ||
+				(dataType == CDF.CDF_BYTE);
+	}
+
+	public static boolean isRealDataType(long dataType) {
+		return (dataType == CDF.CDF_REAL4) || (dataType == CDF.CDF_REAL8) || (dataType == CDF.CDF_FLOAT) ||
+				(dataType == CDF.CDF_DOUBLE) || (dataType == CDF.CDF_EPOCH);
+	}
+
+	public static boolean isStringDataType(long dataType) {
+		return (dataType == CDF.CDF_CHAR) || (dataType == CDF.CDF_UCHAR);
+	}
+
+	/**
+	 * Read the values of the given records of a scalar numeric variable, the
+	 * caller must synchronize access to the CDF.
+	 *
+	 * @return the values, as an array of numbers or primitives, or null if the data read is not as expected
+	 */
+	public static Object readScalarValues(Variable variable, long recordStart, long recordCount) throws CDFException {
+		Object data = variable.getHyperData(recordStart, recordCount, 1L, SCALAR_DIM_INDICES, SCALAR_DIM_COUNTS, SCALAR_DIM_INTERVALS);
+		if((data != null) && data.getClass().isArray() && (Array.getLength(data) == recordCount)) {
+			return data;
+		}
+		if((data instanceof Number) && (recordCount == 1L)) {
+			return new Number[] { (Number)data };
+		}
+		return null;
+	}
+}
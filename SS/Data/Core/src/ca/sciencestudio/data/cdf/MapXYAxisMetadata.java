@@ -0,0 +1,241 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYAxisMetadata class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ca.sciencestudio.data.cdf.CDFQuery;
+import ca.sciencestudio.data.record.PrimitiveColumnTable;
+import ca.sciencestudio.data.support.CDFQueryException;
+import ca.sciencestudio.data.support.RecordFormatException;
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Map axis metadata of a CDF file, the distinct point indexes (I and J) in
+ * ascending order and the number of points.
+ *
+ * The metadata is kept in a sidecar file next to the CDF file, written at
+ * conversion time or built from the CDF file when first needed. It records
+ * the length and modification time of the CDF file and ends with a CRC32
+ * checksum, metadata that does not match is rebuilt.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYAxisMetadata {
+
+	public static final String METADATA_FILE_SUFFIX = ".mapxy";
+
+	static private final int METADATA_FILE_MAGIC = 0x4D415058; // "MAPX" //
+	static private final int METADATA_FILE_VERSION = 1;
+	static private final String METADATA_FILE_DESCRIPTION = "map axis metadata";
+
+	private long cdfLength;
+	private long cdfLastModified;
+
+	private int numberOfPoints;
+	private int[] indexesI;
+	private int[] indexesJ;
+
+	static private Log log = LogFactory.getLog(MapXYAxisMetadata.class);
+
+	/**
+	 * @param indexesI distinct point indexes in X-direction, in ascending order
+	 * @param indexesJ distinct point indexes in Y-direction, in ascending order
+	 */
+	public MapXYAxisMetadata(long cdfLength, long cdfLastModified, int numberOfPoints, int[] indexesI, int[] indexesJ) {
+		this.cdfLength = cdfLength;
+		this.cdfLastModified = cdfLastModified;
+		this.numberOfPoints = numberOfPoints;
+		this.indexesI = indexesI;
+		this.indexesJ = indexesJ;
+	}
+
+	public static File getMetadataFile(File cdfFile) {
+		return new File(cdfFile.getPath() + METADATA_FILE_SUFFIX);
+	}
+
+	/**
+	 * Load the sidecar metadata of the CDF file of the query, if it is missing
+	 * or does not match the CDF file then it is built from the given variables
+	 * and saved. Failure to save the metadata is logged and the built metadata is returned.
+	 */
+	public static MapXYAxisMetadata getMetadata(CDFQuery cdfQuery, String cdfVarNameI, String cdfVarNameJ) throws CDFQueryException {
+		File cdfFile = cdfQuery.getCdfFile();
+		File metadataFile = getMetadataFile(cdfFile);
+
+		MapXYAxisMetadata metadata = load(cdfFile, metadataFile);
+		if(metadata != null) {
+			return metadata;
+		}
+
+		metadata = build(cdfQuery, cdfVarNameI, cdfVarNameJ);
+		try {
+			metadata.save(metadataFile);
+		}
+		catch(IOException e) {
+			log.warn("Cannot save map axis metadata file: " + metadataFile, e);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Build the metadata by querying the point index variables of the CDF file.
+	 */
+	public static MapXYAxisMetadata build(CDFQuery cdfQuery, String cdfVarNameI, String cdfVarNameJ) throws CDFQueryException {
+		File cdfFile = cdfQuery.getCdfFile();
+		long cdfLength = cdfFile.length();
+		long cdfLastModified = cdfFile.lastModified();
+
+		PrimitiveColumnTable columnTable = cdfQuery.queryColumnsByNames(new String[] { cdfVarNameI, cdfVarNameJ });
+
+		int numberOfPoints = columnTable.getNumberOfRows();
+		int[] valuesI = new int[numberOfPoints];
+		int[] valuesJ = new int[numberOfPoints];
+		try {
+			for(int row = 0; row < numberOfPoints; row++) {
+				valuesI[row] = (int)columnTable.getLong(row, 0);
+				valuesJ[row] = (int)columnTable.getLong(row, 1);
+			}
+		}
+		catch(RecordFormatException e) {
+			throw new CDFQueryException("Cannot get point indexes from CDF query result.", e);
+		}
+
+		return new MapXYAxisMetadata(cdfLength, cdfLastModified, numberOfPoints, getDistinctValues(valuesI), getDistinctValues(valuesJ));
+	}
+
+	/**
+	 * @return the metadata or null if the metadata file is missing, corrupt or out of date
+	 */
+	public static MapXYAxisMetadata load(File cdfFile, final File metadataFile) {
+		return SidecarFileUtility.load(metadataFile, METADATA_FILE_DESCRIPTION, METADATA_FILE_MAGIC, METADATA_FILE_VERSION, cdfFile,
+				new SidecarFileUtility.ContentReader<MapXYAxisMetadata>() {
+					public MapXYAxisMetadata read(DataInputStream input, long cdfLength, long cdfLastModified) throws IOException {
+						int numberOfPoints = input.readInt();
+						int[] indexesI = readIndexes(input, metadataFile);
+						int[] indexesJ = readIndexes(input, metadataFile);
+						if((numberOfPoints < 0) || (indexesI == null) || (indexesJ == null)) {
+							return null;
+						}
+						return new MapXYAxisMetadata(cdfLength, cdfLastModified, numberOfPoints, indexesI, indexesJ);
+					}
+				});
+	}
+
+	/**
+	 * Save the metadata, it is written to a temporary file which is then renamed.
+	 */
+	public void save(File metadataFile) throws IOException {
+		SidecarFileUtility.save(metadataFile, METADATA_FILE_DESCRIPTION, METADATA_FILE_MAGIC, METADATA_FILE_VERSION, cdfLength, cdfLastModified,
+				new SidecarFileUtility.ContentWriter() {
+					public void write(DataOutputStream output) throws IOException {
+						output.writeInt(numberOfPoints);
+						writeIndexes(output, indexesI);
+						writeIndexes(output, indexesJ);
+					}
+				});
+	}
+
+	public long getCdfLength() {
+		return cdfLength;
+	}
+
+	public long getCdfLastModified() {
+		return cdfLastModified;
+	}
+
+	public int getNumberOfPoints() {
+		return numberOfPoints;
+	}
+
+	public int[] getIndexesI() {
+		return indexesI.clone();
+	}
+
+	public int[] getIndexesJ() {
+		return indexesJ.clone();
+	}
+
+	public int getSizeI() {
+		return indexesI.length;
+	}
+
+	public int getSizeJ() {
+		return indexesJ.length;
+	}
+
+	/**
+	 * @return the minimum point index in X-direction or -1 if there are no points
+	 */
+	public int getMinimumI() {
+		return (indexesI.length > 0) ? indexesI[0] : -1;
+	}
+
+	/**
+	 * @return the maximum point index in X-direction or -1 if there are no points
+	 */
+	public int getMaximumI() {
+		return (indexesI.length > 0) ? indexesI[indexesI.length - 1] : -1;
+	}
+
+	/**
+	 * @return the minimum point index in Y-direction or -1 if there are no points
+	 */
+	public int getMinimumJ() {
+		return (indexesJ.length > 0) ? indexesJ[0] : -1;
+	}
+
+	/**
+	 * @return the maximum point index in Y-direction or -1 if there are no points
+	 */
+	public int getMaximumJ() {
+		return (indexesJ.length > 0) ? indexesJ[indexesJ.length - 1] : -1;
+	}
+
+	/**
+	 * @return the distinct values in ascending order
+	 */
+	public static int[] getDistinctValues(int[] values) {
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int nDistinct = 0;
+		for(int idx = 0; idx < sorted.length; idx++) {
+			if((nDistinct == 0) || (sorted[nDistinct - 1] != sorted[idx])) {
+				sorted[nDistinct++] = sorted[idx];
+			}
+		}
+		return Arrays.copyOf(sorted, nDistinct);
+	}
+
+	protected static int[] readIndexes(DataInputStream input, File metadataFile) throws IOException {
+		int length = input.readInt();
+		if((length < 0) || (length > (metadataFile.length() / 4L))) {
+			return null;
+		}
+		int[] indexes = new int[length];
+		for(int idx = 0; idx < length; idx++) {
+			indexes[idx] = input.readInt();
+		}
+		return indexes;
+	}
+
+	protected static void writeIndexes(DataOutputStream output, int[] indexes) throws IOException {
+		output.writeInt(indexes.length);
+		for(int index : indexes) {
+			output.writeInt(index);
+		}
+	}
+}
@@ -0,0 +1,588 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYMapPyramid class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Multi-resolution pyramid of the maps of a MapXY scan, built from the spectrum
+ * store and the region of interest maps after the scan is converted, so that an
+ * overview of a large map can be displayed without reading every point.
+ *
+ * Each level of the pyramid downsamples the grid by a factor, a tile of the level
+ * covers factor by factor points of the grid. For each level the file holds the
+ * integrated map (total counts of the spectrum), the region of interest maps and,
+ * for factors greater than one, the summed spectrum of each tile. Tiles without
+ * data have the value MISSING_VALUE in the maps. Maps are stored in row order
+ * (I varies fastest) and the tile spectra as big-endian 64-bit integers.
+ *
+ * The file has a small header with a CRC32 checksum, which gives for each level
+ * the offset of each map and of the tile directory. The directory has a fixed
+ * length entry (block offset and length) for each tile in row order. Each map
+ * and each tile spectrum is a separate block compressed with Deflate, so a map
+ * or a tile spectrum is read without reading the rest of the pyramid.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYMapPyramid {
+
+	public static final String PYRAMID_FILE_SUFFIX = ".pyramid";
+
+	public static final long MISSING_VALUE = SidecarFileUtility.MISSING_VALUE;
+
+	public static final int[] DEFAULT_FACTORS = new int[] { 1, 2, 4, 8 };
+
+	static private final int PYRAMID_FILE_MAGIC = 0x4D415059; // "MAPY" //
+	static private final int PYRAMID_FILE_VERSION = 2;
+	static private final String PYRAMID_FILE_DESCRIPTION = "map pyramid";
+
+	static private final int MAXIMUM_HEADER_LENGTH = 65536;
+
+	static private final int DIRECTORY_ENTRY_LENGTH = 12;
+
+	private RandomAccessFile pyramidFile;
+
+	private long cdfLength;
+	private long cdfLastModified;
+	private String cdfVarName;
+	private int nChannels;
+	private int minimumI;
+	private int minimumJ;
+	private String[] names;
+	private Level[] levels;
+
+	static private Log log = LogFactory.getLog(MapXYMapPyramid.class);
+
+	public static File getPyramidFile(File cdfFile) {
+		return new File(cdfFile.getPath() + PYRAMID_FILE_SUFFIX);
+	}
+
+	/**
+	 * Build the pyramid from the spectrum store and the (optional) region of interest
+	 * maps, the pyramid is written to a temporary file which is then renamed.
+	 *
+	 * @param factors the downsampling factor of each level in ascending order
+	 */
+	public static void build(File cdfFile, MapXYSpectrumStore spectrumStore, MapXYROIMaps roiMaps, int[] factors) throws IOException {
+
+		String[] names = (roiMaps != null) ? roiMaps.getNames() : new String[0];
+
+		int minimumI = spectrumStore.getMinimumI();
+		int minimumJ = spectrumStore.getMinimumJ();
+		int sizeI = spectrumStore.getSizeI();
+		int sizeJ = spectrumStore.getSizeJ();
+		int nChannels = spectrumStore.getNChannels();
+
+		Level[] levels = new Level[factors.length];
+		for(int idx = 0; idx < factors.length; idx++) {
+			int factor = factors[idx];
+			levels[idx] = new Level(factor, (sizeI + factor - 1) / factor, (sizeJ + factor - 1) / factor, names.length);
+			levels[idx].createMaps();
+			if(roiMaps != null) {
+				downsampleROIMaps(levels[idx], roiMaps, minimumI, minimumJ);
+			}
+		}
+
+		// Offsets have a fixed length, so the length of the header is known before the blocks are written. //
+		MapXYMapPyramid pyramid = new MapXYMapPyramid(cdfFile.length(), cdfFile.lastModified(),
+				spectrumStore.getCdfVarName(), nChannels, minimumI, minimumJ, names, levels);
+
+		long blocksOffset = SidecarFileUtility.getHeaderLength(pyramid.getHeader().length);
+		for(Level level : levels) {
+			if(level.factor > 1) {
+				level.directoryOffset = blocksOffset;
+				level.tileOffsets = new long[level.sizeI * level.sizeJ];
+				level.tileLengths = new int[level.sizeI * level.sizeJ];
+				blocksOffset += (long)level.sizeI * (long)level.sizeJ * DIRECTORY_ENTRY_LENGTH;
+			}
+		}
+
+		File pyramidFile = getPyramidFile(cdfFile);
+		File tempFile = SidecarFileUtility.createTempFile(pyramidFile);
+
+		try {
+			RandomAccessFile output = new RandomAccessFile(tempFile, "rw");
+			Deflater deflater = new Deflater();
+			try {
+				output.setLength(blocksOffset);
+				output.seek(blocksOffset);
+
+				long[][][] tileSpectra = new long[levels.length][][];
+				boolean[][] tileHasData = new boolean[levels.length][];
+				for(int idx = 0; idx < levels.length; idx++) {
+					if(levels[idx].factor > 1) {
+						tileSpectra[idx] = new long[levels[idx].sizeI][nChannels];
+						tileHasData[idx] = new boolean[levels[idx].sizeI];
+					}
+				}
+
+				for(int j = 0; j < sizeJ; j++) {
+					for(int i = 0; i < sizeI; i++) {
+						int[] spectrum = spectrumStore.getSpectrum(minimumI + i, minimumJ + j);
+						if(spectrum == null) {
+							continue;
+						}
+
+						long counts = 0L;
+						for(int channel = 0; channel < spectrum.length; channel++) {
+							counts += spectrum[channel];
+						}
+
+						for(int idx = 0; idx < levels.length; idx++) {
+							Level level = levels[idx];
+							int tileI = i / level.factor;
+							int cell = ((j / level.factor) * level.sizeI) + tileI;
+							level.maps[0][cell] = addValue(level.maps[0][cell], counts);
+							if(tileSpectra[idx] != null) {
+								long[] tileSpectrum = tileSpectra[idx][tileI];
+								for(int channel = 0; (channel < spectrum.length) && (channel < nChannels); channel++) {
+									tileSpectrum[channel] += spectrum[channel];
+								}
+								tileHasData[idx][tileI] = true;
+							}
+						}
+					}
+
+					for(int idx = 0; idx < levels.length; idx++) {
+						Level level = levels[idx];
+						if((tileSpectra[idx] != null) && ((((j + 1) % level.factor) == 0) || (j == (sizeJ - 1)))) {
+							writeTileRow(output, deflater, level, j / level.factor, tileSpectra[idx], tileHasData[idx]);
+						}
+					}
+				}
+
+				for(Level level : levels) {
+					writeMaps(output, deflater, level);
+				}
+
+				for(Level level : levels) {
+					if(level.factor > 1) {
+						writeDirectory(output, level);
+					}
+				}
+
+				output.seek(0L);
+				SidecarFileUtility.writeHeader(output, PYRAMID_FILE_MAGIC, PYRAMID_FILE_VERSION, pyramid.getHeader());
+			}
+			finally {
+				deflater.end();
+				output.close();
+			}
+		}
+		catch(IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+
+		SidecarFileUtility.replaceFile(tempFile, pyramidFile, PYRAMID_FILE_DESCRIPTION);
+	}
+
+	/**
+	 * Open the pyramid, only the header is read, the maps and tile spectra are read when requested.
+	 *
+	 * @return the open pyramid or null if the pyramid file is missing, corrupt or out of date
+	 */
+	public static MapXYMapPyramid open(File cdfFile) {
+		File pyramidFile = getPyramidFile(cdfFile);
+		if(!pyramidFile.isFile()) {
+			return null;
+		}
+
+		MapXYMapPyramid pyramid;
+		try {
+			pyramid = new MapXYMapPyramid(pyramidFile);
+		}
+		catch(IOException e) {
+			log.warn("Cannot open map pyramid file: " + pyramidFile, e);
+			return null;
+		}
+
+		if(!SidecarFileUtility.isSourceFile(cdfFile, pyramid.getCdfLength(), pyramid.getCdfLastModified())) {
+			pyramid.close();
+			return null;
+		}
+		return pyramid;
+	}
+
+	protected MapXYMapPyramid(long cdfLength, long cdfLastModified, String cdfVarName, int nChannels, int minimumI, int minimumJ, String[] names, Level[] levels) {
+		this.cdfLength = cdfLength;
+		this.cdfLastModified = cdfLastModified;
+		this.cdfVarName = cdfVarName;
+		this.nChannels = nChannels;
+		this.minimumI = minimumI;
+		this.minimumJ = minimumJ;
+		this.names = names;
+		this.levels = levels;
+	}
+
+	protected MapXYMapPyramid(File file) throws IOException {
+		pyramidFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] header = SidecarFileUtility.readHeader(pyramidFile, PYRAMID_FILE_MAGIC, PYRAMID_FILE_VERSION, MAXIMUM_HEADER_LENGTH, file, PYRAMID_FILE_DESCRIPTION);
+
+			long fileLength = pyramidFile.length();
+
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(header));
+			cdfLength = input.readLong();
+			cdfLastModified = input.readLong();
+			cdfVarName = input.readUTF();
+			nChannels = input.readInt();
+			minimumI = input.readInt();
+			minimumJ = input.readInt();
+
+			names = new String[input.readInt()];
+			for(int roi = 0; roi < names.length; roi++) {
+				names[roi] = input.readUTF();
+			}
+
+			levels = new Level[input.readInt()];
+			for(int idx = 0; idx < levels.length; idx++) {
+				int factor = input.readInt();
+				int sizeI = input.readInt();
+				int sizeJ = input.readInt();
+				long nTiles = (long)sizeI * (long)sizeJ;
+				if((nChannels < 0) || (factor <= 0) || (sizeI < 0) || (sizeJ < 0) || ((nTiles * 8L) > Integer.MAX_VALUE)) {
+					throw new IOException("Map pyramid file header invalid: " + file);
+				}
+
+				Level level = new Level(factor, sizeI, sizeJ, names.length);
+				level.directoryOffset = input.readLong();
+				if((factor > 1) && ((level.directoryOffset < 0L) || ((level.directoryOffset + (nTiles * DIRECTORY_ENTRY_LENGTH)) > fileLength))) {
+					throw new IOException("Map pyramid file is truncated: " + file);
+				}
+
+				for(int map = 0; map < level.mapOffsets.length; map++) {
+					level.mapOffsets[map] = input.readLong();
+					level.mapLengths[map] = input.readInt();
+					if((level.mapOffsets[map] < 0L) || (level.mapLengths[map] < 0) || ((level.mapOffsets[map] + level.mapLengths[map]) > fileLength)) {
+						throw new IOException("Map pyramid file is truncated: " + file);
+					}
+				}
+				levels[idx] = level;
+			}
+		}
+		catch(IOException e) {
+			pyramidFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the summed spectrum of the tile or null if the tile has no data or the level has no tile spectra (factor of one)
+	 */
+	public long[] getTileSpectrum(int level, int tileI, int tileJ) throws IOException {
+		Level pyramidLevel = levels[level];
+		if(pyramidLevel.factor <= 1) {
+			return null;
+		}
+		if((tileI < 0) || (tileI >= pyramidLevel.sizeI) || (tileJ < 0) || (tileJ >= pyramidLevel.sizeJ)) {
+			return null;
+		}
+
+		long cell = ((long)tileJ * (long)pyramidLevel.sizeI) + (long)tileI;
+
+		byte[] block;
+		synchronized(this) {
+			checkOpen();
+			pyramidFile.seek(pyramidLevel.directoryOffset + (cell * DIRECTORY_ENTRY_LENGTH));
+			long blockOffset = pyramidFile.readLong();
+			int blockLength = pyramidFile.readInt();
+			if(blockLength <= 0) {
+				return null;
+			}
+			block = readBlock(blockOffset, blockLength);
+		}
+
+		long[] spectrum = new long[nChannels];
+		ByteBuffer.wrap(SidecarFileUtility.inflate(block, nChannels * 8)).asLongBuffer().get(spectrum);
+		return spectrum;
+	}
+
+	/**
+	 * @return the coarsest level which is at least the size of the viewport, or the finest level
+	 */
+	public int getLevelForViewport(int width, int height) {
+		for(int idx = levels.length - 1; idx > 0; idx--) {
+			if((levels[idx].sizeI >= width) && (levels[idx].sizeJ >= height)) {
+				return idx;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the index of the region of interest or -1 if not found
+	 */
+	public int getIndexByName(String name) {
+		for(int roi = 0; roi < names.length; roi++) {
+			if(names[roi].equals(name)) {
+				return roi;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the integrated map of the level indexed by [tile J][tile I]
+	 */
+	public long[][] getIntegratedMap(int level) throws IOException {
+		return readMap(levels[level], 0);
+	}
+
+	/**
+	 * @return the region of interest map of the level indexed by [tile J][tile I]
+	 */
+	public long[][] getROIMap(int level, int roi) throws IOException {
+		if((roi < 0) || (roi >= names.length)) {
+			throw new IndexOutOfBoundsException("Region of interest index: " + roi + ", number of regions: " + names.length);
+		}
+		return readMap(levels[level], roi + 1);
+	}
+
+	public synchronized void close() {
+		if(pyramidFile != null) {
+			try {
+				pyramidFile.close();
+			}
+			catch(IOException e) {
+				log.warn("Error while closing map pyramid file.", e);
+			}
+			pyramidFile = null;
+		}
+	}
+
+	protected long[][] readMap(Level level, int map) throws IOException {
+		byte[] block;
+		synchronized(this) {
+			checkOpen();
+			block = readBlock(level.mapOffsets[map], level.mapLengths[map]);
+		}
+
+		long[] values = new long[level.sizeI * level.sizeJ];
+		ByteBuffer.wrap(SidecarFileUtility.inflate(block, values.length * 8)).asLongBuffer().get(values);
+		return toGrid(values, level.sizeI, level.sizeJ);
+	}
+
+	protected byte[] readBlock(long blockOffset, int blockLength) throws IOException {
+		if((blockOffset < 0L) || ((blockOffset + blockLength) > pyramidFile.length())) {
+			throw new IOException("Map pyramid block exceeds file length.");
+		}
+		byte[] block = new byte[blockLength];
+		pyramidFile.seek(blockOffset);
+		pyramidFile.readFully(block);
+		return block;
+	}
+
+	protected void checkOpen() throws IOException {
+		if(pyramidFile == null) {
+			throw new IOException("Map pyramid is closed.");
+		}
+	}
+
+	protected byte[] getHeader() throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(header);
+		output.writeLong(cdfLength);
+		output.writeLong(cdfLastModified);
+		output.writeUTF(cdfVarName);
+		output.writeInt(nChannels);
+		output.writeInt(minimumI);
+		output.writeInt(minimumJ);
+		output.writeInt(names.length);
+		for(String name : names) {
+			output.writeUTF(name);
+		}
+		output.writeInt(levels.length);
+		for(Level level : levels) {
+			output.writeInt(level.factor);
+			output.writeInt(level.sizeI);
+			output.writeInt(level.sizeJ);
+			output.writeLong(level.directoryOffset);
+			for(int map = 0; map < level.mapOffsets.length; map++) {
+				output.writeLong(level.mapOffsets[map]);
+				output.writeInt(level.mapLengths[map]);
+			}
+		}
+		output.flush();
+		return header.toByteArray();
+	}
+
+	protected static void downsampleROIMaps(Level level, MapXYROIMaps roiMaps, int minimumI, int minimumJ) {
+		int offsetI = roiMaps.getMinimumI() - minimumI;
+		int offsetJ = roiMaps.getMinimumJ() - minimumJ;
+		for(int roi = 0; roi < roiMaps.getNumberOfMaps(); roi++) {
+			long[] levelMap = level.maps[roi + 1];
+			long[][] map = roiMaps.getMap(roi);
+			for(int j = 0; j < map.length; j++) {
+				for(int i = 0; i < map[j].length; i++) {
+					int tileI = (offsetI + i) / level.factor;
+					int tileJ = (offsetJ + j) / level.factor;
+					if((map[j][i] == MapXYROIMaps.MISSING_VALUE) || (offsetI + i < 0) || (offsetJ + j < 0) || (tileI >= level.sizeI) || (tileJ >= level.sizeJ)) {
+						continue;
+					}
+					int cell = (tileJ * level.sizeI) + tileI;
+					levelMap[cell] = addValue(levelMap[cell], map[j][i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Append the tile spectra of a row of tiles, which are then cleared for the next row.
+	 */
+	protected static void writeTileRow(RandomAccessFile output, Deflater deflater, Level level, int tileJ, long[][] tileSpectra, boolean[] tileHasData) throws IOException {
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		long blocksOffset = output.getFilePointer();
+		for(int tileI = 0; tileI < tileSpectra.length; tileI++) {
+			if(!tileHasData[tileI]) {
+				continue;
+			}
+
+			long[] tileSpectrum = tileSpectra[tileI];
+			ByteBuffer buffer = ByteBuffer.allocate(tileSpectrum.length * 8);
+			buffer.asLongBuffer().put(tileSpectrum);
+			byte[] block = SidecarFileUtility.deflate(deflater, buffer.array());
+
+			int cell = (tileJ * level.sizeI) + tileI;
+			level.tileOffsets[cell] = blocksOffset + blocks.size();
+			level.tileLengths[cell] = block.length;
+			blocks.write(block);
+
+			Arrays.fill(tileSpectrum, 0L);
+			tileHasData[tileI] = false;
+		}
+		output.write(blocks.toByteArray());
+	}
+
+	/**
+	 * Append the maps of the level.
+	 */
+	protected static void writeMaps(RandomAccessFile output, Deflater deflater, Level level) throws IOException {
+		for(int map = 0; map < level.maps.length; map++) {
+			ByteBuffer buffer = ByteBuffer.allocate(level.maps[map].length * 8);
+			buffer.asLongBuffer().put(level.maps[map]);
+			byte[] block = SidecarFileUtility.deflate(deflater, buffer.array());
+			level.mapOffsets[map] = output.getFilePointer();
+			level.mapLengths[map] = block.length;
+			output.write(block);
+		}
+	}
+
+	protected static void writeDirectory(RandomAccessFile output, Level level) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(level.tileOffsets.length * DIRECTORY_ENTRY_LENGTH);
+		for(int cell = 0; cell < level.tileOffsets.length; cell++) {
+			buffer.putLong(level.tileOffsets[cell]);
+			buffer.putInt(level.tileLengths[cell]);
+		}
+		output.seek(level.directoryOffset);
+		output.write(buffer.array());
+	}
+
+	protected static long addValue(long value, long counts) {
+		return (value == MISSING_VALUE) ? counts : (value + counts);
+	}
+
+	protected static long[][] toGrid(long[] values, int sizeI, int sizeJ) {
+		long[][] grid = new long[sizeJ][sizeI];
+		for(int j = 0; j < sizeJ; j++) {
+			System.arraycopy(values, j * sizeI, grid[j], 0, sizeI);
+		}
+		return grid;
+	}
+
+	public long getCdfLength() {
+		return cdfLength;
+	}
+
+	public long getCdfLastModified() {
+		return cdfLastModified;
+	}
+
+	public String getCdfVarName() {
+		return cdfVarName;
+	}
+
+	public int getNChannels() {
+		return nChannels;
+	}
+
+	public int getMinimumI() {
+		return minimumI;
+	}
+
+	public int getMinimumJ() {
+		return minimumJ;
+	}
+
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	public int getNumberOfLevels() {
+		return levels.length;
+	}
+
+	public int getFactor(int level) {
+		return levels[level].factor;
+	}
+
+	public int getSizeI(int level) {
+		return levels[level].sizeI;
+	}
+
+	public int getSizeJ(int level) {
+		return levels[level].sizeJ;
+	}
+
+	protected static class Level {
+
+		private int factor;
+		private int sizeI;
+		private int sizeJ;
+
+		// Offset and length of the block of each map, the integrated map followed by the region of interest maps. //
+		private long[] mapOffsets;
+		private int[] mapLengths;
+		private long directoryOffset = -1L;
+
+		// Only while the pyramid is built. //
+		private long[][] maps = null;
+		private long[] tileOffsets = null;
+		private int[] tileLengths = null;
+
+		public Level(int factor, int sizeI, int sizeJ, int nMaps) {
+			this.factor = factor;
+			this.sizeI = sizeI;
+			this.sizeJ = sizeJ;
+			this.mapOffsets = new long[nMaps + 1];
+			this.mapLengths = new int[nMaps + 1];
+		}
+
+		protected void createMaps() {
+			maps = new long[mapOffsets.length][sizeI * sizeJ];
+			for(long[] map : maps) {
+				Arrays.fill(map, MISSING_VALUE);
+			}
+		}
+	}
+}
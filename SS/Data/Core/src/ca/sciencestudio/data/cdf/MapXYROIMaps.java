@@ -0,0 +1,220 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYROIMaps class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Region of interest (ROI) maps of a MapXY scan, the integrated counts of a
+ * channel window of the spectrum at each point of the grid, computed while the
+ * scan is converted.
+ *
+ * The maps are kept in a sidecar file next to the CDF file, which records the
+ * length and modification time of the CDF file and ends with a CRC32 checksum.
+ * Each map is stored in row order (I varies fastest) and points of the grid
+ * without data have the value MISSING_VALUE.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYROIMaps {
+
+	public static final String MAPS_FILE_SUFFIX = ".roi";
+
+	public static final long MISSING_VALUE = SidecarFileUtility.MISSING_VALUE;
+
+	static private final int MAPS_FILE_MAGIC = 0x4D415052; // "MAPR" //
+	static private final int MAPS_FILE_VERSION = 1;
+	static private final String MAPS_FILE_DESCRIPTION = "ROI maps";
+
+	private long cdfLength;
+	private long cdfLastModified;
+
+	private String[] names;
+	private int minimumI;
+	private int sizeI;
+	private int minimumJ;
+	private int sizeJ;
+	private long[][] maps;
+
+	/**
+	 * @param maps for each region of interest the values of the grid in row order
+	 */
+	public MapXYROIMaps(long cdfLength, long cdfLastModified, String[] names, int minimumI, int sizeI, int minimumJ, int sizeJ, long[][] maps) {
+		this.cdfLength = cdfLength;
+		this.cdfLastModified = cdfLastModified;
+		this.names = names;
+		this.minimumI = minimumI;
+		this.sizeI = sizeI;
+		this.minimumJ = minimumJ;
+		this.sizeJ = sizeJ;
+		this.maps = maps;
+	}
+
+	/**
+	 * Create the maps from the values of each point, a later value for the same point replaces an earlier one.
+	 *
+	 * @param values for each region of interest the value of each point
+	 * @throws IOException if the grid is too large for the maps
+	 */
+	public static MapXYROIMaps create(long cdfLength, long cdfLastModified, String[] names, int[] pointsI, int[] pointsJ, long[][] values, int numberOfPoints) throws IOException {
+		int minimumI = 0;
+		int maximumI = -1;
+		int minimumJ = 0;
+		int maximumJ = -1;
+		for(int idx = 0; idx < numberOfPoints; idx++) {
+			if((idx == 0) || (pointsI[idx] < minimumI)) {
+				minimumI = pointsI[idx];
+			}
+			if((idx == 0) || (pointsI[idx] > maximumI)) {
+				maximumI = pointsI[idx];
+			}
+			if((idx == 0) || (pointsJ[idx] < minimumJ)) {
+				minimumJ = pointsJ[idx];
+			}
+			if((idx == 0) || (pointsJ[idx] > maximumJ)) {
+				maximumJ = pointsJ[idx];
+			}
+		}
+
+		long sizeI = (long)maximumI - (long)minimumI + 1L;
+		long sizeJ = (long)maximumJ - (long)minimumJ + 1L;
+		if((sizeI * sizeJ) > Integer.MAX_VALUE) {
+			throw new IOException("ROI map grid too large (" + sizeI + "x" + sizeJ + ").");
+		}
+
+		long[][] maps = new long[names.length][];
+		for(int roi = 0; roi < names.length; roi++) {
+			maps[roi] = new long[(int)(sizeI * sizeJ)];
+			Arrays.fill(maps[roi], MISSING_VALUE);
+			for(int idx = 0; idx < numberOfPoints; idx++) {
+				maps[roi][(int)(((pointsJ[idx] - minimumJ) * sizeI) + (pointsI[idx] - minimumI))] = values[roi][idx];
+			}
+		}
+
+		return new MapXYROIMaps(cdfLength, cdfLastModified, names, minimumI, (int)sizeI, minimumJ, (int)sizeJ, maps);
+	}
+
+	public static File getMapsFile(File cdfFile) {
+		return new File(cdfFile.getPath() + MAPS_FILE_SUFFIX);
+	}
+
+	/**
+	 * @return the maps or null if the maps file is missing, corrupt or out of date
+	 */
+	public static MapXYROIMaps load(File cdfFile) {
+		final File mapsFile = getMapsFile(cdfFile);
+		return SidecarFileUtility.load(mapsFile, MAPS_FILE_DESCRIPTION, MAPS_FILE_MAGIC, MAPS_FILE_VERSION, cdfFile,
+				new SidecarFileUtility.ContentReader<MapXYROIMaps>() {
+					public MapXYROIMaps read(DataInputStream input, long cdfLength, long cdfLastModified) throws IOException {
+						int minimumI = input.readInt();
+						int sizeI = input.readInt();
+						int minimumJ = input.readInt();
+						int sizeJ = input.readInt();
+						int nMaps = input.readInt();
+						long mapLength = (long)sizeI * (long)sizeJ;
+						if((sizeI < 0) || (sizeJ < 0) || (nMaps < 0) || (mapLength > Integer.MAX_VALUE) || ((mapLength * (long)nMaps * 8L) > mapsFile.length())) {
+							return null;
+						}
+
+						String[] names = new String[nMaps];
+						long[][] maps = new long[nMaps][(int)mapLength];
+						for(int roi = 0; roi < nMaps; roi++) {
+							names[roi] = input.readUTF();
+							for(int idx = 0; idx < maps[roi].length; idx++) {
+								maps[roi][idx] = input.readLong();
+							}
+						}
+						return new MapXYROIMaps(cdfLength, cdfLastModified, names, minimumI, sizeI, minimumJ, sizeJ, maps);
+					}
+				});
+	}
+
+	/**
+	 * Save the maps, they are written to a temporary file which is then renamed.
+	 */
+	public void save(File mapsFile) throws IOException {
+		SidecarFileUtility.save(mapsFile, MAPS_FILE_DESCRIPTION, MAPS_FILE_MAGIC, MAPS_FILE_VERSION, cdfLength, cdfLastModified,
+				new SidecarFileUtility.ContentWriter() {
+					public void write(DataOutputStream output) throws IOException {
+						output.writeInt(minimumI);
+						output.writeInt(sizeI);
+						output.writeInt(minimumJ);
+						output.writeInt(sizeJ);
+						output.writeInt(names.length);
+						for(int roi = 0; roi < names.length; roi++) {
+							output.writeUTF(names[roi]);
+							for(long value : maps[roi]) {
+								output.writeLong(value);
+							}
+						}
+					}
+				});
+	}
+
+	/**
+	 * @return the index of the region of interest or -1 if not found
+	 */
+	public int getIndexByName(String name) {
+		for(int roi = 0; roi < names.length; roi++) {
+			if(names[roi].equals(name)) {
+				return roi;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the map of the region of interest indexed by [J - minimumJ][I - minimumI]
+	 */
+	public long[][] getMap(int roi) {
+		long[][] map = new long[sizeJ][sizeI];
+		for(int j = 0; j < sizeJ; j++) {
+			System.arraycopy(maps[roi], j * sizeI, map[j], 0, sizeI);
+		}
+		return map;
+	}
+
+	public long getCdfLength() {
+		return cdfLength;
+	}
+
+	public long getCdfLastModified() {
+		return cdfLastModified;
+	}
+
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	public int getNumberOfMaps() {
+		return names.length;
+	}
+
+	public int getMinimumI() {
+		return minimumI;
+	}
+
+	public int getSizeI() {
+		return sizeI;
+	}
+
+	public int getMinimumJ() {
+		return minimumJ;
+	}
+
+	public int getSizeJ() {
+		return sizeJ;
+	}
+}
@@ -0,0 +1,215 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYSpectrumStore class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Random access store of the spectrum of each point of a MapXY scan, kept in a
+ * sidecar file next to the CDF file and written by MapXYSpectrumStoreWriter.
+ *
+ * The file has a header with a CRC32 checksum, followed by a directory with a
+ * fixed length entry (block offset and length) for each point of the grid in
+ * row order (I varies fastest), followed by the spectrum blocks. A block holds
+ * the channel counts as big-endian 32-bit integers, optionally compressed with
+ * Deflate. A spectrum is read with one directory entry read and one block read.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYSpectrumStore {
+
+	public static final String STORE_FILE_SUFFIX = ".spectra";
+
+	static final int STORE_FILE_MAGIC = 0x4D415053; // "MAPS" //
+	static final int STORE_FILE_VERSION = 1;
+	static final String STORE_FILE_DESCRIPTION = "spectrum store";
+
+	static final int STORE_FLAG_COMPRESSED = 0x01;
+
+	static final int MAXIMUM_HEADER_LENGTH = 65536;
+
+	static final int DIRECTORY_ENTRY_LENGTH = 12;
+
+	private RandomAccessFile storeFile;
+
+	private long cdfLength;
+	private long cdfLastModified;
+	private String cdfVarName;
+	private int nChannels;
+	private boolean compressed;
+	private int minimumI;
+	private int sizeI;
+	private int minimumJ;
+	private int sizeJ;
+	private long directoryOffset;
+
+	static private Log log = LogFactory.getLog(MapXYSpectrumStore.class);
+
+	public static File getStoreFile(File cdfFile) {
+		return new File(cdfFile.getPath() + STORE_FILE_SUFFIX);
+	}
+
+	/**
+	 * @return the open store or null if the store file is missing, corrupt or out of date
+	 */
+	public static MapXYSpectrumStore open(File cdfFile) {
+		File storeFile = getStoreFile(cdfFile);
+		if(!storeFile.isFile()) {
+			return null;
+		}
+
+		MapXYSpectrumStore store;
+		try {
+			store = new MapXYSpectrumStore(storeFile);
+		}
+		catch(IOException e) {
+			log.warn("Cannot open spectrum store file: " + storeFile, e);
+			return null;
+		}
+
+		if(!SidecarFileUtility.isSourceFile(cdfFile, store.getCdfLength(), store.getCdfLastModified())) {
+			store.close();
+			return null;
+		}
+		return store;
+	}
+
+	protected MapXYSpectrumStore(File file) throws IOException {
+		storeFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] header = SidecarFileUtility.readHeader(storeFile, STORE_FILE_MAGIC, STORE_FILE_VERSION, MAXIMUM_HEADER_LENGTH, file, STORE_FILE_DESCRIPTION);
+
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(header));
+			cdfLength = input.readLong();
+			cdfLastModified = input.readLong();
+			cdfVarName = input.readUTF();
+			nChannels = input.readInt();
+			compressed = ((input.readInt() & STORE_FLAG_COMPRESSED) != 0);
+			minimumI = input.readInt();
+			sizeI = input.readInt();
+			minimumJ = input.readInt();
+			sizeJ = input.readInt();
+
+			directoryOffset = storeFile.getFilePointer();
+
+			long directoryLength = (long)sizeI * (long)sizeJ * DIRECTORY_ENTRY_LENGTH;
+			if((nChannels < 0) || (sizeI < 0) || (sizeJ < 0) || ((directoryOffset + directoryLength) > storeFile.length())) {
+				throw new IOException("Spectrum store file header invalid: " + file);
+			}
+		}
+		catch(IOException e) {
+			storeFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the spectrum of the point or null if the store does not contain the point
+	 */
+	public int[] getSpectrum(int pointI, int pointJ) throws IOException {
+		if((pointI < minimumI) || (pointI >= (minimumI + sizeI)) || (pointJ < minimumJ) || (pointJ >= (minimumJ + sizeJ))) {
+			return null;
+		}
+
+		long entryIndex = ((long)(pointJ - minimumJ) * (long)sizeI) + (long)(pointI - minimumI);
+
+		byte[] block;
+		synchronized(this) {
+			if(storeFile == null) {
+				throw new IOException("Spectrum store is closed.");
+			}
+
+			storeFile.seek(directoryOffset + (entryIndex * DIRECTORY_ENTRY_LENGTH));
+			long blockOffset = storeFile.readLong();
+			int blockLength = storeFile.readInt();
+			if(blockLength <= 0) {
+				return null;
+			}
+			if((blockOffset + blockLength) > storeFile.length()) {
+				throw new IOException("Spectrum store block exceeds file length.");
+			}
+
+			block = new byte[blockLength];
+			storeFile.seek(blockOffset);
+			storeFile.readFully(block);
+		}
+
+		if(compressed) {
+			block = SidecarFileUtility.inflate(block, nChannels * 4);
+		}
+		else if(block.length != (nChannels * 4)) {
+			throw new IOException("Spectrum store block length invalid.");
+		}
+
+		int[] spectrum = new int[nChannels];
+		ByteBuffer.wrap(block).asIntBuffer().get(spectrum);
+		return spectrum;
+	}
+
+	public synchronized void close() {
+		if(storeFile != null) {
+			try {
+				storeFile.close();
+			}
+			catch(IOException e) {
+				log.warn("Error while closing spectrum store file.", e);
+			}
+			storeFile = null;
+		}
+	}
+
+	public long getCdfLength() {
+		return cdfLength;
+	}
+
+	public long getCdfLastModified() {
+		return cdfLastModified;
+	}
+
+	/**
+	 * @return the name of the CDF variable from which the spectra are stored
+	 */
+	public String getCdfVarName() {
+		return cdfVarName;
+	}
+
+	public int getNChannels() {
+		return nChannels;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public int getMinimumI() {
+		return minimumI;
+	}
+
+	public int getSizeI() {
+		return sizeI;
+	}
+
+	public int getMinimumJ() {
+		return minimumJ;
+	}
+
+	public int getSizeJ() {
+		return sizeJ;
+	}
+}
@@ -0,0 +1,263 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     MapXYSpectrumStoreWriter class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import ca.sciencestudio.data.cdf.MapXYSpectrumStore;
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Writes a MapXYSpectrumStore while a scan is converted.
+ *
+ * Spectrum blocks are appended to a temporary data file as the points are
+ * written, since the grid extents are not known until all points have been
+ * written. When the writer is closed the store file is written (header,
+ * directory and blocks) to a temporary file which is then renamed.
+ *
+ * @author maxweld
+ *
+ */
+public class MapXYSpectrumStoreWriter {
+
+	private static final int COPY_BUFFER_LENGTH = 65536;
+
+	private File storeFile;
+	private File dataFile;
+	private String cdfVarName;
+	private int nChannels;
+	private boolean compressed;
+
+	private DataOutputStream dataOutput;
+	private long dataLength = 0;
+
+	private Deflater deflater;
+	private byte[] deflateBuffer;
+
+	private int numberOfPoints = 0;
+	private int[] pointsI = new int[1024];
+	private int[] pointsJ = new int[1024];
+	private long[] blockOffsets = new long[1024];
+	private int[] blockLengths = new int[1024];
+
+	public MapXYSpectrumStoreWriter(File storeFile, String cdfVarName, int nChannels, boolean compressed) throws IOException {
+		this.storeFile = storeFile;
+		this.cdfVarName = cdfVarName;
+		this.nChannels = nChannels;
+		this.compressed = compressed;
+
+		if(compressed) {
+			deflater = new Deflater();
+			deflateBuffer = new byte[(nChannels * 4) + 64];
+		}
+
+		dataFile = SidecarFileUtility.createTempFile(storeFile);
+		dataOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+	}
+
+	/**
+	 * Write the spectrum of a point, a later spectrum for the same point replaces an earlier one.
+	 */
+	public void writeSpectrum(int pointI, int pointJ, long[] spectrum) throws IOException {
+		if(dataOutput == null) {
+			throw new IOException("Spectrum store writer is closed.");
+		}
+		if(spectrum.length != nChannels) {
+			throw new IOException("Spectrum length (" + spectrum.length + ") does not match number of channels (" + nChannels + ").");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(nChannels * 4);
+		for(long value : spectrum) {
+			buffer.putInt((int)value);
+		}
+
+		byte[] block = buffer.array();
+		int blockLength = block.length;
+		if(compressed) {
+			deflater.reset();
+			deflater.setInput(block);
+			deflater.finish();
+			blockLength = 0;
+			while(!deflater.finished()) {
+				if(blockLength == deflateBuffer.length) {
+					deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+				}
+				blockLength += deflater.deflate(deflateBuffer, blockLength, deflateBuffer.length - blockLength);
+			}
+			block = deflateBuffer;
+		}
+
+		dataOutput.write(block, 0, blockLength);
+
+		if(numberOfPoints == pointsI.length) {
+			int capacity = numberOfPoints * 2;
+			pointsI = Arrays.copyOf(pointsI, capacity);
+			pointsJ = Arrays.copyOf(pointsJ, capacity);
+			blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+			blockLengths = Arrays.copyOf(blockLengths, capacity);
+		}
+		pointsI[numberOfPoints] = pointI;
+		pointsJ[numberOfPoints] = pointJ;
+		blockOffsets[numberOfPoints] = dataLength;
+		blockLengths[numberOfPoints] = blockLength;
+		numberOfPoints++;
+
+		dataLength += blockLength;
+	}
+
+	/**
+	 * Write the store file for the given (closed) CDF file.
+	 */
+	public void close(File cdfFile) throws IOException {
+		if(dataOutput == null) {
+			throw new IOException("Spectrum store writer is closed.");
+		}
+
+		try {
+			dataOutput.close();
+			dataOutput = null;
+
+			int minimumI = 0;
+			int maximumI = -1;
+			int minimumJ = 0;
+			int maximumJ = -1;
+			for(int idx = 0; idx < numberOfPoints; idx++) {
+				if((idx == 0) || (pointsI[idx] < minimumI)) {
+					minimumI = pointsI[idx];
+				}
+				if((idx == 0) || (pointsI[idx] > maximumI)) {
+					maximumI = pointsI[idx];
+				}
+				if((idx == 0) || (pointsJ[idx] < minimumJ)) {
+					minimumJ = pointsJ[idx];
+				}
+				if((idx == 0) || (pointsJ[idx] > maximumJ)) {
+					maximumJ = pointsJ[idx];
+				}
+			}
+
+			long sizeI = (long)maximumI - (long)minimumI + 1L;
+			long sizeJ = (long)maximumJ - (long)minimumJ + 1L;
+			if((sizeI * sizeJ) > (Integer.MAX_VALUE / MapXYSpectrumStore.DIRECTORY_ENTRY_LENGTH)) {
+				throw new IOException("Spectrum store grid too large (" + sizeI + "x" + sizeJ + ").");
+			}
+
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(headerBytes);
+			header.writeLong(cdfFile.length());
+			header.writeLong(cdfFile.lastModified());
+			header.writeUTF(cdfVarName);
+			header.writeInt(nChannels);
+			header.writeInt(compressed ? MapXYSpectrumStore.STORE_FLAG_COMPRESSED : 0);
+			header.writeInt(minimumI);
+			header.writeInt((int)sizeI);
+			header.writeInt(minimumJ);
+			header.writeInt((int)sizeJ);
+			header.flush();
+
+			byte[] headerBlock = headerBytes.toByteArray();
+
+			int nEntries = (int)(sizeI * sizeJ);
+			long dataOffset = SidecarFileUtility.getHeaderLength(headerBlock.length) + ((long)nEntries * MapXYSpectrumStore.DIRECTORY_ENTRY_LENGTH);
+
+			long[] entryOffsets = new long[nEntries];
+			int[] entryLengths = new int[nEntries];
+			for(int idx = 0; idx < numberOfPoints; idx++) {
+				int entryIndex = (int)(((long)(pointsJ[idx] - minimumJ) * sizeI) + (long)(pointsI[idx] - minimumI));
+				entryOffsets[entryIndex] = dataOffset + blockOffsets[idx];
+				entryLengths[entryIndex] = blockLengths[idx];
+			}
+
+			File tempFile = SidecarFileUtility.createTempFile(storeFile);
+			try {
+				OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+				try {
+					DataOutputStream output = new DataOutputStream(outputStream);
+					SidecarFileUtility.writeHeader(output, MapXYSpectrumStore.STORE_FILE_MAGIC, MapXYSpectrumStore.STORE_FILE_VERSION, headerBlock);
+					for(int idx = 0; idx < nEntries; idx++) {
+						output.writeLong(entryOffsets[idx]);
+						output.writeInt(entryLengths[idx]);
+					}
+
+					InputStream dataInput = new BufferedInputStream(new FileInputStream(dataFile));
+					try {
+						byte[] buffer = new byte[COPY_BUFFER_LENGTH];
+						int length;
+						while((length = dataInput.read(buffer)) > 0) {
+							output.write(buffer, 0, length);
+						}
+					}
+					finally {
+						dataInput.close();
+					}
+					output.flush();
+				}
+				finally {
+					outputStream.close();
+				}
+			}
+			catch(IOException e) {
+				tempFile.delete();
+				throw e;
+			}
+
+			SidecarFileUtility.replaceFile(tempFile, storeFile, MapXYSpectrumStore.STORE_FILE_DESCRIPTION);
+		}
+		finally {
+			delete();
+		}
+	}
+
+	/**
+	 * Discard the spectra written, the store file is not written.
+	 */
+	public void delete() {
+		if(dataOutput != null) {
+			try {
+				dataOutput.close();
+			}
+			catch(IOException e) {
+				// nothing to do //
+			}
+			dataOutput = null;
+		}
+		if(deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		dataFile.delete();
+	}
+
+	public File getStoreFile() {
+		return storeFile;
+	}
+
+	public String getCdfVarName() {
+		return cdfVarName;
+	}
+
+	public int getNChannels() {
+		return nChannels;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+}
@@ -0,0 +1,37 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFIndex abstract class.
+ *
+ */
+package ca.sciencestudio.data.cdf.index;
+
+/**
+ * Secondary index over the values of a scalar CDF variable, lookups return
+ * the matching record numbers in ascending order.
+ *
+ * @author maxweld
+ *
+ */
+public abstract class CDFIndex {
+
+	private String cdfVarName;
+	private int numberOfRecords;
+
+	protected CDFIndex(String cdfVarName, int numberOfRecords) {
+		this.cdfVarName = cdfVarName;
+		this.numberOfRecords = numberOfRecords;
+	}
+
+	public String getCdfVarName() {
+		return cdfVarName;
+	}
+
+	/**
+	 * @return the number of records of the variable when the index was built
+	 */
+	public int getNumberOfRecords() {
+		return numberOfRecords;
+	}
+}
@@ -0,0 +1,183 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFIndexRegistry class.
+ *
+ */
+package ca.sciencestudio.data.cdf.index;
+
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import gsfc.nssdc.cdf.CDF;
+import gsfc.nssdc.cdf.CDFException;
+import gsfc.nssdc.cdf.Variable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ca.sciencestudio.data.cdf.CDFEvent;
+import ca.sciencestudio.data.cdf.CDFHandle;
+import ca.sciencestudio.data.cdf.CDFRecord;
+import ca.sciencestudio.data.cdf.CDFVariableUtility;
+import ca.sciencestudio.data.cdf.index.IntCDFIndex;
+import ca.sciencestudio.data.cdf.index.StringCDFIndex;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+/**
+ * Indexes of the scalar variables of a CDF file, each index is built the first
+ * time it is needed by reading the variable and is kept for the life of the handle.
+ *
+ * Integer variables get a sorted index (equal and range lookups) and character
+ * variables get a hash index (equal lookups), other variables are not indexed.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFIndexRegistry {
+
+	private static final long READ_BLOCK_LENGTH = 65536L;
+
+	private CDFHandle cdfHandle;
+
+	// A null value records that the variable cannot be indexed. //
+	private Map<String,IntCDFIndex> intIndexes = new HashMap<String,IntCDFIndex>();
+	private Map<String,StringCDFIndex> stringIndexes = new HashMap<String,StringCDFIndex>();
+
+	protected Log log = LogFactory.getLog(getClass());
+
+	public CDFIndexRegistry(CDFHandle cdfHandle) {
+		this.cdfHandle = cdfHandle;
+	}
+
+	/**
+	 * @return the index of the variable or null if the variable cannot be indexed
+	 */
+	public synchronized IntCDFIndex getIntIndex(String cdfVarName) {
+		if(intIndexes.containsKey(cdfVarName)) {
+			return intIndexes.get(cdfVarName);
+		}
+
+		IntCDFIndex intIndex = null;
+		try {
+			int[] values = readIntValues(cdfVarName);
+			if(values != null) {
+				intIndex = new IntCDFIndex(cdfVarName, values);
+			}
+		}
+		catch(CDFException e) {
+			log.warn("Cannot build index for variable, " + cdfVarName + ", in CDF file: " + cdfHandle.getPath(), e);
+		}
+
+		intIndexes.put(cdfVarName, intIndex);
+		return intIndex;
+	}
+
+	/**
+	 * @return the index of the variable or null if the variable cannot be indexed
+	 */
+	public synchronized StringCDFIndex getStringIndex(String cdfVarName) {
+		if(stringIndexes.containsKey(cdfVarName)) {
+			return stringIndexes.get(cdfVarName);
+		}
+
+		StringCDFIndex stringIndex = null;
+		try {
+			String[] values = readStringValues(cdfVarName);
+			if(values != null) {
+				stringIndex = new StringCDFIndex(cdfVarName, values);
+			}
+		}
+		catch(CDFException e) {
+			log.warn("Cannot build index for variable, " + cdfVarName + ", in CDF file: " + cdfHandle.getPath(), e);
+		}
+
+		stringIndexes.put(cdfVarName, stringIndex);
+		return stringIndex;
+	}
+
+	/**
+	 * Read the values of a scalar integer variable in blocks of records.
+	 *
+	 * @return the values or null if the variable is not a scalar integer variable
+	 */
+	protected int[] readIntValues(String cdfVarName) throws CDFException {
+		synchronized(cdfHandle) {
+			Variable variable = getScalarVariable(cdfVarName);
+			if((variable == null) || !CDFVariableUtility.isIntDataType(variable.getDataType())) {
+				return null;
+			}
+
+			long numberOfRecords = variable.getNumWrittenRecords();
+			if(numberOfRecords > Integer.MAX_VALUE) {
+				return null;
+			}
+
+			int[] values = new int[(int)numberOfRecords];
+			for(long recordStart = 0L; recordStart < numberOfRecords; recordStart += READ_BLOCK_LENGTH) {
+				long recordCount = Math.min(READ_BLOCK_LENGTH, numberOfRecords - recordStart);
+				Object data = CDFVariableUtility.readScalarValues(variable, recordStart, recordCount);
+				if(data == null) {
+					log.warn("Unexpected data read for index of variable, " + cdfVarName + ", in CDF file: " + cdfHandle.getPath());
+					return null;
+				}
+				for(int idx = 0; idx < recordCount; idx++) {
+					values[(int)recordStart + idx] = ((Number)Array.get(data, idx)).intValue();
+				}
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * Read the values of a scalar character variable, each record is read
+	 * the same way as a query so that the values are identical.
+	 *
+	 * @return the values or null if the variable is not a scalar character variable
+	 */
+	@SuppressWarnings("unchecked")
+	protected String[] readStringValues(String cdfVarName) throws CDFException {
+		synchronized(cdfHandle) {
+			Variable variable = getScalarVariable(cdfVarName);
+			if((variable == null) || !CDFVariableUtility.isStringDataType(variable.getDataType())) {
+				return null;
+			}
+
+			long numberOfRecords = variable.getNumWrittenRecords();
+			if(numberOfRecords > Integer.MAX_VALUE) {
+				return null;
+			}
+
+			CDFEvent cdfEvent = new CDFEvent(Collections.singletonList(variable));
+			long[] cdfVarIDs = cdfEvent.getVariableIDs();
+
+			String[] values = new String[(int)numberOfRecords];
+			for(int recordNumber = 0; recordNumber < numberOfRecords; recordNumber++) {
+				Vector<Object> cdfValues = cdfHandle.getCDF().getRecord(recordNumber, cdfVarIDs);
+				try {
+					values[recordNumber] = new CDFRecord(cdfEvent, cdfValues).getString(0);
+				}
+				catch(RecordFormatException e) {
+					values[recordNumber] = null;
+				}
+			}
+			return values;
+		}
+	}
+
+	protected Variable getScalarVariable(String cdfVarName) {
+		CDF cdf = cdfHandle.getCDF();
+		Variable variable;
+		try {
+			variable = cdf.getVariable(cdfVarName);
+		}
+		catch(CDFException e) {
+			return null;
+		}
+		return CDFVariableUtility.isScalar(variable) ? variable : null;
+	}
+}
@@ -0,0 +1,151 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     IntCDFIndex class.
+ *
+ */
+package ca.sciencestudio.data.cdf.index;
+
+import java.util.Arrays;
+
+import ca.sciencestudio.data.cdf.index.CDFIndex;
+
+/**
+ * Sorted index over the int values of a scalar CDF variable, the values are
+ * the same as read by CDFRecord.getInt() so lookups agree with the int selectors.
+ *
+ * @author maxweld
+ *
+ */
+public class IntCDFIndex extends CDFIndex {
+
+	private static final int[] EMPTY_RECORDS = new int[0];
+
+	// Sorted by value, then by record number. //
+	private int[] values;
+	private int[] recordNumbers;
+
+	private boolean sortedByRecord = true;
+
+	/**
+	 * @param values the value of each record, indexed by record number
+	 */
+	public IntCDFIndex(String cdfVarName, int[] values) {
+		super(cdfVarName, values.length);
+
+		// Pack value and record number so a single sort orders both. //
+		long[] entries = new long[values.length];
+		for(int recordNumber = 0; recordNumber < values.length; recordNumber++) {
+			entries[recordNumber] = ((long)values[recordNumber] << 32) | recordNumber;
+			if((recordNumber > 0) && (values[recordNumber] < values[recordNumber - 1])) {
+				sortedByRecord = false;
+			}
+		}
+		Arrays.sort(entries);
+
+		this.values = new int[entries.length];
+		this.recordNumbers = new int[entries.length];
+		for(int idx = 0; idx < entries.length; idx++) {
+			this.values[idx] = (int)(entries[idx] >> 32);
+			this.recordNumbers[idx] = (int)entries[idx];
+		}
+	}
+
+	public int[] getRecordsEqual(int value) {
+		return getRecordsInRange(value, value);
+	}
+
+	/**
+	 * @return the record numbers with values between minimum and maximum (inclusive)
+	 */
+	public int[] getRecordsInRange(long minimum, long maximum) {
+		int start = getStartIndex(minimum);
+		int end = getEndIndex(maximum);
+		if(start >= end) {
+			return EMPTY_RECORDS;
+		}
+		int[] records = Arrays.copyOfRange(recordNumbers, start, end);
+		if(values[start] != values[end - 1]) {
+			Arrays.sort(records);
+		}
+		return records;
+	}
+
+	public int getNumberOfRecordsInRange(long minimum, long maximum) {
+		return Math.max(getEndIndex(maximum) - getStartIndex(minimum), 0);
+	}
+
+	/**
+	 * @return the distinct values in ascending order
+	 */
+	public int[] getDistinctValues() {
+		int nDistinct = 0;
+		int[] distinct = new int[values.length];
+		for(int idx = 0; idx < values.length; idx++) {
+			if((nDistinct == 0) || (distinct[nDistinct - 1] != values[idx])) {
+				distinct[nDistinct++] = values[idx];
+			}
+		}
+		return Arrays.copyOf(distinct, nDistinct);
+	}
+
+	/**
+	 * @return the minimum value or Integer.MAX_VALUE if the index is empty
+	 */
+	public int getMinimumValue() {
+		return (values.length > 0) ? values[0] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return the maximum value or Integer.MIN_VALUE if the index is empty
+	 */
+	public int getMaximumValue() {
+		return (values.length > 0) ? values[values.length - 1] : Integer.MIN_VALUE;
+	}
+
+	/**
+	 * True if the values do not decrease with record number, then the records
+	 * with values in a range are the contiguous records from the start index
+	 * (inclusive) to the end index (exclusive) of the range.
+	 */
+	public boolean isSortedByRecord() {
+		return sortedByRecord;
+	}
+
+	/**
+	 * @return the position in the sorted index of the first value greater than or equal to the minimum
+	 */
+	public int getStartIndex(long minimum) {
+		int low = 0;
+		int high = values.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(values[mid] < minimum) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the position in the sorted index of the first value greater than the maximum
+	 */
+	public int getEndIndex(long maximum) {
+		int low = 0;
+		int high = values.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(values[mid] <= maximum) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
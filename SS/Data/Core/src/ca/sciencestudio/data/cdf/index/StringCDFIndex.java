@@ -0,0 +1,72 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     StringCDFIndex class.
+ *
+ */
+package ca.sciencestudio.data.cdf.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.sciencestudio.data.cdf.index.CDFIndex;
+
+/**
+ * Hash index over the string values of a scalar CDF variable, the values are
+ * the same as read by CDFRecord.getString() so lookups agree with the string selector.
+ *
+ * @author maxweld
+ *
+ */
+public class StringCDFIndex extends CDFIndex {
+
+	private static final int[] EMPTY_RECORDS = new int[0];
+
+	private Map<String,int[]> recordNumbers = new HashMap<String,int[]>();
+
+	/**
+	 * @param values the value of each record, indexed by record number (null if the record has no value)
+	 */
+	public StringCDFIndex(String cdfVarName, String[] values) {
+		super(cdfVarName, values.length);
+
+		Map<String,Integer> counts = new HashMap<String,Integer>();
+		for(String value : values) {
+			if(value != null) {
+				Integer count = counts.get(value);
+				counts.put(value, (count == null) ? 1 : (count + 1));
+			}
+		}
+
+		for(Map.Entry<String,Integer> count : counts.entrySet()) {
+			recordNumbers.put(count.getKey(), new int[count.getValue()]);
+			count.setValue(0);
+		}
+
+		// Record numbers are added in ascending order. //
+		for(int recordNumber = 0; recordNumber < values.length; recordNumber++) {
+			String value = values[recordNumber];
+			if(value != null) {
+				int count = counts.get(value);
+				recordNumbers.get(value)[count] = recordNumber;
+				counts.put(value, count + 1);
+			}
+		}
+	}
+
+	public int[] getRecordsEqual(String value) {
+		int[] records = recordNumbers.get(value);
+		return (records != null) ? Arrays.copyOf(records, records.length) : EMPTY_RECORDS;
+	}
+
+	public int getNumberOfRecordsEqual(String value) {
+		int[] records = recordNumbers.get(value);
+		return (records != null) ? records.length : 0;
+	}
+
+	public int getNumberOfDistinctValues() {
+		return recordNumbers.size();
+	}
+}
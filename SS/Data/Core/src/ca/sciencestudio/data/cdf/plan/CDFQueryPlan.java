@@ -0,0 +1,80 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFQueryPlan class.
+ *
+ */
+package ca.sciencestudio.data.cdf.plan;
+
+import java.util.Arrays;
+
+import ca.sciencestudio.data.cdf.plan.CDFRecordSet;
+import ca.sciencestudio.data.cdf.selector.CDFSelector;
+
+/**
+ * Plan for a CDF query, the records to read and the selector which must
+ * still be evaluated for each record read.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFQueryPlan {
+
+	public enum AccessPath {
+		INDEX_LOOKUP, RANGE_SCAN, FULL_SCAN
+	}
+
+	private AccessPath accessPath;
+	private CDFRecordSet recordSet;
+	private CDFSelector residualSelector;
+	private String[] residualVarNames;
+
+	public CDFQueryPlan(AccessPath accessPath, CDFRecordSet recordSet, CDFSelector residualSelector, String[] residualVarNames) {
+		this.accessPath = accessPath;
+		this.recordSet = recordSet;
+		this.residualSelector = residualSelector;
+		this.residualVarNames = residualVarNames;
+	}
+
+	public AccessPath getAccessPath() {
+		return accessPath;
+	}
+
+	/**
+	 * @return the records to read or null to read all records
+	 */
+	public CDFRecordSet getRecordSet() {
+		return recordSet;
+	}
+
+	/**
+	 * @return the selector to evaluate for each record read or null if all records read are selected
+	 */
+	public CDFSelector getResidualSelector() {
+		return residualSelector;
+	}
+
+	/**
+	 * @return the variables to read to evaluate the residual selector before the
+	 *		rest of the record is read, or null if the whole record is read first
+	 */
+	public String[] getResidualVarNames() {
+		return residualVarNames;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer buffer = new StringBuffer(accessPath.toString());
+		if(recordSet != null) {
+			buffer.append(" ").append(recordSet);
+		}
+		if(residualSelector != null) {
+			buffer.append(", residual selector");
+			if(residualVarNames != null) {
+				buffer.append(" on ").append(Arrays.toString(residualVarNames));
+			}
+		}
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,263 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFQueryPlanner class.
+ *
+ */
+package ca.sciencestudio.data.cdf.plan;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import ca.sciencestudio.data.cdf.index.CDFIndexRegistry;
+import ca.sciencestudio.data.cdf.index.IntCDFIndex;
+import ca.sciencestudio.data.cdf.index.StringCDFIndex;
+import ca.sciencestudio.data.cdf.plan.CDFQueryPlan.AccessPath;
+import ca.sciencestudio.data.cdf.plan.CDFRecordSet;
+import ca.sciencestudio.data.cdf.selector.CDFSelector;
+import ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder;
+import ca.sciencestudio.data.cdf.selector.EqualIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.EqualStringCDFSelector;
+import ca.sciencestudio.data.cdf.selector.GreaterThanIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.GreaterThanOrEqualIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LessThanIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LessThanOrEqualIntCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LogicalAndCDFSelector;
+import ca.sciencestudio.data.cdf.selector.LogicalOrCDFSelector;
+
+/**
+ * Plans a CDF query for a selector tree built by CDFSelectorBuilder.
+ *
+ * Each comparison on an indexed variable is answered by the index, as a
+ * contiguous range of records if the variable is sorted by record, and the
+ * answers are combined through AND (intersection) and OR (union). Comparisons
+ * which cannot be answered remain in a residual selector, reordered so the
+ * most selective term of an AND (least selective term of an OR) is evaluated
+ * first. If the residual selector does not use all the query variables then
+ * its variables are read first and the rest of the record only if selected.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFQueryPlanner {
+
+	private static final double UNKNOWN_SELECTIVITY = 0.5;
+
+	private CDFIndexRegistry indexRegistry;
+
+	public CDFQueryPlanner(CDFIndexRegistry indexRegistry) {
+		this.indexRegistry = indexRegistry;
+	}
+
+	public CDFQueryPlan plan(String[] cdfVarNames, CDFSelector cdfSelector) {
+		if(cdfSelector == null) {
+			return new CDFQueryPlan(AccessPath.FULL_SCAN, null, null, null);
+		}
+
+		PlanNode node = planSelector(cdfSelector);
+
+		AccessPath accessPath;
+		if(node.recordSet == null) {
+			accessPath = AccessPath.FULL_SCAN;
+		}
+		else if(node.recordSet.isRange()) {
+			accessPath = AccessPath.RANGE_SCAN;
+		}
+		else {
+			accessPath = AccessPath.INDEX_LOOKUP;
+		}
+
+		String[] residualVarNames = null;
+		if(node.residual != null) {
+			Set<String> varNames = new LinkedHashSet<String>();
+			if(getVarNames(node.residual, varNames) && !varNames.containsAll(Arrays.asList(cdfVarNames))) {
+				residualVarNames = varNames.toArray(new String[varNames.size()]);
+			}
+		}
+
+		return new CDFQueryPlan(accessPath, node.recordSet, node.residual, residualVarNames);
+	}
+
+	protected PlanNode planSelector(CDFSelector cdfSelector) {
+
+		if(cdfSelector instanceof EqualIntCDFSelector) {
+			EqualIntCDFSelector selector = (EqualIntCDFSelector)cdfSelector;
+			return planRange(selector, selector.getCdfVarName(), selector.getValue(), selector.getValue());
+		}
+
+		if(cdfSelector instanceof LessThanIntCDFSelector) {
+			LessThanIntCDFSelector selector = (LessThanIntCDFSelector)cdfSelector;
+			return planRange(selector, selector.getCdfVarName(), Long.MIN_VALUE, selector.getValue() - 1L);
+		}
+
+		if(cdfSelector instanceof LessThanOrEqualIntCDFSelector) {
+			LessThanOrEqualIntCDFSelector selector = (LessThanOrEqualIntCDFSelector)cdfSelector;
+			return planRange(selector, selector.getCdfVarName(), Long.MIN_VALUE, selector.getValue());
+		}
+
+		if(cdfSelector instanceof GreaterThanIntCDFSelector) {
+			GreaterThanIntCDFSelector selector = (GreaterThanIntCDFSelector)cdfSelector;
+			return planRange(selector, selector.getCdfVarName(), selector.getValue() + 1L, Long.MAX_VALUE);
+		}
+
+		if(cdfSelector instanceof GreaterThanOrEqualIntCDFSelector) {
+			GreaterThanOrEqualIntCDFSelector selector = (GreaterThanOrEqualIntCDFSelector)cdfSelector;
+			return planRange(selector, selector.getCdfVarName(), selector.getValue(), Long.MAX_VALUE);
+		}
+
+		if(cdfSelector instanceof EqualStringCDFSelector) {
+			EqualStringCDFSelector selector = (EqualStringCDFSelector)cdfSelector;
+			StringCDFIndex stringIndex = indexRegistry.getStringIndex(selector.getCdfVarName());
+			if(stringIndex == null) {
+				return new PlanNode(null, selector, UNKNOWN_SELECTIVITY);
+			}
+			int[] recordNumbers = stringIndex.getRecordsEqual(selector.getValue());
+			return new PlanNode(CDFRecordSet.list(recordNumbers), null, getSelectivity(recordNumbers.length, stringIndex.getNumberOfRecords()));
+		}
+
+		if(cdfSelector instanceof LogicalAndCDFSelector) {
+			LogicalAndCDFSelector selector = (LogicalAndCDFSelector)cdfSelector;
+			PlanNode node1 = planSelector(selector.getCdfSelector1());
+			PlanNode node2 = planSelector(selector.getCdfSelector2());
+
+			CDFRecordSet recordSet;
+			if(node1.recordSet == null) {
+				recordSet = node2.recordSet;
+			}
+			else if(node2.recordSet == null) {
+				recordSet = node1.recordSet;
+			}
+			else {
+				recordSet = node1.recordSet.intersect(node2.recordSet);
+			}
+
+			CDFSelector residual;
+			if(node1.residual == null) {
+				residual = node2.residual;
+			}
+			else if(node2.residual == null) {
+				residual = node1.residual;
+			}
+			else if(node2.selectivity < node1.selectivity) {
+				residual = CDFSelectorBuilder.AND(node2.residual, node1.residual);
+			}
+			else {
+				residual = CDFSelectorBuilder.AND(node1.residual, node2.residual);
+			}
+
+			return new PlanNode(recordSet, residual, node1.selectivity * node2.selectivity);
+		}
+
+		if(cdfSelector instanceof LogicalOrCDFSelector) {
+			LogicalOrCDFSelector selector = (LogicalOrCDFSelector)cdfSelector;
+			PlanNode node1 = planSelector(selector.getCdfSelector1());
+			PlanNode node2 = planSelector(selector.getCdfSelector2());
+
+			CDFRecordSet recordSet = null;
+			if((node1.recordSet != null) && (node2.recordSet != null)) {
+				recordSet = node1.recordSet.union(node2.recordSet);
+			}
+
+			// Unless both terms are answered exactly the whole selector must be evaluated. //
+			CDFSelector residual = null;
+			if((recordSet == null) || (node1.residual != null) || (node2.residual != null)) {
+				if(node2.selectivity > node1.selectivity) {
+					residual = CDFSelectorBuilder.OR(selector.getCdfSelector2(), selector.getCdfSelector1());
+				}
+				else {
+					residual = selector;
+				}
+			}
+
+			double selectivity = node1.selectivity + node2.selectivity - (node1.selectivity * node2.selectivity);
+			return new PlanNode(recordSet, residual, selectivity);
+		}
+
+		return new PlanNode(null, cdfSelector, UNKNOWN_SELECTIVITY);
+	}
+
+	protected PlanNode planRange(CDFSelector cdfSelector, String cdfVarName, long minimum, long maximum) {
+		IntCDFIndex intIndex = indexRegistry.getIntIndex(cdfVarName);
+		if(intIndex == null) {
+			return new PlanNode(null, cdfSelector, UNKNOWN_SELECTIVITY);
+		}
+
+		CDFRecordSet recordSet;
+		if(intIndex.isSortedByRecord()) {
+			recordSet = CDFRecordSet.range(intIndex.getStartIndex(minimum), intIndex.getEndIndex(maximum));
+		}
+		else {
+			recordSet = CDFRecordSet.list(intIndex.getRecordsInRange(minimum, maximum));
+		}
+		return new PlanNode(recordSet, null, getSelectivity(recordSet.size(), intIndex.getNumberOfRecords()));
+	}
+
+	/**
+	 * @return false if the variables used by the selector are not known
+	 */
+	protected boolean getVarNames(CDFSelector cdfSelector, Set<String> varNames) {
+		if(cdfSelector instanceof LogicalAndCDFSelector) {
+			LogicalAndCDFSelector selector = (LogicalAndCDFSelector)cdfSelector;
+			return getVarNames(selector.getCdfSelector1(), varNames) && getVarNames(selector.getCdfSelector2(), varNames);
+		}
+		if(cdfSelector instanceof LogicalOrCDFSelector) {
+			LogicalOrCDFSelector selector = (LogicalOrCDFSelector)cdfSelector;
+			return getVarNames(selector.getCdfSelector1(), varNames) && getVarNames(selector.getCdfSelector2(), varNames);
+		}
+		String cdfVarName = getVarName(cdfSelector);
+		if(cdfVarName == null) {
+			return false;
+		}
+		varNames.add(cdfVarName);
+		return true;
+	}
+
+	/**
+	 * @return the variable compared by the selector or null if not a known comparison selector
+	 */
+	protected String getVarName(CDFSelector cdfSelector) {
+		if(cdfSelector instanceof EqualIntCDFSelector) {
+			return ((EqualIntCDFSelector)cdfSelector).getCdfVarName();
+		}
+		if(cdfSelector instanceof EqualStringCDFSelector) {
+			return ((EqualStringCDFSelector)cdfSelector).getCdfVarName();
+		}
+		if(cdfSelector instanceof LessThanIntCDFSelector) {
+			return ((LessThanIntCDFSelector)cdfSelector).getCdfVarName();
+		}
+		if(cdfSelector instanceof LessThanOrEqualIntCDFSelector) {
+			return ((LessThanOrEqualIntCDFSelector)cdfSelector).getCdfVarName();
+		}
+		if(cdfSelector instanceof GreaterThanIntCDFSelector) {
+			return ((GreaterThanIntCDFSelector)cdfSelector).getCdfVarName();
+		}
+		if(cdfSelector instanceof GreaterThanOrEqualIntCDFSelector) {
+			return ((GreaterThanOrEqualIntCDFSelector)cdfSelector).getCdfVarName();
+		}
+		return null;
+	}
+
+	protected static double getSelectivity(int numberOfSelected, int numberOfRecords) {
+		return (numberOfRecords > 0) ? ((double)numberOfSelected / (double)numberOfRecords) : 0.0;
+	}
+
+	/**
+	 * Records which may be selected (null for all records), the selector which
+	 * must still be evaluated on them (null if none) and the estimated fraction
+	 * of records selected.
+	 */
+	protected static class PlanNode {
+
+		private CDFRecordSet recordSet;
+		private CDFSelector residual;
+		private double selectivity;
+
+		public PlanNode(CDFRecordSet recordSet, CDFSelector residual, double selectivity) {
+			this.recordSet = recordSet;
+			this.residual = residual;
+			this.selectivity = selectivity;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     CDFRecordSet class.
+ *
+ */
+package ca.sciencestudio.data.cdf.plan;
+
+import java.util.Arrays;
+
+/**
+ * Set of record numbers in ascending order, either a contiguous range of
+ * records or a list of record numbers.
+ *
+ * @author maxweld
+ *
+ */
+public class CDFRecordSet {
+
+	// Null for a contiguous range of records. //
+	private int[] recordNumbers;
+	private int start;
+	private int end;
+
+	public static CDFRecordSet range(int start, int end) {
+		return new CDFRecordSet(null, start, Math.max(start, end));
+	}
+
+	/**
+	 * @param recordNumbers record numbers in ascending order without duplicates
+	 */
+	public static CDFRecordSet list(int[] recordNumbers) {
+		return new CDFRecordSet(recordNumbers, 0, recordNumbers.length);
+	}
+
+	protected CDFRecordSet(int[] recordNumbers, int start, int end) {
+		this.recordNumbers = recordNumbers;
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean isRange() {
+		return (recordNumbers == null);
+	}
+
+	public int size() {
+		return end - start;
+	}
+
+	public int getRecordNumber(int idx) {
+		return isRange() ? (start + idx) : recordNumbers[idx];
+	}
+
+	public CDFRecordSet intersect(CDFRecordSet recordSet) {
+		if(isRange() && recordSet.isRange()) {
+			return range(Math.max(start, recordSet.start), Math.min(end, recordSet.end));
+		}
+		if(isRange()) {
+			return recordSet.intersect(this);
+		}
+		if(recordSet.isRange()) {
+			int from = lowerBound(recordNumbers, recordSet.start);
+			int to = lowerBound(recordNumbers, recordSet.end);
+			return list(Arrays.copyOfRange(recordNumbers, from, Math.max(from, to)));
+		}
+		return list(intersect(recordNumbers, recordSet.recordNumbers));
+	}
+
+	public CDFRecordSet union(CDFRecordSet recordSet) {
+		if(isRange() && recordSet.isRange()) {
+			if(size() == 0) {
+				return recordSet;
+			}
+			if(recordSet.size() == 0) {
+				return this;
+			}
+			if((start <= recordSet.end) && (recordSet.start <= end)) {
+				return range(Math.min(start, recordSet.start), Math.max(end, recordSet.end));
+			}
+		}
+		return list(union(toArray(), recordSet.toArray()));
+	}
+
+	public int[] toArray() {
+		if(!isRange()) {
+			return recordNumbers;
+		}
+		int[] array = new int[size()];
+		for(int idx = 0; idx < array.length; idx++) {
+			array[idx] = start + idx;
+		}
+		return array;
+	}
+
+	@Override
+	public String toString() {
+		return isRange() ? ("[" + start + "," + end + ")") : ("{" + recordNumbers.length + " records}");
+	}
+
+	// Index of the first record number greater than or equal to the value. //
+	protected static int lowerBound(int[] recordNumbers, int value) {
+		int idx = Arrays.binarySearch(recordNumbers, value);
+		return (idx >= 0) ? idx : -(idx + 1);
+	}
+
+	protected static int[] intersect(int[] records1, int[] records2) {
+		int[] records = new int[Math.min(records1.length, records2.length)];
+		int length = 0;
+		int idx1 = 0;
+		int idx2 = 0;
+		while((idx1 < records1.length) && (idx2 < records2.length)) {
+			if(records1[idx1] < records2[idx2]) {
+				idx1++;
+			}
+			else if(records1[idx1] > records2[idx2]) {
+				idx2++;
+			}
+			else {
+				records[length++] = records1[idx1];
+				idx1++;
+				idx2++;
+			}
+		}
+		return Arrays.copyOf(records, length);
+	}
+
+	protected static int[] union(int[] records1, int[] records2) {
+		int[] records = new int[records1.length + records2.length];
+		int length = 0;
+		int idx1 = 0;
+		int idx2 = 0;
+		while((idx1 < records1.length) || (idx2 < records2.length)) {
+			if((idx2 >= records2.length) || ((idx1 < records1.length) && (records1[idx1] < records2[idx2]))) {
+				records[length++] = records1[idx1++];
+			}
+			else if((idx1 >= records1.length) || (records2[idx2] < records1[idx1])) {
+				records[length++] = records2[idx2++];
+			}
+			else {
+				records[length++] = records1[idx1++];
+				idx2++;
+			}
+		}
+		return Arrays.copyOf(records, length);
+	}
+}
@@ -34,4 +34,12 @@ public class EqualStringCDFSelector extends CDFSelector {
 			throw new CDFSelectorException("", e);
 		}
 	}
+	
+	public String getCdfVarName() {
+		return cdfVarName;
+	}
+	
+	public String getValue() {
+		return value;
+	}
 }
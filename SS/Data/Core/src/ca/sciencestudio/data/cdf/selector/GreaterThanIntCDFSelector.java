@@ -34,4 +34,12 @@ public class GreaterThanIntCDFSelector extends CDFSelector {
 			throw new CDFSelectorException("", e);
 		}
 	}
+	
+	public String getCdfVarName() {
+		return cdfVarName;
+	}
+	
+	public int getValue() {
+		return value;
+	}
 }
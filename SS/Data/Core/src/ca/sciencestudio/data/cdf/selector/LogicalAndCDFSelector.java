@@ -28,4 +28,12 @@ public class LogicalAndCDFSelector extends CDFSelector {
 	public boolean select(CDFRecord cdfRecord) throws CDFSelectorException {
 		return (cdfSelector1.select(cdfRecord) && cdfSelector2.select(cdfRecord));
 	}
+	
+	public CDFSelector getCdfSelector1() {
+		return cdfSelector1;
+	}
+	
+	public CDFSelector getCdfSelector2() {
+		return cdfSelector2;
+	}
 }
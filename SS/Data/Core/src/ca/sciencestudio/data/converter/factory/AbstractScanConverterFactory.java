@@ -130,4 +130,12 @@ public abstract class AbstractScanConverterFactory extends AbstractConverterFact
 		
 		return request;
 	}
+	
+	/**
+	 * @return true if the request is for a scan which is still in progress (the scan has no end date)
+	 */
+	protected boolean isIncompleteScan(ConverterMap request) {
+		Object scan = request.get(REQUEST_KEY_SCAN);
+		return (scan instanceof Scan) && (((Scan)scan).getEndDate() == null);
+	}
 }
@@ -0,0 +1,242 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFChunkedRecordReader class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import ca.sciencestudio.data.daf.DAFEvent;
+import ca.sciencestudio.data.daf.DAFRecord;
+import ca.sciencestudio.data.daf.DAFRecordParser;
+import ca.sciencestudio.util.text.PeekableBufferedReader;
+
+/**
+ * Reads the data section of a DAF file in chunks which end on a line boundary,
+ * the chunks are parsed on an executor and the records are returned in file order.
+ *
+ * The record parsers are shared by the chunks, so they must be thread-safe and
+ * must not parse a record from more than one line. The events must not be
+ * changed while chunks are being parsed.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFChunkedRecordReader {
+
+	public static final int DEFAULT_CHUNK_LENGTH = 1024 * 1024;
+	public static final int DEFAULT_MAXIMUM_PENDING_CHUNKS = 2 * Runtime.getRuntime().availableProcessors();
+
+	private Reader reader;
+	private int readAheadLimit;
+	private Executor executor;
+
+	private Collection<DAFEvent> events;
+	private DAFRecordParser recordParser;
+	private Collection<DAFRecordParser> customRecordParsers;
+
+	private int chunkLength = DEFAULT_CHUNK_LENGTH;
+	private int maximumPendingChunks = DEFAULT_MAXIMUM_PENDING_CHUNKS;
+
+	private boolean endOfInput = false;
+	private char[] remainder = new char[0];
+	private int remainderLength = 0;
+
+	private Iterator<DAFRecord> records = null;
+	private LinkedList<FutureTask<List<DAFRecord>>> pendingChunks = new LinkedList<FutureTask<List<DAFRecord>>>();
+
+	public DAFChunkedRecordReader(PeekableBufferedReader reader, Executor executor, Collection<DAFEvent> events, DAFRecordParser recordParser, Collection<DAFRecordParser> customRecordParsers) {
+		this.reader = reader;
+		this.readAheadLimit = reader.getReadAheadLimit();
+		this.executor = executor;
+		this.events = events;
+		this.recordParser = recordParser;
+		this.customRecordParsers = customRecordParsers;
+	}
+
+	/**
+	 * @return the next record in file order or null if no more records
+	 */
+	public DAFRecord nextRecord() throws IOException {
+		while(true) {
+			if((records != null) && records.hasNext()) {
+				return records.next();
+			}
+
+			submitChunks();
+
+			if(pendingChunks.isEmpty()) {
+				return null;
+			}
+
+			records = waitForChunk(pendingChunks.removeFirst()).iterator();
+		}
+	}
+
+	/**
+	 * Cancel the chunks which have not yet been parsed.
+	 */
+	public void cancel() {
+		for(FutureTask<List<DAFRecord>> pendingChunk : pendingChunks) {
+			pendingChunk.cancel(false);
+		}
+		pendingChunks.clear();
+		records = null;
+		endOfInput = true;
+	}
+
+	protected void submitChunks() throws IOException {
+		while(!endOfInput && (pendingChunks.size() < maximumPendingChunks)) {
+			ChunkCallable chunkCallable = readChunk();
+			if(chunkCallable == null) {
+				break;
+			}
+			FutureTask<List<DAFRecord>> pendingChunk = new FutureTask<List<DAFRecord>>(chunkCallable);
+			pendingChunks.addLast(pendingChunk);
+			executor.execute(pendingChunk);
+		}
+	}
+
+	protected List<DAFRecord> waitForChunk(FutureTask<List<DAFRecord>> pendingChunk) throws IOException {
+		try {
+			return pendingChunk.get();
+		}
+		catch(InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for records to be parsed.", e);
+		}
+		catch(ExecutionException e) {
+			cancel();
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Exception while parsing records.", e.getCause());
+		}
+	}
+
+	/**
+	 * Read a chunk of at least the chunk length (unless at the end of input)
+	 * which ends on a line boundary, the rest of the line is kept for the next chunk.
+	 */
+	protected ChunkCallable readChunk() throws IOException {
+
+		char[] chunk = new char[Math.max(chunkLength, remainderLength * 2)];
+		System.arraycopy(remainder, 0, chunk, 0, remainderLength);
+		int length = remainderLength;
+		remainderLength = 0;
+
+		while(true) {
+			int readLength = reader.read(chunk, length, chunk.length - length);
+			if(readLength < 0) {
+				endOfInput = true;
+				return (length > 0) ? new ChunkCallable(chunk, length) : null;
+			}
+
+			length += readLength;
+
+			if(length == chunk.length) {
+				int end = length;
+				while((end > 0) && !isLineEnd(chunk, end, length)) {
+					end--;
+				}
+
+				if(end > 0) {
+					remainderLength = length - end;
+					if(remainder.length < remainderLength) {
+						remainder = new char[Math.max(remainderLength, remainder.length * 2)];
+					}
+					System.arraycopy(chunk, end, remainder, 0, remainderLength);
+					return new ChunkCallable(chunk, end);
+				}
+
+				// A single line is longer than the chunk. //
+				char[] expanded = new char[chunk.length * 2];
+				System.arraycopy(chunk, 0, expanded, 0, length);
+				chunk = expanded;
+			}
+		}
+	}
+
+	/**
+	 * @return true if a line ends before the given position, a carriage return at 
+	 * the end of the buffer may be followed by a line feed so does not end a line
+	 */
+	protected static boolean isLineEnd(char[] chunk, int end, int length) {
+		char c = chunk[end-1];
+		if(c == '\n') {
+			return true;
+		}
+		if(c == '\r') {
+			return (end < length) && (chunk[end] != '\n');
+		}
+		return false;
+	}
+
+	public int getChunkLength() {
+		return chunkLength;
+	}
+	public void setChunkLength(int chunkLength) {
+		this.chunkLength = Math.max(chunkLength, 1);
+	}
+
+	public int getMaximumPendingChunks() {
+		return maximumPendingChunks;
+	}
+	public void setMaximumPendingChunks(int maximumPendingChunks) {
+		this.maximumPendingChunks = Math.max(maximumPendingChunks, 1);
+	}
+
+	protected class ChunkCallable implements Callable<List<DAFRecord>> {
+
+		private char[] chunk;
+		private int length;
+
+		public ChunkCallable(char[] chunk, int length) {
+			this.chunk = chunk;
+			this.length = length;
+		}
+
+		@Override
+		public List<DAFRecord> call() throws Exception {
+
+			List<DAFRecord> chunkRecords = new ArrayList<DAFRecord>();
+			PeekableBufferedReader chunkReader = new PeekableBufferedReader(new CharArrayReader(chunk, 0, length), readAheadLimit);
+
+			while(chunkReader.peekLine() != null) {
+				DAFRecord record = recordParser.parseRecord(events, chunkReader);
+				if(record == null) {
+					for(DAFRecordParser customRecordParser : customRecordParsers) {
+						record = customRecordParser.parseRecord(events, chunkReader);
+						if(record != null) {
+							break;
+						}
+					}
+				}
+
+				if(record != null) {
+					chunkRecords.add(record);
+				}
+				else {
+					chunkReader.readLine();
+				}
+			}
+
+			return chunkRecords;
+		}
+	}
+}
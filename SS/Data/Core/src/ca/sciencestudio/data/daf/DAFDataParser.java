@@ -14,23 +14,24 @@ import java.io.Reader;
 import java.io.FileReader;
 import java.io.IOException;
 
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.TimeZone;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import ca.sciencestudio.data.daf.DAFChunkedRecordReader;
 import ca.sciencestudio.data.daf.DAFEvent;
+import ca.sciencestudio.data.daf.DAFEventRegistry;
+import ca.sciencestudio.data.daf.DAFHeaderGrammar;
 import ca.sciencestudio.data.daf.DAFRecord;
 import ca.sciencestudio.data.support.DataFormatException;
+import ca.sciencestudio.data.util.TimestampParser;
 import ca.sciencestudio.util.text.PeekableBufferedReader;
 
 /**
@@ -39,24 +40,26 @@ import ca.sciencestudio.util.text.PeekableBufferedReader;
  */
 public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 	
-	static private final String DAF_START_TIME_TIME_ZONE_ID = "America/Regina";
-	
 	static private final String REGEX_MAGIC = "^# CLS Data Acquisition";
-	static private final DateFormat DATE_FORMAT_START_TIME = new SimpleDateFormat("# EEE MMM d HH:mm:ss yyyy");
+	static private final TimestampParser START_TIME_PARSER = TimestampParser.DAF_START_TIME;
 	
 	private Date startTime;
 	private PeekableBufferedReader reader;
 	private DAFRecordParser recordParser;
+	private DAFHeaderGrammar headerGrammar;
 	private Collection<DAFRecordParser> customRecordParsers;
 	
+	// Reader of a data file which is still being written, or null. //
+	private DAFTailReader tailReader = null;
+	
 	private DAFRecord nextRecord = null;
-	private List<DAFEvent> events = new ArrayList<DAFEvent>();
+	private DAFEventRegistry events = new DAFEventRegistry();
 	
-	protected Log log = LogFactory.getLog(getClass());
+	private Executor executor = null;
+	private int chunkLength = DAFChunkedRecordReader.DEFAULT_CHUNK_LENGTH;
+	private DAFChunkedRecordReader chunkedRecordReader = null;
 	
-	static {
-		DATE_FORMAT_START_TIME.setTimeZone(TimeZone.getTimeZone(DAF_START_TIME_TIME_ZONE_ID));		
-	}
+	protected Log log = LogFactory.getLog(getClass());
 	
 	public DAFDataParser(String path) throws DataFormatException, IOException {
 		this(new File(path));
@@ -121,14 +124,18 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 	protected void initialize(Reader reader, DAFRecordParser recordParser, Collection<DAFRecordParser> customRecordParsers) throws DataFormatException, IOException {
 		this.startTime = new Date(0L);
 		this.recordParser = recordParser;
+		this.headerGrammar = new DAFHeaderGrammar();
 		this.customRecordParsers = customRecordParsers;
 		this.reader = new PeekableBufferedReader(reader);
+		if(reader instanceof DAFTailReader) {
+			this.tailReader = (DAFTailReader)reader;
+		}
 		initialize();
 	}
 	
 	protected void initialize() throws DataFormatException, IOException {
 		
-		String line = reader.readLine();
+		String line = peekHeaderLine();
 		
 		if(line == null) {
 			throw new DataFormatException("While initializing, first line not found.");
@@ -137,16 +144,20 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 		if(!line.matches(REGEX_MAGIC)) {
 			throw new DataFormatException("While initializing, unexpected first line.");
 		}
+		reader.readLine();
 		
 		try {
-			startTime = DATE_FORMAT_START_TIME.parse(reader.peekLine());
-			reader.readLine();
+			line = peekHeaderLine();
+			if(line != null) {
+				startTime = START_TIME_PARSER.parse(line);
+				reader.readLine();
+			}
 		}
 		catch(ParseException e) {
 			// nothing to do //
 		}
 		
-		while(reader.peekLine() != null) {
+		while(peekHeaderLine() != null) {
 			
 			if(parseUpdateEvent()) {
 				// nothing to do //
@@ -170,28 +181,39 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 		}
 	}
 	
+	/**
+	 * Peek the next line of the header, the header of a data file which is still being written 
+	 * may not be complete, so wait for the next line until following the file stops.
+	 */
+	protected String peekHeaderLine() throws IOException {
+		String line = reader.peekLine();
+		while((line == null) && (tailReader != null) && tailReader.awaitData()) {
+			line = reader.peekLine();
+		}
+		return line;
+	}
+	
 	protected boolean parseNewEvent() throws IOException {
-		DAFEvent event = DAFEvent.parseEvent(reader);
+		DAFEvent event = headerGrammar.parseEvent(reader);
 		if(event == null) {
 			return false;
 		}
 		else {
-			events.add(event);
+			events.register(event);
 			return true;
 		}
 	}
 	
 	protected boolean parseUpdateEvent() throws IOException {
-		for(DAFEvent event : events) {
-			if(event.parseUpdate(reader)) {
-				return true;
-			}
+		if(headerGrammar.parseUpdate(events, reader)) {
+			events.updated();
+			return true;
 		}
 		return false;
 	}
 	
 	protected boolean parseRecords() throws IOException {
-		DAFRecord nextRecord = recordParser.parseRecord(getEvents(), reader);
+		DAFRecord nextRecord = recordParser.parseRecord(events, reader);
 		if(nextRecord != null) {
 			this.nextRecord = nextRecord;
 			return true;
@@ -201,7 +223,7 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 	
 	protected boolean parseCustomRecords() throws IOException {
 		for(DAFRecordParser customRecordParser : customRecordParsers) {
-			DAFRecord nextRecord = customRecordParser.parseRecord(getEvents(), reader);
+			DAFRecord nextRecord = customRecordParser.parseRecord(events, reader);
 			if(nextRecord != null) {
 				this.nextRecord = nextRecord;
 				return true;
@@ -212,8 +234,25 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 	
 	public DAFRecord next() {
 		
+		if(this.nextRecord == null) {
+			parseNextRecord();
+		}
+		
 		DAFRecord nextRecord = this.nextRecord; 
 		this.nextRecord = null;
+		return nextRecord;
+	}
+	
+	/**
+	 * Parse the next record when it is required, rather than after the previous record is 
+	 * returned, so that a record is not held back while waiting for the following line.
+	 */
+	protected void parseNextRecord() {
+		
+		if(executor != null) {
+			nextChunkedRecord();
+			return;
+		}
 		
 		try {
 			while(reader.peekLine() != null) {
@@ -232,11 +271,26 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 		catch(IOException e) {
 			log.warn("While reading next record, IO Exception thrown.", e);
 		}
+	}
+	
+	protected void nextChunkedRecord() {
+		if(chunkedRecordReader == null) {
+			chunkedRecordReader = new DAFChunkedRecordReader(reader, executor, events, recordParser, customRecordParsers);
+			chunkedRecordReader.setChunkLength(chunkLength);
+		}
 		
-		return nextRecord;
+		try {
+			this.nextRecord = chunkedRecordReader.nextRecord();
+		}
+		catch(IOException e) {
+			log.warn("While reading next record, IO Exception thrown.", e);
+		}
 	}
 	
 	public boolean hasNext() {
+		if(nextRecord == null) {
+			parseNextRecord();
+		}
 		return (nextRecord != null);
 	}
 	
@@ -253,27 +307,19 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 	}
 	
 	public List<DAFEvent> getEvents() {
-		return Collections.unmodifiableList(events);
+		return events.getEvents();
+	}
+	
+	public DAFEventRegistry getEventRegistry() {
+		return events;
 	}
 	
 	public int getEventIndexById(int eventId) {
-		int eventIdx = 0;
-		for(DAFEvent event : events) {
-			if(event.getId() == eventId) {
-				return eventIdx;
-			}
-			eventIdx++;
-		}
-		return -1;
+		return events.getEventIndexById(eventId);
 	}
 	
 	public DAFEvent getEventById(int eventId) {
-		try {
-			return events.get(getEventIndexById(eventId));
-		}
-		catch(IndexOutOfBoundsException e) {
-			return null;
-		}
+		return events.getEventById(eventId);
 	}
 
 	public Date getStartTime() {
@@ -283,4 +329,25 @@ public class DAFDataParser implements Iterator<DAFRecord>, Iterable<DAFRecord>{
 	public void setStartTime(Date startTime) {
 		this.startTime = startTime;
 	}
+	
+	public Executor getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Parse the remaining records in chunks on the given executor, the records
+	 * are still returned in file order. The record parsers must be thread-safe
+	 * and parse each record from a single line. Set before iterating.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	public int getChunkLength() {
+		return chunkLength;
+	}
+	
+	public void setChunkLength(int chunkLength) {
+		this.chunkLength = chunkLength;
+	}
 }
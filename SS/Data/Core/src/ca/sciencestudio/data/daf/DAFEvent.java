@@ -10,15 +10,16 @@ package ca.sciencestudio.data.daf;
 import java.io.IOException;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import ca.sciencestudio.data.daf.DAFElement;
+import ca.sciencestudio.data.daf.DAFHeaderGrammar;
 import ca.sciencestudio.data.daf.DAFVariable;
 import ca.sciencestudio.util.text.PeekableBufferedReader;
 
@@ -28,52 +29,16 @@ import ca.sciencestudio.util.text.PeekableBufferedReader;
  */
 public class DAFEvent {
 	
-	static private final String EVENT_ID_REGEX_FORMAT = "\\((%s)\\)";
-	static private final String SHORT_EVENT_NAMES_REGEX_FORMAT = "^#%s(\\s+%s)*";
-	static private final String SHORT_EVENT_DESCRIPTIONS_REGEX_FORAMT = "^#%s(\\s+(%s)){%d}";
-	
-	static private final String EVENT_ID_REGEX = String.format(EVENT_ID_REGEX_FORMAT, "\\d+");
-	static private final String EVENT_NAME_REGEX = "([.:\\-\\w\\[\\]]+)";
-	static private final String EVENT_DESCRIPTION_REGEX = "([^\\s\"]+)|\"([^\"]*)\"";
-	
-	static private final Pattern EVENT_ID_PATTERN = Pattern.compile(EVENT_ID_REGEX);
-	static private final Pattern EVENT_NAME_PATTERN = Pattern.compile(EVENT_NAME_REGEX);
-	static private final Pattern EVENT_DESCRIPTION_PATTERN = Pattern.compile(EVENT_DESCRIPTION_REGEX);
-	
 	private int id;
 	private List<DAFVariable> variables = new ArrayList<DAFVariable>();
 	
+	// Rebuilt on first use after the variables or descriptions change. //
+	private volatile ElementIndex elementIndex = null;
+	
 	protected Log log = LogFactory.getLog(getClass()); 
 	
 	public static DAFEvent parseEvent(PeekableBufferedReader reader) throws IOException {
-		return parseShortEvent(reader);
-	}
-	
-	private static DAFEvent parseShortEvent(PeekableBufferedReader reader) throws IOException {
-		
-		Pattern eventIdPattern  = EVENT_ID_PATTERN;
-		Pattern eventNamePattern = EVENT_NAME_PATTERN;
-		
-		String shortEventNamesRegex = String.format(SHORT_EVENT_NAMES_REGEX_FORMAT, 
-														eventIdPattern, eventNamePattern);
-		Pattern shortEventNamesPattern = Pattern.compile(shortEventNamesRegex);
-				
-		if(shortEventNamesPattern.matcher(reader.peekLine()).matches()) {
-				
-			Matcher matcher = eventIdPattern.matcher(reader.readLine());
-			if(matcher.find()) {
-				
-				DAFEvent event = new DAFEvent(Integer.parseInt(matcher.group(1)));	
-				
-				matcher.usePattern(eventNamePattern);
-				while(matcher.find()) {
-					event.addVariable(new DAFVariable(matcher.group(1)));
-				}
-				
-				return event;
-			}
-		}
-		return null;
+		return new DAFHeaderGrammar().parseEvent(reader);
 	}
 	
 	protected DAFEvent(int id) {
@@ -95,6 +60,7 @@ public class DAFEvent {
 	protected void addVariable(DAFVariable variable) {
 		if(!variables.contains(variable)) {
 			variables.add(variable);
+			elementIndex = null;
 		}
 	}
 	
@@ -139,26 +105,16 @@ public class DAFEvent {
 	}
 	
 	public int getNumberOfElements() {
-		return getElements().size();
+		return getElementIndex().elements.size();
 	}
 	
 	public List<DAFElement> getElements() {
-		List<DAFElement> elements = new ArrayList<DAFElement>();
-		for(DAFVariable variable : variables) {
-			elements.addAll(variable.getElements());
-		}
-		return Collections.unmodifiableList(elements);
+		return getElementIndex().elements;
 	}
 		
 	public int getElementIndexByName(String name) {
-		int elementIdx = 0;
-		for(DAFElement element : getElements()) {
-			if(element.getName().equals(name)) {
-				return elementIdx;
-			}
-			elementIdx++;
-		}
-		return -1;
+		Integer elementIdx = getElementIndex().indexesByName.get(name);
+		return (elementIdx != null) ? elementIdx : -1;
 	}
 	
 	public DAFElement getElementByName(String name) {
@@ -171,14 +127,8 @@ public class DAFEvent {
 	}
 	
 	public int getElementIndexByDescription(String description) {
-		int elementIdx = 0;
-		for(DAFElement element : getElements()) {
-			if(element.getDescription().equals(description)) {
-				return elementIdx;
-			}
-			elementIdx++;
-		}
-		return -1;
+		Integer elementIdx = getElementIndex().indexesByDescription.get(description);
+		return (elementIdx != null) ? elementIdx : -1;
 	}
 	
 	public DAFElement getElementByDescription(String description) {
@@ -191,35 +141,23 @@ public class DAFEvent {
 	}
 	
 	public boolean parseUpdate(PeekableBufferedReader reader) throws IOException {
-		
-		String eventIdRegex = String.format(EVENT_ID_REGEX_FORMAT, String.valueOf(id));
-		Pattern eventIdPattern = Pattern.compile(eventIdRegex);
-		Pattern eventDescriptionPattern = EVENT_DESCRIPTION_PATTERN;
-				
-		String shortEventDescriptionsRegex = String.format(SHORT_EVENT_DESCRIPTIONS_REGEX_FORAMT, 
-										eventIdPattern, eventDescriptionPattern, getNumberOfVariables());		
-		Pattern shortEventDescriptionsPattern = Pattern.compile(shortEventDescriptionsRegex);
-		
-		if(shortEventDescriptionsPattern.matcher(reader.peekLine()).matches()) {
-			
-			Matcher matcher = eventIdPattern.matcher(reader.readLine());
-			if(matcher.find()) {
-				matcher.usePattern(eventDescriptionPattern);
-				for(int idx = 0; matcher.find(); idx++) {
-					if(matcher.group(1) != null) {
-						variables.get(idx).setDescription(matcher.group(1));
-					}
-					else if(matcher.group(2) != null) {
-						variables.get(idx).setDescription(matcher.group(2));
-					}
-					else {
-						variables.get(idx).setDescription("N/A");
-					}
-				}
-				return true;
-			}
+		return new DAFHeaderGrammar().parseUpdate(this, reader);
+	}
+	
+	protected void setVariableDescriptions(List<String> descriptions) {
+		for(int idx = 0; idx < descriptions.size(); idx++) {
+			variables.get(idx).setDescription(descriptions.get(idx));
+		}
+		elementIndex = null;
+	}
+	
+	protected ElementIndex getElementIndex() {
+		ElementIndex elementIndex = this.elementIndex;
+		if(elementIndex == null) {
+			elementIndex = new ElementIndex(variables);
+			this.elementIndex = elementIndex;
 		}
-		return false;
+		return elementIndex;
 	}
 	
 	public String toString(boolean descriptions) {
@@ -237,4 +175,34 @@ public class DAFEvent {
 	public String toString() {
 		return toString(true);
 	}
+	
+	/**
+	 * Immutable element list with name and description lookup tables,
+	 * the first element wins if a name or description is repeated.
+	 */
+	protected static class ElementIndex {
+		
+		private final List<DAFElement> elements;
+		private final Map<String,Integer> indexesByName;
+		private final Map<String,Integer> indexesByDescription;
+		
+		protected ElementIndex(List<DAFVariable> variables) {
+			List<DAFElement> elements = new ArrayList<DAFElement>();
+			for(DAFVariable variable : variables) {
+				elements.addAll(variable.getElements());
+			}
+			
+			Map<String,Integer> indexesByName = new HashMap<String,Integer>(elements.size() * 2);
+			Map<String,Integer> indexesByDescription = new HashMap<String,Integer>(elements.size() * 2);
+			for(int elementIdx = elements.size() - 1; elementIdx >= 0; elementIdx--) {
+				DAFElement element = elements.get(elementIdx);
+				indexesByName.put(element.getName(), elementIdx);
+				indexesByDescription.put(element.getDescription(), elementIdx);
+			}
+			
+			this.elements = Collections.unmodifiableList(elements);
+			this.indexesByName = Collections.unmodifiableMap(indexesByName);
+			this.indexesByDescription = Collections.unmodifiableMap(indexesByDescription);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFEventRegistry class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.sciencestudio.data.daf.DAFEvent;
+
+/**
+ * Read-only collection of the events defined in a DAF header, indexed by
+ * event id and by number of elements. Event ids are normally small integers
+ * and are kept in a dense array, larger ids fall back to a hash table.
+ *
+ * If more than one event is defined with the same id, then records are
+ * parsed as the last event defined with the id (see findLastEventById()),
+ * while getEventById() and event updates use the first, as the linear
+ * searches this registry replaces did.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFEventRegistry extends AbstractCollection<DAFEvent> {
+
+	static private final int MAXIMUM_DENSE_EVENT_ID = 1024;
+
+	private List<DAFEvent> events = new ArrayList<DAFEvent>();
+
+	private int[] denseIndexesById = new int[0];
+	private Map<Integer,Integer> sparseIndexesById = new HashMap<Integer,Integer>();
+
+	private int[] denseLastIndexesById = new int[0];
+	private Map<Integer,Integer> sparseLastIndexesById = new HashMap<Integer,Integer>();
+
+	// Rebuilt on first use after an event is registered or updated, may be read by record parsers on other threads. //
+	private volatile Map<Integer,Integer> indexesByNumberOfElements = null;
+
+	public static DAFEvent findEventById(Collection<DAFEvent> events, int eventId) {
+		if(events instanceof DAFEventRegistry) {
+			return ((DAFEventRegistry)events).getEventById(eventId);
+		}
+		for(DAFEvent event : events) {
+			if(event.getId() == eventId) {
+				return event;
+			}
+		}
+		return null;
+	}
+
+	public static DAFEvent findLastEventById(Collection<DAFEvent> events, int eventId) {
+		if(events instanceof DAFEventRegistry) {
+			return ((DAFEventRegistry)events).getLastEventById(eventId);
+		}
+		DAFEvent lastEvent = null;
+		for(DAFEvent event : events) {
+			if(event.getId() == eventId) {
+				lastEvent = event;
+			}
+		}
+		return lastEvent;
+	}
+
+	public static DAFEvent findEventByNumberOfElements(Collection<DAFEvent> events, int numberOfElements) {
+		if(events instanceof DAFEventRegistry) {
+			return ((DAFEventRegistry)events).getEventByNumberOfElements(numberOfElements);
+		}
+		for(DAFEvent event : events) {
+			if(event.getNumberOfElements() == numberOfElements) {
+				return event;
+			}
+		}
+		return null;
+	}
+
+	protected void register(DAFEvent event) {
+		int eventIdx = events.size();
+		int eventId = event.getId();
+		events.add(event);
+
+		if((eventId >= 0) && (eventId < MAXIMUM_DENSE_EVENT_ID)) {
+			if(eventId >= denseIndexesById.length) {
+				int length = denseIndexesById.length;
+				int newLength = Math.max(eventId + 1, length * 2);
+				denseIndexesById = Arrays.copyOf(denseIndexesById, newLength);
+				Arrays.fill(denseIndexesById, length, newLength, -1);
+				denseLastIndexesById = Arrays.copyOf(denseLastIndexesById, newLength);
+				Arrays.fill(denseLastIndexesById, length, newLength, -1);
+			}
+			if(denseIndexesById[eventId] < 0) {
+				denseIndexesById[eventId] = eventIdx;
+			}
+			denseLastIndexesById[eventId] = eventIdx;
+		}
+		else {
+			if(!sparseIndexesById.containsKey(eventId)) {
+				sparseIndexesById.put(eventId, eventIdx);
+			}
+			sparseLastIndexesById.put(eventId, eventIdx);
+		}
+
+		updated();
+	}
+
+	protected void updated() {
+		indexesByNumberOfElements = null;
+	}
+
+	public List<DAFEvent> getEvents() {
+		return Collections.unmodifiableList(events);
+	}
+
+	public int getEventIndexById(int eventId) {
+		if((eventId >= 0) && (eventId < MAXIMUM_DENSE_EVENT_ID)) {
+			return (eventId < denseIndexesById.length) ? denseIndexesById[eventId] : -1;
+		}
+		Integer eventIdx = sparseIndexesById.get(eventId);
+		return (eventIdx != null) ? eventIdx : -1;
+	}
+
+	public DAFEvent getEventById(int eventId) {
+		int eventIdx = getEventIndexById(eventId);
+		return (eventIdx >= 0) ? events.get(eventIdx) : null;
+	}
+
+	public int getLastEventIndexById(int eventId) {
+		if((eventId >= 0) && (eventId < MAXIMUM_DENSE_EVENT_ID)) {
+			return (eventId < denseLastIndexesById.length) ? denseLastIndexesById[eventId] : -1;
+		}
+		Integer eventIdx = sparseLastIndexesById.get(eventId);
+		return (eventIdx != null) ? eventIdx : -1;
+	}
+
+	public DAFEvent getLastEventById(int eventId) {
+		int eventIdx = getLastEventIndexById(eventId);
+		return (eventIdx >= 0) ? events.get(eventIdx) : null;
+	}
+
+	public DAFEvent getEventByNumberOfElements(int numberOfElements) {
+		Map<Integer,Integer> indexesByNumberOfElements = this.indexesByNumberOfElements;
+		if(indexesByNumberOfElements == null) {
+			indexesByNumberOfElements = new HashMap<Integer,Integer>();
+			for(int eventIdx = events.size() - 1; eventIdx >= 0; eventIdx--) {
+				indexesByNumberOfElements.put(events.get(eventIdx).getNumberOfElements(), eventIdx);
+			}
+			this.indexesByNumberOfElements = indexesByNumberOfElements;
+		}
+		Integer eventIdx = indexesByNumberOfElements.get(numberOfElements);
+		return (eventIdx != null) ? events.get(eventIdx) : null;
+	}
+
+	@Override
+	public Iterator<DAFEvent> iterator() {
+		return getEvents().iterator();
+	}
+
+	@Override
+	public int size() {
+		return events.size();
+	}
+}
@@ -0,0 +1,187 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFHeaderGrammar class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.sciencestudio.data.daf.DAFEvent;
+import ca.sciencestudio.data.daf.DAFEventRegistry;
+import ca.sciencestudio.data.daf.DAFVariable;
+import ca.sciencestudio.util.text.PeekableBufferedReader;
+
+/**
+ * Parses the event definition and event update lines of a DAF header.
+ *
+ * The line patterns are compiled once, independent of the event id and number
+ * of variables, and the matchers are reset for each line. An instance is not
+ * thread-safe and is intended to be used by a single parser.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFHeaderGrammar {
+
+	static private final String DEFAULT_DESCRIPTION = "N/A";
+
+	static private final String EVENT_ID_REGEX = "\\((\\d+)\\)";
+	static private final String EVENT_NAME_REGEX = "([.:\\-\\w\\[\\]]+)";
+	static private final String EVENT_DESCRIPTION_REGEX = "([^\\s\"]+)|\"([^\"]*)\"";
+
+	static private final String SHORT_EVENT_NAMES_REGEX = String.format("^#%s(\\s+%s)*", EVENT_ID_REGEX, EVENT_NAME_REGEX);
+	static private final String SHORT_EVENT_DESCRIPTIONS_REGEX = String.format("^#%s(\\s+(%s))*", EVENT_ID_REGEX, EVENT_DESCRIPTION_REGEX);
+
+	static private final Pattern EVENT_NAME_PATTERN = Pattern.compile(EVENT_NAME_REGEX);
+	static private final Pattern EVENT_DESCRIPTION_PATTERN = Pattern.compile(EVENT_DESCRIPTION_REGEX);
+	static private final Pattern SHORT_EVENT_NAMES_PATTERN = Pattern.compile(SHORT_EVENT_NAMES_REGEX);
+	static private final Pattern SHORT_EVENT_DESCRIPTIONS_PATTERN = Pattern.compile(SHORT_EVENT_DESCRIPTIONS_REGEX);
+
+	private Matcher eventNameMatcher = EVENT_NAME_PATTERN.matcher("");
+	private Matcher eventDescriptionMatcher = EVENT_DESCRIPTION_PATTERN.matcher("");
+	private Matcher shortEventNamesMatcher = SHORT_EVENT_NAMES_PATTERN.matcher("");
+	private Matcher shortEventDescriptionsMatcher = SHORT_EVENT_DESCRIPTIONS_PATTERN.matcher("");
+
+	private int updateEventId = -1;
+
+	public DAFEvent parseEvent(PeekableBufferedReader reader) throws IOException {
+		DAFEvent event = parseEvent(reader.peekLine());
+		if(event != null) {
+			reader.readLine();
+		}
+		return event;
+	}
+
+	public DAFEvent parseEvent(String line) {
+
+		if((line == null) || !shortEventNamesMatcher.reset(line).matches()) {
+			return null;
+		}
+
+		int eventId;
+		try {
+			eventId = Integer.parseInt(shortEventNamesMatcher.group(1));
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+
+		DAFEvent event = new DAFEvent(eventId);
+
+		// Skip the closing bracket of the event id. //
+		eventNameMatcher.reset(line).region(shortEventNamesMatcher.end(1) + 1, line.length());
+		while(eventNameMatcher.find()) {
+			event.addVariable(new DAFVariable(eventNameMatcher.group(1)));
+		}
+
+		return event;
+	}
+
+	public boolean parseUpdate(DAFEvent event, PeekableBufferedReader reader) throws IOException {
+		if(parseUpdate(event, reader.peekLine())) {
+			reader.readLine();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean parseUpdate(Collection<DAFEvent> events, PeekableBufferedReader reader) throws IOException {
+		if(parseUpdate(events, reader.peekLine())) {
+			reader.readLine();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean parseUpdate(DAFEvent event, String line) {
+		List<String> descriptions = parseDescriptions(line);
+		if((descriptions == null) || !isUpdateFor(event, descriptions)) {
+			return false;
+		}
+		event.setVariableDescriptions(descriptions);
+		return true;
+	}
+
+	public boolean parseUpdate(Collection<DAFEvent> events, String line) {
+		List<String> descriptions = parseDescriptions(line);
+		if(descriptions == null) {
+			return false;
+		}
+
+		DAFEvent event = DAFEventRegistry.findEventById(events, getUpdateEventId());
+		if(event == null) {
+			return false;
+		}
+		
+		// The first event defined with the id may not be the one updated, if more than one is defined. //
+		if(!isUpdateFor(event, descriptions)) {
+			event = null;
+			for(DAFEvent e : events) {
+				if(isUpdateFor(e, descriptions)) {
+					event = e;
+					break;
+				}
+			}
+			if(event == null) {
+				return false;
+			}
+		}
+		
+		event.setVariableDescriptions(descriptions);
+		return true;
+	}
+
+	/**
+	 * Parse the descriptions from an event update line, the event id of the
+	 * line is available from getUpdateEventId() after a successful parse.
+	 *
+	 * @return list of descriptions or null if the line is not an update line
+	 */
+	protected List<String> parseDescriptions(String line) {
+
+		if((line == null) || !shortEventDescriptionsMatcher.reset(line).matches()) {
+			return null;
+		}
+
+		try {
+			updateEventId = Integer.parseInt(shortEventDescriptionsMatcher.group(1));
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+
+		List<String> descriptions = new ArrayList<String>();
+
+		// Skip the closing bracket of the event id. //
+		eventDescriptionMatcher.reset(line).region(shortEventDescriptionsMatcher.end(1) + 1, line.length());
+		while(eventDescriptionMatcher.find()) {
+			if(eventDescriptionMatcher.group(1) != null) {
+				descriptions.add(eventDescriptionMatcher.group(1));
+			}
+			else if(eventDescriptionMatcher.group(2) != null) {
+				descriptions.add(eventDescriptionMatcher.group(2));
+			}
+			else {
+				descriptions.add(DEFAULT_DESCRIPTION);
+			}
+		}
+
+		return descriptions;
+	}
+
+	protected int getUpdateEventId() {
+		return updateEventId;
+	}
+
+	protected boolean isUpdateFor(DAFEvent event, List<String> descriptions) {
+		return (event.getId() == getUpdateEventId()) && (event.getNumberOfVariables() == descriptions.size());
+	}
+}
@@ -0,0 +1,301 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFMappedSpectrumParser class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ca.sciencestudio.data.daf.DAFSpectrumIndex;
+import ca.sciencestudio.data.daf.DAFSpectrumRecord;
+import ca.sciencestudio.data.support.DataFormatException;
+
+/**
+ * Alternative to DAFSpectrumParser which memory maps the spectra file and
+ * decodes the ASCII integer values directly from the mapped bytes into a
+ * caller supplied array, no strings or intermediate collections are created.
+ *
+ * Files larger than the maximum map length are mapped in windows, which are
+ * moved as records are parsed. An instance is not thread-safe.
+ *
+ * A mapping is released when the window is moved and when the parser is
+ * closed, rather than when the buffer is garbage collected, so the file is
+ * not held open (and on Windows cannot be deleted or replaced) after close.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFMappedSpectrumParser {
+
+	private static final String RANDOM_ACCESS_FILE_MODE = "r";
+	private static final long MAXIMUM_MAP_LENGTH = 256L * 1024L * 1024L;
+
+	private static final byte SPECTRUM_VALUE_SEPARATOR = ',';
+	private static final byte SPECTRUM_RECORD_SEPARATOR = '\n';
+
+	private static final long MAXIMUM_VALUE_BEFORE_DIGIT = Long.MAX_VALUE / 10L;
+
+	private RandomAccessFile spectraFile;
+	private FileChannel spectraChannel;
+	private long spectraLength;
+
+	private MappedByteBuffer mappedBuffer = null;
+	private long mappedOffset = 0L;
+	private long mappedLength = 0L;
+
+	private long position = 0L;
+
+	private DAFSpectrumIndex spectrumIndex = null;
+
+	public DAFMappedSpectrumParser(String spectraFilePath) throws DataFormatException, IOException {
+		this(new RandomAccessFile(spectraFilePath, RANDOM_ACCESS_FILE_MODE));
+	}
+
+	public DAFMappedSpectrumParser(File spectraFile) throws DataFormatException, IOException {
+		this(new RandomAccessFile(spectraFile, RANDOM_ACCESS_FILE_MODE));
+	}
+
+	public DAFMappedSpectrumParser(RandomAccessFile spectraFile) throws IOException {
+		this.spectraFile = spectraFile;
+		this.spectraChannel = spectraFile.getChannel();
+		this.spectraLength = spectraChannel.size();
+	}
+
+	/**
+	 * Parse the record into a new spectrum record, for compatibility with DAFSpectrumParser.
+	 */
+	public DAFSpectrumRecord parseRecord(long offset, int nValues) throws DataFormatException, IOException {
+		long[] values = new long[nValues];
+		parseRecord(offset, values);
+		Object[] objects = new Object[nValues];
+		for(int idx = 0; idx < nValues; idx++) {
+			objects[idx] = values[idx];
+		}
+		return new DAFSpectrumRecord(offset, objects);
+	}
+
+	/**
+	 * Parse all values of the record with the given index in the spectrum index.
+	 */
+	public long[] parseRecordByIndex(int recordIdx) throws DataFormatException, IOException {
+		if(spectrumIndex == null) {
+			throw new DataFormatException("Spectrum index is required to parse record by index.");
+		}
+		long[] values = new long[spectrumIndex.getNumberOfValues(recordIdx)];
+		parseRecord(spectrumIndex.getOffset(recordIdx), values);
+		return values;
+	}
+
+	/**
+	 * Parse values.length values of the record starting at the given offset.
+	 */
+	public void parseRecord(long offset, long[] values) throws DataFormatException, IOException {
+		checkRecord(offset, values.length);
+		position = offset;
+		for(int idx = 0; idx < values.length; idx++) {
+			values[idx] = parseValue(values.length);
+		}
+	}
+
+	/**
+	 * Parse values.length values of the record starting at the given offset.
+	 */
+	public void parseRecord(long offset, int[] values) throws DataFormatException, IOException {
+		checkRecord(offset, values.length);
+		position = offset;
+		for(int idx = 0; idx < values.length; idx++) {
+			long value = parseValue(values.length);
+			if((value > Integer.MAX_VALUE) || (value < Integer.MIN_VALUE)) {
+				throw new DataFormatException("Value, " + value + ", at index: " + idx + ", is out of range for int type.");
+			}
+			values[idx] = (int)value;
+		}
+	}
+
+	/**
+	 * @return true if the record starting at the given offset is ended by a record separator, the spectra file may still be growing
+	 */
+	public boolean isRecordComplete(long offset) throws IOException {
+		for(long recordOffset = offset; true; recordOffset++) {
+			int b = peek(recordOffset);
+			if(b < 0) {
+				return false;
+			}
+			if(b == SPECTRUM_RECORD_SEPARATOR) {
+				return true;
+			}
+		}
+	}
+
+	public DAFSpectrumIndex getSpectrumIndex() {
+		return spectrumIndex;
+	}
+	public void setSpectrumIndex(DAFSpectrumIndex spectrumIndex) {
+		this.spectrumIndex = spectrumIndex;
+	}
+
+	public void close() throws IOException {
+		unmap();
+		spectraChannel.close();
+		spectraFile.close();
+	}
+
+	/**
+	 * If a spectrum index is available then check the offset is the start of a record with enough values.
+	 */
+	protected void checkRecord(long offset, int nValues) throws DataFormatException {
+		if(spectrumIndex != null) {
+			DAFSpectrumIndex.checkRecord(spectrumIndex, offset, nValues);
+		}
+	}
+
+	protected long parseValue(int nValues) throws DataFormatException, IOException {
+
+		// Skip leading whitespace and empty values. //
+		int b = peek(position);
+		while((b == SPECTRUM_VALUE_SEPARATOR) || isWhitespace(b)) {
+			b = peek(++position);
+		}
+
+		if(b < 0) {
+			throw new DataFormatException("End of file before values (" + nValues + ") could be parsed.");
+		}
+
+		if(b == SPECTRUM_RECORD_SEPARATOR) {
+			throw new DataFormatException("End of line before values (" + nValues + ") could be parsed.");
+		}
+
+		long valueOffset = position;
+
+		boolean negative = false;
+		if((b == '-') || (b == '+')) {
+			negative = (b == '-');
+			b = peek(++position);
+		}
+
+		if(!isDigit(b)) {
+			throw new DataFormatException("Cannot parse value at offset: " + valueOffset + ", expected digit.");
+		}
+
+		long value = 0L;
+		while(isDigit(b)) {
+			if(value > MAXIMUM_VALUE_BEFORE_DIGIT) {
+				throw new DataFormatException("Cannot parse value at offset: " + valueOffset + ", value out of range for long type.");
+			}
+			value = (value * 10L) + (b - '0');
+			if(value < 0L) {
+				throw new DataFormatException("Cannot parse value at offset: " + valueOffset + ", value out of range for long type.");
+			}
+			b = peek(++position);
+		}
+
+		while(isWhitespace(b)) {
+			b = peek(++position);
+		}
+
+		if(b == SPECTRUM_VALUE_SEPARATOR) {
+			position++;
+		}
+		else if((b >= 0) && (b != SPECTRUM_RECORD_SEPARATOR)) {
+			throw new DataFormatException("Cannot parse value at offset: " + valueOffset + ", unexpected character: " + (char)b);
+		}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return the byte at the given offset or -1 at the end of the file
+	 */
+	protected int peek(long offset) throws IOException {
+		if(offset >= spectraLength) {
+			// The spectra file may still be growing. //
+			spectraLength = spectraChannel.size();
+			if(offset >= spectraLength) {
+				return -1;
+			}
+		}
+		if((offset < mappedOffset) || (offset >= (mappedOffset + mappedLength))) {
+			map(offset);
+		}
+		return mappedBuffer.get((int)(offset - mappedOffset)) & 0xFF;
+	}
+
+	protected void map(long offset) throws IOException {
+		unmap();
+		if(spectraLength <= MAXIMUM_MAP_LENGTH) {
+			mappedOffset = 0L;
+			mappedLength = spectraLength;
+		}
+		else {
+			mappedOffset = offset;
+			mappedLength = Math.min(MAXIMUM_MAP_LENGTH, spectraLength - offset);
+		}
+		mappedBuffer = spectraChannel.map(FileChannel.MapMode.READ_ONLY, mappedOffset, mappedLength);
+	}
+
+	/**
+	 * Release the current mapping, the mapped buffer must not be used afterwards.
+	 */
+	protected void unmap() {
+		MappedByteBuffer buffer = mappedBuffer;
+		mappedBuffer = null;
+		mappedOffset = 0L;
+		mappedLength = 0L;
+		if(buffer != null) {
+			release(buffer);
+		}
+	}
+
+	/**
+	 * Release the memory mapped by the buffer, if supported by the JVM, otherwise
+	 * the mapping is released when the buffer is garbage collected.
+	 */
+	protected static void release(MappedByteBuffer buffer) {
+		try {
+			// Java 9 and later. //
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		}
+		catch(Exception e) {
+			// Not available, try the cleaner of the buffer. //
+		}
+		
+		try {
+			// Java 8 and earlier. //
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if(cleaner != null) {
+				Method cleanMethod = cleaner.getClass().getMethod("clean");
+				cleanMethod.setAccessible(true);
+				cleanMethod.invoke(cleaner);
+			}
+		}
+		catch(Exception e) {
+			// Not available, released when garbage collected. //
+		}
+	}
+
+	protected static boolean isDigit(int b) {
+		return (b >= '0') && (b <= '9');
+	}
+
+	// Same characters as the regular expression class \s, excluding the record separator. //
+	protected static boolean isWhitespace(int b) {
+		return (b == ' ') || (b == '\t') || (b == '\u000B') || (b == '\f') || (b == '\r');
+	}
+}
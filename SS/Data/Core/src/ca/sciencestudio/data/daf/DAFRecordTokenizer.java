@@ -0,0 +1,172 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFRecordTokenizer class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+/**
+ * Single pass tokenizer for standard DAF record lines of the form:
+ *
+ *     <event id>,<value>,<value>,...
+ *
+ * The line is copied into a reusable character buffer, the event id is parsed
+ * directly to an int and the value boundaries are kept in int arrays, so no
+ * regular expression or intermediate collection is used. An instance is not
+ * thread-safe and is intended to be used by a single record parser.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFRecordTokenizer {
+
+	private static final int DEFAULT_BUFFER_LENGTH = 1024;
+	private static final int DEFAULT_NUMBER_OF_VALUES = 64;
+
+	private static final char VALUE_SEPARATOR = ',';
+
+	private char[] buffer = new char[DEFAULT_BUFFER_LENGTH];
+	private int length = 0;
+
+	private int eventId = -1;
+	private int eventIdEnd = 0;
+
+	private int numberOfValues = 0;
+	private int[] valueStarts = new int[DEFAULT_NUMBER_OF_VALUES];
+	private int[] valueEnds = new int[DEFAULT_NUMBER_OF_VALUES];
+
+	/**
+	 * Load the line and parse the leading event id, which must be followed by a separator.
+	 *
+	 * @return true if the line starts with an event id
+	 */
+	public boolean tokenizeEventId(String line) {
+
+		numberOfValues = 0;
+
+		if(line == null) {
+			length = 0;
+			return false;
+		}
+
+		length = line.length();
+		if(length > buffer.length) {
+			buffer = new char[Math.max(length, buffer.length * 2)];
+		}
+		line.getChars(0, length, buffer, 0);
+
+		long id = 0L;
+		int idx = 0;
+		while((idx < length) && isDigit(buffer[idx])) {
+			id = (id * 10L) + (buffer[idx] - '0');
+			if(id > Integer.MAX_VALUE) {
+				return false;
+			}
+			idx++;
+		}
+
+		if((idx == 0) || (idx == length) || (buffer[idx] != VALUE_SEPARATOR)) {
+			return false;
+		}
+
+		eventId = (int)id;
+		eventIdEnd = idx;
+
+		// The event id is the first value of the record. //
+		addValue(0, eventIdEnd);
+		return true;
+	}
+
+	/**
+	 * Find the boundaries of the values following the event id. Leading
+	 * whitespace is skipped and a line ending after a value yields one
+	 * final empty value.
+	 *
+	 * @return true if the line contains at least the given number of values (including the event id)
+	 */
+	public boolean tokenizeValues(int totalNumberOfValues) {
+
+		int idx = eventIdEnd + 1;
+
+		while(numberOfValues < totalNumberOfValues) {
+
+			if(idx > length) {
+				return false;
+			}
+
+			if(idx == length) {
+				addValue(length, length);
+				idx++;
+				continue;
+			}
+
+			while((idx < length) && isWhitespace(buffer[idx])) {
+				idx++;
+			}
+
+			int start = idx;
+			while((idx < length) && (buffer[idx] != VALUE_SEPARATOR)) {
+				idx++;
+			}
+			addValue(start, idx);
+
+			if(idx < length) {
+				idx++; // Skip value separator. //
+			}
+		}
+
+		return true;
+	}
+
+	public int getEventId() {
+		return eventId;
+	}
+
+	public int getNumberOfValues() {
+		return numberOfValues;
+	}
+
+	public String getValue(int idx) {
+		checkIndex(idx);
+		return new String(buffer, valueStarts[idx], valueEnds[idx] - valueStarts[idx]);
+	}
+
+	public Object[] getValues() {
+		Object[] values = new Object[numberOfValues];
+		for(int idx = 0; idx < numberOfValues; idx++) {
+			values[idx] = new String(buffer, valueStarts[idx], valueEnds[idx] - valueStarts[idx]);
+		}
+		return values;
+	}
+
+	protected void addValue(int start, int end) {
+		if(numberOfValues == valueStarts.length) {
+			int[] starts = new int[valueStarts.length * 2];
+			int[] ends = new int[valueEnds.length * 2];
+			System.arraycopy(valueStarts, 0, starts, 0, numberOfValues);
+			System.arraycopy(valueEnds, 0, ends, 0, numberOfValues);
+			valueStarts = starts;
+			valueEnds = ends;
+		}
+		valueStarts[numberOfValues] = start;
+		valueEnds[numberOfValues] = end;
+		numberOfValues++;
+	}
+
+	protected void checkIndex(int idx) {
+		if((idx < 0) || (idx >= numberOfValues)) {
+			throw new IndexOutOfBoundsException("Value index: " + idx + ", number of values: " + numberOfValues);
+		}
+	}
+
+	protected static boolean isDigit(char c) {
+		return (c >= '0') && (c <= '9');
+	}
+
+	// Same characters as the regular expression class \s. //
+	protected static boolean isWhitespace(char c) {
+		return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\u000B') || (c == '\f') || (c == '\r');
+	}
+}
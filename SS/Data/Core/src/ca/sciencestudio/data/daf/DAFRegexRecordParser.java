@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import ca.sciencestudio.data.daf.DAFEventRegistry;
 import ca.sciencestudio.data.daf.DAFRecord;
 import ca.sciencestudio.util.text.PeekableBufferedReader;
 
@@ -82,13 +83,7 @@ public class DAFRegexRecordParser implements DAFRecordParser {
 			return null;
 		}
 		
-		DAFEvent event = null;
-		for(DAFEvent e : events) {
-			if(e.getNumberOfElements() == values.size()) {
-				event = e;
-				break;
-			}
-		}
+		DAFEvent event = DAFEventRegistry.findEventByNumberOfElements(events, values.size());
 		
 		if(event == null) {
 			return null;
@@ -0,0 +1,255 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFSpectrumIndex class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ca.sciencestudio.data.support.DataFormatException;
+import ca.sciencestudio.data.util.SidecarFileUtility;
+
+/**
+ * Index of the records in a DAF spectra file, giving the byte offset and the
+ * number of values of each spectrum record (line) in file order.
+ *
+ * The index is kept in a sidecar file next to the spectra file, it records
+ * the length and modification time of the spectra file and ends with a CRC32
+ * checksum, an index that does not match is rebuilt by scanning the spectra file.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFSpectrumIndex {
+
+	public static final String INDEX_FILE_SUFFIX = ".idx";
+
+	static private final int INDEX_FILE_MAGIC = 0x44414649; // "DAFI" //
+	static private final int INDEX_FILE_VERSION = 1;
+	static private final String INDEX_FILE_DESCRIPTION = "spectrum index";
+
+	static private final int SCAN_BUFFER_LENGTH = 65536;
+	static private final int DEFAULT_NUMBER_OF_RECORDS = 1024;
+
+	static private final byte SPECTRUM_VALUE_SEPARATOR = ',';
+	static private final byte SPECTRUM_RECORD_SEPARATOR = '\n';
+
+	private long spectraLength;
+	private long spectraLastModified;
+
+	private int numberOfRecords = 0;
+	private long[] offsets;
+	private int[] numberOfValues;
+
+	static private Log log = LogFactory.getLog(DAFSpectrumIndex.class);
+
+	protected DAFSpectrumIndex(long spectraLength, long spectraLastModified, int capacity) {
+		this.spectraLength = spectraLength;
+		this.spectraLastModified = spectraLastModified;
+		this.offsets = new long[Math.max(capacity, 1)];
+		this.numberOfValues = new int[Math.max(capacity, 1)];
+	}
+
+	public static File getIndexFile(File spectraFile) {
+		return new File(spectraFile.getPath() + INDEX_FILE_SUFFIX);
+	}
+
+	/**
+	 * Load the sidecar index of the spectra file, if it is missing or does not
+	 * match the spectra file then the index is rebuilt and saved. Failure to
+	 * save the index is logged and the rebuilt index is returned.
+	 */
+	public static DAFSpectrumIndex getIndex(File spectraFile) throws IOException {
+		File indexFile = getIndexFile(spectraFile);
+
+		DAFSpectrumIndex index = load(spectraFile, indexFile);
+		if(index != null) {
+			return index;
+		}
+
+		index = build(spectraFile);
+		try {
+			index.save(indexFile);
+		}
+		catch(IOException e) {
+			log.warn("Cannot save spectrum index file: " + indexFile, e);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the index or null if the index file is missing, corrupt or out of date
+	 */
+	public static DAFSpectrumIndex load(File spectraFile, final File indexFile) {
+		return SidecarFileUtility.load(indexFile, INDEX_FILE_DESCRIPTION, INDEX_FILE_MAGIC, INDEX_FILE_VERSION, spectraFile,
+				new SidecarFileUtility.ContentReader<DAFSpectrumIndex>() {
+					public DAFSpectrumIndex read(DataInputStream input, long spectraLength, long spectraLastModified) throws IOException {
+						// Each record entry is an offset (long) and a number of values (int). //
+						int numberOfRecords = input.readInt();
+						if((numberOfRecords < 0) || (numberOfRecords > (indexFile.length() / 12L))) {
+							return null;
+						}
+
+						DAFSpectrumIndex index = new DAFSpectrumIndex(spectraLength, spectraLastModified, numberOfRecords);
+						for(int recordIdx = 0; recordIdx < numberOfRecords; recordIdx++) {
+							index.addRecord(input.readLong(), input.readInt());
+						}
+						return index;
+					}
+				});
+	}
+
+	/**
+	 * Build the index by scanning the spectra file, values are counted the same
+	 * way the spectrum parsers read them, empty values are skipped.
+	 */
+	public static DAFSpectrumIndex build(File spectraFile) throws IOException {
+
+		long spectraLastModified = spectraFile.lastModified();
+		DAFSpectrumIndex index = new DAFSpectrumIndex(0L, spectraLastModified, DEFAULT_NUMBER_OF_RECORDS);
+
+		InputStream input = new FileInputStream(spectraFile);
+		try {
+			byte[] buffer = new byte[SCAN_BUFFER_LENGTH];
+
+			long position = 0L;
+			long recordOffset = 0L;
+			int recordValues = 0;
+			boolean inValue = false;
+
+			int readLength;
+			while((readLength = input.read(buffer)) != -1) {
+				for(int idx = 0; idx < readLength; idx++, position++) {
+					byte b = buffer[idx];
+					if(b == SPECTRUM_RECORD_SEPARATOR) {
+						if(inValue) {
+							recordValues++;
+						}
+						if(recordValues > 0) {
+							index.addRecord(recordOffset, recordValues);
+						}
+						recordOffset = position + 1;
+						recordValues = 0;
+						inValue = false;
+					}
+					else if(b == SPECTRUM_VALUE_SEPARATOR) {
+						if(inValue) {
+							recordValues++;
+						}
+						inValue = false;
+					}
+					else if(!isWhitespace(b)) {
+						inValue = true;
+					}
+				}
+			}
+
+			if(inValue) {
+				recordValues++;
+			}
+			if(recordValues > 0) {
+				index.addRecord(recordOffset, recordValues);
+			}
+
+			index.spectraLength = position;
+		}
+		finally {
+			input.close();
+		}
+
+		return index;
+	}
+
+	/**
+	 * Save the index, it is written to a temporary file which is then renamed.
+	 */
+	public void save(File indexFile) throws IOException {
+		SidecarFileUtility.save(indexFile, INDEX_FILE_DESCRIPTION, INDEX_FILE_MAGIC, INDEX_FILE_VERSION, spectraLength, spectraLastModified,
+				new SidecarFileUtility.ContentWriter() {
+					public void write(DataOutputStream output) throws IOException {
+						output.writeInt(numberOfRecords);
+						for(int recordIdx = 0; recordIdx < numberOfRecords; recordIdx++) {
+							output.writeLong(offsets[recordIdx]);
+							output.writeInt(numberOfValues[recordIdx]);
+						}
+					}
+				});
+	}
+
+	protected void addRecord(long offset, int values) {
+		if(numberOfRecords == offsets.length) {
+			offsets = Arrays.copyOf(offsets, numberOfRecords * 2);
+			numberOfValues = Arrays.copyOf(numberOfValues, numberOfRecords * 2);
+		}
+		offsets[numberOfRecords] = offset;
+		numberOfValues[numberOfRecords] = values;
+		numberOfRecords++;
+	}
+
+	public long getSpectraLength() {
+		return spectraLength;
+	}
+
+	public long getSpectraLastModified() {
+		return spectraLastModified;
+	}
+
+	public int getNumberOfRecords() {
+		return numberOfRecords;
+	}
+
+	public long getOffset(int recordIdx) {
+		checkRecordIndex(recordIdx);
+		return offsets[recordIdx];
+	}
+
+	public int getNumberOfValues(int recordIdx) {
+		checkRecordIndex(recordIdx);
+		return numberOfValues[recordIdx];
+	}
+
+	/**
+	 * @return the index of the record starting at the given offset or -1 if not found
+	 */
+	public int getRecordIndexByOffset(long offset) {
+		int recordIdx = Arrays.binarySearch(offsets, 0, numberOfRecords, offset);
+		return (recordIdx >= 0) ? recordIdx : -1;
+	}
+
+	protected static void checkRecord(DAFSpectrumIndex spectrumIndex, long offset, int nValues) throws DataFormatException {
+		int recordIdx = spectrumIndex.getRecordIndexByOffset(offset);
+		if(recordIdx < 0) {
+			// The spectra file may have grown since the index was built. //
+			if(offset < spectrumIndex.getSpectraLength()) {
+				throw new DataFormatException("Offset, " + offset + ", is not the start of a spectrum record.");
+			}
+			return;
+		}
+		if(spectrumIndex.getNumberOfValues(recordIdx) < nValues) {
+			throw new DataFormatException("End of line before values (" + nValues + ") could be parsed.");
+		}
+	}
+
+	protected void checkRecordIndex(int recordIdx) {
+		if((recordIdx < 0) || (recordIdx >= numberOfRecords)) {
+			throw new IndexOutOfBoundsException("Record index: " + recordIdx + ", number of records: " + numberOfRecords);
+		}
+	}
+
+	// Same characters as the regular expression class \s, excluding the record separator. //
+	protected static boolean isWhitespace(byte b) {
+		return (b == ' ') || (b == '\t') || (b == '\u000B') || (b == '\f') || (b == '\r');
+	}
+}
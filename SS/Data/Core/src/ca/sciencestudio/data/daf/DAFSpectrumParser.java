@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import ca.sciencestudio.data.daf.DAFSpectrumIndex;
 import ca.sciencestudio.data.daf.DAFSpectrumRecord;
 import ca.sciencestudio.data.support.DataFormatException;
 
@@ -32,6 +33,7 @@ public class DAFSpectrumParser {
 	private static final Pattern SPECTRUM_VALUE_PATTERN = Pattern.compile("\\s*([^,]+)\\s*[,]?");
 	
 	private RandomAccessFile spectraFile;
+	private DAFSpectrumIndex spectrumIndex = null;
 	
 	public DAFSpectrumParser(String spectraFilePath) throws DataFormatException, IOException {
 		this(new RandomAccessFile(spectraFilePath, RANDOM_ACCESS_FILE_MODE));
@@ -45,8 +47,30 @@ public class DAFSpectrumParser {
 		this.spectraFile = spectraFile; 
 	}
 	
+	public DAFSpectrumIndex getSpectrumIndex() {
+		return spectrumIndex;
+	}
+	public void setSpectrumIndex(DAFSpectrumIndex spectrumIndex) {
+		this.spectrumIndex = spectrumIndex;
+	}
+	
+	public void close() throws IOException {
+		spectraFile.close();
+	}
+	
+	public DAFSpectrumRecord parseRecordByIndex(int recordIdx) throws DataFormatException, IOException {
+		if(spectrumIndex == null) {
+			throw new DataFormatException("Spectrum index is required to parse record by index.");
+		}
+		return parseRecord(spectrumIndex.getOffset(recordIdx), spectrumIndex.getNumberOfValues(recordIdx));
+	}
+	
 	public DAFSpectrumRecord parseRecord(long offset, int nValues) throws DataFormatException, IOException {
 		
+		if(spectrumIndex != null) {
+			DAFSpectrumIndex.checkRecord(spectrumIndex, offset, nValues);
+		}
+		
 		spectraFile.seek(offset);
 		
 		int readLength = 0;
@@ -8,24 +8,28 @@
 package ca.sciencestudio.data.daf;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
-//import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.sciencestudio.data.daf.DAFEvent;
+import ca.sciencestudio.data.daf.DAFEventRegistry;
 import ca.sciencestudio.data.daf.DAFRecordParser;
+import ca.sciencestudio.data.daf.DAFRecordTokenizer;
 import ca.sciencestudio.util.text.PeekableBufferedReader;
 
 /**
+ * Thread-safe, each thread uses its own tokenizer.
+ * 
  * @author maxweld
  *
  */
 public class DAFStandardRecordParser implements DAFRecordParser {
 	
-	static private final Pattern EVENT_ID_PATTERN = Pattern.compile("^(\\d+),");
-	static private final Pattern EVENT_VALUE_PATTERN = Pattern.compile("\\s*([^,]*)\\s*,?");
+	private ThreadLocal<DAFRecordTokenizer> tokenizers = new ThreadLocal<DAFRecordTokenizer>() {
+		@Override
+		protected DAFRecordTokenizer initialValue() {
+			return new DAFRecordTokenizer();
+		}
+	};
 	
 	public DAFRecord parseRecord(Collection<DAFEvent> events, PeekableBufferedReader reader) throws IOException {
 		
@@ -33,44 +37,24 @@ public class DAFStandardRecordParser implements DAFRecordParser {
 			return null;
 		}
 		
-		Matcher matcher = EVENT_ID_PATTERN.matcher(reader.peekLine());
-		if(!matcher.find()) {
-			return null;
-		}
+		DAFRecordTokenizer tokenizer = tokenizers.get();
 		
-		int eventId;
-		try {
-			eventId = Integer.parseInt(matcher.group(1));
-		}
-		catch(NumberFormatException e) {
+		if(!tokenizer.tokenizeEventId(reader.peekLine())) {
 			return null;
 		}
 		
-		DAFEvent event = null;
-		for(DAFEvent e : events) {
-			if(e.getId() == eventId) {
-				event = e;
-			}
-		}
+		// The last event defined with the id is used, if more than one is defined. //
+		DAFEvent event = DAFEventRegistry.findLastEventById(events, tokenizer.getEventId());
 		
 		if(event == null) {
 			return null;
 		}
 		
-		int numberOfElements = event.getNumberOfElements();
-		Collection<String> values = new ArrayList<String>(numberOfElements);
-		
-		values.add(matcher.group(1));
-		
-		matcher.usePattern(EVENT_VALUE_PATTERN);
-		for(int idx=1; idx<numberOfElements; idx++) {
-			if(!matcher.find()) {
-				return null;
-			}
-			values.add(matcher.group(1));
+		if(!tokenizer.tokenizeValues(event.getNumberOfElements())) {
+			return null;
 		}
 		
 		reader.readLine();
-		return new DAFRecord(event, values);
+		return new DAFRecord(event, tokenizer.getValues());
 	}
 }
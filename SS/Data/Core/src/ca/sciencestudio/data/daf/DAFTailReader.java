@@ -0,0 +1,171 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     DAFTailReader class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Reader for a DAF file which is still being written, for example during a scan.
+ *
+ * While following, only complete lines are read and the end of the file is
+ * returned when no complete line is available, more lines may then be read
+ * after waiting for data with awaitData(). Following stops when the file has
+ * not grown for the idle timeout, after which the rest of the file is read.
+ * The file is assumed to be ASCII (or ISO-8859-1) encoded.
+ *
+ * @author maxweld
+ *
+ */
+public class DAFTailReader extends Reader {
+
+	public static final long DEFAULT_POLL_INTERVAL = 1000L;
+	public static final long DEFAULT_IDLE_TIMEOUT = 5L * 60L * 1000L;
+
+	private static final int INITIAL_BUFFER_LENGTH = 64 * 1024;
+	private static final byte LINE_SEPARATOR = '\n';
+
+	private InputStream input;
+	private long pollInterval;
+	private long idleTimeout;
+
+	private volatile boolean following = true;
+
+	private byte[] buffer = new byte[INITIAL_BUFFER_LENGTH];
+	private int bufferStart = 0;
+	private int bufferEnd = 0;
+	private int lineEnd = 0;
+
+	private long lastReadTime = System.currentTimeMillis();
+
+	public DAFTailReader(File file) throws FileNotFoundException {
+		this(file, DEFAULT_POLL_INTERVAL, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	public DAFTailReader(File file, long pollInterval, long idleTimeout) throws FileNotFoundException {
+		this.input = new FileInputStream(file);
+		this.pollInterval = Math.max(pollInterval, 1L);
+		this.idleTimeout = Math.max(idleTimeout, 0L);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+
+		int length = availableLength();
+		if(length == 0) {
+			fill();
+			length = availableLength();
+			if(length == 0) {
+				return -1;
+			}
+		}
+
+		length = Math.min(length, len);
+		for(int idx = 0; idx < length; idx++) {
+			cbuf[off + idx] = (char)(buffer[bufferStart + idx] & 0xFF);
+		}
+		bufferStart += length;
+		return length;
+	}
+
+	/**
+	 * Wait until a complete line is available to be read or following stops.
+	 *
+	 * @return true if a line is available, false if following has stopped
+	 */
+	public boolean awaitData() throws IOException {
+		while(following) {
+			fill();
+			if(availableLength() > 0) {
+				return true;
+			}
+
+			if((System.currentTimeMillis() - lastReadTime) >= idleTimeout) {
+				following = false;
+				break;
+			}
+
+			try {
+				Thread.sleep(pollInterval);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				following = false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stop following, the rest of the file (including an incomplete last line) is then read.
+	 */
+	public void stopFollowing() {
+		following = false;
+	}
+
+	public boolean isFollowing() {
+		return following;
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+	protected int availableLength() {
+		if(following) {
+			return Math.max(lineEnd - bufferStart, 0);
+		}
+		return bufferEnd - bufferStart;
+	}
+
+	/**
+	 * Read the data available from the file into the buffer.
+	 */
+	protected void fill() throws IOException {
+		if(bufferStart > 0) {
+			System.arraycopy(buffer, bufferStart, buffer, 0, bufferEnd - bufferStart);
+			lineEnd = Math.max(lineEnd - bufferStart, 0);
+			bufferEnd -= bufferStart;
+			bufferStart = 0;
+		}
+
+		if(bufferEnd == buffer.length) {
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, bufferEnd);
+			buffer = newBuffer;
+		}
+
+		int length = input.read(buffer, bufferEnd, buffer.length - bufferEnd);
+		if(length > 0) {
+			for(int idx = bufferEnd + length - 1; idx >= bufferEnd; idx--) {
+				if(buffer[idx] == LINE_SEPARATOR) {
+					lineEnd = idx + 1;
+					break;
+				}
+			}
+			bufferEnd += length;
+			lastReadTime = System.currentTimeMillis();
+		}
+	}
+
+	public long getPollInterval() {
+		return pollInterval;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+}
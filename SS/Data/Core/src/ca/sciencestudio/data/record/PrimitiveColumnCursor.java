@@ -0,0 +1,148 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     PrimitiveColumnCursor class.
+ *
+ */
+package ca.sciencestudio.data.record;
+
+import ca.sciencestudio.data.record.PrimitiveColumnTable.ColumnType;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+/**
+ * Flyweight record view of one row of a PrimitiveColumnTable. The cursor is
+ * moved between rows rather than creating a record for each row, and the
+ * numeric getters read the primitive columns without boxing.
+ *
+ * @author maxweld
+ *
+ */
+public class PrimitiveColumnCursor extends AbstractRecord {
+
+	private PrimitiveColumnTable table;
+	private int row = -1;
+
+	public PrimitiveColumnCursor(PrimitiveColumnTable table) {
+		this.table = table;
+	}
+
+	public PrimitiveColumnTable getTable() {
+		return table;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	public void moveTo(int row) {
+		this.row = row;
+	}
+
+	public boolean next() {
+		if(row < (table.getNumberOfRows() - 1)) {
+			row++;
+			return true;
+		}
+		return false;
+	}
+
+	public void beforeFirst() {
+		row = -1;
+	}
+
+	/**
+	 * Append a new row to the table and move the cursor to it.
+	 */
+	public void addRow() {
+		row = table.addRow();
+	}
+
+	public int getNumberOfValues() {
+		return table.getNumberOfColumns();
+	}
+
+	/**
+	 * @return a copy of the values of the current row, null object values are returned as null
+	 * @throws IllegalStateException if the cursor is not on a row of the table
+	 */
+	public Object[] getValues() {
+		try {
+			return table.getValues(row);
+		}
+		catch(RecordFormatException e) {
+			throw new IllegalStateException("Cannot get values of cursor row: " + row, e);
+		}
+	}
+
+	@Override
+	public Object getValue(int idx) throws RecordFormatException {
+		return table.getValue(row, idx);
+	}
+
+	public void setValue(int idx, Object value) throws RecordFormatException {
+		table.setValue(row, idx, value);
+	}
+
+	public void setLong(int idx, long value) throws RecordFormatException {
+		table.setLong(row, idx, value);
+	}
+
+	public void setDouble(int idx, double value) throws RecordFormatException {
+		table.setDouble(row, idx, value);
+	}
+
+	// Primitive Values //
+
+	@Override
+	public byte getByte(int idx) throws RecordFormatException {
+		if(isPrimitive(idx)) {
+			return (byte)table.getLong(row, idx);
+		}
+		return super.getByte(idx);
+	}
+
+	@Override
+	public short getShort(int idx) throws RecordFormatException {
+		if(isPrimitive(idx)) {
+			return (short)table.getLong(row, idx);
+		}
+		return super.getShort(idx);
+	}
+
+	@Override
+	public int getInt(int idx) throws RecordFormatException {
+		if(isPrimitive(idx)) {
+			return (int)table.getLong(row, idx);
+		}
+		return super.getInt(idx);
+	}
+
+	@Override
+	public long getLong(int idx) throws RecordFormatException {
+		if(isPrimitive(idx)) {
+			return table.getLong(row, idx);
+		}
+		return super.getLong(idx);
+	}
+
+	@Override
+	public float getFloat(int idx) throws RecordFormatException {
+		if(isPrimitive(idx)) {
+			return (float)table.getDouble(row, idx);
+		}
+		return super.getFloat(idx);
+	}
+
+	@Override
+	public double getDouble(int idx) throws RecordFormatException {
+		if(isPrimitive(idx)) {
+			return table.getDouble(row, idx);
+		}
+		return super.getDouble(idx);
+	}
+
+	protected boolean isPrimitive(int idx) {
+		return (idx >= 0) && (idx < table.getNumberOfColumns()) && (table.getColumnType(idx) != ColumnType.OBJECT);
+	}
+}
@@ -0,0 +1,324 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     PrimitiveColumnTable class.
+ *
+ */
+package ca.sciencestudio.data.record;
+
+import java.util.Arrays;
+
+import ca.sciencestudio.data.util.TypesUtility;
+import ca.sciencestudio.data.support.TypesException;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+/**
+ * Table of records stored by column, numeric columns are kept in primitive
+ * long or double arrays so values are not boxed. Rows are read and written
+ * through a PrimitiveColumnCursor, which can be moved between rows and reused.
+ * A table to be shared, for example by a cache, can be wrapped as a read-only
+ * view with unmodifiableTable().
+ *
+ * @author maxweld
+ *
+ */
+public class PrimitiveColumnTable {
+
+	public static enum ColumnType {
+		LONG, DOUBLE, OBJECT
+	}
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private ColumnType[] columnTypes;
+
+	private long[][] longColumns;
+	private double[][] doubleColumns;
+	private Object[][] objectColumns;
+
+	private int capacity;
+	private int numberOfRows = 0;
+
+	private boolean modifiable = true;
+
+	/**
+	 * @return a read-only view of the rows of the table when the view is created, the columns are not copied
+	 */
+	public static PrimitiveColumnTable unmodifiableTable(PrimitiveColumnTable table) {
+		if(!table.modifiable) {
+			return table;
+		}
+		return new PrimitiveColumnTable(table);
+	}
+
+	public PrimitiveColumnTable(ColumnType[] columnTypes) {
+		this(columnTypes, DEFAULT_CAPACITY);
+	}
+
+	public PrimitiveColumnTable(ColumnType[] columnTypes, int capacity) {
+		int numberOfColumns = columnTypes.length;
+		this.columnTypes = columnTypes.clone();
+		this.capacity = Math.max(capacity, 1);
+		this.longColumns = new long[numberOfColumns][];
+		this.doubleColumns = new double[numberOfColumns][];
+		this.objectColumns = new Object[numberOfColumns][];
+		for(int col = 0; col < numberOfColumns; col++) {
+			switch(this.columnTypes[col]) {
+				case LONG:
+					longColumns[col] = new long[this.capacity];
+					break;
+				case DOUBLE:
+					doubleColumns[col] = new double[this.capacity];
+					break;
+				case OBJECT:
+				default:
+					this.columnTypes[col] = ColumnType.OBJECT;
+					objectColumns[col] = new Object[this.capacity];
+					break;
+			}
+		}
+	}
+
+	private PrimitiveColumnTable(PrimitiveColumnTable table) {
+		this.columnTypes = table.columnTypes;
+		this.longColumns = table.longColumns.clone();
+		this.doubleColumns = table.doubleColumns.clone();
+		this.objectColumns = table.objectColumns.clone();
+		this.capacity = table.capacity;
+		this.numberOfRows = table.numberOfRows;
+		this.modifiable = false;
+	}
+
+	public boolean isModifiable() {
+		return modifiable;
+	}
+
+	public int getNumberOfColumns() {
+		return columnTypes.length;
+	}
+
+	public int getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	public ColumnType getColumnType(int col) {
+		return columnTypes[col];
+	}
+
+	/**
+	 * Append an empty row, numeric values are zero and object values are null.
+	 *
+	 * @return the index of the new row
+	 */
+	public int addRow() {
+		checkModifiable();
+		if(numberOfRows == capacity) {
+			ensureCapacity(capacity * 2);
+		}
+		return numberOfRows++;
+	}
+
+	public void clear() {
+		checkModifiable();
+		for(Object[] objectColumn : objectColumns) {
+			if(objectColumn != null) {
+				Arrays.fill(objectColumn, 0, numberOfRows, null);
+			}
+		}
+		numberOfRows = 0;
+	}
+
+	public PrimitiveColumnCursor cursor() {
+		return new PrimitiveColumnCursor(this);
+	}
+
+	// Column Values //
+
+	public long[] getLongColumn(int col) {
+		checkColumnType(col, ColumnType.LONG);
+		return Arrays.copyOf(longColumns[col], numberOfRows);
+	}
+
+	public double[] getDoubleColumn(int col) {
+		checkColumnType(col, ColumnType.DOUBLE);
+		return Arrays.copyOf(doubleColumns[col], numberOfRows);
+	}
+
+	public Object[] getObjectColumn(int col) {
+		checkColumnType(col, ColumnType.OBJECT);
+		return Arrays.copyOf(objectColumns[col], numberOfRows);
+	}
+
+	// Cell Values //
+
+	public long getLong(int row, int col) throws RecordFormatException {
+		checkCell(row, col);
+		switch(columnTypes[col]) {
+			case LONG:
+				return longColumns[col][row];
+			case DOUBLE:
+				return (long)doubleColumns[col][row];
+			default:
+				try {
+					return TypesUtility.getLong(objectColumns[col][row]);
+				}
+				catch(TypesException e) {
+					throw new RecordFormatException("Cannot get long at row: " + row + ", column: " + col, e);
+				}
+		}
+	}
+
+	public double getDouble(int row, int col) throws RecordFormatException {
+		checkCell(row, col);
+		switch(columnTypes[col]) {
+			case LONG:
+				return longColumns[col][row];
+			case DOUBLE:
+				return doubleColumns[col][row];
+			default:
+				try {
+					return TypesUtility.getDouble(objectColumns[col][row]);
+				}
+				catch(TypesException e) {
+					throw new RecordFormatException("Cannot get double at row: " + row + ", column: " + col, e);
+				}
+		}
+	}
+
+	public Object getValue(int row, int col) throws RecordFormatException {
+		checkCell(row, col);
+		switch(columnTypes[col]) {
+			case LONG:
+				return longColumns[col][row];
+			case DOUBLE:
+				return doubleColumns[col][row];
+			default:
+				Object value = objectColumns[col][row];
+				if(value == null) {
+					throw new RecordFormatException("Cannot get value at row: " + row + ", column: " + col + ", will not return null value.");
+				}
+				return value;
+		}
+	}
+
+	/**
+	 * @return a copy of the values of the row, null object values are returned as null
+	 */
+	public Object[] getValues(int row) throws RecordFormatException {
+		checkRow(row);
+		Object[] values = new Object[columnTypes.length];
+		for(int col = 0; col < columnTypes.length; col++) {
+			switch(columnTypes[col]) {
+				case LONG:
+					values[col] = longColumns[col][row];
+					break;
+				case DOUBLE:
+					values[col] = doubleColumns[col][row];
+					break;
+				default:
+					values[col] = objectColumns[col][row];
+					break;
+			}
+		}
+		return values;
+	}
+
+	public void setLong(int row, int col, long value) throws RecordFormatException {
+		checkModifiable();
+		checkCell(row, col);
+		switch(columnTypes[col]) {
+			case LONG:
+				longColumns[col][row] = value;
+				break;
+			case DOUBLE:
+				doubleColumns[col][row] = value;
+				break;
+			default:
+				objectColumns[col][row] = value;
+				break;
+		}
+	}
+
+	public void setDouble(int row, int col, double value) throws RecordFormatException {
+		checkModifiable();
+		checkCell(row, col);
+		switch(columnTypes[col]) {
+			case LONG:
+				longColumns[col][row] = (long)value;
+				break;
+			case DOUBLE:
+				doubleColumns[col][row] = value;
+				break;
+			default:
+				objectColumns[col][row] = value;
+				break;
+		}
+	}
+
+	public void setValue(int row, int col, Object value) throws RecordFormatException {
+		checkModifiable();
+		checkCell(row, col);
+		try {
+			switch(columnTypes[col]) {
+				case LONG:
+					longColumns[col][row] = TypesUtility.getLong(value);
+					break;
+				case DOUBLE:
+					doubleColumns[col][row] = TypesUtility.getDouble(value);
+					break;
+				default:
+					objectColumns[col][row] = value;
+					break;
+			}
+		}
+		catch(TypesException e) {
+			throw new RecordFormatException("Cannot set value at row: " + row + ", column: " + col, e);
+		}
+	}
+
+	protected void ensureCapacity(int minimumCapacity) {
+		if(minimumCapacity <= capacity) {
+			return;
+		}
+		for(int col = 0; col < columnTypes.length; col++) {
+			switch(columnTypes[col]) {
+				case LONG:
+					longColumns[col] = Arrays.copyOf(longColumns[col], minimumCapacity);
+					break;
+				case DOUBLE:
+					doubleColumns[col] = Arrays.copyOf(doubleColumns[col], minimumCapacity);
+					break;
+				default:
+					objectColumns[col] = Arrays.copyOf(objectColumns[col], minimumCapacity);
+					break;
+			}
+		}
+		capacity = minimumCapacity;
+	}
+
+	protected void checkModifiable() {
+		if(!modifiable) {
+			throw new UnsupportedOperationException("Table is not modifiable.");
+		}
+	}
+
+	protected void checkCell(int row, int col) throws RecordFormatException {
+		checkRow(row);
+		if((col < 0) || (col >= columnTypes.length)) {
+			throw new RecordFormatException("Column index: " + col + ", number of columns: " + columnTypes.length);
+		}
+	}
+
+	protected void checkRow(int row) throws RecordFormatException {
+		if((row < 0) || (row >= numberOfRows)) {
+			throw new RecordFormatException("Row index: " + row + ", number of rows: " + numberOfRows);
+		}
+	}
+
+	protected void checkColumnType(int col, ColumnType columnType) {
+		if(columnTypes[col] != columnType) {
+			throw new IllegalArgumentException("Column: " + col + ", expected type: " + columnType + ", actual type: " + columnTypes[col]);
+		}
+	}
+}
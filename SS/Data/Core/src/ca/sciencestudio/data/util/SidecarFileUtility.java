@@ -0,0 +1,324 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     SidecarFileUtility class.
+ *
+ */
+package ca.sciencestudio.data.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Support for sidecar files, kept next to a source (data) file and holding
+ * information derived from it, such as indexes, metadata and maps.
+ *
+ * A sidecar file starts with a magic number and a version. A streamed sidecar
+ * file then records the length and modification time of the source file and
+ * ends with a CRC32 checksum of the whole file. A random access sidecar file
+ * has a header block, which records the length and modification time of the
+ * source file, followed by a CRC32 checksum of the header block. A sidecar file
+ * is written to a unique temporary file in the same directory which is then
+ * renamed, so concurrent writers do not interfere, a copy of a file is written
+ * the same way. Blocks of a random access sidecar file may be compressed with
+ * Deflate.
+ *
+ * @author maxweld
+ *
+ */
+public abstract class SidecarFileUtility {
+
+	/**
+	 * Value of a point of a map without data.
+	 */
+	public static final long MISSING_VALUE = -1L;
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	// Magic, version and length of the header block, followed by the header block and checksum. //
+	private static final int HEADER_BLOCK_OVERHEAD = 4 + 4 + 4 + 8;
+
+	private static Log log = LogFactory.getLog(SidecarFileUtility.class);
+
+	public static interface ContentWriter {
+		public void write(DataOutputStream output) throws IOException;
+	}
+
+	public static interface ContentReader<T> {
+		/**
+		 * @return the content or null if the content is not valid
+		 */
+		public T read(DataInputStream input, long sourceLength, long sourceLastModified) throws IOException;
+	}
+
+	/**
+	 * @return true if the source file has the given length and modification time
+	 */
+	public static boolean isSourceFile(File sourceFile, long sourceLength, long sourceLastModified) {
+		return (sourceLength == sourceFile.length()) && (sourceLastModified == sourceFile.lastModified());
+	}
+
+	/**
+	 * @return a new temporary file in the same directory as the given file
+	 */
+	public static File createTempFile(File file) throws IOException {
+		return File.createTempFile(file.getName(), TEMP_FILE_SUFFIX, file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Replace the file with the temporary file, the temporary file is deleted on failure.
+	 *
+	 * @param description of the file for error messages, for example "map axis metadata"
+	 */
+	public static void replaceFile(File tempFile, File file, String description) throws IOException {
+		// Rename does not replace an existing file on all platforms. //
+		if(!tempFile.renameTo(file)) {
+			if(file.exists() && !file.delete()) {
+				tempFile.delete();
+				throw new IOException("Cannot replace " + description + " file: " + file);
+			}
+			if(!tempFile.renameTo(file)) {
+				tempFile.delete();
+				throw new IOException("Cannot rename " + description + " file: " + tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Copy the source file to the file, through a temporary file which is then renamed,
+	 * so the file is replaced as a whole and is never seen partly written.
+	 *
+	 * @param description of the file for error messages, for example "map axis metadata"
+	 */
+	public static void copyFile(File sourceFile, File file, String description) throws IOException {
+
+		File tempFile = createTempFile(file);
+
+		try {
+			FileInputStream inputStream = new FileInputStream(sourceFile);
+			try {
+				FileOutputStream outputStream = new FileOutputStream(tempFile);
+				try {
+					FileChannel input = inputStream.getChannel();
+					FileChannel output = outputStream.getChannel();
+					long length = input.size();
+					long position = 0L;
+					while(position < length) {
+						long count = input.transferTo(position, length - position, output);
+						if(count <= 0L) {
+							throw new IOException("Cannot copy " + description + " file: " + sourceFile);
+						}
+						position += count;
+					}
+				}
+				finally {
+					outputStream.close();
+				}
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch(IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+
+		replaceFile(tempFile, file, description);
+	}
+
+	/**
+	 * Save a streamed sidecar file, the content is written after the length
+	 * and modification time of the source file and is followed by the checksum.
+	 */
+	public static void save(File file, String description, int magic, int version, long sourceLength, long sourceLastModified, ContentWriter writer) throws IOException {
+
+		File tempFile = createTempFile(file);
+
+		try {
+			CRC32 checksum = new CRC32();
+			OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+			try {
+				DataOutputStream output = new DataOutputStream(new CheckedOutputStream(outputStream, checksum));
+				output.writeInt(magic);
+				output.writeInt(version);
+				output.writeLong(sourceLength);
+				output.writeLong(sourceLastModified);
+				writer.write(output);
+				output.flush();
+				new DataOutputStream(outputStream).writeLong(checksum.getValue());
+			}
+			finally {
+				outputStream.close();
+			}
+		}
+		catch(IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+
+		replaceFile(tempFile, file, description);
+	}
+
+	/**
+	 * Load a streamed sidecar file.
+	 *
+	 * @return the content or null if the file is missing, corrupt or does not match the source file
+	 */
+	public static <T> T load(File file, String description, int magic, int version, File sourceFile, ContentReader<T> reader) {
+
+		if(!file.isFile()) {
+			return null;
+		}
+
+		CRC32 checksum = new CRC32();
+		try {
+			InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+			try {
+				DataInputStream input = new DataInputStream(new CheckedInputStream(inputStream, checksum));
+
+				if((input.readInt() != magic) || (input.readInt() != version)) {
+					return null;
+				}
+
+				long sourceLength = input.readLong();
+				long sourceLastModified = input.readLong();
+				if(!isSourceFile(sourceFile, sourceLength, sourceLastModified)) {
+					return null;
+				}
+
+				T content = reader.read(input, sourceLength, sourceLastModified);
+				if(content == null) {
+					return null;
+				}
+
+				long expectedChecksum = checksum.getValue();
+				if(new DataInputStream(inputStream).readLong() != expectedChecksum) {
+					log.warn("Checksum mismatch in " + description + " file: " + file);
+					return null;
+				}
+				return content;
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch(EOFException e) {
+			log.warn("Unexpected end of " + description + " file: " + file);
+			return null;
+		}
+		catch(IOException e) {
+			log.warn("Cannot load " + description + " file: " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the magic, version and header block of a random access sidecar file, followed by the checksum.
+	 */
+	public static void writeHeader(DataOutput output, int magic, int version, byte[] header) throws IOException {
+		CRC32 checksum = new CRC32();
+		checksum.update(header);
+		output.writeInt(magic);
+		output.writeInt(version);
+		output.writeInt(header.length);
+		output.write(header);
+		output.writeLong(checksum.getValue());
+	}
+
+	/**
+	 * Read the header block of a random access sidecar file, the input is left at the end of the checksum.
+	 *
+	 * @param maximumLength the maximum length of the header block
+	 */
+	public static byte[] readHeader(DataInput input, int magic, int version, long maximumLength, File file, String description) throws IOException {
+		if((input.readInt() != magic) || (input.readInt() != version)) {
+			throw new IOException("Format of " + description + " file not supported: " + file);
+		}
+
+		int headerLength = input.readInt();
+		if((headerLength <= 0) || (headerLength > maximumLength)) {
+			throw new IOException("Header length of " + description + " file invalid: " + file);
+		}
+
+		byte[] header = new byte[headerLength];
+		input.readFully(header);
+
+		CRC32 checksum = new CRC32();
+		checksum.update(header);
+		if(input.readLong() != checksum.getValue()) {
+			throw new IOException("Checksum mismatch in " + description + " file header: " + file);
+		}
+		return header;
+	}
+
+	/**
+	 * @return the length of the magic, version and header block of a random access sidecar file, including the checksum
+	 */
+	public static long getHeaderLength(int headerBlockLength) {
+		return HEADER_BLOCK_OVERHEAD + (long)headerBlockLength;
+	}
+
+	/**
+	 * @return the data compressed with the given deflater, which is reset
+	 */
+	public static byte[] deflate(Deflater deflater, byte[] data) {
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] block = new byte[(data.length / 2) + 64];
+		int blockLength = 0;
+		while(!deflater.finished()) {
+			if(blockLength == block.length) {
+				block = Arrays.copyOf(block, block.length * 2);
+			}
+			blockLength += deflater.deflate(block, blockLength, block.length - blockLength);
+		}
+		return Arrays.copyOf(block, blockLength);
+	}
+
+	/**
+	 * @return the block decompressed, which must have the given length
+	 */
+	public static byte[] inflate(byte[] block, int length) throws IOException {
+		byte[] inflated = new byte[length];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(block);
+			int inflatedLength = inflater.inflate(inflated);
+			if((inflatedLength != length) || !inflater.finished()) {
+				throw new IOException("Compressed block length invalid.");
+			}
+		}
+		catch(DataFormatException e) {
+			throw new IOException("Compressed block is corrupt.", e);
+		}
+		finally {
+			inflater.end();
+		}
+		return inflated;
+	}
+}
@@ -0,0 +1,228 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TimestampParser class.
+ *
+ */
+package ca.sciencestudio.data.util;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Immutable and thread-safe parser for timestamps of the form (C asctime),
+ *
+ *     [#] EEE MMM d HH:mm:ss yyyy
+ *
+ * as used in the DAF start time header, with conversion to CDF epoch values.
+ *
+ * The fields are parsed directly from the text and converted with calendar
+ * arithmetic, so no Calendar or DateFormat is created or shared. Day and time
+ * fields out of range are rolled over, the same as a lenient DateFormat.
+ *
+ * @author maxweld
+ *
+ */
+public class TimestampParser {
+
+	public static final String DAF_START_TIME_TIME_ZONE_ID = "America/Regina";
+
+	public static final TimestampParser DAF_START_TIME = new TimestampParser(TimeZone.getTimeZone(DAF_START_TIME_TIME_ZONE_ID));
+
+	private static final long MILLIS_PER_SECOND = 1000L;
+	private static final long MILLIS_PER_MINUTE = 60L * MILLIS_PER_SECOND;
+	private static final long MILLIS_PER_HOUR = 60L * MILLIS_PER_MINUTE;
+	private static final long MILLIS_PER_DAY = 24L * MILLIS_PER_HOUR;
+
+	// Milliseconds from 0000-01-01T00:00:00.000 (CDF epoch) to 1970-01-01T00:00:00.000 (Java epoch). //
+	private static final long CDF_EPOCH_MILLIS_TO_JAVA_EPOCH = 62167219200000L;
+
+	private static final String COMMENT_PREFIX = "#";
+
+	private static final String[] MONTH_NAMES = {
+		"January", "February", "March", "April", "May", "June",
+		"July", "August", "September", "October", "November", "December"
+	};
+
+	private static final String[] DAY_OF_WEEK_NAMES = {
+		"Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"
+	};
+
+	private static final int SHORT_NAME_LENGTH = 3;
+
+	private final TimeZone timeZone;
+
+	public TimestampParser(TimeZone timeZone) {
+		this.timeZone = (TimeZone)timeZone.clone();
+	}
+
+	public TimeZone getTimeZone() {
+		return (TimeZone)timeZone.clone();
+	}
+
+	public Date parse(String text) throws ParseException {
+		return new Date(parseMillis(text));
+	}
+
+	/**
+	 * Parse the timestamp, any text following the year is ignored.
+	 *
+	 * @return milliseconds since the Java epoch
+	 */
+	public long parseMillis(String text) throws ParseException {
+
+		if(text == null) {
+			throw new ParseException("Cannot parse timestamp from null text.", 0);
+		}
+
+		int idx = skipWhitespace(text, 0);
+		if(text.startsWith(COMMENT_PREFIX, idx)) {
+			idx = skipWhitespace(text, idx + COMMENT_PREFIX.length());
+		}
+
+		// The day of the week is verified, but is not used. //
+		int end = skipLetters(text, idx);
+		if(indexOfName(DAY_OF_WEEK_NAMES, text, idx, end) < 0) {
+			throw new ParseException("Cannot parse day of week from timestamp: " + text, idx);
+		}
+		idx = skipWhitespace(text, end);
+
+		end = skipLetters(text, idx);
+		int month = indexOfName(MONTH_NAMES, text, idx, end);
+		if(month < 0) {
+			throw new ParseException("Cannot parse month from timestamp: " + text, idx);
+		}
+		idx = skipWhitespace(text, end);
+
+		end = skipDigits(text, idx);
+		long day = parseNumber(text, idx, end);
+		idx = skipWhitespace(text, end);
+
+		end = skipDigits(text, idx);
+		long hour = parseNumber(text, idx, end);
+		idx = skipSeparator(text, end, ':');
+
+		end = skipDigits(text, idx);
+		long minute = parseNumber(text, idx, end);
+		idx = skipSeparator(text, end, ':');
+
+		end = skipDigits(text, idx);
+		long second = parseNumber(text, idx, end);
+		idx = skipWhitespace(text, end);
+
+		end = skipDigits(text, idx);
+		long year = parseNumber(text, idx, end);
+
+		long localMillis = getMillis(year, month + 1, 1) + ((day - 1L) * MILLIS_PER_DAY)
+				+ (hour * MILLIS_PER_HOUR) + (minute * MILLIS_PER_MINUTE) + (second * MILLIS_PER_SECOND);
+
+		// Offset at the local time, then corrected for a daylight saving transition. //
+		int offset = timeZone.getOffset(localMillis - timeZone.getRawOffset());
+		offset = timeZone.getOffset(localMillis - offset);
+		return localMillis - offset;
+	}
+
+	// CDF Epoch //
+
+	/**
+	 * @return milliseconds since 0000-01-01T00:00:00.000 UTC (proleptic Gregorian calendar)
+	 */
+	public static double toCDFEpoch(long millis) {
+		return (double)(millis + CDF_EPOCH_MILLIS_TO_JAVA_EPOCH);
+	}
+
+	public static long fromCDFEpoch(double epoch) {
+		return Math.round(epoch) - CDF_EPOCH_MILLIS_TO_JAVA_EPOCH;
+	}
+
+	/**
+	 * @return seconds since 0000-01-01T00:00:00 UTC and picoseconds within the second
+	 */
+	public static double[] toCDFEpoch16(long millis, long micros, long nanos, long picos) {
+		long epochMillis = millis + CDF_EPOCH_MILLIS_TO_JAVA_EPOCH;
+		long seconds = floorDiv(epochMillis, MILLIS_PER_SECOND);
+		long milliseconds = epochMillis - (seconds * MILLIS_PER_SECOND);
+		double[] epoch16 = new double[2];
+		epoch16[0] = seconds;
+		epoch16[1] = (milliseconds * 1000000000L) + (micros * 1000000L) + (nanos * 1000L) + picos;
+		return epoch16;
+	}
+
+	/**
+	 * @return milliseconds since the Java epoch for the given UTC date (proleptic Gregorian calendar)
+	 */
+	protected static long getMillis(long year, long month, long day) {
+		// Days from civil, with the year starting in March. //
+		long y = (month <= 2) ? (year - 1L) : year;
+		long era = floorDiv(y, 400L);
+		long yearOfEra = y - (era * 400L);
+		long dayOfYear = (((153L * (month + ((month > 2) ? -3L : 9L))) + 2L) / 5L) + (day - 1L);
+		long dayOfEra = (yearOfEra * 365L) + (yearOfEra / 4L) - (yearOfEra / 100L) + dayOfYear;
+		long days = (era * 146097L) + dayOfEra - 719468L;
+		return days * MILLIS_PER_DAY;
+	}
+
+	protected static long floorDiv(long x, long y) {
+		long q = x / y;
+		if(((x % y) != 0L) && ((x < 0L) != (y < 0L))) {
+			q--;
+		}
+		return q;
+	}
+
+	protected static int indexOfName(String[] names, String text, int start, int end) {
+		int length = end - start;
+		for(int idx = 0; idx < names.length; idx++) {
+			String name = names[idx];
+			if((length == name.length()) || (length == SHORT_NAME_LENGTH)) {
+				if(name.regionMatches(true, 0, text, start, length)) {
+					return idx;
+				}
+			}
+		}
+		return -1;
+	}
+
+	protected static long parseNumber(String text, int start, int end) throws ParseException {
+		// Limit the number of digits so the value cannot overflow. //
+		if((start == end) || ((end - start) > 9)) {
+			throw new ParseException("Cannot parse number from timestamp: " + text, start);
+		}
+		long value = 0L;
+		for(int idx = start; idx < end; idx++) {
+			value = (value * 10L) + (text.charAt(idx) - '0');
+		}
+		return value;
+	}
+
+	protected static int skipSeparator(String text, int idx, char separator) throws ParseException {
+		idx = skipWhitespace(text, idx);
+		if((idx >= text.length()) || (text.charAt(idx) != separator)) {
+			throw new ParseException("Expected separator, '" + separator + "', in timestamp: " + text, idx);
+		}
+		return skipWhitespace(text, idx + 1);
+	}
+
+	protected static int skipWhitespace(String text, int idx) {
+		while((idx < text.length()) && ((text.charAt(idx) == ' ') || (text.charAt(idx) == '\t'))) {
+			idx++;
+		}
+		return idx;
+	}
+
+	protected static int skipLetters(String text, int idx) {
+		while((idx < text.length()) && Character.isLetter(text.charAt(idx))) {
+			idx++;
+		}
+		return idx;
+	}
+
+	protected static int skipDigits(String text, int idx) {
+		while((idx < text.length()) && (text.charAt(idx) >= '0') && (text.charAt(idx) <= '9')) {
+			idx++;
+		}
+		return idx;
+	}
+}
@@ -0,0 +1,109 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFCompressionSelector class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestCDFCompressionSelector {
+
+	private static final int NUMBER_OF_SAMPLES = 25;
+	private static final int N_CHANNELS = 10;
+
+	// Each sample value is encoded with 4 bytes. //
+	private static final int SAMPLES_LENGTH = NUMBER_OF_SAMPLES * N_CHANNELS * 4;
+
+	protected void addSamples(CDFCompressionSelector selector, Random random) {
+		for(int sample = 0; sample < NUMBER_OF_SAMPLES; sample++) {
+			long[] values = new long[N_CHANNELS];
+			if(random != null) {
+				for(int channel = 0; channel < N_CHANNELS; channel++) {
+					values[channel] = random.nextInt() & 0xFFFFFFFFL;
+				}
+			}
+			selector.addSample(values);
+		}
+	}
+
+	@Test
+	public void testSamples() {
+		CDFCompressionSelector selector = new CDFCompressionSelector(NUMBER_OF_SAMPLES);
+		assertEquals(-1L, selector.selectLevel(-1L));
+		addSamples(selector, null);
+		assertTrue(selector.isComplete());
+		// Samples added once complete are ignored. //
+		selector.addSample(new long[N_CHANNELS]);
+		assertEquals(NUMBER_OF_SAMPLES, selector.getSamplesCount());
+		assertEquals(SAMPLES_LENGTH, selector.getSamplesLength());
+	}
+
+	@Test
+	public void testCompressibleSamples() {
+		CDFCompressionSelector selector = new CDFCompressionSelector(NUMBER_OF_SAMPLES);
+		addSamples(selector, null);
+		assertFalse(selector.selectLevel(0L) == 0L);
+	}
+
+	@Test
+	public void testRandomSamples() {
+		CDFCompressionSelector selector = new CDFCompressionSelector(NUMBER_OF_SAMPLES);
+		addSamples(selector, new Random(1L));
+		assertEquals(0L, selector.selectLevel(6L));
+	}
+
+	@Test
+	public void testMinimumGain() {
+		// The smallest size must save at least 20% of the samples length. //
+		long minimumSize = (long)(SAMPLES_LENGTH * (1.0 - CDFCompressionSelector.DEFAULT_MINIMUM_GAIN));
+		assertEquals(0L, select(new long[] { minimumSize + 1, minimumSize + 1, minimumSize + 1, minimumSize + 1 }, new long[] { 1, 2, 3, 4 }));
+		assertEquals(9L, select(new long[] { SAMPLES_LENGTH, SAMPLES_LENGTH, SAMPLES_LENGTH, minimumSize }, new long[] { 1, 2, 3, 4 }));
+	}
+
+	@Test
+	public void testSizeTolerance() {
+		// Sizes within 5% of the smallest size (400) are at most 420, the fastest of those is selected. //
+		assertEquals(3L, select(new long[] { 421, 420, 405, 400 }, new long[] { 1, 2, 3, 4 }));
+		assertEquals(6L, select(new long[] { 421, 420, 405, 400 }, new long[] { 1, 5, 3, 4 }));
+		assertEquals(9L, select(new long[] { 500, 500, 421, 400 }, new long[] { 1, 2, 3, 4 }));
+	}
+
+	/**
+	 * @return the level selected for the given compressed sizes and times of the default candidate levels
+	 */
+	protected long select(long[] compressedSizes, long[] compressionTimes) {
+		CDFCompressionSelector selector = new FixedBenchmarkSelector(compressedSizes, compressionTimes);
+		addSamples(selector, null);
+		return selector.selectLevel(-1L);
+	}
+
+	/**
+	 * Selector with fixed compressed sizes and times, so the selection does not depend on timing.
+	 */
+	protected static class FixedBenchmarkSelector extends CDFCompressionSelector {
+
+		private long[] compressedSizes;
+		private long[] compressionTimes;
+
+		public FixedBenchmarkSelector(long[] compressedSizes, long[] compressionTimes) {
+			super(NUMBER_OF_SAMPLES);
+			this.compressedSizes = compressedSizes;
+			this.compressionTimes = compressionTimes;
+		}
+
+		protected void benchmark() {
+			super.benchmark();
+			System.arraycopy(compressedSizes, 0, getCompressedSizes(), 0, compressedSizes.length);
+			System.arraycopy(compressionTimes, 0, getCompressionTimes(), 0, compressionTimes.length);
+		}
+	}
+}
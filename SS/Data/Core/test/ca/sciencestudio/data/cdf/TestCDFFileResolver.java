@@ -0,0 +1,202 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFFileResolver class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.sciencestudio.data.standard.StdConverter;
+import ca.sciencestudio.data.standard.StdScanParams;
+import ca.sciencestudio.data.support.CDFQueryException;
+import ca.sciencestudio.model.session.Scan;
+import ca.sciencestudio.util.Parameters;
+
+public class TestCDFFileResolver implements StdScanParams, StdConverter {
+
+	private File directory;
+
+	private CDFFileResolver resolver = new CDFFileResolver();
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("resolver", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	protected Scan createScan(String gid, String key, String value) {
+		Parameters parameters = new Parameters();
+		if(key != null) {
+			parameters.put(key, value);
+		}
+		Scan scan = new Scan();
+		scan.setGid(gid);
+		scan.setDataUrl(directory.getPath());
+		scan.setParameters(parameters);
+		return scan;
+	}
+
+	/**
+	 * The CDF file of the scan, as resolved by regular expressions before the resolver.
+	 */
+	@SuppressWarnings("deprecation")
+	protected File getCdfFileByRegex(Scan scan) throws CDFQueryException {
+		Parameters scanParams = scan.getParameters();
+		String dataFileBase = scanParams.get(PARAM_KEY_DATA_FILE_BASE);
+
+		if(dataFileBase == null) {
+			String cdfFileName = scanParams.get(PARAM_KEY_CDF_FILE_NAME);
+			if(cdfFileName != null) {
+				String cdfSuffixRegex = Pattern.quote(FILE_NAME_SUFFIX_CDF) + "\\Z";
+				dataFileBase = cdfFileName.replaceAll(cdfSuffixRegex, "");
+			}
+		}
+
+		if(dataFileBase == null) {
+			String dafFileName = scanParams.get(PARAM_KEY_DAF_FILE_NAME);
+			if(dafFileName != null) {
+				String dafSuffixRegex = Pattern.quote(FILE_NAME_SUFFIX_DAF_DATA) + "\\Z";
+				dataFileBase = dafFileName.replaceAll(dafSuffixRegex, "");
+			}
+		}
+
+		if(dataFileBase == null) {
+			throw new CDFQueryException("Cannot get CDF file base name from scan.");
+		}
+
+		return new File(scan.getDataUrl(), dataFileBase + FILE_NAME_SUFFIX_CDF);
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testSameAsRegex() throws CDFQueryException {
+		String[][] parameters = {
+			{ PARAM_KEY_DATA_FILE_BASE, "scan1" },
+			{ PARAM_KEY_DATA_FILE_BASE, "scan1.cdf" },
+			{ PARAM_KEY_CDF_FILE_NAME, "scan2.cdf" },
+			{ PARAM_KEY_CDF_FILE_NAME, "scan2.cdf.cdf" },
+			{ PARAM_KEY_CDF_FILE_NAME, "scan2.CDF" },
+			{ PARAM_KEY_CDF_FILE_NAME, "scan2.cdfx" },
+			{ PARAM_KEY_CDF_FILE_NAME, "scan2" },
+			{ PARAM_KEY_CDF_FILE_NAME, ".cdf" },
+			{ PARAM_KEY_DAF_FILE_NAME, "scan3.dat" },
+			{ PARAM_KEY_DAF_FILE_NAME, "scan3_spectra.dat" },
+			{ PARAM_KEY_DAF_FILE_NAME, "scan3.dat.dat" },
+			{ PARAM_KEY_DAF_FILE_NAME, "scan3.dat.txt" },
+			{ PARAM_KEY_DAF_FILE_NAME, "scan3" }
+		};
+		for(int idx = 0; idx < parameters.length; idx++) {
+			Scan scan = createScan("N" + idx, parameters[idx][0], parameters[idx][1]);
+			assertEquals(getCdfFileByRegex(scan), resolver.getCdfFile(scan));
+		}
+
+		// The data file base is used first, then the CDF file name, then the DAF file name. //
+		Scan scan = createScan("N100", PARAM_KEY_DAF_FILE_NAME, "scan3.dat");
+		scan.getParameters().put(PARAM_KEY_CDF_FILE_NAME, "scan2.cdf");
+		assertEquals(new File(directory, "scan2.cdf"), resolver.getCdfFile(scan));
+		scan = createScan("N101", PARAM_KEY_CDF_FILE_NAME, "scan2.cdf");
+		scan.getParameters().put(PARAM_KEY_DATA_FILE_BASE, "scan1");
+		assertEquals(new File(directory, "scan1.cdf"), resolver.getCdfFile(scan));
+	}
+
+	@Test(expected=CDFQueryException.class)
+	public void testNoFileName() throws CDFQueryException {
+		resolver.getCdfFile(createScan("N1", null, null));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testSignatureChanged() throws CDFQueryException {
+		Scan scan = createScan("N1", PARAM_KEY_DAF_FILE_NAME, "scan1.dat");
+		assertEquals(new File(directory, "scan1.cdf"), resolver.getCdfFile(scan));
+
+		// The same scan with new parameters is resolved again. //
+		scan = createScan("N1", PARAM_KEY_DAF_FILE_NAME, "scan2.dat");
+		assertEquals(new File(directory, "scan2.cdf"), resolver.getCdfFile(scan));
+
+		scan.setDataUrl(new File(directory, "data").getPath());
+		assertEquals(new File(new File(directory, "data"), "scan2.cdf"), resolver.getCdfFile(scan));
+		assertEquals(1, resolver.getNumberOfEntries());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testMissingRecheck() throws CDFQueryException, IOException, InterruptedException {
+		resolver.setMissingRecheckInterval(300L);
+		Scan scan = createScan("N1", PARAM_KEY_DATA_FILE_BASE, "scan1");
+		File cdfFile = resolver.getCdfFile(scan);
+		assertFalse(resolver.exists(scan));
+
+		// A missing file is not checked again until the interval has elapsed. //
+		assertTrue(cdfFile.createNewFile());
+		assertFalse(resolver.exists(scan));
+		Thread.sleep(400L);
+		assertTrue(resolver.exists(scan));
+
+		// An existing file is not checked again until the entry is invalidated. //
+		assertTrue(cdfFile.delete());
+		assertTrue(resolver.exists(scan));
+		resolver.invalidate(scan.getGid());
+		assertEquals(0, resolver.getNumberOfEntries());
+		assertFalse(resolver.exists(scan));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testInvalidate() throws CDFQueryException {
+		Scan scan1 = createScan("N1", PARAM_KEY_DATA_FILE_BASE, "scan1");
+		Scan scan2 = createScan("N2", PARAM_KEY_CDF_FILE_NAME, "scan1.cdf");
+		Scan scan3 = createScan("N3", PARAM_KEY_DATA_FILE_BASE, "scan3");
+		resolver.getCdfFile(scan1);
+		resolver.getCdfFile(scan2);
+		resolver.getCdfFile(scan3);
+		assertEquals(3, resolver.getNumberOfEntries());
+
+		resolver.invalidate("N3");
+		assertEquals(2, resolver.getNumberOfEntries());
+		resolver.invalidate("N4");
+		assertEquals(2, resolver.getNumberOfEntries());
+
+		// All scans with the file are invalidated, however the path is given. //
+		resolver.getCdfFile(scan3);
+		resolver.invalidate(new File(directory.getAbsoluteFile(), "scan1.cdf"));
+		assertEquals(1, resolver.getNumberOfEntries());
+		resolver.invalidate(new File(directory, "scan3.cdf"));
+		assertEquals(0, resolver.getNumberOfEntries());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testMaximumEntries() throws CDFQueryException {
+		resolver.setMaximumEntries(2);
+		for(int idx = 0; idx < 5; idx++) {
+			resolver.getCdfFile(createScan("N" + idx, PARAM_KEY_DATA_FILE_BASE, "scan" + idx));
+		}
+		assertEquals(2, resolver.getNumberOfEntries());
+		resolver.setMaximumEntries(-1);
+		assertEquals(0, resolver.getMaximumEntries());
+		assertEquals(0, resolver.getNumberOfEntries());
+	}
+}
@@ -0,0 +1,178 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFHandleCache class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import gsfc.nssdc.cdf.CDFException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.sciencestudio.data.support.CDFQueryException;
+
+public class TestCDFHandleCache {
+
+	private File directory;
+	private File cdfFile;
+
+	@Before
+	public void createFile() throws IOException {
+		directory = File.createTempFile("cache", "");
+		directory.delete();
+		directory.mkdir();
+		// The CDF file is only copied, it is not opened. //
+		cdfFile = new File(directory, "scan.cdf");
+		append("points 0-9\n");
+	}
+
+	@After
+	public void deleteFiles() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	protected void append(String text) throws IOException {
+		FileWriter writer = new FileWriter(cdfFile, true);
+		try {
+			writer.write(text);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	protected byte[] read(File file) throws IOException {
+		byte[] content = new byte[(int)file.length()];
+		FileInputStream input = new FileInputStream(file);
+		try {
+			int length = 0;
+			while(length < content.length) {
+				length += input.read(content, length, content.length - length);
+			}
+		}
+		finally {
+			input.close();
+		}
+		return content;
+	}
+
+	@Test
+	public void testAcquireWhileWriting() {
+		CDFHandleCache cache = new CDFHandleCache();
+		cache.beginWrite(cdfFile);
+		assertTrue(cache.isWriting(cdfFile));
+		try {
+			// The file is not opened while it is being written. //
+			cache.acquire(cdfFile);
+			fail("CDF file acquired while being written.");
+		}
+		catch(CDFException e) {
+			// expected //
+		}
+		assertEquals(0, cache.getNumberOfHandles());
+		assertEquals(cdfFile, cache.getReadableFile(cdfFile));
+	}
+
+	@Test
+	public void testEndWrite() {
+		CDFHandleCache cache = new CDFHandleCache();
+		cache.beginWrite(cdfFile);
+		cache.endWrite(cdfFile);
+		assertFalse(cache.isWriting(cdfFile));
+		assertFalse(cache.isWriting(new File(directory, "other.cdf")));
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		CDFHandleCache cache = new CDFHandleCache();
+		cache.beginWrite(cdfFile);
+
+		// The file is saved (flushed) and a snapshot published. //
+		File snapshotFile = cache.publishSnapshot(cdfFile);
+		assertEquals(CDFHandleCache.getSnapshotFile(cdfFile), snapshotFile);
+		assertEquals(snapshotFile, cache.getReadableFile(cdfFile));
+		byte[] flushed = read(cdfFile);
+		assertArrayEquals(flushed, read(snapshotFile));
+		long lastModified = snapshotFile.lastModified();
+
+		// Writing continues, the snapshot keeps the points flushed. //
+		append("points 10-");
+		assertArrayEquals(flushed, read(snapshotFile));
+
+		append("19\n");
+		cache.publishSnapshot(cdfFile);
+		assertArrayEquals(read(cdfFile), read(snapshotFile));
+		assertTrue(snapshotFile.lastModified() > lastModified);
+		assertTrue(cache.isWriting(cdfFile));
+
+		// The snapshot is deleted once writing ends, the file itself is then read. //
+		cache.endWrite(cdfFile);
+		assertFalse(snapshotFile.exists());
+		assertEquals(cdfFile, cache.getReadableFile(cdfFile));
+		// Only the CDF file remains, no temporary files. //
+		assertEquals(Arrays.asList(cdfFile), Arrays.asList(directory.listFiles()));
+	}
+
+	@Test(expected=IOException.class)
+	public void testSnapshotNotWriting() throws IOException {
+		new CDFHandleCache().publishSnapshot(cdfFile);
+	}
+
+	@Test
+	public void testQuerySnapshot() throws IOException {
+		RecordingHandleCache cache = new RecordingHandleCache();
+		cache.beginWrite(cdfFile);
+		File snapshotFile = cache.publishSnapshot(cdfFile);
+		try {
+			new CDFQuery(cdfFile, cache);
+			fail("CDF file opened by recording cache.");
+		}
+		catch(CDFQueryException e) {
+			// expected //
+		}
+		// A query opened while the file is being written reads the last snapshot. //
+		assertEquals(snapshotFile, cache.acquiredFile);
+
+		cache.endWrite(cdfFile);
+		try {
+			new CDFQuery(cdfFile, cache);
+			fail("CDF file opened by recording cache.");
+		}
+		catch(CDFQueryException e) {
+			// expected //
+		}
+		assertEquals(cdfFile, cache.acquiredFile);
+	}
+
+	/**
+	 * Cache which records the file acquired, without opening it.
+	 */
+	protected static class RecordingHandleCache extends CDFHandleCache {
+
+		private File acquiredFile;
+
+		public CDFHandle acquire(File cdfFile) throws CDFException {
+			acquiredFile = cdfFile;
+			throw new CDFException("CDF file not opened by recording cache: " + cdfFile);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFQueryCache class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.AND;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.EQ;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.GE;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.LT;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.OR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.sciencestudio.data.cdf.selector.CDFSelector;
+import ca.sciencestudio.data.record.PrimitiveColumnTable;
+import ca.sciencestudio.data.record.PrimitiveColumnTable.ColumnType;
+
+public class TestCDFQueryCache {
+
+	private static final String[] VAR_NAMES = { "I", "J" };
+
+	// The CDF files are not opened, the handles only give the path and modification time. //
+	private File cdfFile1 = new File("scan1.cdf");
+	private File cdfFile2 = new File("scan2.cdf");
+
+	protected CDFHandle createHandle(File cdfFile, long lastModified) {
+		return new CDFHandle(null, cdfFile.getAbsolutePath(), lastModified, null);
+	}
+
+	protected String getKey(File cdfFile, CDFSelector cdfSelector) {
+		return CDFQueryCache.getKey(createHandle(cdfFile, 1L), "columns", VAR_NAMES, cdfSelector);
+	}
+
+	/**
+	 * @return a table of one long column, of (16 + (8 * rows)) bytes
+	 */
+	protected PrimitiveColumnTable createTable(int numberOfRows) {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(new ColumnType[] { ColumnType.LONG });
+		for(int row = 0; row < numberOfRows; row++) {
+			table.addRow();
+		}
+		return table;
+	}
+
+	@Test
+	public void testKeys() {
+		CDFHandle handle = createHandle(cdfFile1, 1L);
+		List<String> keys = Arrays.asList(
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, null),
+			CDFQueryCache.getKey(handle, "records", VAR_NAMES, null),
+			// Projections //
+			CDFQueryCache.getKey(handle, "columns", new String[] { "I" }, null),
+			CDFQueryCache.getKey(handle, "columns", new String[] { "J", "I" }, null),
+			CDFQueryCache.getKey(handle, "columns", new String[] { "I,J" }, null),
+			// Selectors //
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, EQ("J", 1)),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, EQ("J", 2)),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, EQ("I", 1)),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, EQ("J", "1")),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, LT("J", 1)),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, GE("J", 1)),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, AND(EQ("J", 1), EQ("I", 2))),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, OR(EQ("J", 1), EQ("I", 2))),
+			CDFQueryCache.getKey(handle, "columns", VAR_NAMES, AND(EQ("I", 2), EQ("J", 1))),
+			// Files //
+			CDFQueryCache.getKey(createHandle(cdfFile1, 2L), "columns", VAR_NAMES, null),
+			CDFQueryCache.getKey(createHandle(cdfFile2, 1L), "columns", VAR_NAMES, null));
+
+		assertFalse(keys.contains(null));
+		assertEquals(keys.size(), new HashSet<String>(keys).size());
+
+		// Equal queries have equal keys. //
+		assertEquals(CDFQueryCache.getKey(handle, "columns", VAR_NAMES, AND(EQ("J", 1), EQ("I", 2))),
+				CDFQueryCache.getKey(createHandle(cdfFile1, 1L), "columns", new String[] { "I", "J" }, AND(EQ("J", 1), EQ("I", 2))));
+	}
+
+	@Test
+	public void testUnknownSelector() {
+		CDFSelector unknown = new CDFSelector() {
+			public boolean select(CDFRecord cdfRecord) {
+				return true;
+			}
+		};
+		assertNull(getKey(cdfFile1, unknown));
+		assertNull(getKey(cdfFile1, AND(EQ("J", 1), unknown)));
+		assertNull(getKey(cdfFile1, OR(unknown, EQ("J", 1))));
+	}
+
+	@Test
+	public void testEviction() {
+		CDFQueryCache cache = new CDFQueryCache();
+		cache.setMaximumBytes(3 * 96L);
+
+		String key1 = getKey(cdfFile1, EQ("J", 1));
+		String key2 = getKey(cdfFile1, EQ("J", 2));
+		String key3 = getKey(cdfFile1, EQ("J", 3));
+		String key4 = getKey(cdfFile1, EQ("J", 4));
+
+		PrimitiveColumnTable table1 = cache.putColumns(key1, createTable(10));
+		assertFalse(table1.isModifiable());
+		cache.putColumns(key2, createTable(10));
+		cache.putColumns(key3, createTable(10));
+		assertEquals(3, cache.getNumberOfEntries());
+		assertEquals(3 * 96L, cache.getNumberOfBytes());
+
+		// Key 1 is used, so key 2 is least recently used and is evicted. //
+		assertTrue(cache.getColumns(key1) == table1);
+		cache.putColumns(key4, createTable(10));
+		assertEquals(3, cache.getNumberOfEntries());
+		assertEquals(3 * 96L, cache.getNumberOfBytes());
+		assertNotNull(cache.getColumns(key1));
+		assertNull(cache.getColumns(key2));
+		assertNotNull(cache.getColumns(key3));
+		assertNotNull(cache.getColumns(key4));
+
+		// A larger result evicts more than one entry. //
+		cache.putColumns(key2, createTable(20));
+		assertEquals(2, cache.getNumberOfEntries());
+		assertEquals(96L + 176L, cache.getNumberOfBytes());
+		assertNull(cache.getColumns(key1));
+		assertNull(cache.getColumns(key3));
+
+		// A result larger than the cache is not cached, and replaces the result for its key. //
+		PrimitiveColumnTable large = cache.putColumns(key4, createTable(100));
+		assertEquals(100, large.getNumberOfRows());
+		assertNull(cache.getColumns(key4));
+		assertEquals(1, cache.getNumberOfEntries());
+		assertEquals(176L, cache.getNumberOfBytes());
+
+		// Reducing the maximum evicts entries. //
+		cache.setMaximumBytes(100L);
+		assertEquals(0, cache.getNumberOfEntries());
+		assertEquals(0L, cache.getNumberOfBytes());
+	}
+
+	@Test
+	public void testInvalidate() {
+		CDFQueryCache cache = new CDFQueryCache();
+		String key1 = getKey(cdfFile1, EQ("J", 1));
+		String key2 = getKey(cdfFile1, null);
+		String key3 = getKey(cdfFile2, EQ("J", 1));
+		cache.putColumns(key1, createTable(10));
+		cache.putColumns(key2, createTable(20));
+		cache.putColumns(key3, createTable(30));
+		assertEquals(96L + 176L + 256L, cache.getNumberOfBytes());
+
+		cache.invalidate(cdfFile1);
+		assertEquals(1, cache.getNumberOfEntries());
+		assertEquals(256L, cache.getNumberOfBytes());
+		assertNull(cache.getColumns(key1));
+		assertNull(cache.getColumns(key2));
+		assertNotNull(cache.getColumns(key3));
+
+		// A file whose path starts with the path of another file is not invalidated. //
+		cache.invalidate(new File("scan2"));
+		assertEquals(1, cache.getNumberOfEntries());
+
+		cache.invalidate(cdfFile2);
+		assertEquals(0, cache.getNumberOfEntries());
+		assertEquals(0L, cache.getNumberOfBytes());
+	}
+}
@@ -0,0 +1,98 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFRecordBuffer class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gsfc.nssdc.cdf.CDFException;
+import gsfc.nssdc.cdf.Variable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.sciencestudio.data.support.RecordFormatException;
+
+public class TestCDFRecordBuffer {
+
+	private static final int MAXIMUM_RECORDS = 4;
+
+	private CDFRecordBuffer buffer;
+	private CDFRecord record;
+
+	@Before
+	public void createBuffer() {
+		// An event without variables, so the CDF file is never written. //
+		CDFEvent event = new CDFEvent(new Variable[0]);
+		buffer = new CDFRecordBuffer(event, MAXIMUM_RECORDS);
+		record = new CDFRecord(event);
+	}
+
+	/**
+	 * Put the record and check that the records are flushed only when expected.
+	 */
+	protected void putRecord(long recordNumber, int expectedNumberOfRecords) throws CDFException, RecordFormatException {
+		boolean flushRequired = buffer.isFlushRequired(recordNumber);
+		int numberOfRecords = buffer.getNumberOfRecords();
+		buffer.putRecord(recordNumber, record);
+		assertEquals(expectedNumberOfRecords, buffer.getNumberOfRecords());
+		assertEquals(flushRequired, buffer.getNumberOfRecords() != (numberOfRecords + 1));
+	}
+
+	@Test
+	public void testFullBuffer() throws CDFException, RecordFormatException {
+		assertEquals(MAXIMUM_RECORDS, buffer.getMaximumRecords());
+		for(int rec = 0; rec < (MAXIMUM_RECORDS - 1); rec++) {
+			putRecord(rec, rec + 1);
+		}
+		// The last record fills the buffer, which is then written. //
+		assertTrue(buffer.isFlushRequired(MAXIMUM_RECORDS - 1));
+		putRecord(MAXIMUM_RECORDS - 1, 0);
+
+		// The next batch starts at the following record. //
+		assertFalse(buffer.isFlushRequired(MAXIMUM_RECORDS));
+		putRecord(MAXIMUM_RECORDS, 1);
+		putRecord(MAXIMUM_RECORDS + 1, 2);
+	}
+
+	@Test
+	public void testRecordNotConsecutive() throws CDFException, RecordFormatException {
+		putRecord(0, 1);
+		putRecord(1, 2);
+		// A record which is not consecutive writes the buffered records and starts a new batch. //
+		assertTrue(buffer.isFlushRequired(5));
+		putRecord(5, 1);
+		assertTrue(buffer.isFlushRequired(5));
+		putRecord(5, 1);
+		putRecord(6, 2);
+	}
+
+	@Test
+	public void testFlush() throws CDFException, RecordFormatException {
+		buffer.flush();
+		assertEquals(0, buffer.getNumberOfRecords());
+		assertFalse(buffer.isFlushRequired(10));
+
+		putRecord(10, 1);
+		buffer.flush();
+		assertEquals(0, buffer.getNumberOfRecords());
+		// After a flush any record number starts a new batch. //
+		assertFalse(buffer.isFlushRequired(3));
+		putRecord(3, 1);
+	}
+
+	@Test
+	public void testSingleRecordBuffer() throws CDFException, RecordFormatException {
+		buffer = new CDFRecordBuffer(record.getEvent(), 0);
+		assertEquals(1, buffer.getMaximumRecords());
+		assertTrue(buffer.isFlushRequired(0));
+		putRecord(0, 0);
+		putRecord(1, 0);
+	}
+}
@@ -0,0 +1,138 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestMapXYAxisMetadata class.
+ *     
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMapXYAxisMetadata {
+
+	private File directory;
+	private File cdfFile;
+
+	@Before
+	public void createFile() throws IOException {
+		directory = File.createTempFile("metadata", "");
+		directory.delete();
+		directory.mkdir();
+		// Only the length and modification time of the CDF file are used. //
+		cdfFile = new File(directory, "scan.cdf");
+		FileWriter writer = new FileWriter(cdfFile);
+		try {
+			writer.write("CDF");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	protected MapXYAxisMetadata createMetadata() {
+		int[] indexesI = MapXYAxisMetadata.getDistinctValues(new int[] { 2, 0, 1, 2, 0, 1 });
+		int[] indexesJ = MapXYAxisMetadata.getDistinctValues(new int[] { 0, 0, 0, 1, 1, 1 });
+		return new MapXYAxisMetadata(cdfFile.length(), cdfFile.lastModified(), 6, indexesI, indexesJ);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		File metadataFile = MapXYAxisMetadata.getMetadataFile(cdfFile);
+		createMetadata().save(metadataFile);
+
+		MapXYAxisMetadata metadata = MapXYAxisMetadata.load(cdfFile, metadataFile);
+		assertNotNull(metadata);
+		assertEquals(6, metadata.getNumberOfPoints());
+		assertArrayEquals(new int[] { 0, 1, 2 }, metadata.getIndexesI());
+		assertArrayEquals(new int[] { 0, 1 }, metadata.getIndexesJ());
+		assertEquals(2, metadata.getMaximumI());
+	}
+
+	@Test
+	public void testStaleMetadata() throws IOException {
+		File metadataFile = MapXYAxisMetadata.getMetadataFile(cdfFile);
+		createMetadata().save(metadataFile);
+
+		FileWriter writer = new FileWriter(cdfFile, true);
+		try {
+			writer.write("MORE");
+		}
+		finally {
+			writer.close();
+		}
+		assertNull(MapXYAxisMetadata.load(cdfFile, metadataFile));
+	}
+
+	@Test
+	public void testConcurrentSave() throws Exception {
+		final MapXYAxisMetadata metadata = createMetadata();
+		final File metadataFile = MapXYAxisMetadata.getMetadataFile(cdfFile);
+		metadata.save(metadataFile);
+
+		// Where rename cannot replace a file (Windows) a save may fail and the file may briefly be missing. //
+		final boolean atomicRename = (File.separatorChar == '/');
+		final List<String> errors = new ArrayList<String>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 8; t++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for(int n = 0; n < 50; n++) {
+						try {
+							metadata.save(metadataFile);
+						}
+						catch(IOException e) {
+							if(atomicRename) {
+								addError(e.toString());
+							}
+						}
+						if(atomicRename && (MapXYAxisMetadata.load(cdfFile, metadataFile) == null)) {
+							addError("Cannot load metadata while saving.");
+						}
+					}
+				}
+				
+				private void addError(String error) {
+					synchronized(errors) {
+						errors.add(error);
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertNotNull(MapXYAxisMetadata.load(cdfFile, metadataFile));
+		// Only the CDF and metadata files remain, no temporary files. //
+		assertEquals(2, directory.listFiles().length);
+	}
+}
@@ -0,0 +1,260 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestMapXYMapPyramid class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMapXYMapPyramid {
+
+	private static final int N_CHANNELS = 16;
+
+	private static final int MINIMUM_I = 3;
+	private static final int MINIMUM_J = 7;
+	private static final int SIZE_I = 5;
+	private static final int SIZE_J = 3;
+
+	private static final int[] FACTORS = { 1, 2 };
+
+	private File directory;
+	private File cdfFile;
+
+	@Before
+	public void createFile() throws IOException {
+		directory = File.createTempFile("pyramid", "");
+		directory.delete();
+		directory.mkdir();
+		// Only the length and modification time of the CDF file are used. //
+		cdfFile = new File(directory, "scan.cdf");
+		FileWriter writer = new FileWriter(cdfFile);
+		try {
+			writer.write("CDF");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	// Point (1,1) of the grid and the bottom right tile of level 1 (point (4,2)) have no data. //
+	protected boolean hasData(int i, int j) {
+		return !(((i == 1) && (j == 1)) || ((i == 4) && (j == 2)));
+	}
+
+	protected long[] createSpectrum(int i, int j) {
+		long[] spectrum = new long[N_CHANNELS];
+		spectrum[i % N_CHANNELS] = 10L + i;
+		spectrum[(N_CHANNELS - 1) - j] += 100L * (j + 1);
+		return spectrum;
+	}
+
+	protected MapXYMapPyramid buildPyramid() throws IOException {
+		MapXYSpectrumStoreWriter writer = new MapXYSpectrumStoreWriter(MapXYSpectrumStore.getStoreFile(cdfFile), "Spectrum", N_CHANNELS, true);
+		int numberOfPoints = 0;
+		int[] pointsI = new int[SIZE_I * SIZE_J];
+		int[] pointsJ = new int[SIZE_I * SIZE_J];
+		long[][] values = new long[1][SIZE_I * SIZE_J];
+		for(int j = 0; j < SIZE_J; j++) {
+			for(int i = 0; i < SIZE_I; i++) {
+				if(hasData(i, j)) {
+					writer.writeSpectrum(MINIMUM_I + i, MINIMUM_J + j, createSpectrum(i, j));
+					pointsI[numberOfPoints] = MINIMUM_I + i;
+					pointsJ[numberOfPoints] = MINIMUM_J + j;
+					values[0][numberOfPoints] = i + (j * 10);
+					numberOfPoints++;
+				}
+			}
+		}
+		writer.close(cdfFile);
+
+		MapXYROIMaps roiMaps = MapXYROIMaps.create(cdfFile.length(), cdfFile.lastModified(), new String[] { "Fe" }, pointsI, pointsJ, values, numberOfPoints);
+
+		MapXYSpectrumStore store = MapXYSpectrumStore.open(cdfFile);
+		assertNotNull(store);
+		try {
+			MapXYMapPyramid.build(cdfFile, store, roiMaps, FACTORS);
+		}
+		finally {
+			store.close();
+		}
+
+		MapXYMapPyramid pyramid = MapXYMapPyramid.open(cdfFile);
+		assertNotNull(pyramid);
+		return pyramid;
+	}
+
+	@Test
+	public void testLevels() throws IOException {
+		MapXYMapPyramid pyramid = buildPyramid();
+		try {
+			assertEquals("Spectrum", pyramid.getCdfVarName());
+			assertEquals(N_CHANNELS, pyramid.getNChannels());
+			assertEquals(MINIMUM_I, pyramid.getMinimumI());
+			assertEquals(MINIMUM_J, pyramid.getMinimumJ());
+			assertArrayEquals(new String[] { "Fe" }, pyramid.getNames());
+			assertEquals(2, pyramid.getNumberOfLevels());
+			assertEquals(SIZE_I, pyramid.getSizeI(0));
+			assertEquals(SIZE_J, pyramid.getSizeJ(0));
+			assertEquals(2, pyramid.getFactor(1));
+			assertEquals(3, pyramid.getSizeI(1));
+			assertEquals(2, pyramid.getSizeJ(1));
+			assertEquals(0, pyramid.getLevelForViewport(SIZE_I, SIZE_J));
+			assertEquals(1, pyramid.getLevelForViewport(3, 2));
+		}
+		finally {
+			pyramid.close();
+		}
+	}
+
+	@Test
+	public void testMaps() throws IOException {
+		MapXYMapPyramid pyramid = buildPyramid();
+		try {
+			for(int level = 0; level < FACTORS.length; level++) {
+				int factor = FACTORS[level];
+				long[][] integratedMap = pyramid.getIntegratedMap(level);
+				long[][] roiMap = pyramid.getROIMap(level, 0);
+				for(int tileJ = 0; tileJ < pyramid.getSizeJ(level); tileJ++) {
+					for(int tileI = 0; tileI < pyramid.getSizeI(level); tileI++) {
+						long counts = MapXYMapPyramid.MISSING_VALUE;
+						long roiValue = MapXYMapPyramid.MISSING_VALUE;
+						for(int j = tileJ * factor; (j < ((tileJ + 1) * factor)) && (j < SIZE_J); j++) {
+							for(int i = tileI * factor; (i < ((tileI + 1) * factor)) && (i < SIZE_I); i++) {
+								if(hasData(i, j)) {
+									long pointCounts = 0L;
+									for(long value : createSpectrum(i, j)) {
+										pointCounts += value;
+									}
+									counts = MapXYMapPyramid.addValue(counts, pointCounts);
+									roiValue = MapXYMapPyramid.addValue(roiValue, i + (j * 10));
+								}
+							}
+						}
+						assertEquals(counts, integratedMap[tileJ][tileI]);
+						assertEquals(roiValue, roiMap[tileJ][tileI]);
+					}
+				}
+			}
+			assertEquals(MapXYMapPyramid.MISSING_VALUE, pyramid.getIntegratedMap(0)[1][1]);
+		}
+		finally {
+			pyramid.close();
+		}
+	}
+
+	@Test
+	public void testTileSpectra() throws IOException {
+		MapXYMapPyramid pyramid = buildPyramid();
+		try {
+			// Level 0 has no tile spectra, the spectra are read from the spectrum store. //
+			assertNull(pyramid.getTileSpectrum(0, 0, 0));
+
+			long[] expected = new long[N_CHANNELS];
+			for(int j = 0; j < 2; j++) {
+				for(int i = 2; i < 4; i++) {
+					long[] spectrum = createSpectrum(i, j);
+					for(int channel = 0; channel < N_CHANNELS; channel++) {
+						expected[channel] += spectrum[channel];
+					}
+				}
+			}
+			assertArrayEquals(expected, pyramid.getTileSpectrum(1, 1, 0));
+
+			// The last row of tiles covers only the last row of the grid. //
+			assertArrayEquals(createSpectrum(0, 2), sum(pyramid.getTileSpectrum(1, 0, 1), createSpectrum(1, 2), -1));
+
+			assertNull(pyramid.getTileSpectrum(1, 2, 1));
+			assertNull(pyramid.getTileSpectrum(1, 3, 0));
+			assertNull(pyramid.getTileSpectrum(1, 0, -1));
+		}
+		finally {
+			pyramid.close();
+		}
+	}
+
+	@Test
+	public void testStalePyramid() throws IOException {
+		buildPyramid().close();
+
+		FileWriter writer = new FileWriter(cdfFile, true);
+		try {
+			writer.write("MORE");
+		}
+		finally {
+			writer.close();
+		}
+		assertNull(MapXYMapPyramid.open(cdfFile));
+	}
+
+	@Test
+	public void testCorruptBlock() throws IOException {
+		buildPyramid().close();
+
+		// Corrupt the last block of the file, the last region of interest map of the last level. //
+		RandomAccessFile pyramidFile = new RandomAccessFile(MapXYMapPyramid.getPyramidFile(cdfFile), "rw");
+		try {
+			pyramidFile.seek(pyramidFile.length() - 4);
+			int value = pyramidFile.readInt();
+			pyramidFile.seek(pyramidFile.length() - 4);
+			pyramidFile.writeInt(value ^ 0x5A5A5A5A);
+		}
+		finally {
+			pyramidFile.close();
+		}
+
+		MapXYMapPyramid pyramid = MapXYMapPyramid.open(cdfFile);
+		assertNotNull(pyramid);
+		try {
+			assertNotNull(pyramid.getIntegratedMap(1));
+			try {
+				pyramid.getROIMap(1, 0);
+				fail("Corrupt map block read without error.");
+			}
+			catch(IOException e) {
+				// expected //
+			}
+		}
+		finally {
+			pyramid.close();
+		}
+	}
+
+	@Test
+	public void testNoTemporaryFiles() throws IOException {
+		buildPyramid().close();
+		// Only the CDF, spectrum store and pyramid files remain. //
+		assertEquals(3, directory.listFiles().length);
+	}
+
+	protected long[] sum(long[] values1, long[] values2, long factor2) {
+		long[] sum = new long[values1.length];
+		for(int idx = 0; idx < sum.length; idx++) {
+			sum[idx] = values1[idx] + (factor2 * values2[idx]);
+		}
+		return sum;
+	}
+}
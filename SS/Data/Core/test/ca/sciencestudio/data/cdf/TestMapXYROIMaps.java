@@ -0,0 +1,111 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestMapXYROIMaps class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMapXYROIMaps {
+
+	private static final String[] NAMES = { "Fe", "Cu" };
+
+	private File directory;
+	private File cdfFile;
+
+	@Before
+	public void createFile() throws IOException {
+		directory = File.createTempFile("roimaps", "");
+		directory.delete();
+		directory.mkdir();
+		// Only the length and modification time of the CDF file are used. //
+		cdfFile = new File(directory, "scan.cdf");
+		FileWriter writer = new FileWriter(cdfFile);
+		try {
+			writer.write("CDF");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	protected MapXYROIMaps createMaps() throws IOException {
+		// Grid from (1,5) to (2,6), point (2,6) is missing and point (1,5) is written twice. //
+		int[] pointsI = { 1, 2, 1, 1 };
+		int[] pointsJ = { 5, 5, 6, 5 };
+		long[][] values = { { 10L, 20L, 30L, 40L }, { 1L, 2L, 3L, 4L } };
+		return MapXYROIMaps.create(cdfFile.length(), cdfFile.lastModified(), NAMES, pointsI, pointsJ, values, pointsI.length);
+	}
+
+	@Test
+	public void testCreate() throws IOException {
+		MapXYROIMaps maps = createMaps();
+		assertEquals(1, maps.getMinimumI());
+		assertEquals(2, maps.getSizeI());
+		assertEquals(5, maps.getMinimumJ());
+		assertEquals(2, maps.getSizeJ());
+		assertEquals(1, maps.getIndexByName("Cu"));
+		assertEquals(-1, maps.getIndexByName("Zn"));
+		assertArrayEquals(new long[] { 40L, 20L }, maps.getMap(0)[0]);
+		assertArrayEquals(new long[] { 30L, MapXYROIMaps.MISSING_VALUE }, maps.getMap(0)[1]);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		createMaps().save(MapXYROIMaps.getMapsFile(cdfFile));
+
+		MapXYROIMaps maps = MapXYROIMaps.load(cdfFile);
+		assertNotNull(maps);
+		assertArrayEquals(NAMES, maps.getNames());
+		assertEquals(2, maps.getSizeI());
+		assertEquals(2, maps.getSizeJ());
+		assertArrayEquals(new long[] { 4L, 2L }, maps.getMap(1)[0]);
+		assertArrayEquals(new long[] { 3L, MapXYROIMaps.MISSING_VALUE }, maps.getMap(1)[1]);
+		// Only the CDF and maps files remain, no temporary files. //
+		assertEquals(2, directory.listFiles().length);
+	}
+
+	@Test
+	public void testStaleMaps() throws IOException {
+		createMaps().save(MapXYROIMaps.getMapsFile(cdfFile));
+
+		FileWriter writer = new FileWriter(cdfFile, true);
+		try {
+			writer.write("MORE");
+		}
+		finally {
+			writer.close();
+		}
+		assertNull(MapXYROIMaps.load(cdfFile));
+	}
+
+	@Test(expected = IOException.class)
+	public void testGridTooLarge() throws IOException {
+		int[] pointsI = { 0, 100000 };
+		int[] pointsJ = { 0, 100000 };
+		long[][] values = { { 1L, 2L } };
+		MapXYROIMaps.create(cdfFile.length(), cdfFile.lastModified(), new String[] { "Fe" }, pointsI, pointsJ, values, pointsI.length);
+	}
+}
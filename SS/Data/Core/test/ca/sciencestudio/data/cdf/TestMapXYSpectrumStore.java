@@ -0,0 +1,198 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestMapXYSpectrumStore class.
+ *
+ */
+package ca.sciencestudio.data.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMapXYSpectrumStore {
+
+	private static final int N_CHANNELS = 100;
+
+	private File directory;
+	private File cdfFile;
+
+	@Before
+	public void createFile() throws IOException {
+		directory = File.createTempFile("spectra", "");
+		directory.delete();
+		directory.mkdir();
+		// Only the length and modification time of the CDF file are used. //
+		cdfFile = new File(directory, "scan.cdf");
+		FileWriter writer = new FileWriter(cdfFile);
+		try {
+			writer.write("CDF");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	protected long[] createSpectrum(int pointI, int pointJ) {
+		long[] spectrum = new long[N_CHANNELS];
+		for(int idx = 0; idx < N_CHANNELS; idx++) {
+			spectrum[idx] = ((idx % 7) == 0) ? ((pointI * 1000) + (pointJ * 100) + idx) : 0;
+		}
+		return spectrum;
+	}
+
+	protected int[] toInts(long[] spectrum) {
+		int[] values = new int[spectrum.length];
+		for(int idx = 0; idx < spectrum.length; idx++) {
+			values[idx] = (int)spectrum[idx];
+		}
+		return values;
+	}
+
+	protected void writeStore(boolean compressed) throws IOException {
+		File storeFile = MapXYSpectrumStore.getStoreFile(cdfFile);
+		MapXYSpectrumStoreWriter writer = new MapXYSpectrumStoreWriter(storeFile, "Spectrum", N_CHANNELS, compressed);
+		// Grid from (2,1) to (4,3), point (3,2) is missing and point (4,3) is written twice. //
+		for(int j = 1; j <= 3; j++) {
+			for(int i = 2; i <= 4; i++) {
+				if((i != 3) || (j != 2)) {
+					writer.writeSpectrum(i, j, createSpectrum(i, j));
+				}
+			}
+		}
+		writer.writeSpectrum(4, 3, createSpectrum(9, 9));
+		writer.close(cdfFile);
+	}
+
+	protected void testRoundTrip(boolean compressed) throws IOException {
+		writeStore(compressed);
+
+		MapXYSpectrumStore store = MapXYSpectrumStore.open(cdfFile);
+		assertNotNull(store);
+		try {
+			assertEquals("Spectrum", store.getCdfVarName());
+			assertEquals(N_CHANNELS, store.getNChannels());
+			assertEquals(compressed, store.isCompressed());
+			assertEquals(2, store.getMinimumI());
+			assertEquals(3, store.getSizeI());
+			assertEquals(1, store.getMinimumJ());
+			assertEquals(3, store.getSizeJ());
+
+			assertArrayEquals(toInts(createSpectrum(2, 1)), store.getSpectrum(2, 1));
+			assertArrayEquals(toInts(createSpectrum(4, 2)), store.getSpectrum(4, 2));
+			assertArrayEquals(toInts(createSpectrum(2, 3)), store.getSpectrum(2, 3));
+			assertArrayEquals(toInts(createSpectrum(9, 9)), store.getSpectrum(4, 3));
+
+			assertNull(store.getSpectrum(3, 2));
+			assertNull(store.getSpectrum(1, 1));
+			assertNull(store.getSpectrum(5, 1));
+			assertNull(store.getSpectrum(2, 0));
+			assertNull(store.getSpectrum(2, 4));
+		}
+		finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void testCompressedRoundTrip() throws IOException {
+		testRoundTrip(true);
+	}
+
+	@Test
+	public void testUncompressedRoundTrip() throws IOException {
+		testRoundTrip(false);
+	}
+
+	@Test
+	public void testCompressedIsSmaller() throws IOException {
+		writeStore(false);
+		long uncompressedLength = MapXYSpectrumStore.getStoreFile(cdfFile).length();
+		writeStore(true);
+		long compressedLength = MapXYSpectrumStore.getStoreFile(cdfFile).length();
+		assertTrue(compressedLength < uncompressedLength);
+	}
+
+	@Test
+	public void testNoTemporaryFiles() throws IOException {
+		writeStore(true);
+		// Only the CDF and store files remain. //
+		assertEquals(2, directory.listFiles().length);
+	}
+
+	@Test
+	public void testDiscardedStore() throws IOException {
+		File storeFile = MapXYSpectrumStore.getStoreFile(cdfFile);
+		MapXYSpectrumStoreWriter writer = new MapXYSpectrumStoreWriter(storeFile, "Spectrum", N_CHANNELS, true);
+		writer.writeSpectrum(0, 0, createSpectrum(0, 0));
+		writer.delete();
+
+		assertFalse(storeFile.exists());
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test(expected=IOException.class)
+	public void testSpectrumLengthMismatch() throws IOException {
+		File storeFile = MapXYSpectrumStore.getStoreFile(cdfFile);
+		MapXYSpectrumStoreWriter writer = new MapXYSpectrumStoreWriter(storeFile, "Spectrum", N_CHANNELS, true);
+		try {
+			writer.writeSpectrum(0, 0, new long[N_CHANNELS - 1]);
+		}
+		finally {
+			writer.delete();
+		}
+	}
+
+	@Test
+	public void testStaleStore() throws IOException {
+		writeStore(true);
+
+		FileWriter writer = new FileWriter(cdfFile, true);
+		try {
+			writer.write("MORE");
+		}
+		finally {
+			writer.close();
+		}
+		assertNull(MapXYSpectrumStore.open(cdfFile));
+	}
+
+	@Test
+	public void testCorruptStore() throws IOException {
+		writeStore(true);
+
+		// Corrupt the first byte of the header, after the magic, version and header length. //
+		RandomAccessFile storeFile = new RandomAccessFile(MapXYSpectrumStore.getStoreFile(cdfFile), "rw");
+		try {
+			storeFile.seek(12);
+			int value = storeFile.read();
+			storeFile.seek(12);
+			storeFile.write(value ^ 0xFF);
+		}
+		finally {
+			storeFile.close();
+		}
+		assertNull(MapXYSpectrumStore.open(cdfFile));
+	}
+}
@@ -0,0 +1,126 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestIntCDFIndex class.
+ *
+ */
+package ca.sciencestudio.data.cdf.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestIntCDFIndex {
+
+	// Unsorted, with negative and duplicate values. //
+	private static final int[] VALUES = { 5, -3, 7, 5, -3, 0, Integer.MIN_VALUE, 7, 5, Integer.MAX_VALUE, -1 };
+
+	/**
+	 * @return the record numbers with values in the range, by scanning the values
+	 */
+	protected int[] scan(int[] values, long minimum, long maximum) {
+		int[] records = new int[values.length];
+		int length = 0;
+		for(int rec = 0; rec < values.length; rec++) {
+			if((values[rec] >= minimum) && (values[rec] <= maximum)) {
+				records[length++] = rec;
+			}
+		}
+		int[] result = new int[length];
+		System.arraycopy(records, 0, result, 0, length);
+		return result;
+	}
+
+	protected void assertRange(IntCDFIndex index, int[] values, long minimum, long maximum) {
+		int[] expected = scan(values, minimum, maximum);
+		// The record numbers are in ascending order. //
+		assertArrayEquals(expected, index.getRecordsInRange(minimum, maximum));
+		assertEquals(expected.length, index.getNumberOfRecordsInRange(minimum, maximum));
+	}
+
+	@Test
+	public void testUnsortedValues() {
+		IntCDFIndex index = new IntCDFIndex("Var", VALUES);
+		assertEquals("Var", index.getCdfVarName());
+		assertEquals(VALUES.length, index.getNumberOfRecords());
+		assertFalse(index.isSortedByRecord());
+
+		assertArrayEquals(new int[] { 0, 3, 8 }, index.getRecordsEqual(5));
+		assertArrayEquals(new int[] { 1, 4 }, index.getRecordsEqual(-3));
+		assertArrayEquals(new int[] { 6 }, index.getRecordsEqual(Integer.MIN_VALUE));
+		assertArrayEquals(new int[0], index.getRecordsEqual(4));
+
+		assertRange(index, VALUES, -3, 5);
+		assertRange(index, VALUES, -1, 7);
+		assertRange(index, VALUES, Long.MIN_VALUE, -1);
+		assertRange(index, VALUES, 6, Long.MAX_VALUE);
+		assertRange(index, VALUES, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		assertRange(index, VALUES, 1, 4);
+		assertRange(index, VALUES, 5, 4);
+
+		assertArrayEquals(new int[] { Integer.MIN_VALUE, -3, -1, 0, 5, 7, Integer.MAX_VALUE }, index.getDistinctValues());
+		assertEquals(Integer.MIN_VALUE, index.getMinimumValue());
+		assertEquals(Integer.MAX_VALUE, index.getMaximumValue());
+	}
+
+	@Test
+	public void testRandomValues() {
+		Random random = new Random(1L);
+		int[] values = new int[500];
+		for(int rec = 0; rec < values.length; rec++) {
+			values[rec] = random.nextInt(41) - 20;
+		}
+		IntCDFIndex index = new IntCDFIndex("Var", values);
+		for(int minimum = -22; minimum <= 22; minimum += 3) {
+			for(int maximum = minimum - 1; maximum <= 22; maximum += 5) {
+				assertRange(index, values, minimum, maximum);
+			}
+		}
+	}
+
+	@Test
+	public void testSortedValues() {
+		// Not decreasing, with negative and duplicate values. //
+		int[] values = { Integer.MIN_VALUE, -4, -4, -1, 0, 0, 0, 3, 8, 8, Integer.MAX_VALUE };
+		IntCDFIndex index = new IntCDFIndex("Var", values);
+		assertTrue(index.isSortedByRecord());
+
+		// The positions in the sorted index are the record numbers. //
+		long[][] ranges = { { -4, -4 }, { -4, 0 }, { -3, 2 }, { 0, 8 }, { 1, 2 }, { Long.MIN_VALUE, -4 }, { 8, Long.MAX_VALUE },
+				{ Integer.MIN_VALUE, Integer.MAX_VALUE }, { Long.MIN_VALUE, Long.MAX_VALUE }, { 5, 4 } };
+		for(long[] range : ranges) {
+			int[] expected = scan(values, range[0], range[1]);
+			int start = index.getStartIndex(range[0]);
+			int end = index.getEndIndex(range[1]);
+			assertEquals(expected.length, Math.max(end - start, 0));
+			for(int idx = 0; idx < expected.length; idx++) {
+				assertEquals(expected[idx], start + idx);
+			}
+			assertRange(index, values, range[0], range[1]);
+		}
+	}
+
+	@Test
+	public void testSortedByRecord() {
+		assertTrue(new IntCDFIndex("Var", new int[0]).isSortedByRecord());
+		assertTrue(new IntCDFIndex("Var", new int[] { 2, 2, 2 }).isSortedByRecord());
+		assertFalse(new IntCDFIndex("Var", new int[] { 0, 1, 2, 1 }).isSortedByRecord());
+		assertFalse(new IntCDFIndex("Var", new int[] { 0, Integer.MIN_VALUE }).isSortedByRecord());
+	}
+
+	@Test
+	public void testEmpty() {
+		IntCDFIndex index = new IntCDFIndex("Var", new int[0]);
+		assertArrayEquals(new int[0], index.getRecordsInRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(0, index.getNumberOfRecordsInRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(0, index.getDistinctValues().length);
+		assertEquals(Integer.MAX_VALUE, index.getMinimumValue());
+		assertEquals(Integer.MIN_VALUE, index.getMaximumValue());
+	}
+}
@@ -0,0 +1,44 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestStringCDFIndex class.
+ *
+ */
+package ca.sciencestudio.data.cdf.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestStringCDFIndex {
+
+	// Unsorted, with duplicate and missing values. //
+	private static final String[] VALUES = { "Fe", "Cu", null, "Fe", "", "Zn", "Cu", "Fe", null };
+
+	@Test
+	public void testRecordsEqual() {
+		StringCDFIndex index = new StringCDFIndex("Var", VALUES);
+		assertEquals(VALUES.length, index.getNumberOfRecords());
+		assertEquals(4, index.getNumberOfDistinctValues());
+
+		// The record numbers are in ascending order. //
+		assertArrayEquals(new int[] { 0, 3, 7 }, index.getRecordsEqual("Fe"));
+		assertArrayEquals(new int[] { 1, 6 }, index.getRecordsEqual("Cu"));
+		assertArrayEquals(new int[] { 4 }, index.getRecordsEqual(""));
+		assertArrayEquals(new int[0], index.getRecordsEqual("fe"));
+		// Records without a value are not indexed. //
+		assertArrayEquals(new int[0], index.getRecordsEqual(null));
+
+		assertEquals(3, index.getNumberOfRecordsEqual("Fe"));
+		assertEquals(0, index.getNumberOfRecordsEqual("Mn"));
+	}
+
+	@Test
+	public void testRecordsCopied() {
+		StringCDFIndex index = new StringCDFIndex("Var", VALUES);
+		index.getRecordsEqual("Fe")[0] = 100;
+		assertArrayEquals(new int[] { 0, 3, 7 }, index.getRecordsEqual("Fe"));
+	}
+}
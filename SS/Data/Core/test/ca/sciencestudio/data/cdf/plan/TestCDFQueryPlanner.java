@@ -0,0 +1,243 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFQueryPlanner class.
+ *
+ */
+package ca.sciencestudio.data.cdf.plan;
+
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.AND;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.EQ;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.GE;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.GT;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.LE;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.LT;
+import static ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder.OR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.sciencestudio.data.cdf.CDFRecord;
+import ca.sciencestudio.data.cdf.index.CDFIndexRegistry;
+import ca.sciencestudio.data.cdf.index.IntCDFIndex;
+import ca.sciencestudio.data.cdf.index.StringCDFIndex;
+import ca.sciencestudio.data.cdf.plan.CDFQueryPlan.AccessPath;
+import ca.sciencestudio.data.cdf.selector.CDFSelector;
+import ca.sciencestudio.data.cdf.selector.LogicalOrCDFSelector;
+
+public class TestCDFQueryPlanner {
+
+	private static final int NUMBER_OF_RECORDS = 12;
+
+	// J is sorted by record, I is not, X is not indexed. //
+	private static final String[] VAR_NAMES = { "I", "J", "X" };
+
+	private CDFQueryPlanner planner = new CDFQueryPlanner(createRegistry());
+
+	protected CDFIndexRegistry createRegistry() {
+		int[] valuesI = new int[NUMBER_OF_RECORDS];
+		int[] valuesJ = new int[NUMBER_OF_RECORDS];
+		String[] valuesName = new String[NUMBER_OF_RECORDS];
+		for(int rec = 0; rec < NUMBER_OF_RECORDS; rec++) {
+			valuesI[rec] = rec % 4;
+			valuesJ[rec] = rec / 4;
+			valuesName[rec] = ((rec % 2) == 0) ? "even" : "odd";
+		}
+
+		StubIndexRegistry registry = new StubIndexRegistry();
+		registry.intIndexes.put("I", new IntCDFIndex("I", valuesI));
+		registry.intIndexes.put("J", new IntCDFIndex("J", valuesJ));
+		registry.intIndexes.put("N", new IntCDFIndex("N", new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE, 0, Integer.MIN_VALUE, Integer.MAX_VALUE }));
+		registry.stringIndexes.put("Name", new StringCDFIndex("Name", valuesName));
+		return registry;
+	}
+
+	protected int[] range(int start, int end) {
+		return CDFRecordSet.range(start, end).toArray();
+	}
+
+	@Test
+	public void testNoSelector() {
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, null);
+		assertEquals(AccessPath.FULL_SCAN, plan.getAccessPath());
+		assertNull(plan.getRecordSet());
+		assertNull(plan.getResidualSelector());
+	}
+
+	@Test
+	public void testRangePath() {
+		// The records of a variable sorted by record are a contiguous range. //
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, EQ("J", 1));
+		assertEquals(AccessPath.RANGE_SCAN, plan.getAccessPath());
+		assertTrue(plan.getRecordSet().isRange());
+		assertArrayEquals(range(4, 8), plan.getRecordSet().toArray());
+		assertNull(plan.getResidualSelector());
+		assertNull(plan.getResidualVarNames());
+
+		plan = planner.plan(VAR_NAMES, GT("J", 0));
+		assertEquals(AccessPath.RANGE_SCAN, plan.getAccessPath());
+		assertArrayEquals(range(4, 12), plan.getRecordSet().toArray());
+	}
+
+	@Test
+	public void testListPath() {
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, EQ("I", 2));
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 2, 6, 10 }, plan.getRecordSet().toArray());
+		assertNull(plan.getResidualSelector());
+
+		plan = planner.plan(VAR_NAMES, GE("I", 2));
+		assertArrayEquals(new int[] { 2, 3, 6, 7, 10, 11 }, plan.getRecordSet().toArray());
+
+		plan = planner.plan(VAR_NAMES, EQ("Name", "odd"));
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 1, 3, 5, 7, 9, 11 }, plan.getRecordSet().toArray());
+
+		plan = planner.plan(VAR_NAMES, EQ("Name", "none"));
+		assertEquals(0, plan.getRecordSet().size());
+	}
+
+	@Test
+	public void testAndIndexedUnindexed() {
+		CDFSelector unindexed = GT("X", 5);
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, AND(EQ("J", 1), unindexed));
+		assertEquals(AccessPath.RANGE_SCAN, plan.getAccessPath());
+		assertArrayEquals(range(4, 8), plan.getRecordSet().toArray());
+		// Only the unindexed term remains, its variable is read first. //
+		assertTrue(plan.getResidualSelector() == unindexed);
+		assertArrayEquals(new String[] { "X" }, plan.getResidualVarNames());
+
+		plan = planner.plan(VAR_NAMES, AND(unindexed, EQ("I", 0)));
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 0, 4, 8 }, plan.getRecordSet().toArray());
+		assertTrue(plan.getResidualSelector() == unindexed);
+
+		// The residual variables are not read first if they are all the variables queried. //
+		plan = planner.plan(new String[] { "X" }, AND(EQ("J", 1), unindexed));
+		assertTrue(plan.getResidualSelector() == unindexed);
+		assertNull(plan.getResidualVarNames());
+	}
+
+	@Test
+	public void testAndIndexed() {
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, AND(GE("J", 1), EQ("I", 0)));
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 4, 8 }, plan.getRecordSet().toArray());
+		assertNull(plan.getResidualSelector());
+
+		plan = planner.plan(VAR_NAMES, AND(GE("J", 1), LT("J", 2)));
+		assertEquals(AccessPath.RANGE_SCAN, plan.getAccessPath());
+		assertArrayEquals(range(4, 8), plan.getRecordSet().toArray());
+	}
+
+	@Test
+	public void testOrUnindexed() {
+		CDFSelector indexed = EQ("J", 0);
+		CDFSelector unindexed = LT("X", 3);
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, OR(indexed, unindexed));
+		assertEquals(AccessPath.FULL_SCAN, plan.getAccessPath());
+		assertNull(plan.getRecordSet());
+
+		// The whole selector is evaluated, the terms may be reordered. //
+		assertTrue(plan.getResidualSelector() instanceof LogicalOrCDFSelector);
+		LogicalOrCDFSelector residual = (LogicalOrCDFSelector)plan.getResidualSelector();
+		assertEquals(new HashSet<CDFSelector>(Arrays.asList(indexed, unindexed)),
+				new HashSet<CDFSelector>(Arrays.asList(residual.getCdfSelector1(), residual.getCdfSelector2())));
+		assertArrayEquals(new String[] { "J", "X" }, sort(plan.getResidualVarNames()));
+
+		// An AND of an indexed term with the OR is narrowed by the indexed term. //
+		plan = planner.plan(VAR_NAMES, AND(EQ("I", 1), OR(indexed, unindexed)));
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 1, 5, 9 }, plan.getRecordSet().toArray());
+		assertTrue(plan.getResidualSelector() instanceof LogicalOrCDFSelector);
+	}
+
+	@Test
+	public void testOrIndexed() {
+		// Adjacent ranges remain a range. //
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, OR(EQ("J", 0), EQ("J", 1)));
+		assertEquals(AccessPath.RANGE_SCAN, plan.getAccessPath());
+		assertArrayEquals(range(0, 8), plan.getRecordSet().toArray());
+		assertNull(plan.getResidualSelector());
+
+		plan = planner.plan(VAR_NAMES, OR(EQ("J", 0), EQ("J", 2)));
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 8, 9, 10, 11 }, plan.getRecordSet().toArray());
+		assertNull(plan.getResidualSelector());
+
+		// A term which is not answered exactly needs the whole selector. //
+		CDFSelector selector = OR(AND(EQ("J", 0), GT("X", 1)), EQ("I", 3));
+		plan = planner.plan(VAR_NAMES, selector);
+		assertEquals(AccessPath.INDEX_LOOKUP, plan.getAccessPath());
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 7, 11 }, plan.getRecordSet().toArray());
+		assertTrue(plan.getResidualSelector() instanceof LogicalOrCDFSelector);
+	}
+
+	@Test
+	public void testLimits() {
+		// Sorted by record. //
+		assertEquals(0, planner.plan(VAR_NAMES, LT("J", Integer.MIN_VALUE)).getRecordSet().size());
+		assertEquals(0, planner.plan(VAR_NAMES, LE("J", Integer.MIN_VALUE)).getRecordSet().size());
+		assertEquals(0, planner.plan(VAR_NAMES, GT("J", Integer.MAX_VALUE)).getRecordSet().size());
+		assertEquals(NUMBER_OF_RECORDS, planner.plan(VAR_NAMES, GE("J", Integer.MIN_VALUE)).getRecordSet().size());
+		assertEquals(NUMBER_OF_RECORDS, planner.plan(VAR_NAMES, LE("J", Integer.MAX_VALUE)).getRecordSet().size());
+
+		// Not sorted by record, with values at the limits. //
+		assertArrayEquals(new int[0], planner.plan(VAR_NAMES, LT("N", Integer.MIN_VALUE)).getRecordSet().toArray());
+		assertArrayEquals(new int[] { 1, 3 }, planner.plan(VAR_NAMES, LE("N", Integer.MIN_VALUE)).getRecordSet().toArray());
+		assertArrayEquals(new int[] { 0, 2, 4 }, planner.plan(VAR_NAMES, GT("N", Integer.MIN_VALUE)).getRecordSet().toArray());
+		assertArrayEquals(new int[0], planner.plan(VAR_NAMES, GT("N", Integer.MAX_VALUE)).getRecordSet().toArray());
+		assertArrayEquals(new int[] { 0, 4 }, planner.plan(VAR_NAMES, GE("N", Integer.MAX_VALUE)).getRecordSet().toArray());
+		assertArrayEquals(new int[] { 1, 2, 3 }, planner.plan(VAR_NAMES, LT("N", Integer.MAX_VALUE)).getRecordSet().toArray());
+	}
+
+	@Test
+	public void testUnknownSelector() {
+		CDFSelector unknown = new CDFSelector() {
+			public boolean select(CDFRecord cdfRecord) {
+				return true;
+			}
+		};
+		CDFQueryPlan plan = planner.plan(VAR_NAMES, AND(EQ("J", 2), unknown));
+		assertEquals(AccessPath.RANGE_SCAN, plan.getAccessPath());
+		assertTrue(plan.getResidualSelector() == unknown);
+		// The variables used by the selector are not known, so the whole record is read. //
+		assertNull(plan.getResidualVarNames());
+	}
+
+	protected String[] sort(String[] values) {
+		String[] sorted = Arrays.copyOf(values, values.length);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Registry of prebuilt indexes, without a CDF file.
+	 */
+	protected static class StubIndexRegistry extends CDFIndexRegistry {
+
+		private Map<String,IntCDFIndex> intIndexes = new HashMap<String,IntCDFIndex>();
+		private Map<String,StringCDFIndex> stringIndexes = new HashMap<String,StringCDFIndex>();
+
+		public StubIndexRegistry() {
+			super(null);
+		}
+
+		public IntCDFIndex getIntIndex(String cdfVarName) {
+			return intIndexes.get(cdfVarName);
+		}
+
+		public StringCDFIndex getStringIndex(String cdfVarName) {
+			return stringIndexes.get(cdfVarName);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestCDFRecordSet class.
+ *
+ */
+package ca.sciencestudio.data.cdf.plan;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestCDFRecordSet {
+
+	protected void assertRange(int start, int end, CDFRecordSet recordSet) {
+		assertTrue(recordSet.isRange());
+		assertEquals(end - start, recordSet.size());
+		if(recordSet.size() > 0) {
+			assertEquals(start, recordSet.getRecordNumber(0));
+		}
+	}
+
+	protected void assertList(int[] recordNumbers, CDFRecordSet recordSet) {
+		assertFalse(recordSet.isRange());
+		assertArrayEquals(recordNumbers, recordSet.toArray());
+	}
+
+	@Test
+	public void testRange() {
+		CDFRecordSet recordSet = CDFRecordSet.range(3, 6);
+		assertRange(3, 6, recordSet);
+		assertArrayEquals(new int[] { 3, 4, 5 }, recordSet.toArray());
+		// An inverted range is empty. //
+		assertEquals(0, CDFRecordSet.range(6, 3).size());
+	}
+
+	@Test
+	public void testIntersectRanges() {
+		assertRange(4, 6, CDFRecordSet.range(2, 6).intersect(CDFRecordSet.range(4, 9)));
+		assertRange(4, 6, CDFRecordSet.range(4, 9).intersect(CDFRecordSet.range(2, 6)));
+		// Adjacent and disjoint ranges do not intersect. //
+		assertEquals(0, CDFRecordSet.range(2, 6).intersect(CDFRecordSet.range(6, 9)).size());
+		assertEquals(0, CDFRecordSet.range(2, 4).intersect(CDFRecordSet.range(7, 9)).size());
+		assertEquals(0, CDFRecordSet.range(2, 6).intersect(CDFRecordSet.range(4, 4)).size());
+	}
+
+	@Test
+	public void testUnionRanges() {
+		assertRange(2, 9, CDFRecordSet.range(2, 6).union(CDFRecordSet.range(4, 9)));
+		// Adjacent ranges are merged. //
+		assertRange(2, 9, CDFRecordSet.range(6, 9).union(CDFRecordSet.range(2, 6)));
+		// Disjoint ranges become a list. //
+		assertList(new int[] { 2, 3, 7, 8 }, CDFRecordSet.range(2, 4).union(CDFRecordSet.range(7, 9)));
+		// An empty range is ignored wherever it is. //
+		assertRange(2, 4, CDFRecordSet.range(2, 4).union(CDFRecordSet.range(20, 20)));
+		assertRange(2, 4, CDFRecordSet.range(20, 20).union(CDFRecordSet.range(2, 4)));
+		assertEquals(0, CDFRecordSet.range(5, 5).union(CDFRecordSet.range(9, 9)).size());
+	}
+
+	@Test
+	public void testRangeAndList() {
+		CDFRecordSet range = CDFRecordSet.range(2, 6);
+		CDFRecordSet list = CDFRecordSet.list(new int[] { 0, 2, 5, 6, 9 });
+		assertList(new int[] { 2, 5 }, range.intersect(list));
+		assertList(new int[] { 2, 5 }, list.intersect(range));
+		assertList(new int[] { 0, 2, 3, 4, 5, 6, 9 }, range.union(list));
+		assertList(new int[] { 0, 2, 3, 4, 5, 6, 9 }, list.union(range));
+
+		// Ranges before, after and between the records. //
+		assertList(new int[0], list.intersect(CDFRecordSet.range(10, 20)));
+		assertList(new int[0], list.intersect(CDFRecordSet.range(3, 5)));
+		assertList(new int[0], CDFRecordSet.range(7, 7).intersect(list));
+		assertList(new int[] { 0, 2, 5, 6, 9 }, list.union(CDFRecordSet.range(7, 7)));
+	}
+
+	@Test
+	public void testLists() {
+		CDFRecordSet list1 = CDFRecordSet.list(new int[] { 1, 3, 5, 7 });
+		CDFRecordSet list2 = CDFRecordSet.list(new int[] { 0, 3, 4, 7, 8 });
+		assertList(new int[] { 3, 7 }, list1.intersect(list2));
+		assertList(new int[] { 0, 1, 3, 4, 5, 7, 8 }, list1.union(list2));
+		assertList(new int[] { 0, 1, 3, 4, 5, 7, 8 }, list2.union(list1));
+
+		CDFRecordSet empty = CDFRecordSet.list(new int[0]);
+		assertList(new int[0], list1.intersect(empty));
+		assertList(new int[] { 1, 3, 5, 7 }, empty.union(list1));
+		assertList(new int[0], list1.intersect(CDFRecordSet.list(new int[] { 0, 2, 8 })));
+	}
+}
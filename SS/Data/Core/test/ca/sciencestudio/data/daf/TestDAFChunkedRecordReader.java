@@ -0,0 +1,106 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestDAFChunkedRecordReader class.
+ *     
+ */
+package ca.sciencestudio.data.daf;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ca.sciencestudio.util.text.PeekableBufferedReader;
+
+public class TestDAFChunkedRecordReader {
+
+	private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Record parser which returns a record for every line, including empty lines.
+	 */
+	protected static class LineRecordParser implements DAFRecordParser {
+
+		private DAFEvent event = new DAFEvent(0);
+
+		public DAFRecord parseRecord(Collection<DAFEvent> events, PeekableBufferedReader reader) throws IOException {
+			String line = reader.readLine();
+			return (line != null) ? new DAFRecord(event, new Object[] { line }) : null;
+		}
+	}
+
+	protected List<String> readLines(String text, int chunkLength) throws IOException {
+		PeekableBufferedReader reader = new PeekableBufferedReader(new StringReader(text));
+		DAFChunkedRecordReader chunkedReader = new DAFChunkedRecordReader(reader, executor,
+				Collections.<DAFEvent>emptyList(), new LineRecordParser(), Collections.<DAFRecordParser>emptyList());
+		chunkedReader.setChunkLength(chunkLength);
+
+		List<String> lines = new ArrayList<String>();
+		DAFRecord record;
+		while((record = chunkedReader.nextRecord()) != null) {
+			lines.add((String)record.getValues()[0]);
+		}
+		return lines;
+	}
+
+	protected List<String> expectedLines(int nLines) {
+		List<String> lines = new ArrayList<String>();
+		for(int idx = 0; idx < nLines; idx++) {
+			lines.add("1," + idx + "," + (idx * idx));
+		}
+		return lines;
+	}
+
+	protected String join(List<String> lines, String lineSeparator) {
+		StringBuilder text = new StringBuilder();
+		for(String line : lines) {
+			text.append(line).append(lineSeparator);
+		}
+		return text.toString();
+	}
+
+	@Test
+	public void testCRLFLines() throws IOException {
+		List<String> expected = expectedLines(200);
+		String text = join(expected, "\r\n");
+		// Every chunk length, so chunks end between '\r' and '\n' at some point. //
+		for(int chunkLength = 1; chunkLength < 40; chunkLength++) {
+			assertEquals("Chunk length: " + chunkLength, expected, readLines(text, chunkLength));
+		}
+	}
+
+	@Test
+	public void testLFAndCRLines() throws IOException {
+		List<String> expected = expectedLines(200);
+		for(String lineSeparator : new String[] { "\n", "\r" }) {
+			String text = join(expected, lineSeparator);
+			for(int chunkLength = 1; chunkLength < 40; chunkLength++) {
+				assertEquals("Chunk length: " + chunkLength, expected, readLines(text, chunkLength));
+			}
+		}
+	}
+
+	@Test
+	public void testLastLineWithoutSeparator() throws IOException {
+		List<String> expected = expectedLines(20);
+		String text = join(expected, "\r\n") + "2,last";
+		expected.add("2,last");
+		assertEquals(expected, readLines(text, 16));
+	}
+}
@@ -0,0 +1,71 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestDAFDataParser class.
+ *     
+ */
+package ca.sciencestudio.data.daf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import ca.sciencestudio.data.support.DataFormatException;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+public class TestDAFDataParser {
+
+	/**
+	 * A header which defines the event id twice, with different variables.
+	 */
+	protected String createData(int eventId) {
+		StringBuilder data = new StringBuilder();
+		data.append("# CLS Data Acquisition\n");
+		data.append("# Mon Jan 3 10:00:00 2011\n");
+		data.append("#(" + eventId + ") Event-ID A:pos\n");
+		data.append("#(" + eventId + ") EID \"A Position\"\n");
+		data.append("#(" + eventId + ") Event-ID B:pos C:pos\n");
+		data.append("#(" + eventId + ") EID \"B Position\" \"C Position\"\n");
+		data.append(eventId + ",1.5,2.5\n");
+		data.append(eventId + ",3.5,4.5\n");
+		return data.toString();
+	}
+
+	protected void testDuplicateEventId(int eventId) throws DataFormatException, IOException, RecordFormatException {
+		DAFDataParser parser = new DAFDataParser(new StringReader(createData(eventId)));
+		assertEquals(2, parser.getNumberOfEvents());
+
+		DAFEvent firstEvent = parser.getEvents().get(0);
+		DAFEvent lastEvent = parser.getEvents().get(1);
+		assertTrue(parser.getEventById(eventId) == firstEvent);
+		assertEquals("B Position", lastEvent.getVariables().get(1).getDescription());
+
+		// Records are parsed with the last event defined with the id. //
+		double[] expected = { 1.5, 2.5, 3.5, 4.5 };
+		for(int idx = 0; idx < expected.length; idx += 2) {
+			assertTrue(parser.hasNext());
+			DAFRecord record = parser.next();
+			assertTrue(record.getEvent() == lastEvent);
+			assertEquals(expected[idx], record.getDoubleByName("B:pos"), 0.0);
+			assertEquals(expected[idx + 1], record.getDoubleByDescription("C Position"), 0.0);
+		}
+		assertFalse(parser.hasNext());
+	}
+
+	@Test
+	public void testDuplicateEventId() throws DataFormatException, IOException, RecordFormatException {
+		testDuplicateEventId(1);
+	}
+
+	@Test
+	public void testDuplicateSparseEventId() throws DataFormatException, IOException, RecordFormatException {
+		// Event ids outside of the dense index of the registry. //
+		testDuplicateEventId(5000);
+	}
+}
@@ -0,0 +1,99 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestDAFMappedSpectrumParser class.
+ *     
+ */
+package ca.sciencestudio.data.daf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.sciencestudio.data.support.DataFormatException;
+
+public class TestDAFMappedSpectrumParser {
+
+	private static final String SPECTRA = "1,2,3\n40, 50 ,60\n-7,8,9";
+
+	private File spectraFile;
+
+	@Before
+	public void createFile() throws IOException {
+		spectraFile = File.createTempFile("spectra", ".dat");
+		FileWriter writer = new FileWriter(spectraFile);
+		try {
+			writer.write(SPECTRA);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void deleteFile() {
+		spectraFile.delete();
+	}
+
+	@Test
+	public void testParseRecord() throws DataFormatException, IOException {
+		DAFMappedSpectrumParser parser = new DAFMappedSpectrumParser(spectraFile);
+		try {
+			long[] values = new long[3];
+			parser.parseRecord(6L, values);
+			assertArrayEquals(new long[] { 40L, 50L, 60L }, values);
+			parser.parseRecord(0L, values);
+			assertArrayEquals(new long[] { 1L, 2L, 3L }, values);
+			parser.parseRecord(17L, values);
+			assertArrayEquals(new long[] { -7L, 8L, 9L }, values);
+
+			assertTrue(parser.isRecordComplete(6L));
+			assertFalse(parser.isRecordComplete(17L));
+		}
+		finally {
+			parser.close();
+		}
+	}
+
+	@Test
+	public void testCloseReleasesMapping() throws DataFormatException, IOException {
+		DAFMappedSpectrumParser parser = new DAFMappedSpectrumParser(spectraFile);
+		parser.parseRecord(0L, new long[3]);
+		parser.close();
+
+		try {
+			parser.parseRecord(0L, new long[3]);
+			fail("Parse after close should fail.");
+		}
+		catch(IOException e) {
+			// expected //
+		}
+
+		// Only checked where the mappings of the process are available (Linux). //
+		File maps = new File("/proc/self/maps");
+		if(maps.canRead()) {
+			BufferedReader reader = new BufferedReader(new FileReader(maps));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					assertFalse("Spectra file is still mapped.", line.endsWith(spectraFile.getAbsolutePath()));
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+	}
+}
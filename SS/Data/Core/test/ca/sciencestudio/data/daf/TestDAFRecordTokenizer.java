@@ -0,0 +1,70 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestDAFRecordTokenizer class.
+ *     
+ */
+package ca.sciencestudio.data.daf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestDAFRecordTokenizer {
+
+	@Test
+	public void testTokenize() {
+		DAFRecordTokenizer tokenizer = new DAFRecordTokenizer();
+		assertTrue(tokenizer.tokenizeEventId("12,1.5, 2,abc"));
+		assertEquals(12, tokenizer.getEventId());
+		assertTrue(tokenizer.tokenizeValues(4));
+		assertEquals(4, tokenizer.getNumberOfValues());
+		assertArrayEquals(new Object[] { "12", "1.5", "2", "abc" }, tokenizer.getValues());
+	}
+
+	@Test
+	public void testTrailingEmptyValue() {
+		DAFRecordTokenizer tokenizer = new DAFRecordTokenizer();
+		assertTrue(tokenizer.tokenizeEventId("3,7,"));
+		assertTrue(tokenizer.tokenizeValues(3));
+		assertArrayEquals(new Object[] { "3", "7", "" }, tokenizer.getValues());
+	}
+
+	@Test
+	public void testTooFewValues() {
+		DAFRecordTokenizer tokenizer = new DAFRecordTokenizer();
+		assertTrue(tokenizer.tokenizeEventId("3,7,8"));
+		assertFalse(tokenizer.tokenizeValues(5));
+	}
+
+	@Test
+	public void testInvalidEventId() {
+		DAFRecordTokenizer tokenizer = new DAFRecordTokenizer();
+		assertFalse(tokenizer.tokenizeEventId(null));
+		assertFalse(tokenizer.tokenizeEventId(""));
+		assertFalse(tokenizer.tokenizeEventId("# comment"));
+		assertFalse(tokenizer.tokenizeEventId("12"));
+		assertFalse(tokenizer.tokenizeEventId("12 ,3"));
+		assertFalse(tokenizer.tokenizeEventId("99999999999,3"));
+	}
+
+	@Test
+	public void testReuse() {
+		DAFRecordTokenizer tokenizer = new DAFRecordTokenizer();
+		StringBuilder line = new StringBuilder("1");
+		for(int idx = 0; idx < 500; idx++) {
+			line.append(',').append(idx);
+		}
+		assertTrue(tokenizer.tokenizeEventId(line.toString()));
+		assertTrue(tokenizer.tokenizeValues(501));
+		assertEquals("499", tokenizer.getValues()[500]);
+
+		assertTrue(tokenizer.tokenizeEventId("2,x"));
+		assertTrue(tokenizer.tokenizeValues(2));
+		assertArrayEquals(new Object[] { "2", "x" }, tokenizer.getValues());
+	}
+}
@@ -0,0 +1,149 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestDAFSpectrumIndex class.
+ *     
+ */
+package ca.sciencestudio.data.daf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDAFSpectrumIndex {
+
+	private File directory;
+	private File spectraFile;
+
+	@Before
+	public void createFile() throws IOException {
+		directory = File.createTempFile("index", "");
+		directory.delete();
+		directory.mkdir();
+		spectraFile = new File(directory, "scan_spectra.dat");
+		FileWriter writer = new FileWriter(spectraFile);
+		try {
+			writer.write("1,2,3\n\n4, 5,,6\r\n7,8");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testBuild() throws IOException {
+		DAFSpectrumIndex index = DAFSpectrumIndex.build(spectraFile);
+		assertEquals(3, index.getNumberOfRecords());
+		assertEquals(0L, index.getOffset(0));
+		assertEquals(3, index.getNumberOfValues(0));
+		assertEquals(7L, index.getOffset(1));
+		assertEquals(3, index.getNumberOfValues(1));
+		assertEquals(16L, index.getOffset(2));
+		assertEquals(2, index.getNumberOfValues(2));
+		assertEquals(1, index.getRecordIndexByOffset(7L));
+		assertEquals(-1, index.getRecordIndexByOffset(8L));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		File indexFile = DAFSpectrumIndex.getIndexFile(spectraFile);
+		DAFSpectrumIndex.getIndex(spectraFile);
+		assertTrue(indexFile.isFile());
+
+		DAFSpectrumIndex index = DAFSpectrumIndex.load(spectraFile, indexFile);
+		assertNotNull(index);
+		assertEquals(3, index.getNumberOfRecords());
+		assertEquals(16L, index.getOffset(2));
+	}
+
+	@Test
+	public void testCorruptIndex() throws IOException {
+		File indexFile = DAFSpectrumIndex.getIndexFile(spectraFile);
+		DAFSpectrumIndex.getIndex(spectraFile);
+
+		RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+		try {
+			file.seek(file.length() - 9L);
+			file.write(0xFF);
+		}
+		finally {
+			file.close();
+		}
+		assertNull(DAFSpectrumIndex.load(spectraFile, indexFile));
+	}
+
+	@Test
+	public void testConcurrentSave() throws Exception {
+		final DAFSpectrumIndex index = DAFSpectrumIndex.build(spectraFile);
+		final File indexFile = DAFSpectrumIndex.getIndexFile(spectraFile);
+		index.save(indexFile);
+
+		// Where rename cannot replace a file (Windows) a save may fail and the file may briefly be missing. //
+		final boolean atomicRename = (File.separatorChar == '/');
+		final List<String> errors = new ArrayList<String>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 8; t++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for(int n = 0; n < 50; n++) {
+						try {
+							index.save(indexFile);
+						}
+						catch(IOException e) {
+							if(atomicRename) {
+								addError(e.toString());
+							}
+						}
+						DAFSpectrumIndex loaded = DAFSpectrumIndex.load(spectraFile, indexFile);
+						if(atomicRename && (loaded == null)) {
+							addError("Cannot load index while saving.");
+						}
+						if((loaded != null) && (loaded.getNumberOfRecords() != 3)) {
+							addError("Loaded incomplete index.");
+						}
+					}
+				}
+				
+				private void addError(String error) {
+					synchronized(errors) {
+						errors.add(error);
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertNotNull(DAFSpectrumIndex.load(spectraFile, indexFile));
+		// Only the spectra and index files remain, no temporary files. //
+		assertEquals(2, directory.listFiles().length);
+	}
+}
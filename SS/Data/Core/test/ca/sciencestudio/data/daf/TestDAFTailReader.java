@@ -0,0 +1,148 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestDAFTailReader class.
+ *
+ */
+package ca.sciencestudio.data.daf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.sciencestudio.data.support.DataFormatException;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+public class TestDAFTailReader {
+
+	private static final String HEADER_START = "# CLS Data Acquisition\n# Mon Jan 3 10:00:00 2011\n";
+	private static final String HEADER_EVENT = "#(1) Event-ID X:pos Y:pos\n#(1) \"Event ID\" \"X Position\" \"Y Position\"\n";
+
+	private static final long POLL_INTERVAL = 10L;
+
+	private File dataFile;
+
+	@Before
+	public void createFile() throws IOException {
+		dataFile = File.createTempFile("data", ".dat");
+	}
+
+	@After
+	public void deleteFile() {
+		dataFile.delete();
+	}
+
+	protected void append(String text) throws IOException {
+		FileWriter writer = new FileWriter(dataFile, true);
+		try {
+			writer.write(text);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Append the text to the data file after the delay, on another thread.
+	 */
+	protected Thread appendLater(final String text, final long delay) {
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(delay);
+					append(text);
+				}
+				catch(Exception e) {
+					// the reader then stops following //
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	protected List<Double> readPositionsX(DAFDataParser parser) throws RecordFormatException {
+		List<Double> positions = new ArrayList<Double>();
+		for(DAFRecord record : parser) {
+			positions.add(record.getDouble(1));
+		}
+		return positions;
+	}
+
+	@Test
+	public void testHeaderWrittenLater() throws DataFormatException, RecordFormatException, IOException, InterruptedException {
+		// Only the start of the header is written when the parser is created. //
+		append(HEADER_START);
+		Thread scanThread = appendLater(HEADER_EVENT + "1,0.5,1.5\n", 100L);
+
+		DAFTailReader reader = new DAFTailReader(dataFile, POLL_INTERVAL, 2000L);
+		try {
+			DAFDataParser parser = new DAFDataParser(reader);
+			assertEquals(1, parser.getNumberOfEvents());
+			assertNotNull(parser.getEventById(1));
+			assertTrue(parser.hasNext());
+			assertEquals(0.5, parser.next().getDouble(1), 0.0);
+		}
+		finally {
+			reader.close();
+		}
+		scanThread.join();
+	}
+
+	@Test(expected=DataFormatException.class)
+	public void testHeaderNotWritten() throws DataFormatException, IOException {
+		append(HEADER_START);
+
+		DAFTailReader reader = new DAFTailReader(dataFile, POLL_INTERVAL, 100L);
+		try {
+			new DAFDataParser(reader);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testRecordsWrittenLater() throws DataFormatException, RecordFormatException, IOException, InterruptedException {
+		append(HEADER_START + HEADER_EVENT + "1,0.0,0.0\n1,1.0,0.0\n");
+		// The last line is written in two parts. //
+		Thread scanThread = appendLater("1,2.0,0.0\n1,3.", 100L);
+
+		DAFTailReader reader = new DAFTailReader(dataFile, POLL_INTERVAL, 500L);
+		try {
+			DAFDataParser parser = new DAFDataParser(reader);
+			assertEquals(2, readPositionsX(parser).size());
+
+			assertTrue(reader.awaitData());
+			scanThread.join();
+			List<Double> positions = readPositionsX(parser);
+			assertEquals(1, positions.size());
+			assertEquals(2.0, positions.get(0), 0.0);
+
+			append("0,0.0\n");
+			assertTrue(reader.awaitData());
+			positions = readPositionsX(parser);
+			assertEquals(1, positions.size());
+			assertEquals(3.0, positions.get(0), 0.0);
+
+			// Following stops after the idle timeout. //
+			assertFalse(reader.awaitData());
+			assertFalse(reader.isFollowing());
+		}
+		finally {
+			reader.close();
+		}
+	}
+}
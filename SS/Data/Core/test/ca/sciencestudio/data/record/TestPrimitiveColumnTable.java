@@ -0,0 +1,167 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestPrimitiveColumnTable class.
+ *     
+ */
+package ca.sciencestudio.data.record;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.sciencestudio.data.record.PrimitiveColumnTable.ColumnType;
+import ca.sciencestudio.data.support.RecordFormatException;
+
+public class TestPrimitiveColumnTable {
+
+	private static final ColumnType[] COLUMN_TYPES = { ColumnType.LONG, ColumnType.DOUBLE, ColumnType.OBJECT };
+
+	@Test
+	public void testAddRows() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES, 1);
+		PrimitiveColumnCursor cursor = table.cursor();
+		for(int row = 0; row < 100; row++) {
+			cursor.addRow();
+			cursor.setLong(0, row);
+			cursor.setDouble(1, row / 2.0);
+			cursor.setValue(2, "row" + row);
+		}
+		assertEquals(100, table.getNumberOfRows());
+		assertEquals(3, table.getNumberOfColumns());
+
+		cursor.beforeFirst();
+		int row = 0;
+		while(cursor.next()) {
+			assertEquals(row, cursor.getLong(0));
+			assertEquals(row / 2.0, cursor.getDouble(1), 0.0);
+			assertEquals("row" + row, cursor.getString(2));
+			row++;
+		}
+		assertEquals(100, row);
+
+		assertEquals(99L, table.getLongColumn(0)[99]);
+		assertEquals(100, table.getDoubleColumn(1).length);
+	}
+
+	@Test
+	public void testConversions() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES);
+		PrimitiveColumnCursor cursor = table.cursor();
+		cursor.addRow();
+		cursor.setValue(0, "42");
+		cursor.setDouble(1, 2.75);
+		cursor.setLong(2, 7L);
+		assertEquals(42, cursor.getInt(0));
+		assertEquals(2L, cursor.getLong(1));
+		assertEquals(7.0, cursor.getDouble(2), 0.0);
+	}
+
+	@Test
+	public void testGetValues() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES);
+		PrimitiveColumnCursor cursor = table.cursor();
+		cursor.addRow();
+		cursor.setLong(0, 5L);
+		cursor.setDouble(1, 1.5);
+		assertArrayEquals(new Object[] { 5L, 1.5, null }, cursor.getValues());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetValuesBeforeFirst() {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES);
+		table.addRow();
+		table.cursor().getValues();
+	}
+
+	@Test(expected = RecordFormatException.class)
+	public void testGetNullValue() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES);
+		table.addRow();
+		table.getValue(0, 2);
+	}
+
+	@Test(expected = RecordFormatException.class)
+	public void testInvalidRow() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES);
+		table.addRow();
+		table.getLong(1, 0);
+	}
+
+	@Test
+	public void testClear() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES);
+		PrimitiveColumnCursor cursor = table.cursor();
+		cursor.addRow();
+		cursor.setValue(2, "value");
+		table.clear();
+		assertEquals(0, table.getNumberOfRows());
+		cursor.beforeFirst();
+		assertFalse(cursor.next());
+		cursor.addRow();
+		assertTrue(table.getValues(0)[2] == null);
+	}
+
+	protected PrimitiveColumnTable createUnmodifiableTable() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES, 1);
+		PrimitiveColumnCursor cursor = table.cursor();
+		cursor.addRow();
+		cursor.setLong(0, 1L);
+		cursor.setDouble(1, 1.5);
+		cursor.setValue(2, "value");
+		return PrimitiveColumnTable.unmodifiableTable(table);
+	}
+
+	@Test
+	public void testUnmodifiableTable() throws RecordFormatException {
+		PrimitiveColumnTable table = new PrimitiveColumnTable(COLUMN_TYPES, 1);
+		table.addRow();
+		table.setLong(0, 0, 1L);
+
+		PrimitiveColumnTable unmodifiableTable = PrimitiveColumnTable.unmodifiableTable(table);
+		assertTrue(table.isModifiable());
+		assertFalse(unmodifiableTable.isModifiable());
+		assertTrue(unmodifiableTable == PrimitiveColumnTable.unmodifiableTable(unmodifiableTable));
+
+		// Rows added to the table later are not part of the view. //
+		table.addRow();
+		table.addRow();
+		assertEquals(1, unmodifiableTable.getNumberOfRows());
+		assertEquals(1L, unmodifiableTable.getLong(0, 0));
+		assertArrayEquals(new long[] { 1L }, unmodifiableTable.getLongColumn(0));
+
+		PrimitiveColumnCursor cursor = unmodifiableTable.cursor();
+		assertTrue(cursor.next());
+		assertEquals(1L, cursor.getLong(0));
+		assertFalse(cursor.next());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableAddRow() throws RecordFormatException {
+		createUnmodifiableTable().addRow();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableClear() throws RecordFormatException {
+		createUnmodifiableTable().clear();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableSetLong() throws RecordFormatException {
+		createUnmodifiableTable().setLong(0, 0, 2L);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableSetDouble() throws RecordFormatException {
+		createUnmodifiableTable().setDouble(0, 1, 2.0);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableSetValue() throws RecordFormatException {
+		createUnmodifiableTable().cursor().setValue(2, "other");
+	}
+}
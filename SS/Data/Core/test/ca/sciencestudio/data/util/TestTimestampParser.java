@@ -0,0 +1,118 @@
+/** Copyright (c) Canadian Light Source, Inc. All rights reserved.
+ *   - see license.txt for details.
+ *
+ *  Description:
+ *     TestTimestampParser class.
+ *     
+ */
+package ca.sciencestudio.data.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import gsfc.nssdc.cdf.CDFException;
+import gsfc.nssdc.cdf.util.Epoch;
+import gsfc.nssdc.cdf.util.Epoch16;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TestTimestampParser {
+
+	private static final String DAF_START_TIME_PATTERN = "# EEE MMM d HH:mm:ss yyyy";
+
+	private static final String[] TIME_ZONE_IDS = {
+		TimestampParser.DAF_START_TIME_TIME_ZONE_ID, "GMT", "America/Vancouver", "Europe/Berlin", "Australia/Adelaide"
+	};
+
+	private static final String[] TIMESTAMPS = {
+		"# Mon Jan 5 09:30:00 2009",
+		"# Fri Feb 29 23:59:59 2008",
+		"# Sun Mar 8 02:30:00 2009",
+		"# Sun Nov 1 01:30:00 2009",
+		"# Thu Dec 31 23:59:59 2099",
+		"# Sat Jan 1 00:00:00 2000",
+		"# Tue Sep 9 7:05:03 1980",
+		"# Wed Jun 31 24:61:61 2010",
+		"# Wednesday June 2 10:20:30 2010 extra text"
+	};
+
+	@Test
+	public void testParseMatchesSimpleDateFormat() throws ParseException {
+		for(String timeZoneId : TIME_ZONE_IDS) {
+			TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+			TimestampParser parser = new TimestampParser(timeZone);
+			DateFormat dateFormat = new SimpleDateFormat(DAF_START_TIME_PATTERN, Locale.ENGLISH);
+			dateFormat.setTimeZone(timeZone);
+			for(String timestamp : TIMESTAMPS) {
+				assertEquals(timeZoneId + ": " + timestamp, dateFormat.parse(timestamp).getTime(), parser.parseMillis(timestamp));
+			}
+		}
+	}
+
+	@Test
+	public void testRandomTimestampsMatchSimpleDateFormat() throws ParseException {
+		Random random = new Random(2009L);
+		for(String timeZoneId : TIME_ZONE_IDS) {
+			TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+			TimestampParser parser = new TimestampParser(timeZone);
+			DateFormat dateFormat = new SimpleDateFormat(DAF_START_TIME_PATTERN, Locale.ENGLISH);
+			dateFormat.setTimeZone(timeZone);
+			for(int n = 0; n < 2000; n++) {
+				// Whole seconds between 1970 and 2100. //
+				long millis = (long)(random.nextDouble() * 4102444800L) * 1000L;
+				String timestamp = dateFormat.format(new java.util.Date(millis));
+				assertEquals(timeZoneId + ": " + timestamp, dateFormat.parse(timestamp).getTime(), parser.parseMillis(timestamp));
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidTimestamps() {
+		String[] invalid = { null, "", "# Mon", "# Xyz Jan 5 09:30:00 2009", "# Mon Foo 5 09:30:00 2009", "# Mon Jan 5 09-30-00 2009", "# Mon Jan 5 09:30:00" };
+		TimestampParser parser = TimestampParser.DAF_START_TIME;
+		for(String timestamp : invalid) {
+			try {
+				parser.parseMillis(timestamp);
+				fail("Expected parse exception: " + timestamp);
+			}
+			catch(ParseException e) {
+				// expected //
+			}
+		}
+	}
+
+	@Test
+	public void testCDFEpoch() throws CDFException {
+		Random random = new Random(1970L);
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		for(int n = 0; n < 2000; n++) {
+			long millis = (long)((random.nextDouble() - 0.5) * 8.0e12);
+			calendar.setTimeInMillis(millis);
+			long year = calendar.get(Calendar.YEAR);
+			long month = calendar.get(Calendar.MONTH) + 1;
+			long day = calendar.get(Calendar.DAY_OF_MONTH);
+			long hour = calendar.get(Calendar.HOUR_OF_DAY);
+			long minute = calendar.get(Calendar.MINUTE);
+			long second = calendar.get(Calendar.SECOND);
+			long msecond = calendar.get(Calendar.MILLISECOND);
+
+			double epoch = Epoch.compute(year, month, day, hour, minute, second, msecond);
+			assertEquals(epoch, TimestampParser.toCDFEpoch(millis), 0.0);
+			assertEquals(millis, TimestampParser.fromCDFEpoch(epoch));
+
+			double[] epoch16 = new double[2];
+			Epoch16.compute(year, month, day, hour, minute, second, msecond, 1L, 2L, 3L, epoch16);
+			double[] result = TimestampParser.toCDFEpoch16(millis, 1L, 2L, 3L);
+			assertEquals(epoch16[0], result[0], 0.0);
+			assertEquals(epoch16[1], result[1], 0.0);
+		}
+	}
+}
@@ -10,7 +10,9 @@ package ca.sciencestudio.data.service.controllers;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import ca.sciencestudio.data.cdf.CDFFileResolver;
 import ca.sciencestudio.data.cdf.CDFQuery;
+import ca.sciencestudio.data.cdf.CDFQueryCache;
 import ca.sciencestudio.data.standard.StdCategories;
 import ca.sciencestudio.data.standard.StdConverter;
 import ca.sciencestudio.data.support.CDFQueryException;
@@ -26,8 +28,17 @@ public abstract class AbstractScanDataController implements StdConverter, StdCat
 	
 	protected ScanAuthzDAO scanAuthzDAO;
 	
+	protected CDFQueryCache cdfQueryCache = CDFQueryCache.getDefaultCache();
+	
+	protected CDFFileResolver cdfFileResolver = CDFFileResolver.getDefaultResolver();
+	
 	protected Log logger = LogFactory.getLog(getClass());
 		
+	/**
+	 * The CDF query shares a cached CDF handle, close the query when finished.
+	 * Query results are cached in the CDF query cache shared by all controllers,
+	 * the CDF file of the scan is resolved by the (caching) CDF file resolver.
+	 */
 	protected CDFQuery getCDFQueryByScanGid(String scanGid) throws Exception {
 		
 		String user = SecurityUtil.getPersonGid();
@@ -38,9 +49,16 @@ public abstract class AbstractScanDataController implements StdConverter, StdCat
 		}
 		
 		try {
-			return new CDFQuery(scan);
+			if(!cdfFileResolver.exists(scan)) {
+				throw new Exception("Scan data CDF file not found (Scan:" + scanGid + ").");
+			}
+			
+			CDFQuery cdfQuery = new CDFQuery(cdfFileResolver.getCdfFile(scan));
+			cdfQuery.setCdfQueryCache(cdfQueryCache);
+			return cdfQuery;
 		}
 		catch(CDFQueryException e) {
+			cdfFileResolver.invalidate(scanGid);
 			String msg = "Exception while constructing CDF query (Scan:" + scanGid + ").";
 			Exception error = new Exception(msg, e);
 			logger.warn(msg, e);
@@ -54,4 +72,18 @@ public abstract class AbstractScanDataController implements StdConverter, StdCat
 	public void setScanAuthzDAO(ScanAuthzDAO scanAuthzDAO) {
 		this.scanAuthzDAO = scanAuthzDAO;
 	}
+
+	public CDFQueryCache getCdfQueryCache() {
+		return cdfQueryCache;
+	}
+	public void setCdfQueryCache(CDFQueryCache cdfQueryCache) {
+		this.cdfQueryCache = cdfQueryCache;
+	}
+
+	public CDFFileResolver getCdfFileResolver() {
+		return cdfFileResolver;
+	}
+	public void setCdfFileResolver(CDFFileResolver cdfFileResolver) {
+		this.cdfFileResolver = cdfFileResolver;
+	}
 }
@@ -20,6 +20,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import ca.sciencestudio.data.cdf.CDFFileResolver;
 import ca.sciencestudio.data.converter.Converter;
 import ca.sciencestudio.data.converter.ConverterMap;
 import ca.sciencestudio.data.converter.LinkedHashConverterMap;
@@ -78,6 +79,11 @@ public class ScanConvertController implements StdConverter {
 	
 	private ConverterFactory converterFactory;
 	
+	private CDFFileResolver cdfFileResolver = CDFFileResolver.getDefaultResolver();
+	
+	// Scans in progress can be converted, only by converters that follow the data files. //
+	private boolean convertIncompleteScans = false;
+	
 	private Map<String,ConvertThread> convertThreadMap = Collections.synchronizedMap(new HashMap<String,ConvertThread>());
 	
 	protected Log logger = LogFactory.getLog(getClass());
@@ -100,7 +106,7 @@ public class ScanConvertController implements StdConverter {
 		
 		Date scanStartDate = scan.getStartDate();
 		Date scanEndDate = scan.getEndDate();
-		if((scanStartDate == null) || (scanEndDate == null)) {
+		if((scanStartDate == null) || ((scanEndDate == null) && !convertIncompleteScans)) {
 			FormResponseMap response = new FormResponseMap(false, "Scan is incomplete");
 			response.put("complete", false);
 			return response;
@@ -167,6 +173,13 @@ public class ScanConvertController implements StdConverter {
 			converter = converterFactory.getConverter(convertRequest);
 		}
 		catch(ConverterFactoryException e) {
+			// Only converters which can follow the data files convert a scan in progress. //
+			if(scanEndDate == null) {
+				logger.debug("No converter for incomplete scan (" + fromFormat + " -> " + toFormat + ").", e);
+				FormResponseMap response = new FormResponseMap(false, "Scan is incomplete");
+				response.put("complete", false);
+				return response;
+			}
 			String message = "Conversion formats not supported (" + fromFormat + " -> " + toFormat + ").";
 			FormResponseMap response = new FormResponseMap(false, message);
 			logger.warn(message, e);
@@ -191,12 +204,16 @@ public class ScanConvertController implements StdConverter {
 		ConvertThread convertThread = convertThreadMap.get(convertThreadKey);
 		
 		if(convertThread.isAlive()) {
+			// The converted file is being written, the last snapshot of it is read until the conversion is complete. //
 			FormResponseMap response = new FormResponseMap(true, "Conversion in progress.");
 			response.put("complete", false);
 			return response;
 		}
 		
 		convertThreadMap.remove(convertThreadKey);
+		
+		// The converted file is created or replaced, so resolve and check it again. //
+		cdfFileResolver.invalidate(scanGid);
 			
 		if(convertThread.hasException()) {
 			String message = "Conversion failed (" + fromFormat + " -> " + toFormat +").";
@@ -325,4 +342,18 @@ public class ScanConvertController implements StdConverter {
 	public void setConverterFactory(ConverterFactory converterFactory) {
 		this.converterFactory = converterFactory;
 	}
+
+	public CDFFileResolver getCdfFileResolver() {
+		return cdfFileResolver;
+	}
+	public void setCdfFileResolver(CDFFileResolver cdfFileResolver) {
+		this.cdfFileResolver = cdfFileResolver;
+	}
+
+	public boolean isConvertIncompleteScans() {
+		return convertIncompleteScans;
+	}
+	public void setConvertIncompleteScans(boolean convertIncompleteScans) {
+		this.convertIncompleteScans = convertIncompleteScans;
+	}
 }
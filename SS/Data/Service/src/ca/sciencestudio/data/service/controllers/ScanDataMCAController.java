@@ -9,6 +9,7 @@ package ca.sciencestudio.data.service.controllers;
 
 import gsfc.nssdc.cdf.Variable;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.springframework.stereotype.Controller;
@@ -20,6 +21,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 
 import ca.sciencestudio.data.cdf.CDFQuery;
 import ca.sciencestudio.data.cdf.CDFRecord;
+import ca.sciencestudio.data.cdf.MapXYSpectrumStore;
 import ca.sciencestudio.data.cdf.selector.CDFSelector;
 import ca.sciencestudio.data.cdf.selector.CDFSelectorBuilder;
 import ca.sciencestudio.data.service.controllers.AbstractScanDataController;
@@ -53,98 +55,136 @@ public class ScanDataMCAController extends AbstractScanDataController {
 			return new FormResponseMap(false, e.getMessage());
 		}
 		
-		MapXY10UniqueCategory<?> mapXY10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MapXY10);
-		if(mapXY10 == null) {
-			return new FormResponseMap(false, "CDF file does not contain MapXY data.");
-		}
+		try {
+			MapXY10UniqueCategory<?> mapXY10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MapXY10);
+			if(mapXY10 == null) {
+				return new FormResponseMap(false, "CDF file does not contain MapXY data.");
+			}
 
-		MCA10UniqueCategory<?> mca10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MCA10);
-		if(mca10 == null) {
-			return new FormResponseMap(false, "CDF file does not contain MCA data.");
-		}
+			MCA10UniqueCategory<?> mca10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MCA10);
+			if(mca10 == null) {
+				return new FormResponseMap(false, "CDF file does not contain MCA data.");
+			}
 		
-		CDFSelector iSelector;
-		try {
-			iSelector = CDFSelectorBuilder.EQ(mapXY10.I(), Integer.parseInt(I));
-		}
-		catch(NumberFormatException e) {
-			return new FormResponseMap(false, "Scan data point index invalid (I).");
-		}
+			int pointI;
+			try {
+				pointI = Integer.parseInt(I);
+			}
+			catch(NumberFormatException e) {
+				return new FormResponseMap(false, "Scan data point index invalid (I).");
+			}
 		
-		CDFSelector jSelector;
-		try {
-			jSelector = CDFSelectorBuilder.EQ(mapXY10.J(), Integer.parseInt(J));
-		}
-		catch(NumberFormatException e) {
-			return new FormResponseMap(false, "Scan data point index invalid (J).");
-		}
+			int pointJ;
+			try {
+				pointJ = Integer.parseInt(J);
+			}
+			catch(NumberFormatException e) {
+				return new FormResponseMap(false, "Scan data point index invalid (J).");
+			}
 		
-		Variable mca10Spectrum = null;
-		try {
-			mca10Spectrum = cdfQuery.getVariableByName(mca10.SumSpectrum());
-		}
-		catch(CDFQueryException e) {
+			Variable mca10Spectrum = null;
 			try {
-				mca10Spectrum = cdfQuery.getVariableByName(mca10.Spectrum(1));
+				mca10Spectrum = cdfQuery.getVariableByName(mca10.SumSpectrum());
 			}
-			catch(CDFQueryException ex) {
-				String msg = "Scan data CDF file does not contain a spectrum (Scan: " + scanGid + ").";
-				FormResponseMap response = new FormResponseMap(false, msg);
-				logger.warn(msg, e);
-				return response;
+			catch(CDFQueryException e) {
+				try {
+					mca10Spectrum = cdfQuery.getVariableByName(mca10.Spectrum(1));
+				}
+				catch(CDFQueryException ex) {
+					String msg = "Scan data CDF file does not contain a spectrum (Scan: " + scanGid + ").";
+					FormResponseMap response = new FormResponseMap(false, msg);
+					logger.warn(msg, e);
+					return response;
+				}
 			}
-		}
 		
-		List<CDFRecord> cdfRecords;
-		try {
-			String[] cdfVarNames = new String[] { mapXY10.I(), mapXY10.J(), mca10Spectrum.getName() };
-			cdfRecords = cdfQuery.queryRecordsByNames(cdfVarNames, CDFSelectorBuilder.AND(iSelector, jSelector));
-		}
-		catch(CDFQueryException e) {
-			String msg = "Exception while executing CDF query. (ScanGid:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg, e);
+			int[] spectrum = getSpectrumFromStore(cdfQuery, mca10Spectrum.getName(), pointI, pointJ, scanGid);
+		
+			if(spectrum == null) {
+				CDFSelector iSelector = CDFSelectorBuilder.EQ(mapXY10.I(), pointI);
+				CDFSelector jSelector = CDFSelectorBuilder.EQ(mapXY10.J(), pointJ);
+			
+				List<CDFRecord> cdfRecords;
+				try {
+					String[] cdfVarNames = new String[] { mapXY10.I(), mapXY10.J(), mca10Spectrum.getName() };
+					cdfRecords = cdfQuery.queryRecordsByNames(cdfVarNames, CDFSelectorBuilder.AND(iSelector, jSelector));
+				}
+				catch(CDFQueryException e) {
+					String msg = "Exception while executing CDF query. (ScanGid:" + scanGid + ")";
+					FormResponseMap response = new FormResponseMap(false, msg);
+					logger.warn(msg, e);
+					return response;
+				}
+	
+				if(cdfRecords.isEmpty()) {
+					String msg = "CDF query result does not contain any records. (Scan:" + scanGid + ")";
+					FormResponseMap response = new FormResponseMap(false, msg);
+					logger.warn(msg);
+					return response;
+				}
+		
+				try {
+					spectrum = cdfRecords.get(0).getIntArrayByName(mca10Spectrum.getName());
+				}
+				catch(RecordFormatException e) {
+					String msg = "CDF query result invalid record format. (Scan:" + scanGid + ")";
+					FormResponseMap response = new FormResponseMap(false, msg);
+					logger.warn(msg, e);
+					return response;
+				}
+			}
+		
+			double maxEnergy;
+			try {
+				maxEnergy = cdfQuery.getAttributeRecordByName(mca10.MaxEnergy()).getDoubleByID(0);
+			}
+			catch(Exception e) {
+				maxEnergy = DEFAULT_MAX_ENERGY;
+			}
+		
+			double minEnergy;
+			try {
+				minEnergy = cdfQuery.getAttributeRecordByName(mca10.MinEnergy()).getDoubleByID(0);
+			}
+			catch(Exception e) {
+				minEnergy = DEFAULT_MIN_ENERGY;
+			}
+		
+			FormResponseMap response = new FormResponseMap(true);
+			response.put("spectrum", spectrum);
+			response.put("minEnergy", minEnergy);
+			response.put("maxEnergy", maxEnergy);
 			return response;
 		}
-
-		if(cdfRecords.isEmpty()) {
-			String msg = "CDF query result does not contain any records. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg);
-			return response;
+		finally {
+			cdfQuery.close();
 		}
+	}
 	
-		int[] spectrum;
-		try {
-			spectrum = cdfRecords.get(0).getIntArrayByName(mca10Spectrum.getName());
-		}
-		catch(RecordFormatException e) {
-			String msg = "CDF query result invalid record format. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg, e);
-			return response;
+	/**
+	 * Read the spectrum of a point from the spectrum store of the CDF file, if the
+	 * store is available, up to date and holds spectra from the given variable.
+	 * 
+	 * @return the spectrum or null if it must be queried from the CDF file
+	 */
+	protected int[] getSpectrumFromStore(CDFQuery cdfQuery, String cdfVarName, int pointI, int pointJ, String scanGid) {
+		MapXYSpectrumStore spectrumStore = MapXYSpectrumStore.open(cdfQuery.getCdfFile());
+		if(spectrumStore == null) {
+			return null;
 		}
 		
-		double maxEnergy;
 		try {
-			maxEnergy = cdfQuery.getAttributeRecordByName(mca10.MaxEnergy()).getDoubleByID(0);
-		}
-		catch(Exception e) {
-			maxEnergy = DEFAULT_MAX_ENERGY;
+			if(!cdfVarName.equals(spectrumStore.getCdfVarName())) {
+				return null;
+			}
+			return spectrumStore.getSpectrum(pointI, pointJ);
 		}
-		
-		double minEnergy;
-		try {
-			minEnergy = cdfQuery.getAttributeRecordByName(mca10.MinEnergy()).getDoubleByID(0);
+		catch(IOException e) {
+			logger.warn("Exception while reading spectrum store. (Scan:" + scanGid + ")", e);
+			return null;
 		}
-		catch(Exception e) {
-			minEnergy = DEFAULT_MIN_ENERGY;
+		finally {
+			spectrumStore.close();
 		}
-		
-		FormResponseMap response = new FormResponseMap(true);
-		response.put("spectrum", spectrum);
-		response.put("minEnergy", minEnergy);
-		response.put("maxEnergy", maxEnergy);
-		return response;
 	}
 }
@@ -7,24 +7,23 @@
  */
 package ca.sciencestudio.data.service.controllers;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import ca.sciencestudio.data.cdf.CDFRecord;
 import ca.sciencestudio.data.cdf.CDFQuery;
+import ca.sciencestudio.data.cdf.MapXYAxisMetadata;
+import ca.sciencestudio.data.cdf.MapXYMapPyramid;
+import ca.sciencestudio.data.cdf.MapXYROIMaps;
 import ca.sciencestudio.data.standard.category.MapXY10UniqueCategory;
 import ca.sciencestudio.data.support.CDFQueryException;
-import ca.sciencestudio.data.support.RecordFormatException;
 import ca.sciencestudio.data.util.CategoryUtils;
 import ca.sciencestudio.util.web.FormResponseMap;
 
@@ -47,56 +46,44 @@ public class ScanDataMapXYController extends AbstractScanDataController {
 			return new FormResponseMap(false, e.getMessage());
 		}
 		
-		MapXY10UniqueCategory<?> mapXY10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MapXY10);
-		if(mapXY10 == null) {
-			return new FormResponseMap(false, "CDF file does not contain MapXY data.");
-		}
-		
-		String[] cdfVarNames = new String[] { mapXY10.I() };
-		
-		List<CDFRecord> cdfRecords;
 		try {
-			cdfRecords = cdfQuery.queryRecordsByNames(cdfVarNames);
-		}
-		catch(CDFQueryException e) {
-			String msg = "Exception while executing CDF query. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg, e);
-			return response;
-		}
+			MapXY10UniqueCategory<?> mapXY10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MapXY10);
+			if(mapXY10 == null) {
+				return new FormResponseMap(false, "CDF file does not contain MapXY data.");
+			}
 		
-		if(cdfRecords.isEmpty()) {
-			String msg = "CDF query result does not contain any records. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg);
-			return response;
-		}
+			MapXYAxisMetadata metadata;
+			try {
+				metadata = MapXYAxisMetadata.getMetadata(cdfQuery, mapXY10.I(), mapXY10.J());
+			}
+			catch(CDFQueryException e) {
+				String msg = "Exception while executing CDF query. (Scan:" + scanGid + ")";
+				FormResponseMap response = new FormResponseMap(false, msg);
+				logger.warn(msg, e);
+				return response;
+			}
 		
-		Set<Integer> indexSet = new HashSet<Integer>(cdfRecords.size());
+			if(metadata.getNumberOfPoints() == 0) {
+				String msg = "CDF query result does not contain any records. (Scan:" + scanGid + ")";
+				FormResponseMap response = new FormResponseMap(false, msg);
+				logger.warn(msg);
+				return response;
+			}
 		
-		try {
-			for(CDFRecord cdfRecord : cdfRecords) {
-				indexSet.add(cdfRecord.getIntByName(mapXY10.I()));
+			int[] indexList = metadata.getIndexesI();
+		
+			Collection<int[]> indexes = new ArrayList<int[]>(indexList.length);
+			for(int index : indexList) {
+				indexes.add(new int[] { index });
 			}
-		}
-		catch(RecordFormatException e) {
-			String msg = "Exception while reading CDF query result. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg, e);
+		
+			FormResponseMap response = new FormResponseMap(true);
+			response.put("I", indexes);
 			return response;
 		}
-		
-		List<Integer> indexList = new ArrayList<Integer>(indexSet);
-		Collections.sort(indexList);
-		
-		Collection<int[]> indexes = new ArrayList<int[]>(indexList.size());
-		for(int index : indexList) {
-			indexes.add(new int[] { index });
+		finally {
+			cdfQuery.close();
 		}
-		
-		FormResponseMap response = new FormResponseMap(true);
-		response.put("I", indexes);
-		return response;
 	}
 	
 	@ResponseBody
@@ -111,55 +98,223 @@ public class ScanDataMapXYController extends AbstractScanDataController {
 			return new FormResponseMap(false, e.getMessage());
 		}
 		
-		MapXY10UniqueCategory<?> mapXY10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MapXY10);
-		if(mapXY10 == null) {
-			return new FormResponseMap(false, "CDF file does not contain MapXY data.");
-		}
+		try {
+			MapXY10UniqueCategory<?> mapXY10 = CategoryUtils.getFirstCategory(cdfQuery.getCategories(), MapXY10);
+			if(mapXY10 == null) {
+				return new FormResponseMap(false, "CDF file does not contain MapXY data.");
+			}
+		
+			MapXYAxisMetadata metadata;
+			try {
+				metadata = MapXYAxisMetadata.getMetadata(cdfQuery, mapXY10.I(), mapXY10.J());
+			}
+			catch(CDFQueryException e) {
+				String msg = "Exception while executing CDF query. (Scan:" + scanGid + ")";
+				FormResponseMap response = new FormResponseMap(false, msg);
+				logger.warn(msg, e);
+				return response;
+			}
+		
+			if(metadata.getNumberOfPoints() == 0) {
+				String msg = "CDF query result does not contain any records. (Scan:" + scanGid + ")";
+				FormResponseMap response = new FormResponseMap(false, msg);
+				logger.warn(msg);
+				return response;
+			}
 		
-		String[] cdfVarNames = new String[] { mapXY10.J() };
+			int[] indexList = metadata.getIndexesJ();
+		
+			Collection<int[]> indexes = new ArrayList<int[]>(indexList.length);
+			for(int index : indexList) {
+				indexes.add(new int[] { index });
+			}
 		
-		List<CDFRecord> cdfRecords;
+			FormResponseMap response = new FormResponseMap(true);
+			response.put("J", indexes);
+			return response;
+		}
+		finally {
+			cdfQuery.close();
+		}
+	}
+	
+	/**
+	 * Region of interest maps precomputed while the scan was converted. Without a name
+	 * the names of the available maps are returned, otherwise the map indexed by [J][I].
+	 */
+	@ResponseBody
+	@RequestMapping(value = "/scan/{scanGid}/data/mapxy/roi*", method = RequestMethod.GET)
+	public FormResponseMap getRegionOfInterestMap(@RequestParam(required = false) String name, @PathVariable String scanGid) {
+		
+		CDFQuery cdfQuery;
 		try {
-			cdfRecords = cdfQuery.queryRecordsByNames(cdfVarNames);
+			cdfQuery = getCDFQueryByScanGid(scanGid);
 		}
-		catch(CDFQueryException e) {
-			String msg = "Exception while executing CDF query. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg, e);
-			return response;
+		catch(Exception e) {
+			return new FormResponseMap(false, e.getMessage());
 		}
 		
-		if(cdfRecords.isEmpty()) {
-			String msg = "CDF query result does not contain any records. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg);
+		try {
+			MapXYROIMaps roiMaps = MapXYROIMaps.load(cdfQuery.getCdfFile());
+			if(roiMaps == null) {
+				return new FormResponseMap(false, "Scan data does not contain region of interest maps.");
+			}
+			
+			if(name == null) {
+				FormResponseMap response = new FormResponseMap(true);
+				response.put("names", roiMaps.getNames());
+				return response;
+			}
+			
+			int roi = roiMaps.getIndexByName(name);
+			if(roi < 0) {
+				return new FormResponseMap(false, "Region of interest map not found (" + name + ").");
+			}
+			
+			FormResponseMap response = new FormResponseMap(true);
+			response.put("name", name);
+			response.put("minI", roiMaps.getMinimumI());
+			response.put("minJ", roiMaps.getMinimumJ());
+			response.put("missing", MapXYROIMaps.MISSING_VALUE);
+			response.put("map", roiMaps.getMap(roi));
 			return response;
 		}
+		finally {
+			cdfQuery.close();
+		}
+	}
+	
+	/**
+	 * Downsampled map from the map pyramid, either the requested level or the level
+	 * which matches the viewport (width and height in points of the map). Without a
+	 * name the integrated map is returned, otherwise the region of interest map.
+	 */
+	@ResponseBody
+	@RequestMapping(value = "/scan/{scanGid}/data/mapxy/pyramid*", method = RequestMethod.GET)
+	public FormResponseMap getPyramidMap(@RequestParam(required = false) Integer level, @RequestParam(required = false) Integer width,
+			@RequestParam(required = false) Integer height, @RequestParam(required = false) String name, @PathVariable String scanGid) {
 		
-		Set<Integer> indexSet = new HashSet<Integer>(cdfRecords.size());
+		CDFQuery cdfQuery;
+		try {
+			cdfQuery = getCDFQueryByScanGid(scanGid);
+		}
+		catch(Exception e) {
+			return new FormResponseMap(false, e.getMessage());
+		}
 		
 		try {
-			for(CDFRecord cdfRecord : cdfRecords) {
-				indexSet.add(cdfRecord.getIntByName(mapXY10.J()));
+			MapXYMapPyramid pyramid = MapXYMapPyramid.open(cdfQuery.getCdfFile());
+			if(pyramid == null) {
+				return new FormResponseMap(false, "Scan data does not contain a map pyramid.");
+			}
+			
+			try {
+				int pyramidLevel;
+				if(level != null) {
+					pyramidLevel = level;
+				}
+				else if((width != null) && (height != null)) {
+					pyramidLevel = pyramid.getLevelForViewport(width, height);
+				}
+				else {
+					pyramidLevel = 0;
+				}
+				
+				if((pyramidLevel < 0) || (pyramidLevel >= pyramid.getNumberOfLevels())) {
+					return new FormResponseMap(false, "Map pyramid level invalid (" + pyramidLevel + ").");
+				}
+				
+				long[][] map;
+				try {
+					if(name == null) {
+						map = pyramid.getIntegratedMap(pyramidLevel);
+					}
+					else {
+						int roi = pyramid.getIndexByName(name);
+						if(roi < 0) {
+							return new FormResponseMap(false, "Region of interest map not found (" + name + ").");
+						}
+						map = pyramid.getROIMap(pyramidLevel, roi);
+					}
+				}
+				catch(IOException e) {
+					String msg = "Exception while reading map pyramid. (Scan:" + scanGid + ")";
+					FormResponseMap response = new FormResponseMap(false, msg);
+					logger.warn(msg, e);
+					return response;
+				}
+				
+				FormResponseMap response = new FormResponseMap(true);
+				response.put("level", pyramidLevel);
+				response.put("levels", pyramid.getNumberOfLevels());
+				response.put("factor", pyramid.getFactor(pyramidLevel));
+				response.put("minI", pyramid.getMinimumI());
+				response.put("minJ", pyramid.getMinimumJ());
+				response.put("missing", MapXYMapPyramid.MISSING_VALUE);
+				response.put("map", map);
+				return response;
+			}
+			finally {
+				pyramid.close();
 			}
 		}
-		catch(RecordFormatException e) {
-			String msg = "Exception while reading CDF query result. (Scan:" + scanGid + ")";
-			FormResponseMap response = new FormResponseMap(false, msg);
-			logger.warn(msg, e);
-			return response;
+		finally {
+			cdfQuery.close();
 		}
+	}
+	
+	/**
+	 * Summed spectrum of a tile (indexes I and J of the tile) of a level of the map pyramid.
+	 */
+	@ResponseBody
+	@RequestMapping(value = "/scan/{scanGid}/data/mapxy/pyramid/spectrum*", method = RequestMethod.GET)
+	public FormResponseMap getPyramidSpectrum(@RequestParam int level, @RequestParam int I, @RequestParam int J, @PathVariable String scanGid) {
 		
-		List<Integer> indexList = new ArrayList<Integer>(indexSet);
-		Collections.sort(indexList);
-		
-		Collection<int[]> indexes = new ArrayList<int[]>(indexList.size());
-		for(int index : indexList) {
-			indexes.add(new int[] { index });
+		CDFQuery cdfQuery;
+		try {
+			cdfQuery = getCDFQueryByScanGid(scanGid);
+		}
+		catch(Exception e) {
+			return new FormResponseMap(false, e.getMessage());
 		}
 		
-		FormResponseMap response = new FormResponseMap(true);
-		response.put("J", indexes);
-		return response;
+		try {
+			MapXYMapPyramid pyramid = MapXYMapPyramid.open(cdfQuery.getCdfFile());
+			if(pyramid == null) {
+				return new FormResponseMap(false, "Scan data does not contain a map pyramid.");
+			}
+			
+			try {
+				if((level < 0) || (level >= pyramid.getNumberOfLevels())) {
+					return new FormResponseMap(false, "Map pyramid level invalid (" + level + ").");
+				}
+				
+				long[] spectrum;
+				try {
+					spectrum = pyramid.getTileSpectrum(level, I, J);
+				}
+				catch(IOException e) {
+					String msg = "Exception while reading map pyramid. (Scan:" + scanGid + ")";
+					FormResponseMap response = new FormResponseMap(false, msg);
+					logger.warn(msg, e);
+					return response;
+				}
+				
+				if(spectrum == null) {
+					return new FormResponseMap(false, "Map pyramid does not contain a spectrum for the tile.");
+				}
+				
+				FormResponseMap response = new FormResponseMap(true);
+				response.put("factor", pyramid.getFactor(level));
+				response.put("spectrum", spectrum);
+				return response;
+			}
+			finally {
+				pyramid.close();
+			}
+		}
+		finally {
+			cdfQuery.close();
+		}
 	}
 }